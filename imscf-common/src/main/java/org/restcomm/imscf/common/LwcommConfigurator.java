@@ -31,6 +31,7 @@ import org.restcomm.imscf.common.lwcomm.config.Configuration.ReceiveMode;
 import org.restcomm.imscf.common.lwcomm.config.Node;
 import org.restcomm.imscf.common.lwcomm.config.PoolConfig;
 import org.restcomm.imscf.common.lwcomm.config.Route;
+import org.restcomm.imscf.common.lwcomm.config.Route.LoadBalancing;
 import org.restcomm.imscf.common.lwcomm.config.Route.Mode;
 import org.restcomm.imscf.common.lwcomm.config.impl.ConfigurationImpl;
 import org.restcomm.imscf.common.lwcomm.config.impl.NodeImpl;
@@ -146,6 +147,47 @@ public final class LwcommConfigurator {
         config.setMessageReceiver(listener);
         config.setAckSendStrategy(Configuration.AckSendStrategy.SEND_CYCLE);
         config.setMBeanDomain(mBeanDomain);
+        if (lwcommParams.getWireFormat() != null) {
+            config.setWireFormat(Configuration.WireFormat.valueOf(lwcommParams.getWireFormat().value()));
+        }
+        if (lwcommParams.getAckBatching() != null) {
+            config.setAckSendStrategy(Configuration.AckSendStrategy.BATCHED);
+            config.setAckBatchDelayMs(lwcommParams.getAckBatching().getDelayMs());
+            config.setAckBatchMaxIds(lwcommParams.getAckBatching().getMaxIds());
+        }
+        if (lwcommParams.getCoalesceMaxBytes() != null) {
+            config.setCoalesceMaxBytes(lwcommParams.getCoalesceMaxBytes());
+        }
+        if (lwcommParams.getMaxDatagramBytes() != null) {
+            config.setMaxDatagramBytes(lwcommParams.getMaxDatagramBytes());
+        }
+        if (lwcommParams.getReassemblyBudgetBytes() != null) {
+            config.setReassemblyBudgetBytes(lwcommParams.getReassemblyBudgetBytes());
+        }
+        if (lwcommParams.getDirectSend() != null) {
+            int high = lwcommParams.getDirectSend().getHighWaterMarkBytes();
+            int low = lwcommParams.getDirectSend().getLowWaterMarkBytes();
+            if (low <= 0 || high <= 0 || low > high) {
+                throw new RuntimeException("Invalid LwComm directSend water marks " + low + "/" + high
+                        + " (low/high), cannot configure LwComm!");
+            }
+            config.setSendMode(Configuration.SendMode.DIRECT);
+            config.setSendHighWaterMarkBytes(high);
+            config.setSendLowWaterMarkBytes(low);
+        }
+        if (lwcommParams.getFailureDetector() != null) {
+            if (lwcommParams.getFailureDetector().getPhiThreshold() != null) {
+                config.setFailureDetectorPhiThreshold(lwcommParams.getFailureDetector().getPhiThreshold());
+            }
+            if (lwcommParams.getFailureDetector().getAcceptablePauseMs() != null) {
+                config.setFailureDetectorAcceptablePauseMs(lwcommParams.getFailureDetector().getAcceptablePauseMs());
+            }
+        }
+        // every node can decode the binary SCCP format, senders use it only towards nodes advertising it
+        config.addLocalCapability(SccpSerializer.BINARY_V1_CAPABILITY);
+        if (SLELRouter.MAPPING_REPLICATION_ENABLED && slNodes.stream().anyMatch(n -> n.getName().equals(serverName))) {
+            config.addLocalCapability(SLELRouter.MAPPING_REPLICATION_CAPABILITY);
+        }
 
         boolean ok = LwCommServiceProvider.init(config);
         LOG.debug("LwComm init {}", ok ? "SUCCESS" : "FAILURE");
@@ -171,6 +213,9 @@ public final class LwcommConfigurator {
         }
         r.setName(source.getName() + " -> " + names.toString().replace(", ", "|"));
         r.setMode(mode);
+        if (imscfConfig.getLwCommParameters().getLoadBalancing() != null) {
+            r.setLoadBalancing(LoadBalancing.valueOf(imscfConfig.getLwCommParameters().getLoadBalancing().value()));
+        }
         r.setPossibleSources(Collections.singletonList(source));
         r.setDestinations(new ArrayList<Node>(destinations));
         r.setRetransmitPattern(imscfConfig.getLwCommParameters().getRetransmitPattern());
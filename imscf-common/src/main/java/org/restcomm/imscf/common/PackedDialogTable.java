@@ -0,0 +1,643 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ */
+package org.restcomm.imscf.common;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Dialog mapping storage of {@link SLELRouter} with primitive keys and without per dialog objects.
+ * <p>
+ * Dialogs are stored in slots of preallocated arrays, and are found through hash indexes with packed
+ * <code>long</code> keys mapped to index entries:
+ * <ul>
+ * <li>local key: local SSN + local TID. Local TIDs are unique for a local SSN, so this finds the dialog regardless
+ * of the remote side, like the local only storage of SLELRouter.</li>
+ * <li>remote key: interned SCCP peer (remote GT + remote SSN + local SSN) + remote TID.</li>
+ * <li>no GT key: remote SSN + local SSN + remote TID. This is used for messages arriving without remote GT, instead
+ * of searching all SCCP peers. Dialogs of different peers may have the same no GT key, the first one is indexed and
+ * the others wait in an overflow list until the indexed one is removed.</li>
+ * </ul>
+ * A key is added to the indexes when the corresponding TID first becomes known, and all keys of a dialog are removed
+ * when the dialog is removed. A key still used by a leftover dialog is taken over by the newer dialog, like in
+ * {@link TcapLevelMapping}. Each index is split into segments with their own lock, and the slots are guarded by
+ * striped locks, so operations on unrelated dialogs rarely contend.
+ * </p>
+ * <p>
+ * An index entry holds the slot number and the generation of the slot. The generation changes each time the slot is
+ * freed, so an entry found just before its dialog was removed is recognized as stale even if the slot has been
+ * reused by another dialog since.
+ * </p>
+ * <p>
+ * An SCCP peer is interned while it has dialogs with a remote TID, and evicted with the last one. The index of an
+ * evicted peer is only reused after a delay, so a lookup still using it cannot find the dialogs of another peer.
+ * </p>
+ * <p>
+ * TIDs are packed into 32 bits, which is the maximum length of a TCAP transaction id.
+ * </p>
+ * @param <Data> the type of data stored in the mappings.
+ */
+class PackedDialogTable<Data> {
+
+    private static final long NONE = -1L;
+    /** Returned by the index lookups if there is no entry. Entries are never negative. */
+    private static final long NO_ENTRY = -1L;
+
+    private static final long TYPE_LOCAL = 1L << 62;
+    private static final long TYPE_REMOTE = 2L << 62;
+    private static final long TYPE_NO_GT = 3L << 62;
+    private static final long TID_MASK = 0xFFFFFFFFL;
+    private static final int SSN_MASK = 0xFF;
+
+    private static final int SEGMENT_COUNT = 64;
+    private static final int LOCK_STRIPES = 1024;
+    private static final int CHUNK_BITS = 16;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int MAX_CHUNKS = 1 << 14;
+    /** The peer index is packed below the type bits of the remote key. */
+    private static final int MAX_PEERS = 1 << 30;
+    private static final long PEER_INDEX_REUSE_DELAY_MS = 60000;
+
+    private final ConcurrentHashMap<SccpDialogId, Peer> peers = new ConcurrentHashMap<>();
+    private final Object peerIndexLock = new Object();
+    private int nextPeerIndex;
+    /** Evicted peers in the order of eviction, their index is reused after the delay. Guarded by peerIndexLock. */
+    private final ArrayDeque<Peer> evictedPeers = new ArrayDeque<>();
+    private final KeyIndex[] segments = new KeyIndex[SEGMENT_COUNT];
+    /** Entries of the dialogs not in the index for their no GT key, by no GT key. Guarded by the no GT locks. */
+    private final ConcurrentHashMap<Long, ArrayDeque<Long>> noGtOverflow = new ConcurrentHashMap<>();
+    private final Object[] noGtLocks = new Object[LOCK_STRIPES];
+    private final Object[] slotLocks = new Object[LOCK_STRIPES];
+    private final AtomicReferenceArray<Chunk> chunks = new AtomicReferenceArray<>(MAX_CHUNKS);
+    private final AtomicInteger size = new AtomicInteger();
+
+    private final Object allocationLock = new Object();
+    private int allocatedSlots;
+    private int[] freeSlots = new int[CHUNK_SIZE];
+    private int freeSlotCount;
+
+    PackedDialogTable(int initialIndexCapacity) {
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new KeyIndex(Math.max(16, initialIndexCapacity / SEGMENT_COUNT));
+        }
+        for (int i = 0; i < LOCK_STRIPES; i++) {
+            slotLocks[i] = new Object();
+            noGtLocks[i] = new Object();
+        }
+    }
+
+    /** Returns the data mapped to the dialog, or null if there is no mapping. */
+    @SuppressWarnings("unchecked")
+    public Data get(SccpDialogId sdid, TcapDialogId tdid) {
+        while (true) {
+            long entry = find(sdid, peers.get(sdid), tdid);
+            if (entry == NO_ENTRY) {
+                return null;
+            }
+            int slot = slot(entry);
+            synchronized (lock(slot)) {
+                Chunk c = chunk(slot);
+                int o = slot & (CHUNK_SIZE - 1);
+                if (checkSlot(c, o, entry, sdid, tdid)) {
+                    addKeys(c, o, entry, sdid, tdid, true);
+                    return (Data) c.data[o];
+                }
+            }
+            // the dialog was removed after it was found, look it up again
+        }
+    }
+
+    /**
+     * Stores, replaces or removes (if data is null) the mapping of the dialog.
+     * @return the previous data, or null if there was no mapping
+     */
+    @SuppressWarnings("unchecked")
+    public Data set(SccpDialogId sdid, TcapDialogId tdid, Data data) {
+        while (true) {
+            // looked up again on retry, the peer may have been interned or evicted in the meantime
+            long entry = find(sdid, peers.get(sdid), tdid);
+            if (entry == NO_ENTRY) {
+                if (data == null || create(sdid, tdid, data)) {
+                    return null;
+                }
+                // a concurrent set() created the same dialog, update that one
+                continue;
+            }
+            int slot = slot(entry);
+            synchronized (lock(slot)) {
+                Chunk c = chunk(slot);
+                int o = slot & (CHUNK_SIZE - 1);
+                if (!checkSlot(c, o, entry, sdid, tdid)) {
+                    continue;
+                }
+                Data old = (Data) c.data[o];
+                if (data == null) {
+                    removeKeys(c, o, entry);
+                    release(c, o, slot);
+                    size.decrementAndGet();
+                } else {
+                    c.data[o] = data;
+                    c.timeOfMapping[o] = System.currentTimeMillis();
+                    addKeys(c, o, entry, sdid, tdid, true);
+                }
+                return old;
+            }
+        }
+    }
+
+    /** Returns the time when the data of the dialog was last set, or 0 if there is no mapping. */
+    public long getTimeOfMapping(SccpDialogId sdid, TcapDialogId tdid) {
+        long entry = find(sdid, peers.get(sdid), tdid);
+        if (entry == NO_ENTRY) {
+            return 0;
+        }
+        int slot = slot(entry);
+        synchronized (lock(slot)) {
+            Chunk c = chunk(slot);
+            int o = slot & (CHUNK_SIZE - 1);
+            return c.data[o] == null || c.generation[o] != generation(entry) ? 0 : c.timeOfMapping[o];
+        }
+    }
+
+    /**
+     * Calls the visitor for each stored dialog. Dialogs without a remote TID are reported with the local side only
+     * SCCP dialog id. Dialogs added or removed concurrently may or may not be visited.
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(SLELRouter.MappingVisitor<Data> visitor) {
+        int slots;
+        synchronized (allocationLock) {
+            slots = allocatedSlots;
+        }
+        for (int slot = 0; slot < slots; slot++) {
+            SccpDialogId sdid;
+            TcapDialogId tdid;
+            Data data;
+            synchronized (lock(slot)) {
+                Chunk c = chunk(slot);
+                int o = slot & (CHUNK_SIZE - 1);
+                data = (Data) c.data[o];
+                if (data == null) {
+                    continue;
+                }
+                sdid = c.remoteTid[o] == NONE ? new SccpDialogId(null, -1, c.localSsn[o]) : c.peer[o].sdid;
+                tdid = new TcapDialogId(c.remoteTid[o] == NONE ? null : c.remoteTid[o],
+                        c.localTid[o] == NONE ? null : c.localTid[o]);
+            }
+            visitor.visit(sdid, tdid, data);
+        }
+    }
+
+    /** Returns the number of stored dialogs. */
+    public int size() {
+        return size.get();
+    }
+
+    /** Returns the number of SCCP peers having dialogs with a remote TID. */
+    public int getPeerCount() {
+        return peers.size();
+    }
+
+    @Override
+    public String toString() {
+        return "PackedDialogTable [size=" + size() + ", peers=" + getPeerCount() + ", slots=" + allocatedSlots + "]";
+    }
+
+    /**
+     * Interns the peer and counts a dialog for it. Called when the remote TID of a dialog becomes known, while holding
+     * the slot lock.
+     */
+    private Peer acquirePeer(SccpDialogId sdid) {
+        while (true) {
+            Peer peer = peers.get(sdid);
+            if (peer == null) {
+                peer = peers.computeIfAbsent(sdid, this::newPeer);
+            }
+            synchronized (peer) {
+                if (!peer.evicted) {
+                    peer.dialogs++;
+                    return peer;
+                }
+            }
+            // evicted concurrently, it is no longer in the map
+        }
+    }
+
+    /** Uncounts a dialog of the peer, and evicts the peer with its last dialog. */
+    private void releasePeer(Peer peer) {
+        synchronized (peer) {
+            if (--peer.dialogs > 0) {
+                return;
+            }
+            peer.evicted = true;
+            peers.remove(peer.sdid, peer);
+        }
+        synchronized (peerIndexLock) {
+            peer.evictedAt = System.currentTimeMillis();
+            evictedPeers.add(peer);
+        }
+    }
+
+    private Peer newPeer(SccpDialogId sdid) {
+        synchronized (peerIndexLock) {
+            Peer evicted = evictedPeers.peek();
+            if (evicted != null && System.currentTimeMillis() - evicted.evictedAt >= PEER_INDEX_REUSE_DELAY_MS) {
+                evictedPeers.poll();
+                return new Peer(sdid, evicted.index);
+            }
+            if (nextPeerIndex >= MAX_PEERS) {
+                throw new IllegalStateException("Too many SCCP peers: " + nextPeerIndex);
+            }
+            return new Peer(sdid, nextPeerIndex++);
+        }
+    }
+
+    /**
+     * Finds the index entry of the dialog, or returns NO_ENTRY. The peer is null if it is not interned, i.e. it has no
+     * remote TID dialogs.
+     */
+    private long find(SccpDialogId sdid, Peer peer, TcapDialogId tdid) {
+        long entry = NO_ENTRY;
+        if (tdid.isLocalTIDSet()) {
+            entry = segmentGet(localKey(sdid.getLocalSSN(), tdid.getLocalTcapTID()));
+        }
+        if (entry == NO_ENTRY && tdid.isRemoteTIDSet()) {
+            if (peer != null) {
+                entry = segmentGet(remoteKey(peer.index, tdid.getRemoteTcapTID()));
+            }
+            if (entry == NO_ENTRY && !sdid.isRemoteGtPresent()) {
+                // Bad MSS workaround: SCCP messages that should come with "route on GT" sometimes arrive with
+                // no remote GT present, look for the dialog by SSNs and remote TID only.
+                entry = segmentGet(noGtKey(sdid.getRemoteSSN(), sdid.getLocalSSN(), tdid.getRemoteTcapTID()));
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * Checks whether the slot of the entry found by {@link #find(SccpDialogId, Peer, TcapDialogId)} still holds the
+     * dialog. Returns false if the dialog has been removed in the meantime and the lookup must be retried. Throws
+     * IllegalStateException if the dialog has a different TID than the one looked up, like {@link TcapLevelMapping}
+     * does. Must be called while holding the slot lock.
+     */
+    private boolean checkSlot(Chunk c, int o, long entry, SccpDialogId sdid, TcapDialogId tdid) {
+        // keys are removed before the slot is freed, so the entry is current if the slot has the same generation
+        if (c.data[o] == null || c.generation[o] != generation(entry)) {
+            return false;
+        }
+        if (c.localSsn[o] != (sdid.getLocalSSN() & SSN_MASK)
+                || tdid.isLocalTIDSet() && c.localTid[o] != NONE && c.localTid[o] != tdid.getLocalTcapTID()
+                || tdid.isRemoteTIDSet() && c.remoteTid[o] != NONE && c.remoteTid[o] != tdid.getRemoteTcapTID()) {
+            throw new IllegalStateException("Found mismatched mapping entry [rTID:" + c.remoteTid[o] + " lTID:"
+                    + c.localTid[o] + "] for key " + sdid + " / " + tdid);
+        }
+        return true;
+    }
+
+    /** Stores a new dialog. Returns false if the dialog was created concurrently by another thread. */
+    private boolean create(SccpDialogId sdid, TcapDialogId tdid, Data data) {
+        int slot = allocateSlot();
+        synchronized (lock(slot)) {
+            Chunk c = chunk(slot);
+            int o = slot & (CHUNK_SIZE - 1);
+            long entry = entry(slot, c.generation[o]);
+            c.localTid[o] = NONE;
+            c.remoteTid[o] = NONE;
+            c.localSsn[o] = sdid.getLocalSSN() & SSN_MASK;
+            c.timeOfMapping[o] = System.currentTimeMillis();
+            c.data[o] = data;
+            if (!addKeys(c, o, entry, sdid, tdid, false)) {
+                removeKeys(c, o, entry);
+                release(c, o, slot);
+                return false;
+            }
+        }
+        size.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Adds the keys for the TIDs not yet known for the dialog. If a key is already used by another dialog, it is taken
+     * over if <code>takeOver</code> is set, otherwise false is returned. The TID of a key that was not added is not
+     * stored for the dialog. Must be called while holding the slot lock.
+     */
+    private boolean addKeys(Chunk c, int o, long entry, SccpDialogId sdid, TcapDialogId tdid, boolean takeOver) {
+        if (c.localTid[o] == NONE && tdid.isLocalTIDSet()) {
+            long key = localKey(c.localSsn[o], tdid.getLocalTcapTID());
+            if (!segmentPut(key, entry, takeOver)) {
+                return false;
+            }
+            c.localTid[o] = tdid.getLocalTcapTID();
+        }
+        if (c.remoteTid[o] == NONE && tdid.isRemoteTIDSet()) {
+            Peer peer = acquirePeer(sdid);
+            if (!segmentPut(remoteKey(peer.index, tdid.getRemoteTcapTID()), entry, takeOver)) {
+                releasePeer(peer);
+                return false;
+            }
+            c.peer[o] = peer;
+            c.remoteTid[o] = tdid.getRemoteTcapTID();
+            c.remoteSsn[o] = sdid.getRemoteSSN() & SSN_MASK;
+            addNoGtKey(noGtKey(c.remoteSsn[o], c.localSsn[o], c.remoteTid[o]), entry);
+        }
+        return true;
+    }
+
+    /** Removes all keys of the dialog. Must be called while holding the slot lock. */
+    private void removeKeys(Chunk c, int o, long entry) {
+        if (c.localTid[o] != NONE) {
+            segmentRemove(localKey(c.localSsn[o], c.localTid[o]), entry);
+        }
+        if (c.remoteTid[o] != NONE) {
+            segmentRemove(remoteKey(c.peer[o].index, c.remoteTid[o]), entry);
+            removeNoGtKey(noGtKey(c.remoteSsn[o], c.localSsn[o], c.remoteTid[o]), entry);
+            releasePeer(c.peer[o]);
+            c.peer[o] = null;
+        }
+    }
+
+    /** Frees the slot of a dialog whose keys have been removed. Must be called while holding the slot lock. */
+    private void release(Chunk c, int o, int slot) {
+        c.data[o] = null;
+        c.generation[o] = (c.generation[o] + 1) & Integer.MAX_VALUE;
+        freeSlot(slot);
+    }
+
+    /**
+     * Indexes the dialog by its no GT key, or puts it in the overflow list of the key if another dialog has it
+     * already. Several peers may use the same remote TID, the first one is found in this case.
+     */
+    private void addNoGtKey(long key, long entry) {
+        synchronized (noGtLock(key)) {
+            if (!segmentPut(key, entry, false)) {
+                noGtOverflow.computeIfAbsent(key, k -> new ArrayDeque<>()).add(entry);
+            }
+        }
+    }
+
+    /** Removes the no GT key of the dialog. The next dialog of the overflow list takes over the key, if any. */
+    private void removeNoGtKey(long key, long entry) {
+        synchronized (noGtLock(key)) {
+            boolean indexed = segment(key).remove(key, entry);
+            ArrayDeque<Long> waiting = noGtOverflow.isEmpty() ? null : noGtOverflow.get(key);
+            if (waiting == null) {
+                return;
+            }
+            if (indexed) {
+                segmentPut(key, waiting.poll(), false);
+            } else {
+                waiting.remove(entry);
+            }
+            if (waiting.isEmpty()) {
+                noGtOverflow.remove(key);
+            }
+        }
+    }
+
+    private static long localKey(int localSsn, long localTid) {
+        return TYPE_LOCAL | (long) (localSsn & SSN_MASK) << 32 | localTid & TID_MASK;
+    }
+
+    private static long remoteKey(int peer, long remoteTid) {
+        return TYPE_REMOTE | (long) peer << 32 | remoteTid & TID_MASK;
+    }
+
+    private static long noGtKey(int remoteSsn, int localSsn, long remoteTid) {
+        return TYPE_NO_GT | (long) (remoteSsn & SSN_MASK) << 40 | (long) (localSsn & SSN_MASK) << 32 | remoteTid
+                & TID_MASK;
+    }
+
+    private static long entry(int slot, int generation) {
+        return (long) generation << 32 | slot;
+    }
+
+    private static int slot(long entry) {
+        return (int) entry;
+    }
+
+    private static int generation(long entry) {
+        return (int) (entry >>> 32);
+    }
+
+    private static long mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 32);
+    }
+
+    private KeyIndex segment(long key) {
+        return segments[(int) (mix(key) >>> 58) & (SEGMENT_COUNT - 1)];
+    }
+
+    private long segmentGet(long key) {
+        return segment(key).get(key);
+    }
+
+    /**
+     * Maps the key to the entry. Returns false if the key is mapped to another entry and it is not replaced, true
+     * otherwise.
+     */
+    private boolean segmentPut(long key, long entry, boolean replace) {
+        long existing = segment(key).put(key, entry, replace);
+        return replace || existing == NO_ENTRY || existing == entry;
+    }
+
+    private void segmentRemove(long key, long entry) {
+        segment(key).remove(key, entry);
+    }
+
+    private Object lock(int slot) {
+        return slotLocks[slot & (LOCK_STRIPES - 1)];
+    }
+
+    private Object noGtLock(long key) {
+        return noGtLocks[(int) mix(key) & (LOCK_STRIPES - 1)];
+    }
+
+    private Chunk chunk(int slot) {
+        return chunks.get(slot >>> CHUNK_BITS);
+    }
+
+    private int allocateSlot() {
+        synchronized (allocationLock) {
+            if (freeSlotCount > 0) {
+                return freeSlots[--freeSlotCount];
+            }
+            int slot = allocatedSlots;
+            int chunkIndex = slot >>> CHUNK_BITS;
+            if (chunkIndex >= MAX_CHUNKS) {
+                throw new IllegalStateException("Dialog table is full: " + slot + " dialogs");
+            }
+            if (chunks.get(chunkIndex) == null) {
+                chunks.set(chunkIndex, new Chunk());
+            }
+            allocatedSlots++;
+            return slot;
+        }
+    }
+
+    private void freeSlot(int slot) {
+        synchronized (allocationLock) {
+            if (freeSlotCount == freeSlots.length) {
+                freeSlots = Arrays.copyOf(freeSlots, freeSlots.length * 2);
+            }
+            freeSlots[freeSlotCount++] = slot;
+        }
+    }
+
+    /** Fields of CHUNK_SIZE slots. Guarded by the slot locks. */
+    private static final class Chunk {
+        private final long[] localTid = new long[CHUNK_SIZE];
+        private final long[] remoteTid = new long[CHUNK_SIZE];
+        private final long[] timeOfMapping = new long[CHUNK_SIZE];
+        /** Changed each time the slot is freed, never negative. */
+        private final int[] generation = new int[CHUNK_SIZE];
+        private final Peer[] peer = new Peer[CHUNK_SIZE];
+        private final int[] localSsn = new int[CHUNK_SIZE];
+        private final int[] remoteSsn = new int[CHUNK_SIZE];
+        private final Object[] data = new Object[CHUNK_SIZE];
+    }
+
+    /** An interned SCCP peer. The dialog count and the evicted flag are guarded by its monitor. */
+    private static final class Peer {
+        private final SccpDialogId sdid;
+        private final int index;
+        private int dialogs;
+        private boolean evicted;
+        /** Guarded by peerIndexLock. */
+        private long evictedAt;
+
+        private Peer(SccpDialogId sdid, int index) {
+            this.sdid = sdid;
+            this.index = index;
+        }
+    }
+
+    /**
+     * Open addressing hash map from long keys to index entries, with linear probing and backward shift deletion.
+     * Key 0 marks an empty cell, the packed keys are never 0 as they have the type bits set.
+     */
+    private static final class KeyIndex {
+        private long[] keys;
+        private long[] values;
+        private int mask;
+        private int count;
+
+        private KeyIndex(int capacity) {
+            int c = Integer.highestOneBit(capacity - 1) << 1;
+            keys = new long[c];
+            values = new long[c];
+            mask = c - 1;
+        }
+
+        synchronized long get(long key) {
+            int i = (int) mix(key) & mask;
+            while (true) {
+                long k = keys[i];
+                if (k == key) {
+                    return values[i];
+                }
+                if (k == 0) {
+                    return NO_ENTRY;
+                }
+                i = (i + 1) & mask;
+            }
+        }
+
+        /**
+         * Maps the key to the value if it is not mapped yet, or if <code>replace</code> is set. Returns the value
+         * previously mapped to the key, or NO_ENTRY.
+         */
+        synchronized long put(long key, long value, boolean replace) {
+            int i = (int) mix(key) & mask;
+            while (true) {
+                long k = keys[i];
+                if (k == key) {
+                    long existing = values[i];
+                    if (replace) {
+                        values[i] = value;
+                    }
+                    return existing;
+                }
+                if (k == 0) {
+                    keys[i] = key;
+                    values[i] = value;
+                    if (++count * 4 >= keys.length * 3) {
+                        resize();
+                    }
+                    return NO_ENTRY;
+                }
+                i = (i + 1) & mask;
+            }
+        }
+
+        /** Removes the key if it is mapped to the given value. Returns false if it was not. */
+        synchronized boolean remove(long key, long value) {
+            int i = (int) mix(key) & mask;
+            while (true) {
+                long k = keys[i];
+                if (k == 0) {
+                    return false;
+                }
+                if (k == key) {
+                    break;
+                }
+                i = (i + 1) & mask;
+            }
+            if (values[i] != value) {
+                return false;
+            }
+            // shift back the following entries which would not be found after emptying this cell
+            int gap = i;
+            i = (i + 1) & mask;
+            while (keys[i] != 0) {
+                int home = (int) mix(keys[i]) & mask;
+                if (((i - home) & mask) >= ((i - gap) & mask)) {
+                    keys[gap] = keys[i];
+                    values[gap] = values[i];
+                    gap = i;
+                }
+                i = (i + 1) & mask;
+            }
+            keys[gap] = 0;
+            count--;
+            return true;
+        }
+
+        private void resize() {
+            long[] oldKeys = keys;
+            long[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new long[oldKeys.length * 2];
+            mask = keys.length - 1;
+            for (int j = 0; j < oldKeys.length; j++) {
+                if (oldKeys[j] != 0) {
+                    int i = (int) mix(oldKeys[j]) & mask;
+                    while (keys[i] != 0) {
+                        i = (i + 1) & mask;
+                    }
+                    keys[i] = oldKeys[j];
+                    values[i] = oldValues[j];
+                }
+            }
+        }
+    }
+}
@@ -45,6 +45,16 @@ import org.slf4j.LoggerFactory;
  */
 public class SLELRouter<Data> {
     private static final Logger LOG = LoggerFactory.getLogger(SLELRouter.class);
+    /** Selects the {@link PackedDialogTable} storage instead of the nested maps. */
+    private static final boolean PACKED_TABLE_ENABLED = "packed".equals(System.getProperty("imscf.slelrouter.table"));
+    /** Initial capacity of the packed table indexes. */
+    private static final int PACKED_TABLE_INITIAL_CAPACITY = Integer.getInteger(
+            "imscf.slelrouter.table.initialCapacity", 1 << 16);
+    /** Replication of the SL-EL mappings between the SL nodes, disabled unless set to "enabled". */
+    public static final boolean MAPPING_REPLICATION_ENABLED = "enabled".equals(System
+            .getProperty("imscf.sl.mappingReplication"));
+    /** The LwComm capability advertised by SL nodes which accept replicated mappings from the other SL. */
+    public static final String MAPPING_REPLICATION_CAPABILITY = "SlElMappingReplicationV1";
 
     // Each TCAP dialog is handled by a single EL node. The TCAP dialog is identified by its local and remote
     // Transaction IDs, appearing as OTID and DTID in the TCAP messages, depending on the direction. However, a TCAP
@@ -65,12 +75,23 @@ public class SLELRouter<Data> {
     /** Stores mapping separated by remoteGT+remoteSSN+localSSN. */
     private SccpLevelMapping<Data> mapping;
     private int expectedConcurrentTcapDialogCount;
+    /** Used instead of the mappings above if enabled. */
+    private PackedDialogTable<Data> packedTable;
 
     /** Route looked up once and stored here, as it never changes due to the immutable nature of the LwComm configuration, unless
      * the service is reinitialized. */
     private Route loadbalanceRouteToOtherLayer;
     private LwCommService lwcommService; // stored only to detect a need to compute the above again
 
+    /**
+     * Receives the mappings listed by {@link SLELRouter#forEachMapping(MappingVisitor)}.
+     * @param <Data> the type of data stored in the mappings.
+     */
+    @FunctionalInterface
+    public interface MappingVisitor<Data> {
+        void visit(SccpDialogId sdid, TcapDialogId tdid, Data data);
+    }
+
     /** Simple Wrapper to format a timestamp for logging. */
     private static class TimeStampFormatter {
         private static final ThreadLocal<SimpleDateFormat> DATEFORMAT = new ThreadLocal<SimpleDateFormat>() {
@@ -184,6 +205,11 @@ public class SLELRouter<Data> {
      * Returns the mapped data for the given key.
      * <h1>Concurrency</h1> May be called concurrently for unrelated key pairs. */
     public Data getMappingData(SccpDialogId sdid, TcapDialogId tdid) {
+        if (packedTable != null) {
+            Data ret = packedTable.get(sdid, tdid);
+            LOG.debug("Found node mapping: {} / {} -> {}", sdid, tdid, ret);
+            return ret;
+        }
         Storage<Data> currentStorage = findCurrentStorage(sdid, tdid);
         if (currentStorage == null) {
             LOG.trace("Lookup failed for {}/{}.", sdid, tdid);
@@ -203,6 +229,9 @@ public class SLELRouter<Data> {
      * May be called concurrently for unrelated key pairs.
      */
     public Data setMappingData(SccpDialogId sdid, TcapDialogId tdid, Data userData) {
+        if (packedTable != null) {
+            return setPackedMappingData(sdid, tdid, userData);
+        }
         Storage<Data> currentStorage = findCurrentStorage(sdid, tdid);
         TcapLevelMapping<Data> tm;
         NodeMapping<Data> m, oldm = null;
@@ -264,7 +293,45 @@ public class SLELRouter<Data> {
         }
     }
 
+    private Data setPackedMappingData(SccpDialogId sdid, TcapDialogId tdid, Data userData) {
+        Data old = packedTable.set(sdid, tdid, userData);
+        if (userData == null) {
+            if (old == null) {
+                LOG.warn("Tried to clean nonexistent node mapping for {} / {}!", sdid, tdid);
+            } else {
+                LOG.debug("Cleaned node mapping: {} / {} (was: {})", sdid, tdid, old);
+            }
+        } else if (old == null) {
+            LOG.debug("Added node mapping: {} / {} -> {}", sdid, tdid, userData);
+        } else {
+            LOG.debug("Replaced node mapping: {} / {} -> {} (was: {})", sdid, tdid, userData, old);
+        }
+        LOG.trace("Current mappings: {}", packedTable);
+        return old;
+    }
+
+    /**
+     * Calls the visitor for each stored mapping. Storing the visited keys and data with
+     * {@link #setMappingData(SccpDialogId, TcapDialogId, Object)} in an empty router reproduces the contents of this one.
+     * <h1>Concurrency</h1> May be called concurrently with other methods. Mappings added or removed during the
+     * iteration may or may not be visited.
+     */
+    public void forEachMapping(MappingVisitor<Data> visitor) {
+        if (packedTable != null) {
+            packedTable.forEach(visitor);
+            return;
+        }
+        localOnlyMapping.forEach((sdid, tm) -> tm.forEachMapping((tdid, m) -> visitor.visit(sdid, tdid, m.userData)));
+        mapping.forEach((sdid, tm) -> tm.forEachMapping((tdid, m) -> visitor.visit(sdid, tdid, m.userData)));
+    }
+
     protected void init(ImscfConfigType config) {
+        if (PACKED_TABLE_ENABLED) {
+            LOG.info("Using packed dialog table with initial capacity {}", PACKED_TABLE_INITIAL_CAPACITY);
+            packedTable = new PackedDialogTable<>(PACKED_TABLE_INITIAL_CAPACITY);
+            return;
+        }
+
         int sccpCount = 1;
         Optional<SccpRemoteProfileType> oRemote = Optional.ofNullable(config.getSccp()).map(Sccp::getSccpRemoteProfile);
         if (oRemote.isPresent()) {
@@ -292,6 +359,7 @@ public class SLELRouter<Data> {
     protected void deinit() {
         mapping = null;
         localOnlyMapping = null;
+        packedTable = null;
     }
 
     /**
@@ -0,0 +1,310 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ */
+package org.restcomm.imscf.common;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.mobicents.protocols.ss7.indicator.NatureOfAddress;
+import org.mobicents.protocols.ss7.indicator.NumberingPlan;
+import org.mobicents.protocols.ss7.indicator.RoutingIndicator;
+import org.mobicents.protocols.ss7.sccp.impl.SccpStackImpl;
+import org.mobicents.protocols.ss7.sccp.impl.message.MessageFactoryImpl;
+import org.mobicents.protocols.ss7.sccp.impl.parameter.BCDEvenEncodingScheme;
+import org.mobicents.protocols.ss7.sccp.impl.parameter.BCDOddEncodingScheme;
+import org.mobicents.protocols.ss7.sccp.impl.parameter.DefaultEncodingScheme;
+import org.mobicents.protocols.ss7.sccp.impl.parameter.GlobalTitle0001Impl;
+import org.mobicents.protocols.ss7.sccp.impl.parameter.GlobalTitle0010Impl;
+import org.mobicents.protocols.ss7.sccp.impl.parameter.GlobalTitle0011Impl;
+import org.mobicents.protocols.ss7.sccp.impl.parameter.GlobalTitle0100Impl;
+import org.mobicents.protocols.ss7.sccp.impl.parameter.HopCounterImpl;
+import org.mobicents.protocols.ss7.sccp.impl.parameter.ImportanceImpl;
+import org.mobicents.protocols.ss7.sccp.impl.parameter.SccpAddressImpl;
+import org.mobicents.protocols.ss7.sccp.message.MessageFactory;
+import org.mobicents.protocols.ss7.sccp.message.SccpDataMessage;
+import org.mobicents.protocols.ss7.sccp.parameter.EncodingScheme;
+import org.mobicents.protocols.ss7.sccp.parameter.GlobalTitle;
+import org.mobicents.protocols.ss7.sccp.parameter.GlobalTitle0001;
+import org.mobicents.protocols.ss7.sccp.parameter.GlobalTitle0010;
+import org.mobicents.protocols.ss7.sccp.parameter.GlobalTitle0011;
+import org.mobicents.protocols.ss7.sccp.parameter.GlobalTitle0100;
+import org.mobicents.protocols.ss7.sccp.parameter.HopCounter;
+import org.mobicents.protocols.ss7.sccp.parameter.Importance;
+import org.mobicents.protocols.ss7.sccp.parameter.SccpAddress;
+
+/**
+ * Compact, versioned binary encoding of SccpDataMessage objects for the SL-EL hop.
+ * <p>
+ * Layout of version 1 (multi-byte values are big endian):
+ * <pre>
+ * version(1) protocolClass(1) flags(1) hopCounter(1) importance(1) sls(1) originLocalSsn(2)
+ * incomingOpc(4) incomingDpc(4) networkId(4)
+ * calledParty callingParty
+ * dataLength(2) data(dataLength)
+ * </pre>
+ * An address is encoded as
+ * <pre>
+ * routingIndicator(1) pointCode(4) ssn(1) gtType(1) [tt(1) np(1) es(1) nai(1)] digitsLength(1) digits(digitsLength)
+ * </pre>
+ * where gtType is the global title indicator (0 means no GT) and only the GT fields present in the given type are
+ * written. Digits are written as ASCII characters.
+ * </p>
+ */
+public final class SccpBinaryCodec {
+
+    /** The format version written by this codec. */
+    public static final byte VERSION_1 = 1;
+
+    private static final int FLAG_RETURN_MESSAGE_ON_ERROR = 0x01;
+    private static final int FLAG_HOP_COUNTER = 0x02;
+    private static final int FLAG_IMPORTANCE = 0x04;
+
+    private static final int GT_NONE = 0;
+    private static final int GT_0001 = 1;
+    private static final int GT_0010 = 2;
+    private static final int GT_0011 = 3;
+    private static final int GT_0100 = 4;
+
+    private static final int ES_UNKNOWN = 0;
+    private static final int ES_BCD_ODD = 1;
+    private static final int ES_BCD_EVEN = 2;
+
+    private static final int HEADER_LENGTH = 6 + Short.BYTES + 3 * Integer.BYTES;
+    /** routing indicator, pc, ssn, gt type, 4 gt fields and the digits length. */
+    private static final int MAX_ADDRESS_OVERHEAD = 1 + Integer.BYTES + 1 + 1 + 4 + 1;
+    private static final int MAX_DIGITS = 255;
+
+    // stack is only used by the message factory for generating an SLS, which is always given here
+    private static final MessageFactory MESSAGE_FACTORY = new MessageFactoryImpl(new SccpStackImpl("SccpBinaryCodec"));
+
+    private SccpBinaryCodec() {
+    }
+
+    /**
+     * Encodes the message.
+     * @throws IllegalArgumentException if the message contains a value that cannot be represented in this format
+     */
+    public static byte[] encode(SccpDataMessage msg) {
+        byte[] data = msg.getData();
+        if (data.length > 0xFFFF) {
+            throw new IllegalArgumentException("SCCP data too long: " + data.length);
+        }
+        ByteBuffer buf = ByteBuffer.allocate(HEADER_LENGTH + 2 * (MAX_ADDRESS_OVERHEAD + MAX_DIGITS) + Short.BYTES
+                + data.length);
+
+        HopCounter hopCounter = msg.getHopCounter();
+        Importance importance = msg.getImportance();
+        int flags = 0;
+        if (msg.getProtocolClass().getReturnMessageOnError()) {
+            flags |= FLAG_RETURN_MESSAGE_ON_ERROR;
+        }
+        if (hopCounter != null) {
+            flags |= FLAG_HOP_COUNTER;
+        }
+        if (importance != null) {
+            flags |= FLAG_IMPORTANCE;
+        }
+
+        buf.put(VERSION_1);
+        buf.put((byte) msg.getProtocolClass().getProtocolClass());
+        buf.put((byte) flags);
+        buf.put((byte) (hopCounter != null ? hopCounter.getValue() : 0));
+        buf.put((byte) (importance != null ? importance.getValue() : 0));
+        buf.put((byte) msg.getSls());
+        // may be -1 if not set
+        buf.putShort((short) msg.getOriginLocalSsn());
+        buf.putInt(msg.getIncomingOpc());
+        buf.putInt(msg.getIncomingDpc());
+        buf.putInt(msg.getNetworkId());
+        encodeAddress(buf, msg.getCalledPartyAddress());
+        encodeAddress(buf, msg.getCallingPartyAddress());
+        buf.putShort((short) data.length);
+        buf.put(data);
+
+        byte[] ret = new byte[buf.position()];
+        System.arraycopy(buf.array(), 0, ret, 0, ret.length);
+        return ret;
+    }
+
+    /**
+     * Decodes a message encoded by {@link #encode(SccpDataMessage)}.
+     * @throws IllegalArgumentException if the version is unknown or the content is malformed
+     */
+    public static SccpDataMessage decode(byte[] encoded) {
+        return decode(ByteBuffer.wrap(encoded));
+    }
+
+    /**
+     * Decodes the remaining bytes of the buffer, without modifying its position.
+     * @throws IllegalArgumentException if the version is unknown or the content is malformed
+     */
+    public static SccpDataMessage decode(ByteBuffer encoded) {
+        // the slice is big endian regardless of the order of the buffer
+        ByteBuffer buf = encoded.slice();
+        try {
+            byte version = buf.get();
+            if (version != VERSION_1) {
+                throw new IllegalArgumentException("Unsupported SCCP binary format version: " + version);
+            }
+            int protocolClass = buf.get();
+            int flags = buf.get();
+            int hopCounterValue = buf.get() & 0xFF;
+            int importanceValue = buf.get() & 0xFF;
+            int sls = buf.get() & 0xFF;
+            int originLocalSsn = buf.getShort();
+            int incomingOpc = buf.getInt();
+            int incomingDpc = buf.getInt();
+            int networkId = buf.getInt();
+            SccpAddress called = decodeAddress(buf);
+            SccpAddress calling = decodeAddress(buf);
+            byte[] data = new byte[buf.getShort() & 0xFFFF];
+            buf.get(data);
+
+            boolean returnMessageOnError = (flags & FLAG_RETURN_MESSAGE_ON_ERROR) != 0;
+            HopCounter hopCounter = (flags & FLAG_HOP_COUNTER) != 0 ? new HopCounterImpl(hopCounterValue) : null;
+            Importance importance = (flags & FLAG_IMPORTANCE) != 0 ? new ImportanceImpl((byte) importanceValue)
+                    : null;
+            SccpDataMessage ret;
+            if (protocolClass == 1) {
+                ret = MESSAGE_FACTORY.createDataMessageClass1(called, calling, data, sls, originLocalSsn,
+                        returnMessageOnError, hopCounter, importance);
+            } else {
+                ret = MESSAGE_FACTORY.createDataMessageClass0(called, calling, data, originLocalSsn,
+                        returnMessageOnError, hopCounter, importance);
+            }
+            ret.setIncomingOpc(incomingOpc);
+            ret.setIncomingDpc(incomingDpc);
+            ret.setNetworkId(networkId);
+            return ret;
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated SCCP binary content", e);
+        }
+    }
+
+    private static void encodeAddress(ByteBuffer buf, SccpAddress address) {
+        buf.put((byte) address.getAddressIndicator().getRoutingIndicator().getValue());
+        buf.putInt(address.getSignalingPointCode());
+        buf.put((byte) address.getSubsystemNumber());
+        GlobalTitle gt = address.getGlobalTitle();
+        if (gt == null) {
+            buf.put((byte) GT_NONE);
+            return;
+        }
+        // GlobalTitle0100 is checked first as it is the most specific type
+        if (gt instanceof GlobalTitle0100) {
+            GlobalTitle0100 gt4 = (GlobalTitle0100) gt;
+            buf.put((byte) GT_0100);
+            buf.put((byte) gt4.getTranslationType());
+            buf.put((byte) gt4.getNumberingPlan().getValue());
+            buf.put((byte) encodingSchemeCode(gt4.getEncodingScheme()));
+            buf.put((byte) gt4.getNatureOfAddress().getValue());
+        } else if (gt instanceof GlobalTitle0011) {
+            GlobalTitle0011 gt3 = (GlobalTitle0011) gt;
+            buf.put((byte) GT_0011);
+            buf.put((byte) gt3.getTranslationType());
+            buf.put((byte) gt3.getNumberingPlan().getValue());
+            buf.put((byte) encodingSchemeCode(gt3.getEncodingScheme()));
+        } else if (gt instanceof GlobalTitle0010) {
+            buf.put((byte) GT_0010);
+            buf.put((byte) ((GlobalTitle0010) gt).getTranslationType());
+        } else if (gt instanceof GlobalTitle0001) {
+            buf.put((byte) GT_0001);
+            buf.put((byte) ((GlobalTitle0001) gt).getNatureOfAddress().getValue());
+        } else {
+            throw new IllegalArgumentException("Unsupported global title type: " + gt.getClass().getName());
+        }
+        byte[] digits = gt.getDigits().getBytes(StandardCharsets.US_ASCII);
+        if (digits.length > MAX_DIGITS) {
+            throw new IllegalArgumentException("Global title too long: " + gt.getDigits());
+        }
+        buf.put((byte) digits.length);
+        buf.put(digits);
+    }
+
+    private static SccpAddress decodeAddress(ByteBuffer buf) {
+        RoutingIndicator ri = RoutingIndicator.valueOf(buf.get());
+        int pc = buf.getInt();
+        int ssn = buf.get() & 0xFF;
+        int gtType = buf.get();
+        GlobalTitle gt;
+        switch (gtType) {
+        case GT_NONE:
+            return new SccpAddressImpl(ri, null, pc, ssn);
+        case GT_0100: {
+            int tt = buf.get() & 0xFF;
+            NumberingPlan np = NumberingPlan.valueOf(buf.get());
+            EncodingScheme es = encodingScheme(buf.get());
+            NatureOfAddress nai = NatureOfAddress.valueOf(buf.get());
+            gt = new GlobalTitle0100Impl(decodeDigits(buf), tt, es, np, nai);
+            break;
+        }
+        case GT_0011: {
+            int tt = buf.get() & 0xFF;
+            NumberingPlan np = NumberingPlan.valueOf(buf.get());
+            EncodingScheme es = encodingScheme(buf.get());
+            gt = new GlobalTitle0011Impl(decodeDigits(buf), tt, es, np);
+            break;
+        }
+        case GT_0010: {
+            int tt = buf.get() & 0xFF;
+            gt = new GlobalTitle0010Impl(decodeDigits(buf), tt);
+            break;
+        }
+        case GT_0001: {
+            NatureOfAddress nai = NatureOfAddress.valueOf(buf.get());
+            gt = new GlobalTitle0001Impl(decodeDigits(buf), nai);
+            break;
+        }
+        default:
+            throw new IllegalArgumentException("Unknown global title type: " + gtType);
+        }
+        return new SccpAddressImpl(ri, gt, pc, ssn);
+    }
+
+    private static String decodeDigits(ByteBuffer buf) {
+        byte[] digits = new byte[buf.get() & 0xFF];
+        buf.get(digits);
+        return new String(digits, StandardCharsets.US_ASCII);
+    }
+
+    private static int encodingSchemeCode(EncodingScheme es) {
+        if (es instanceof BCDOddEncodingScheme) {
+            return ES_BCD_ODD;
+        } else if (es instanceof BCDEvenEncodingScheme) {
+            return ES_BCD_EVEN;
+        } else if (es == null || es instanceof DefaultEncodingScheme) {
+            return ES_UNKNOWN;
+        }
+        throw new IllegalArgumentException("Unsupported encoding scheme: " + es.getClass().getName());
+    }
+
+    private static EncodingScheme encodingScheme(int code) {
+        switch (code) {
+        case ES_BCD_ODD:
+            return BCDOddEncodingScheme.INSTANCE;
+        case ES_BCD_EVEN:
+            return BCDEvenEncodingScheme.INSTANCE;
+        case ES_UNKNOWN:
+            return new DefaultEncodingScheme();
+        default:
+            throw new IllegalArgumentException("Unknown encoding scheme: " + code);
+        }
+    }
+}
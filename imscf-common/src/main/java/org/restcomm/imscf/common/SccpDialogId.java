@@ -56,6 +56,18 @@ public final class SccpDialogId {
         return new SccpDialogId(remoteGT, remoteSSN, localSSN);
     }
 
+    public String getRemoteGT() {
+        return remoteGT;
+    }
+
+    public int getRemoteSSN() {
+        return remoteSSN;
+    }
+
+    public int getLocalSSN() {
+        return localSSN;
+    }
+
     public boolean isRemoteGtPresent() {
         return remoteGT != null;
     }
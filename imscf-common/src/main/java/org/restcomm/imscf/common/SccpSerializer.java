@@ -18,23 +18,19 @@
  */
 package org.restcomm.imscf.common ;
 
-import java.io.IOException;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
 import java.lang.reflect.Type;
 
-import org.mobicents.protocols.ss7.indicator.NatureOfAddress;
-import org.mobicents.protocols.ss7.indicator.NumberingPlan;
-import org.mobicents.protocols.ss7.indicator.RoutingIndicator;
+import org.restcomm.imscf.common.lwcomm.service.BinaryMessage;
+import org.restcomm.imscf.common.lwcomm.service.LwCommService;
+
 import org.mobicents.protocols.ss7.sccp.impl.SccpStackImpl;
-import org.mobicents.protocols.ss7.sccp.impl.message.MessageFactoryImpl;
 import org.mobicents.protocols.ss7.sccp.impl.message.SccpDataMessageImpl;
-import org.mobicents.protocols.ss7.sccp.impl.parameter.HopCounterImpl;
-import org.mobicents.protocols.ss7.sccp.impl.parameter.ImportanceImpl;
 import org.mobicents.protocols.ss7.sccp.message.SccpDataMessage;
 import org.mobicents.protocols.ss7.sccp.parameter.GlobalTitle;
 import org.mobicents.protocols.ss7.sccp.parameter.ProtocolClass;
-import org.mobicents.protocols.ss7.sccp.impl.parameter.GlobalTitle0011Impl;
-import org.mobicents.protocols.ss7.sccp.impl.parameter.SccpAddressImpl;
-import org.mobicents.protocols.ss7.sccp.impl.parameter.BCDEvenEncodingScheme;
 
 import com.google.gson.ExclusionStrategy;
 import com.google.gson.FieldAttributes;
@@ -48,11 +44,31 @@ import com.google.gson.JsonParseException;
 import com.google.gson.JsonSerializationContext;
 import com.google.gson.JsonSerializer;
 
-/** Class for (de)serializing SccpDataMessage objects to/from JSON. */
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Class for (de)serializing SccpDataMessage objects to/from JSON or to/from the compact binary format of
+ * {@link SccpBinaryCodec}.
+ * <p>
+ * JSON is sent in the payload of text LwComm messages, after the header lines. The binary format is sent as the
+ * whole payload of a binary LwComm message, which carries nothing else on the SL-EL hop.
+ * </p>
+ */
 public final class SccpSerializer {
+
+    /** LwComm content type of a JSON serialized SccpDataMessage. */
+    public static final String CONTENT_TYPE_JSON = "SccpDataMessage";
+    /** LwComm capability advertised by nodes which are able to decode the binary format version 1. */
+    public static final String BINARY_V1_CAPABILITY = "SccpBinaryV1";
+
+    private static final boolean BINARY_ENABLED = !"disabled".equals(System.getProperty("imscf.sccp.binary"));
+
     private SccpSerializer() {
     }
 
+    private static final Logger LOG = LoggerFactory.getLogger(SccpSerializer.class);
+
     private static final ThreadLocal<Gson> GSON = new ThreadLocal<Gson>() {
         @Override
         protected Gson initialValue() {
@@ -88,33 +104,49 @@ public final class SccpSerializer {
         return sdm;
     }
 
-    public static void main(String[] args) throws IOException {
-
-        SccpDataMessage sdm = new MessageFactoryImpl(new SccpStackImpl("name")).createDataMessageClass1(
-                new SccpAddressImpl(RoutingIndicator.ROUTING_BASED_ON_GLOBAL_TITLE, new GlobalTitle0011Impl("363012345678", 0,
-                        BCDEvenEncodingScheme.INSTANCE, NumberingPlan.ISDN_TELEPHONY), 280, 123),
-                new SccpAddressImpl(RoutingIndicator.ROUTING_BASED_ON_GLOBAL_TITLE, new GlobalTitle0011Impl("363015555585", 0,
-                        BCDEvenEncodingScheme.INSTANCE, NumberingPlan.ISDN_TELEPHONY), 321, 44), new byte[] {
-                        (byte) 12, (byte) 34 }, 1, 146, false, new HopCounterImpl(2), new ImportanceImpl((byte) 1));
-
-        String sdmString = SccpSerializer.serialize(sdm);
-        SccpDataMessage back = SccpSerializer.deserialize(sdmString);
-        String again = SccpSerializer.serialize(back);
-        System.out.println(sdm);
-        System.out.println(back);
-        System.out.println(sdmString);
-        System.out.println(again);
-        System.out.println(sdmString.equals(again) ? "equals" : "nope");
-
-        String elresponse = "{\"protocolClass\":{\"type\":\"org.mobicents.protocols.ss7.sccp.impl.parameter.ProtocolClassImpl\",\"data\":{\"pClass\":1,\"msgHandling\":0}},\"data\":[100,6,73,4,1,2,3,12],\"isFullyRecieved\":true,\"remainingSegments\":0,\"calle\n"
-                + "dParty\":{\"gt\":{\"type\":\"org.mobicents.protocols.ss7.sccp.parameter.GT0100\",\"data\":{\"tt\":0,\"np\":\"ISDN_TELEPHONY\",\"encodingScheme\":\"BCD_ODD\",\"nai\":\"INTERNATIONAL\",\"digits\":\"36309879050\"}},\"pc\":0,\"ssn\":146,\"ai\":{\"g\n"
-                + "lobalTitleIndicator\":\"GLOBAL_TITLE_INCLUDES_TRANSLATION_TYPE_NUMBERING_PLAN_ENCODING_SCHEME_AND_NATURE_OF_ADDRESS\",\"pcPresent\":false,\"ssnPresent\":true,\"routingIndicator\":\"ROUTING_BASED_ON_GLOBAL_TITLE\"},\"transl\n"
-                + "ated\":false},\"callingParty\":{\"gt\":{\"type\":\"org.mobicents.protocols.ss7.sccp.parameter.GT0100\",\"data\":{\"tt\":0,\"np\":\"ISDN_TELEPHONY\",\"encodingScheme\":\"BCD_ODD\",\"nai\":\"INTERNATIONAL\",\"digits\":\"36309879054\"}},\"pc\":\n"
-                + "0,\"ssn\":146,\"ai\":{\"globalTitleIndicator\":\"GLOBAL_TITLE_INCLUDES_TRANSLATION_TYPE_NUMBERING_PLAN_ENCODING_SCHEME_AND_NATURE_OF_ADDRESS\",\"pcPresent\":false,\"ssnPresent\":true,\"routingIndicator\":\"ROUTING_BASED_ON_DP\n"
-                + "C_AND_SSN\"},\"translated\":false},\"isMtpOriginated\":false,\"type\":-1,\"localOriginSsn\":146,\"incomingOpc\":-1,\"incomingDpc\":-1,\"sls\":0,\"outgoingDpc\":-1}";
-
-        sdm = SccpSerializer.deserialize(elresponse);
-        System.out.println(sdm);
+    /**
+     * Encodes the message in the binary format into a new buffer.
+     * @throws IllegalArgumentException if the message contains a value that cannot be represented in the format
+     */
+    public static ByteBuf serializeBinary(SccpDataMessage msg) {
+        return Unpooled.wrappedBuffer(SccpBinaryCodec.encode(msg));
+    }
+
+    /**
+     * Decodes the readable bytes of the buffer, without modifying its reader index.
+     * @throws IllegalArgumentException if the content is not a message in a supported binary format
+     */
+    public static SccpDataMessage deserializeBinary(ByteBuf source) {
+        return SccpBinaryCodec.decode(source.nioBuffer());
+    }
+
+    /**
+     * Returns whether the binary format can be used for messages sent on the given LwComm route, i.e. it is not
+     * disabled locally and the alive destination nodes of the route advertised that they accept binary messages and
+     * understand the format.
+     */
+    public static boolean isBinaryUsable(LwCommService lwc, String lwcommRouteName) {
+        return BINARY_ENABLED && lwc.isCapabilitySupported(lwcommRouteName, BinaryMessage.CAPABILITY)
+                && lwc.isCapabilitySupported(lwcommRouteName, BINARY_V1_CAPABILITY);
+    }
+
+    /**
+     * Creates the binary LwComm message carrying the SCCP message, if the binary format is usable on the route.
+     * @return the message, or null if the message has to be sent as JSON in a text message instead
+     */
+    public static BinaryMessage toBinaryMessage(SccpDataMessage msg, LwCommService lwc, String lwcommRouteName,
+            String groupId, String tag) {
+        if (!isBinaryUsable(lwc, lwcommRouteName)) {
+            return null;
+        }
+        ByteBuf payload;
+        try {
+            payload = serializeBinary(msg);
+        } catch (IllegalArgumentException e) {
+            LOG.warn("Cannot encode SCCP message in binary format, falling back to JSON: {}", e.getMessage());
+            return null;
+        }
+        return BinaryMessage.builder(payload).setGroupId(groupId).setTag(tag).create();
     }
 }
 
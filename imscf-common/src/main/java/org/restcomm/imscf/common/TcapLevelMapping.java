@@ -25,6 +25,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
 
 /**
@@ -189,6 +190,32 @@ public class TcapLevelMapping<Data> implements ConcurrentMap<TcapDialogId, NodeM
         }
     }
 
+    /**
+     * Calls the action for each mapping with its current key. Mappings added or removed concurrently may or may not
+     * be visited.
+     */
+    public void forEachMapping(BiConsumer<TcapDialogId, NodeMapping<Data>> action) {
+        // a wrapper with both TIDs is in both maps, only visit it once
+        visitWrappers(byRemoteTcapTID, action, false);
+        visitWrappers(byLocalTcapTID, action, true);
+    }
+
+    private void visitWrappers(ConcurrentHashMap<Long, NodeMappingWrapper> map,
+            BiConsumer<TcapDialogId, NodeMapping<Data>> action, boolean skipRemoteTIDSet) {
+        for (NodeMappingWrapper w : map.values()) {
+            TcapDialogId key;
+            NodeMapping<Data> nm;
+            synchronized (w) {
+                if (w.deleted || skipRemoteTIDSet && w.key.isRemoteTIDSet()) {
+                    continue;
+                }
+                key = w.key;
+                nm = w.nm;
+            }
+            action.accept(key, nm);
+        }
+    }
+
     private String printMap1PerLine(Map<?, ?> m, long maxEntries) {
         long extra = m.size() - maxEntries;
         String suffix = extra > 0 ? "\n " + extra + " other entries not shown\n]" : "\n]";
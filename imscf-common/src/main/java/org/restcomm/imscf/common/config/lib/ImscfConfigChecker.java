@@ -20,6 +20,7 @@ package org.restcomm.imscf.common.config.lib;
 
 import org.restcomm.imscf.common.config.ImscfConfigType;
 import org.restcomm.imscf.common.config.ImscfConfigType.Sccp;
+import org.restcomm.imscf.common.config.LwCommParametersType;
 import org.restcomm.imscf.common.config.SccpLocalProfileType;
 
 import java.util.Optional;
@@ -41,6 +42,18 @@ public final class ImscfConfigChecker {
                 throw new IllegalStateException("SCCP local GT/SSN must be configured if CAP/MAP modules are used.");
         }
 
+        // LwComm config checks
+        LwCommParametersType.DirectSend directSend = Optional.ofNullable(config.getLwCommParameters())
+                .map(LwCommParametersType::getDirectSend).orElse(null);
+        if (directSend != null) {
+            // 2. the write buffer water marks must be positive and the low one cannot be above the high one
+            int high = directSend.getHighWaterMarkBytes();
+            int low = directSend.getLowWaterMarkBytes();
+            if (low <= 0 || high <= 0 || low > high)
+                throw new IllegalStateException("LwComm directSend water marks must satisfy 0 < lowWaterMarkBytes ("
+                        + low + ") <= highWaterMarkBytes (" + high + ").");
+        }
+
     }
 
     public boolean isSigtranStackNeeded() {
@@ -0,0 +1,41 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ */
+package org.restcomm.imscf.common.el.statistics;
+
+/**
+ * MBean interface for the lock statistics of the calls of one type. Times are in microseconds.
+ */
+public interface CallLockStatisticsMBean {
+
+    /** Returns the number of times a thread took and then released the lock of a call. */
+    long getAcquisitions();
+
+    /** Returns the number of acquisitions which had to wait for another thread. */
+    long getContendedAcquisitions();
+
+    long getAverageWaitMicros();
+
+    long getMaxWaitMicros();
+
+    long getAverageHoldMicros();
+
+    long getMaxHoldMicros();
+
+    void resetStatistics();
+}
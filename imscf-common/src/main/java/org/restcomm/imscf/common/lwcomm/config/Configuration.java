@@ -42,6 +42,28 @@ public abstract class Configuration {
      * The default value to use for ackSendStrategy when none specified.
      */
     public static final AckSendStrategy DEFAULT_ACK_SEND_STRATEGY = AckSendStrategy.IMMEDIATELY;
+    /** The default time an ACK waits for other ACKs to the same node in BATCHED ack send strategy. */
+    public static final int DEFAULT_ACK_BATCH_DELAY_MS = 5;
+    /** The default maximum number of message ids in one batched ACK. */
+    public static final int DEFAULT_ACK_BATCH_MAX_IDS = 32;
+    /** Coalescing of outgoing messages is disabled by default. */
+    public static final int DEFAULT_COALESCE_MAX_BYTES = 0;
+    /** The default wire format is TEXT, which can be read by all LwComm versions. */
+    public static final WireFormat DEFAULT_WIRE_FORMAT = WireFormat.TEXT;
+    /** Larger datagrams are sent in fragments by default. */
+    public static final int DEFAULT_MAX_DATAGRAM_BYTES = 8192;
+    /** The default limit of the datagrams being reassembled from a node. */
+    public static final int DEFAULT_REASSEMBLY_BUDGET_BYTES = 4 * 1024 * 1024;
+    /** The default send mode is POOLED. */
+    public static final SendMode DEFAULT_SEND_MODE = SendMode.POOLED;
+    /** The default high water mark of the outbound buffer of a channel in DIRECT send mode. */
+    public static final int DEFAULT_SEND_HIGH_WATER_MARK_BYTES = 1024 * 1024;
+    /** The default low water mark of the outbound buffer of a channel in DIRECT send mode. */
+    public static final int DEFAULT_SEND_LOW_WATER_MARK_BYTES = 512 * 1024;
+    /** The default suspicion level above which a node is marked not alive before its heartbeat timeout. */
+    public static final double DEFAULT_FAILURE_DETECTOR_PHI_THRESHOLD = 8;
+    /** The default delay of a heartbeat which is not suspicious at all. */
+    public static final int DEFAULT_FAILURE_DETECTOR_ACCEPTABLE_PAUSE_MS = 500;
 
     /**
      * How LwComm is deployed.
@@ -101,7 +123,45 @@ public abstract class Configuration {
          * When SEND_CYCLE is set, the ACK is sent back in LwComm's standard message sending mechanism,
          * so it does not load receive transport pool, the sending is done in send pool.
          */
-        SEND_CYCLE
+        SEND_CYCLE,
+        /**
+         * When BATCHED is set, ACKs to the same node are collected and sent in one datagram when
+         * {@link Configuration#getAckBatchMaxIds()} ACKs are collected or {@link Configuration#getAckBatchDelayMs()}
+         * elapsed. NACKs and ACKs to nodes not supporting batching are sent as in SEND_CYCLE.
+         */
+        BATCHED
+    }
+
+    /**
+     * Format of the messages sent on the network.
+     * Incoming messages are always accepted in both formats.
+     */
+    public enum WireFormat {
+        /** Human readable format with a header line per field. */
+        TEXT,
+        /**
+         * Compact format with a fixed binary header, parsed directly from the network buffer.
+         * Used only towards nodes which advertise it in their heartbeats, TEXT is used for the others.
+         */
+        BINARY
+    }
+
+    /**
+     * How outgoing messages are written on the bound outbound channels.
+     */
+    public enum SendMode {
+        /**
+         * A channel is checked out of a pool for every datagram and returned when the datagram is written.
+         * The sending thread waits while all the channels are busy.
+         */
+        POOLED,
+        /**
+         * Messages are written directly on the channel chosen by the hash of their group id, or of the target node
+         * if there is no group id, without waiting. While the outbound buffer of the chosen channel is above
+         * {@link Configuration#getSendHighWaterMarkBytes()}, new messages fail immediately instead of being queued,
+         * until the buffer drains below {@link Configuration#getSendLowWaterMarkBytes()}.
+         */
+        DIRECT
     }
 
     /**
@@ -193,8 +253,60 @@ public abstract class Configuration {
 
     public abstract ClientPortRange getClientPortRange();
 
+    public abstract WireFormat getWireFormat();
+
+    /**
+     * Maximum time an ACK is held back in BATCHED ack send strategy.
+     * Should be well below the first retransmit interval, otherwise batching causes retransmits.
+     */
+    public abstract int getAckBatchDelayMs();
+
+    /** Maximum number of message ids in one ACK in BATCHED ack send strategy. */
+    public abstract int getAckBatchMaxIds();
+
+    /**
+     * Maximum size of a datagram into which more outgoing messages to the same node can be coalesced.
+     * Messages are coalesced only when they are already waiting to be sent, so there is no extra delay.
+     * Requires BINARY wire format. 0 disables coalescing.
+     */
+    public abstract int getCoalesceMaxBytes();
+
+    /**
+     * Maximum size of a datagram. Larger datagrams are split into fragments if the target node can reassemble them.
+     * The receive buffer is at least this large.
+     */
+    public abstract int getMaxDatagramBytes();
+
+    /** Maximum total size of the fragmented datagrams being reassembled from one node. */
+    public abstract int getReassemblyBudgetBytes();
+
+    public abstract SendMode getSendMode();
+
+    /** Size of the outbound buffer of a channel above which new messages fail in DIRECT send mode. */
+    public abstract int getSendHighWaterMarkBytes();
+
+    /** Size of the outbound buffer of a channel below which new messages are sent again in DIRECT send mode. */
+    public abstract int getSendLowWaterMarkBytes();
+
+    /**
+     * The phi value (suspicion level computed from the heartbeat arrival times) above which a remote node is marked
+     * not alive even before its heartbeat timeout. 0 disables phi accrual failure detection.
+     */
+    public abstract double getFailureDetectorPhiThreshold();
+
+    /** The delay of a heartbeat compared to the usual interval which is not suspicious at all, e.g. a GC pause. */
+    public abstract int getFailureDetectorAcceptablePauseMs();
+
     public abstract String getMBeanDomain();
 
+    /**
+     * Capabilities of the local node advertised to the other nodes in heartbeats.
+     * Capabilities are opaque strings for LwComm, they can be used by the clients to find out whether a remote node
+     * understands a newer message format.
+     * @see org.restcomm.imscf.common.lwcomm.service.LwCommService#isCapabilitySupported(String, String)
+     */
+    public abstract Set<String> getLocalCapabilities();
+
     public final Node getLocalNode() {
         switch (getDeploymentMode()) {
         case JBOSS:
@@ -276,7 +388,14 @@ public abstract class Configuration {
                 + ", getLocalNodeName()=" + getLocalNodeName() + ", getReceiveMode()=" + getReceiveMode()
                 + ", getMessageReceiver()=" + getMessageReceiver() + ", getListenerMode()=" + getListenerMode()
                 + ", getAckSendStrategy()=" + getAckSendStrategy() + ", getClientPortRange()=" + getClientPortRange()
-                + ", getLocalNode()=" + getLocalNode() + "]";
+                + ", getWireFormat()=" + getWireFormat() + ", getAckBatchDelayMs()=" + getAckBatchDelayMs()
+                + ", getAckBatchMaxIds()=" + getAckBatchMaxIds() + ", getCoalesceMaxBytes()=" + getCoalesceMaxBytes()
+                + ", getMaxDatagramBytes()=" + getMaxDatagramBytes() + ", getReassemblyBudgetBytes()="
+                + getReassemblyBudgetBytes() + ", getSendMode()=" + getSendMode() + ", getSendHighWaterMarkBytes()=" + getSendHighWaterMarkBytes()
+                + ", getSendLowWaterMarkBytes()=" + getSendLowWaterMarkBytes() + ", getFailureDetectorPhiThreshold()="
+                + getFailureDetectorPhiThreshold() + ", getFailureDetectorAcceptablePauseMs()="
+                + getFailureDetectorAcceptablePauseMs()
+                + ", getLocalCapabilities()=" + getLocalCapabilities() + ", getLocalNode()=" + getLocalNode() + "]";
     }
 
 }
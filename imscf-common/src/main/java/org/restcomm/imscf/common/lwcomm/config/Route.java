@@ -36,8 +36,16 @@ import java.util.Set;
  * The mode tells how the destination node should be chosen from the destination list:
  * <li>LOADBALANCE - The destination node will be chosen randomly from the available destinations</li>
  * <li>FAILOVER - The message will be sent to the first available destination</li>
- * <li>MULTICAST - The message will be sent to all available destinations</li>
+ * <li>MULTICAST - The message will be sent to all available destinations, each retransmitted until it ACKs. The
+ * send result holds the result of every destination.</li>
  * If there is only one destination defined, the value of mode is invariant.
+ * In LOADBALANCE mode, the load balancing tells how the destination is chosen:
+ * <li>RANDOM - randomly from the available destinations</li>
+ * <li>LEAST_OUTSTANDING - the available destination with the least messages waiting for an ACK</li>
+ * <li>POWER_OF_TWO_CHOICES - the cheaper of two random available destinations, where the cost is the number of
+ * messages waiting for an ACK multiplied by the average ACK latency of the destination</li>
+ * The remaining available destinations are used as failover targets in the order of the destination list,
+ * starting after the chosen one.
  * The retransmit pattern tells how the UDP messages to a single destination should be retransmitted
  * when no acknowledgement is received. The pattern is a comma-separated list of integers. The integers represent
  * timeouts and mean the elapsed time in milliseconds when a retransmit should be sent after the first emission
@@ -61,6 +69,14 @@ public abstract class Route {
         LOADBALANCE, FAILOVER, MULTICAST
     }
 
+    /**
+     * Destination selection in LOADBALANCE mode.
+     * @See Route
+     */
+    public enum LoadBalancing {
+        RANDOM, LEAST_OUTSTANDING, POWER_OF_TWO_CHOICES
+    }
+
     public abstract String getName();
 
     public abstract Set<Node> getPossibleSources();
@@ -69,6 +85,8 @@ public abstract class Route {
 
     public abstract Mode getMode();
 
+    public abstract LoadBalancing getLoadBalancing();
+
     public abstract List<Integer> getRetransmitPattern();
 
     public abstract String getDefaultQueue();
@@ -80,8 +98,8 @@ public abstract class Route {
     @Override
     public String toString() {
         return "Route [getName()=" + getName() + ", getPossibleSources()=" + getPossibleSources()
-                + ", getDestinations()=" + getDestinations() + ", getMode()=" + getMode() + ", getRetransmitPattern()="
-                + getRetransmitPattern() + ", getDefaultQueue()=" + getDefaultQueue() + "]";
+                + ", getDestinations()=" + getDestinations() + ", getMode()=" + getMode() + ", getLoadBalancing()="
+                + getLoadBalancing() + ", getRetransmitPattern()=" + getRetransmitPattern() + ", getDefaultQueue()=" + getDefaultQueue() + "]";
     }
 
     @Override
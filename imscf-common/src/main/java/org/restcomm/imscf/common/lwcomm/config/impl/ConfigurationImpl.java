@@ -19,6 +19,7 @@
 package org.restcomm.imscf.common.lwcomm.config.impl;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -52,7 +53,19 @@ public class ConfigurationImpl extends Configuration {
     private ListenerMode listenerMode = DEFAULT_LISTENER_MODE;
     private AckSendStrategy ackSendStrategy = DEFAULT_ACK_SEND_STRATEGY;
     private ClientPortRange clientPortRange = DEFAULT_CLIENT_PORT_RANGE;
+    private WireFormat wireFormat = DEFAULT_WIRE_FORMAT;
+    private int ackBatchDelayMs = DEFAULT_ACK_BATCH_DELAY_MS;
+    private int ackBatchMaxIds = DEFAULT_ACK_BATCH_MAX_IDS;
+    private int coalesceMaxBytes = DEFAULT_COALESCE_MAX_BYTES;
+    private int maxDatagramBytes = DEFAULT_MAX_DATAGRAM_BYTES;
+    private int reassemblyBudgetBytes = DEFAULT_REASSEMBLY_BUDGET_BYTES;
+    private SendMode sendMode = DEFAULT_SEND_MODE;
+    private int sendHighWaterMarkBytes = DEFAULT_SEND_HIGH_WATER_MARK_BYTES;
+    private int sendLowWaterMarkBytes = DEFAULT_SEND_LOW_WATER_MARK_BYTES;
+    private double failureDetectorPhiThreshold = DEFAULT_FAILURE_DETECTOR_PHI_THRESHOLD;
+    private int failureDetectorAcceptablePauseMs = DEFAULT_FAILURE_DETECTOR_ACCEPTABLE_PAUSE_MS;
     private String mBeanDomain;
+    private Set<String> localCapabilities = new HashSet<String>();
 
     public void setAllNodes(Collection<Node> nodes) {
         allNodes.clear();
@@ -128,6 +141,54 @@ public class ConfigurationImpl extends Configuration {
         this.mBeanDomain = mBeanDomain;
     }
 
+    public void setWireFormat(WireFormat wireFormat) {
+        this.wireFormat = wireFormat;
+    }
+
+    public void setAckBatchDelayMs(int ackBatchDelayMs) {
+        this.ackBatchDelayMs = ackBatchDelayMs;
+    }
+
+    public void setAckBatchMaxIds(int ackBatchMaxIds) {
+        this.ackBatchMaxIds = ackBatchMaxIds;
+    }
+
+    public void setCoalesceMaxBytes(int coalesceMaxBytes) {
+        this.coalesceMaxBytes = coalesceMaxBytes;
+    }
+
+    public void setMaxDatagramBytes(int maxDatagramBytes) {
+        this.maxDatagramBytes = maxDatagramBytes;
+    }
+
+    public void setReassemblyBudgetBytes(int reassemblyBudgetBytes) {
+        this.reassemblyBudgetBytes = reassemblyBudgetBytes;
+    }
+
+    public void setSendMode(SendMode sendMode) {
+        this.sendMode = sendMode;
+    }
+
+    public void setSendHighWaterMarkBytes(int sendHighWaterMarkBytes) {
+        this.sendHighWaterMarkBytes = sendHighWaterMarkBytes;
+    }
+
+    public void setSendLowWaterMarkBytes(int sendLowWaterMarkBytes) {
+        this.sendLowWaterMarkBytes = sendLowWaterMarkBytes;
+    }
+
+    public void setFailureDetectorPhiThreshold(double failureDetectorPhiThreshold) {
+        this.failureDetectorPhiThreshold = failureDetectorPhiThreshold;
+    }
+
+    public void setFailureDetectorAcceptablePauseMs(int failureDetectorAcceptablePauseMs) {
+        this.failureDetectorAcceptablePauseMs = failureDetectorAcceptablePauseMs;
+    }
+
+    public void addLocalCapability(String capability) {
+        localCapabilities.add(capability);
+    }
+
     //
     // Configuration interface
     //
@@ -221,4 +282,64 @@ public class ConfigurationImpl extends Configuration {
     public String getMBeanDomain() {
         return mBeanDomain;
     }
+
+    @Override
+    public WireFormat getWireFormat() {
+        return wireFormat;
+    }
+
+    @Override
+    public int getAckBatchDelayMs() {
+        return ackBatchDelayMs;
+    }
+
+    @Override
+    public int getAckBatchMaxIds() {
+        return ackBatchMaxIds;
+    }
+
+    @Override
+    public int getCoalesceMaxBytes() {
+        return coalesceMaxBytes;
+    }
+
+    @Override
+    public int getMaxDatagramBytes() {
+        return maxDatagramBytes;
+    }
+
+    @Override
+    public int getReassemblyBudgetBytes() {
+        return reassemblyBudgetBytes;
+    }
+
+    @Override
+    public SendMode getSendMode() {
+        return sendMode;
+    }
+
+    @Override
+    public int getSendHighWaterMarkBytes() {
+        return sendHighWaterMarkBytes;
+    }
+
+    @Override
+    public int getSendLowWaterMarkBytes() {
+        return sendLowWaterMarkBytes;
+    }
+
+    @Override
+    public double getFailureDetectorPhiThreshold() {
+        return failureDetectorPhiThreshold;
+    }
+
+    @Override
+    public int getFailureDetectorAcceptablePauseMs() {
+        return failureDetectorAcceptablePauseMs;
+    }
+
+    @Override
+    public Set<String> getLocalCapabilities() {
+        return Collections.unmodifiableSet(localCapabilities);
+    }
 }
@@ -37,6 +37,7 @@ public final class RouteImpl extends Route {
     private Set<Node> possibleSources;
     private List<Node> destinations;
     private Mode mode;
+    private LoadBalancing loadBalancing = LoadBalancing.RANDOM;
     private List<Integer> retransmitPattern;
     private String defaultQueue;
 
@@ -72,6 +73,14 @@ public final class RouteImpl extends Route {
         this.mode = mode;
     }
 
+    public LoadBalancing getLoadBalancing() {
+        return loadBalancing;
+    }
+
+    public void setLoadBalancing(LoadBalancing loadBalancing) {
+        this.loadBalancing = loadBalancing;
+    }
+
     public List<Integer> getRetransmitPattern() {
         return retransmitPattern;
     }
@@ -156,4 +156,64 @@ public class JbossDefaultConfig extends Configuration {
     public String getMBeanDomain() {
         return null;
     }
+
+    @Override
+    public WireFormat getWireFormat() {
+        return Configuration.DEFAULT_WIRE_FORMAT;
+    }
+
+    @Override
+    public int getAckBatchDelayMs() {
+        return Configuration.DEFAULT_ACK_BATCH_DELAY_MS;
+    }
+
+    @Override
+    public int getAckBatchMaxIds() {
+        return Configuration.DEFAULT_ACK_BATCH_MAX_IDS;
+    }
+
+    @Override
+    public int getCoalesceMaxBytes() {
+        return Configuration.DEFAULT_COALESCE_MAX_BYTES;
+    }
+
+    @Override
+    public int getMaxDatagramBytes() {
+        return Configuration.DEFAULT_MAX_DATAGRAM_BYTES;
+    }
+
+    @Override
+    public int getReassemblyBudgetBytes() {
+        return Configuration.DEFAULT_REASSEMBLY_BUDGET_BYTES;
+    }
+
+    @Override
+    public SendMode getSendMode() {
+        return Configuration.DEFAULT_SEND_MODE;
+    }
+
+    @Override
+    public int getSendHighWaterMarkBytes() {
+        return Configuration.DEFAULT_SEND_HIGH_WATER_MARK_BYTES;
+    }
+
+    @Override
+    public int getSendLowWaterMarkBytes() {
+        return Configuration.DEFAULT_SEND_LOW_WATER_MARK_BYTES;
+    }
+
+    @Override
+    public double getFailureDetectorPhiThreshold() {
+        return Configuration.DEFAULT_FAILURE_DETECTOR_PHI_THRESHOLD;
+    }
+
+    @Override
+    public int getFailureDetectorAcceptablePauseMs() {
+        return Configuration.DEFAULT_FAILURE_DETECTOR_ACCEPTABLE_PAUSE_MS;
+    }
+
+    @Override
+    public Set<String> getLocalCapabilities() {
+        return Collections.emptySet();
+    }
 }
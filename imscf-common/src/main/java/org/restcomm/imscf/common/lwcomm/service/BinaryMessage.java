@@ -0,0 +1,149 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ */
+package org.restcomm.imscf.common.lwcomm.service;
+
+import io.netty.buffer.ByteBuf;
+
+import java.util.Objects;
+
+/**
+ * API representation of a message with binary payload.
+ * <p>
+ * The payload is a reference counted Netty buffer, its readable bytes are sent as they are, without converting
+ * them to a String. Sending the message with {@link LwCommService#send(String, BinaryMessage)} transfers one
+ * reference to LwComm, which releases it when the sending is finished. Retain the message before sending if the
+ * payload is needed afterwards.
+ * </p>
+ * <p>
+ * Only nodes advertising {@link #CAPABILITY} can receive binary messages, use
+ * {@link LwCommService#isCapabilitySupported(String, String)} to check the route before sending.
+ * </p>
+ */
+public class BinaryMessage {
+
+    /**
+     * The capability advertised by nodes which can receive binary messages. It is advertised automatically by nodes in
+     * LISTENER receive mode with a {@link MessageReceiver} which {@link MessageReceiver#acceptsBinaryMessages() accepts}
+     * binary messages. Other nodes reject binary messages with a NACK.
+     */
+    public static final String CAPABILITY = "LwCommBinaryPayloadV1";
+
+    protected ByteBuf payload;
+    protected String targetQueue;
+    protected String groupId;
+    protected String tag;
+
+    protected BinaryMessage() {
+        // allow subclasses
+    }
+
+    /** Returns the payload buffer. Its reader index is not modified by LwComm. */
+    public ByteBuf getPayload() {
+        return payload;
+    }
+
+    public String getTargetQueue() {
+        return targetQueue;
+    }
+
+    public String getGroupId() {
+        return groupId;
+    }
+
+    public String getTag() {
+        return tag;
+    }
+
+    /** Increases the reference count of the payload. */
+    public BinaryMessage retain() {
+        payload.retain();
+        return this;
+    }
+
+    /**
+     * Decreases the reference count of the payload.
+     * @return true if the reference count became 0 and the payload has been deallocated
+     */
+    public boolean release() {
+        return payload.release();
+    }
+
+    @Override
+    public String toString() {
+        return "BinaryMessage [payload=" + payload.readableBytes() + " bytes, targetQueue=" + targetQueue
+                + ", groupId=" + groupId + ", tag=" + tag + "]";
+    }
+
+    /**
+     * Returns a builder for a message with the specified payload (mandatory parameter). The message takes over the
+     * reference of the caller to the payload.
+     * Group ID, JMS target queue and user Tag will be null unless set through the builder.
+     */
+    public static BinaryMessageBuilder<BinaryMessageBuilder<?, BinaryMessage>, BinaryMessage> builder(ByteBuf payload) {
+        return new BinaryMessageBuilder<BinaryMessageBuilder<?, BinaryMessage>, BinaryMessage>(BinaryMessage.class,
+                payload);
+    }
+
+    /** Builder for creating and manipulating an otherwise immutable BinaryMessage object. */
+    public static class BinaryMessageBuilder<T extends BinaryMessageBuilder<?, BM>, BM extends BinaryMessage> {
+        private BM message;
+
+        protected BinaryMessageBuilder(Class<BM> cls, ByteBuf payload) {
+            try {
+                this.message = cls.newInstance();
+            } catch (InstantiationException | IllegalAccessException e) {
+                throw new AssertionError("", e);
+            }
+            message.payload = Objects.requireNonNull(payload, "payload cannot be null");
+        }
+
+        protected BM getInstance() {
+            return message;
+        }
+
+        /** Sets the group ID of the message. */
+        public BinaryMessageBuilder<T, BM> setGroupId(String groupId) {
+            Objects.requireNonNull(message, "BinaryMessageBuilder cannot be reused after a call to create()!");
+            message.groupId = groupId;
+            return this;
+        }
+
+        /** Sets the target JMS queue of the message. */
+        public BinaryMessageBuilder<T, BM> setTargetQueue(String targetQueue) {
+            Objects.requireNonNull(message, "BinaryMessageBuilder cannot be reused after a call to create()!");
+            message.targetQueue = targetQueue;
+            return this;
+        }
+
+        /** Sets the user tag of the message. */
+        public BinaryMessageBuilder<T, BM> setTag(String tag) {
+            Objects.requireNonNull(message, "BinaryMessageBuilder cannot be reused after a call to create()!");
+            message.tag = tag;
+            return this;
+        }
+
+        /** Returns the resulting BinaryMessage. */
+        public BM create() {
+            BM ret = message;
+            message = null; // disable post-create changes by releasing
+            return ret;
+        }
+    }
+
+}
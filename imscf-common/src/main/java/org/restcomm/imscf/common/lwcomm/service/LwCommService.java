@@ -54,6 +54,17 @@ public interface LwCommService {
      */
     SendResultFuture<SendResult> send(String targetRoute, TextMessage message);
 
+    /**
+     * Sends the message with binary payload to the given target route. The payload bytes are sent without
+     * conversion to a String. The reference of the caller to the payload is taken over and released when the sending
+     * is finished, successfully or not. The destination nodes should support {@link BinaryMessage#CAPABILITY}.
+     * @param targetRoute The name of the route in the configuration.
+     * @param message The message to send.
+     * @return A ListenableFuture object. The client can wait for the result using get() or
+     * request callback using addListener(). Its getOriginalMessage() returns null.
+     */
+    SendResultFuture<SendResult> send(String targetRoute, BinaryMessage message);
+
     /**
      * Call this method to shut the communication subsystem down.
      */
@@ -74,4 +85,15 @@ public interface LwCommService {
      * @see TextMessageBuilder#setTag(String)
      */
     void setAcceptMode(AcceptMode mode, String... tags);
+
+    /**
+     * Checks whether the alive destination nodes of a route have advertised the given capability in their heartbeats.
+     * Not alive nodes are ignored, as messages are only sent to alive nodes.
+     * @param targetRoute The name of the route in the configuration.
+     * @param capability The capability to check.
+     * @return true if at least one destination of the route is alive and every alive destination supports the
+     *         capability.
+     * @see org.restcomm.imscf.common.lwcomm.config.Configuration#getLocalCapabilities()
+     */
+    boolean isCapabilitySupported(String targetRoute, String capability);
 }
@@ -34,4 +34,24 @@ public interface MessageReceiver {
      * @param message The message arrived.
      */
     void onMessage(IncomingTextMessage message);
+
+    /**
+     * Called when a message with binary payload arrives. The receiver must release the message when its payload is
+     * not needed any more, even if this method throws an exception.
+     * The default implementation releases the message and throws UnsupportedOperationException. Receivers overriding
+     * it must also override {@link #acceptsBinaryMessages()}.
+     * @param message The message arrived.
+     */
+    default void onMessage(IncomingBinaryMessage message) {
+        message.release();
+        throw new UnsupportedOperationException(getClass().getName() + " does not accept binary messages");
+    }
+
+    /**
+     * Returns true if the receiver accepts binary messages. Only then is {@link BinaryMessage#CAPABILITY} advertised
+     * by the node, binary messages arriving otherwise are rejected with a NACK instead of being acknowledged.
+     */
+    default boolean acceptsBinaryMessages() {
+        return false;
+    }
 }
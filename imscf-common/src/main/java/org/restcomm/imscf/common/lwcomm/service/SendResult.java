@@ -20,14 +20,22 @@ package org.restcomm.imscf.common.lwcomm.service;
 
 import org.restcomm.imscf.common.lwcomm.config.Node;
 
+import java.util.Collections;
+import java.util.Map;
+
 /**
  * Result of sending a message.
  * The type of the result can be
  * <li>SUCCESS - The delivery was successful. The actualDestination attribute holds the Node which received the message</li>
  * <li>CANCELLED - The delivery has been cancelled by the user.</li>
- * <li>FAILURE - No ACK message has been received for the message.</li>
+ * <li>FAILURE - No ACK message has been received for the message, or it could not be sent at all (no alive
+ * destination, outbound buffer full).</li>
  *
  * Note that in case of CANCELLED and FAILURE there is still a chance that the message has been received by a node.
+ * <p>
+ * The result of a message sent on a MULTICAST route holds the result of each destination node, and it is SUCCESS
+ * only if all the destinations have received the message. There is no actual destination in this case.
+ * </p>
  * @author Miklos Pocsaji
  *
  */
@@ -47,6 +55,7 @@ public class SendResult {
 
     private Type type;
     private Node actualDestination;
+    private Map<Node, SendResult> nodeResults = Collections.emptyMap();
 
     private SendResult(Type type) {
         this.type = type;
@@ -57,6 +66,17 @@ public class SendResult {
         this.actualDestination = actualDestination;
     }
 
+    /**
+     * Creates the result of a multicast message.
+     * @param nodeResults The result of each destination node
+     */
+    public SendResult(Map<Node, SendResult> nodeResults) {
+        this.type = !nodeResults.isEmpty()
+                && nodeResults.values().stream().allMatch(r -> r.getType() == Type.SUCCESS) ? Type.SUCCESS
+                : Type.FAILURE;
+        this.nodeResults = Collections.unmodifiableMap(nodeResults);
+    }
+
     public Type getType() {
         return type;
     }
@@ -65,12 +85,20 @@ public class SendResult {
         return actualDestination;
     }
 
+    /**
+     * Returns the result of each destination node of a multicast message, or an empty map for other messages.
+     */
+    public Map<Node, SendResult> getNodeResults() {
+        return nodeResults;
+    }
+
     @Override
     public int hashCode() {
         final int prime = 31;
         int result = 1;
         result = prime * result + ((actualDestination == null) ? 0 : actualDestination.hashCode());
         result = prime * result + ((type == null) ? 0 : type.hashCode());
+        result = prime * result + nodeResults.hashCode();
         return result;
     }
 
@@ -90,12 +118,15 @@ public class SendResult {
             return false;
         if (type != other.type)
             return false;
+        if (!nodeResults.equals(other.nodeResults))
+            return false;
         return true;
     }
 
     @Override
     public String toString() {
-        return "SendResult [type=" + type + ", actualDestination=" + actualDestination + "]";
+        return "SendResult [type=" + type + ", actualDestination=" + actualDestination
+                + (nodeResults.isEmpty() ? "" : ", nodeResults=" + nodeResults) + "]";
     }
 
 }
@@ -29,5 +29,6 @@ public interface SendResultFuture<V> extends ListenableFuture<V> {
 
     String getMessageId();
 
+    /** Returns the message sent, or null if a {@link BinaryMessage} was sent, the payload of which is not kept. */
     TextMessage getOriginalMessage();
 }
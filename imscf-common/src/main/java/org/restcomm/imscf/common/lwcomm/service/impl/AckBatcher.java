@@ -0,0 +1,127 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ */
+package org.restcomm.imscf.common.lwcomm.service.impl;
+
+import org.restcomm.imscf.common.lwcomm.config.Node;
+import org.restcomm.imscf.common.lwcomm.service.messages.OutgoingMessage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.MDC;
+
+/**
+ * Collects the ACKs to be sent to the same node and sends them in one multi-id ACK datagram.
+ * Used in BATCHED ack send strategy. A batch is sent when it reaches the maximum size or when the
+ * maximum delay elapsed since its first ACK was added, whichever happens first.
+ */
+public class AckBatcher {
+
+    private final int delayMs;
+    private final int maxIds;
+    private final ScheduledExecutorService executor;
+    private final NettyUtil nettyUtil;
+    private final ConcurrentHashMap<Node, Batch> batches = new ConcurrentHashMap<>();
+
+    public AckBatcher(int delayMs, int maxIds, ScheduledExecutorService executor, NettyUtil nettyUtil) {
+        this.delayMs = delayMs;
+        this.maxIds = Math.max(1, maxIds);
+        this.executor = executor;
+        this.nettyUtil = nettyUtil;
+    }
+
+    /**
+     * Adds an ACK for the message id to the batch of the target node.
+     * @param target The node to send the ACK to.
+     * @param messageId The id of the message to acknowledge.
+     */
+    public void add(Node target, String messageId) {
+        Batch batch = batches.computeIfAbsent(target, Batch::new);
+        List<String> full = null;
+        synchronized (batch) {
+            batch.ids.add(messageId);
+            if (batch.ids.size() >= maxIds) {
+                full = batch.take();
+            } else if (batch.ids.size() == 1) {
+                batch.flushFuture = executor.schedule(() -> flush(batch), delayMs, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (full != null) {
+            send(target, full);
+        }
+    }
+
+    /** Sends all the pending ACKs, e.g. on shutdown. */
+    public void flushAll() {
+        batches.values().forEach(this::flush);
+    }
+
+    private void flush(Batch batch) {
+        List<String> ids;
+        synchronized (batch) {
+            ids = batch.take();
+        }
+        if (!ids.isEmpty()) {
+            send(batch.target, ids);
+        }
+    }
+
+    private void send(Node target, List<String> ids) {
+        MDC.put(LwCommUtil.LOGGER_MDC_MSGID_KEY, ids.get(0));
+        LwCommServiceImpl.LOGGER.debug("Sending batched ACK for {} messages to {}", ids.size(), target);
+        nettyUtil.sendMessage(target, OutgoingMessage.createMultiAck(ids));
+        if (ids.size() > 1) {
+            LwCommServiceImpl.getServiceImpl().getStatistics().addSentMultiAck(ids.size());
+        } else {
+            LwCommServiceImpl.getServiceImpl().getStatistics().incSentAckCount();
+        }
+    }
+
+    /**
+     * ACKs waiting to be sent to one node.
+     */
+    private static final class Batch {
+        private final Node target;
+        private List<String> ids = new ArrayList<String>();
+        private Future<?> flushFuture;
+
+        private Batch(Node target) {
+            this.target = target;
+        }
+
+        /** Removes and returns the collected ids. Must be called while holding the lock of the batch. */
+        private List<String> take() {
+            if (flushFuture != null) {
+                flushFuture.cancel(false);
+                flushFuture = null;
+            }
+            if (ids.isEmpty()) {
+                return Collections.emptyList();
+            }
+            List<String> ret = ids;
+            ids = new ArrayList<String>();
+            return ret;
+        }
+    }
+}
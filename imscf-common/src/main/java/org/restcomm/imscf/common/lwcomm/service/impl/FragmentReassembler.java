@@ -0,0 +1,299 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ */
+package org.restcomm.imscf.common.lwcomm.service.impl;
+
+import org.restcomm.imscf.common.lwcomm.config.Node;
+import org.restcomm.imscf.common.lwcomm.service.messages.LwCommFragmentFormat;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reassembles the datagrams sent in fragments (see {@link LwCommFragmentFormat}).
+ * <p>
+ * The data of the fragments is copied into a buffer of the size of the whole datagram, allocated from the pooled
+ * direct allocator when the first fragment arrives. The total size of the incomplete datagrams of a node is limited
+ * by a budget, the fragments of a new datagram exceeding it are dropped, so a misbehaving or flooding peer cannot
+ * use up the memory. Incomplete datagrams are discarded after {@link #TIMEOUT_MS}, as the sender retransmits the
+ * whole message anyway. The discarding is done when fragments arrive, so no timer is needed.
+ * </p>
+ * <p>
+ * The sending node declared in the fragment header is only accepted if it is a configured node and the fragment
+ * arrived from one of its addresses, so the budgets cannot be bypassed by naming other or nonexistent nodes.
+ * Fragments must follow the layout produced by {@link LwCommFragmentFormat#fragment}: equal sized fragments at
+ * consecutive offsets, except for a shorter last one. This guarantees that the received fragments cover the whole
+ * datagram when every index has arrived.
+ * </p>
+ */
+class FragmentReassembler {
+
+    /** Incomplete datagrams older than this are discarded. */
+    static final int TIMEOUT_MS = 2000;
+    private static final long TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MS);
+
+    private final ByteBufAllocator alloc;
+    private final int budgetBytes;
+    private final ConcurrentHashMap<Key, Reassembly> reassemblies = new ConcurrentHashMap<>();
+    /** Bytes of the incomplete datagrams, per configured node. Not modified after construction. */
+    private final Map<String, AtomicInteger> usedBytes = new HashMap<>();
+    /** Addresses of the configured nodes by name. */
+    private final Map<String, Set<InetAddress>> nodeAddresses = new HashMap<>();
+    private volatile long lastSweepNanos = System.nanoTime();
+
+    FragmentReassembler(ByteBufAllocator alloc, int budgetBytes, Collection<Node> nodes) {
+        this.alloc = alloc;
+        this.budgetBytes = budgetBytes;
+        for (Node n : nodes) {
+            Set<InetAddress> addresses;
+            try {
+                addresses = new HashSet<>(Arrays.asList(InetAddress.getAllByName(n.getHost())));
+            } catch (UnknownHostException e) {
+                LwCommServiceImpl.LOGGER.warn("Cannot resolve host of {}, fragments from it will be dropped", n, e);
+                addresses = Collections.emptySet();
+            }
+            nodeAddresses.put(n.getName(), addresses);
+            usedBytes.put(n.getName(), new AtomicInteger());
+        }
+    }
+
+    /**
+     * Adds a fragment received from the sender address. Returns the reassembled datagram if this was its last missing
+     * fragment, null otherwise. The caller is responsible for releasing the returned buffer. The fragment buffer is not
+     * released.
+     */
+    ByteBuf add(ByteBuf fragment, InetSocketAddress sender) {
+        long now = System.nanoTime();
+        if (now - lastSweepNanos > TIMEOUT_NANOS) {
+            lastSweepNanos = now;
+            discardExpired(now);
+        }
+        LwCommFragmentFormat.Header header = LwCommFragmentFormat.readHeader(fragment);
+        if (header == null) {
+            LwCommServiceImpl.LOGGER.warn("Invalid fragment header, fragment dropped");
+            LwCommServiceImpl.getServiceImpl().getStatistics().incInvalidMessageCount();
+            return null;
+        }
+        Set<InetAddress> addresses = nodeAddresses.get(header.getFrom());
+        if (addresses == null || sender == null || !addresses.contains(sender.getAddress())) {
+            LwCommServiceImpl.LOGGER.warn("Fragment of node {} arrived from unknown sender {}, fragment dropped",
+                    header.getFrom(), sender);
+            LwCommServiceImpl.getServiceImpl().getStatistics().incInvalidMessageCount();
+            return null;
+        }
+        Key key = new Key(header.getFrom(), header.getDatagramId());
+        Reassembly r = reassemblies.get(key);
+        if (r == null) {
+            if (!reserve(header.getFrom(), header.getTotalLength())) {
+                LwCommServiceImpl.LOGGER.warn(
+                        "Reassembly budget of {} bytes for node {} exceeded, datagram {} of {} bytes dropped",
+                        budgetBytes, header.getFrom(), header.getDatagramId(), header.getTotalLength());
+                LwCommServiceImpl.getServiceImpl().getStatistics().incDiscardedReassemblyCount();
+                return null;
+            }
+            r = new Reassembly(header, now);
+            Reassembly old = reassemblies.putIfAbsent(key, r);
+            if (old != null) {
+                unreserve(header.getFrom(), header.getTotalLength());
+                r = old;
+            }
+        }
+        ByteBuf complete = r.add(header, fragment);
+        if (complete != null) {
+            reassemblies.remove(key, r);
+            unreserve(header.getFrom(), r.totalLength);
+            LwCommServiceImpl.getServiceImpl().getStatistics().incReassembledDatagramCount();
+        }
+        return complete;
+    }
+
+    /** Discards all the incomplete datagrams. */
+    void clear() {
+        for (Iterator<Reassembly> it = reassemblies.values().iterator(); it.hasNext();) {
+            it.next().discard();
+            it.remove();
+        }
+        usedBytes.values().forEach(used -> used.set(0));
+    }
+
+    private void discardExpired(long now) {
+        for (Iterator<Reassembly> it = reassemblies.values().iterator(); it.hasNext();) {
+            Reassembly r = it.next();
+            if (now - r.startNanos > TIMEOUT_NANOS && r.discard()) {
+                it.remove();
+                unreserve(r.from, r.totalLength);
+                LwCommServiceImpl.LOGGER.debug("Incomplete datagram from {} discarded after {}ms", r.from, TIMEOUT_MS);
+                LwCommServiceImpl.getServiceImpl().getStatistics().incDiscardedReassemblyCount();
+            }
+        }
+    }
+
+    private boolean reserve(String from, int bytes) {
+        AtomicInteger used = usedBytes.get(from);
+        if (used.addAndGet(bytes) > budgetBytes) {
+            used.addAndGet(-bytes);
+            return false;
+        }
+        return true;
+    }
+
+    private void unreserve(String from, int bytes) {
+        AtomicInteger used = usedBytes.get(from);
+        if (used != null) {
+            used.addAndGet(-bytes);
+        }
+    }
+
+    /**
+     * Identifies a datagram: the sending node and the datagram id.
+     */
+    private static final class Key {
+        private final String from;
+        private final int datagramId;
+
+        private Key(String from, int datagramId) {
+            this.from = from;
+            this.datagramId = datagramId;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * from.hashCode() + datagramId;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return datagramId == other.datagramId && from.equals(other.from);
+        }
+    }
+
+    /**
+     * A datagram being reassembled.
+     */
+    private final class Reassembly {
+        private final String from;
+        private final int totalLength;
+        private final int fragmentCount;
+        private final long startNanos;
+        private final BitSet received;
+        private int remainingFragments;
+        private long receivedBytes;
+        /** Data length of the fragments except the last one, 0 until known. */
+        private int fragmentLength;
+        private ByteBuf buffer;
+        private boolean discarded;
+
+        private Reassembly(LwCommFragmentFormat.Header header, long startNanos) {
+            this.from = header.getFrom();
+            this.totalLength = header.getTotalLength();
+            this.fragmentCount = header.getFragmentCount();
+            this.startNanos = startNanos;
+            this.received = new BitSet(fragmentCount);
+            this.remainingFragments = fragmentCount;
+        }
+
+        private synchronized ByteBuf add(LwCommFragmentFormat.Header header, ByteBuf fragment) {
+            if (discarded || header.getTotalLength() != totalLength || header.getFragmentCount() != fragmentCount
+                    || received.get(header.getFragmentIndex())) {
+                // late or duplicate fragment
+                return null;
+            }
+            if (!checkLayout(header.getFragmentIndex(), header.getOffset(), fragment.readableBytes())) {
+                LwCommServiceImpl.LOGGER.warn("Fragment {}/{} of datagram {} from {} has inconsistent offset {} "
+                        + "and length {}, datagram dropped", header.getFragmentIndex(), fragmentCount,
+                        header.getDatagramId(), from, header.getOffset(), fragment.readableBytes());
+                LwCommServiceImpl.getServiceImpl().getStatistics().incInvalidMessageCount();
+                // the datagram cannot be completed without this index, it is discarded when it expires
+                return null;
+            }
+            if (buffer == null) {
+                buffer = alloc.directBuffer(totalLength, totalLength);
+            }
+            buffer.setBytes(header.getOffset(), fragment, fragment.readerIndex(), fragment.readableBytes());
+            received.set(header.getFragmentIndex());
+            receivedBytes += fragment.readableBytes();
+            if (--remainingFragments > 0) {
+                return null;
+            }
+            if (receivedBytes != totalLength) {
+                // cannot happen with a consistent layout; never completed, discarded when it expires
+                return null;
+            }
+            ByteBuf ret = buffer.writerIndex(totalLength);
+            buffer = null;
+            discarded = true;
+            return ret;
+        }
+
+        /** Releases the buffer. Returns false if the datagram has already been completed or discarded. */
+        private synchronized boolean discard() {
+            if (discarded) {
+                return false;
+            }
+            discarded = true;
+            if (buffer != null) {
+                buffer.release();
+                buffer = null;
+            }
+            return true;
+        }
+
+        /** Checks that the fragment is at the place its index implies in the sender's fragment layout. */
+        private boolean checkLayout(int index, int offset, int length) {
+            int last = fragmentCount - 1;
+            if (last == 0) {
+                return offset == 0 && length == totalLength;
+            }
+            if (fragmentLength == 0) {
+                if (index < last) {
+                    fragmentLength = length;
+                } else if (offset % last == 0) {
+                    fragmentLength = offset / last;
+                }
+                if (fragmentLength <= 0) {
+                    fragmentLength = 0;
+                    return false;
+                }
+            }
+            long expectedOffset = (long) index * fragmentLength;
+            long expectedLength = index < last ? fragmentLength : totalLength - expectedOffset;
+            return offset == expectedOffset && length == expectedLength && expectedLength > 0
+                    && expectedLength <= fragmentLength;
+        }
+    }
+}
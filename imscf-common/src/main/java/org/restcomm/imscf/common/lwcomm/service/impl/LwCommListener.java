@@ -38,15 +38,11 @@ import java.net.InetAddress;
 import java.util.HashSet;
 import java.util.OptionalInt;
 import java.util.Set;
-import java.util.concurrent.TimeUnit;
 
 import javax.jms.QueueConnection;
 import javax.jms.QueueConnectionFactory;
 import javax.naming.InitialContext;
 
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
-
 import org.restcomm.imscf.common.lwcomm.config.Configuration;
 import org.restcomm.imscf.common.lwcomm.config.Configuration.ListenerMode;
 import org.restcomm.imscf.common.lwcomm.config.Node;
@@ -65,6 +61,8 @@ public class LwCommListener {
     private Configuration config;
     private LwCommListenerHandler channelHandler;
     private Set<Channel> channels;
+    private MessageIdStore processedMessageStore;
+    private MessageIdStore receivedAckStore;
 
     public LwCommListener(Configuration config, EventLoopGroup receiveTransportGroup) {
         this.config = config;
@@ -85,8 +83,7 @@ public class LwCommListener {
         LwCommServiceImpl.LOGGER.info("Constructing aging set for processed messages. Message age: {} seconds.",
                 messageAge);
         // Stores ids of messages which have been processed recently. Used to avoid double processing of messages.
-        Cache<String, Object> processedMessageStore = CacheBuilder.newBuilder().concurrencyLevel(receiveThreads)
-                .expireAfterWrite(messageAge, TimeUnit.SECONDS).build();
+        processedMessageStore = new MessageIdStore(messageAge, receiveThreads);
 
         // Determine that how much time the received ACK messages should be stored
         // How long should we wait for an ACK? It's the maximum message delivery timeout.
@@ -103,8 +100,7 @@ public class LwCommListener {
         int ackAge = maxAckTimeout.orElse(0);
         LwCommServiceImpl.LOGGER.info("Constructing aging set for received ACK messages. Age: {} seconds", ackAge);
         // Stores the received ACK messages
-        Cache<String, Set<Node>> receivedAckStore = CacheBuilder.newBuilder().concurrencyLevel(receiveThreads)
-                .expireAfterWrite(ackAge, TimeUnit.SECONDS).build();
+        receivedAckStore = new MessageIdStore(ackAge, receiveThreads);
 
         if (config.getDeploymentMode() != Configuration.DeploymentMode.STANDALONE
                 && config.getDeploymentMode() != Configuration.DeploymentMode.MULTIPLE) {
@@ -180,7 +176,7 @@ public class LwCommListener {
         });
         // TODO FIXME: hardcoded 256K limit for receive buffer!
         b.option(ChannelOption.SO_RCVBUF, 256 * 1024);
-        b.option(ChannelOption.RCVBUF_ALLOCATOR, new FixedRecvByteBufAllocator(10240));
+        b.option(ChannelOption.RCVBUF_ALLOCATOR, new FixedRecvByteBufAllocator(receiveBufferBytes(config)));
 
         InetAddress host = null;
         int port = config.getLocalNode().getPort();
@@ -211,6 +207,14 @@ public class LwCommListener {
         }
     }
 
+    /**
+     * The size of the receive buffer of one datagram. It is larger than the maximum datagram size, so a datagram
+     * filling the buffer can be recognized as truncated; the 10K minimum covers peers not fragmenting messages.
+     */
+    static int receiveBufferBytes(Configuration config) {
+        return Math.max(10240, config.getMaxDatagramBytes() + 1);
+    }
+
     void shutdown() {
         for (Channel ch : channels) {
             try {
@@ -232,4 +236,12 @@ public class LwCommListener {
     ChannelHandler getChannelHandler() {
         return channelHandler;
     }
+
+    MessageIdStore getProcessedMessageStore() {
+        return processedMessageStore;
+    }
+
+    MessageIdStore getReceivedAckStore() {
+        return receivedAckStore;
+    }
 }
@@ -22,10 +22,13 @@ import org.restcomm.imscf.common.lwcomm.config.Configuration;
 import org.restcomm.imscf.common.lwcomm.config.Node;
 import org.restcomm.imscf.common.lwcomm.service.LwCommService.AcceptMode;
 import org.restcomm.imscf.common.lwcomm.service.MessageReceiver;
+import org.restcomm.imscf.common.lwcomm.service.messages.LwCommBinaryFormat;
+import org.restcomm.imscf.common.lwcomm.service.messages.LwCommFragmentFormat;
 import org.restcomm.imscf.common.lwcomm.service.messages.LwCommMessage;
 import org.restcomm.imscf.common.lwcomm.service.messages.MessageSender;
 import org.restcomm.imscf.common.lwcomm.service.messages.OutgoingMessage;
-import io.netty.buffer.Unpooled;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
@@ -33,8 +36,8 @@ import io.netty.channel.socket.DatagramPacket;
 import io.netty.util.CharsetUtil;
 
 import java.net.InetSocketAddress;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.Executors;
 
 import javax.jms.Queue;
@@ -47,8 +50,6 @@ import javax.naming.InitialContext;
 
 import org.slf4j.MDC;
 
-import com.google.common.cache.Cache;
-
 /**
  * Netty handler, called when a new UDP packet arrives.
  * <b>Important:</b> Use only one instance for all incoming packets!!!
@@ -60,17 +61,31 @@ import com.google.common.cache.Cache;
 @SuppressWarnings("PMD.GodClass")
 public final class LwCommListenerHandler extends SimpleChannelInboundHandler<DatagramPacket> {
 
-    private static final Object MESSAGE_SENDER_STORE_ACCEPTED_VALUE = new Object();
-    private static final Object MESSAGE_SENDER_STORE_REJECTED_VALUE = new Object();
+    private static final int MESSAGE_SENDER_STORE_ACCEPTED_VALUE = 1;
+    private static final int MESSAGE_SENDER_STORE_REJECTED_VALUE = 2;
+    /** ACK store value of the nodes not in the configuration. */
+    private static final int UNKNOWN_NODE_VALUE = Integer.MAX_VALUE;
+    /** ACK store value of multicast messages, which are ACKed by more nodes. */
+    private static final int MULTICAST_ACK_VALUE = Integer.MAX_VALUE - 1;
 
     private QueueConnection queueConn;
     private Configuration.DeploymentMode deploymentMode;
     private Configuration.ReceiveMode receiveMode;
     private Configuration.AckSendStrategy ackSendStrategy;
     private volatile MessageReceiver messageReceiver;
-    private volatile Cache<String, Object> processedMessageStore;
-    private volatile Cache<String, Set<Node>> receivedAckStore;
-    private OrderedExecutor messageDeliveryExecutor;
+    /**
+     * True if binary messages can be delivered, i.e. there is a receiver accepting them. In JMS_QUEUE receive mode they
+     * cannot be written to the queue, so they are always rejected.
+     */
+    private boolean binaryDeliverable;
+    private volatile MessageIdStore processedMessageStore;
+    private volatile MessageIdStore receivedAckStore;
+    /** The nodes are stored in the ACK store by their index in this array plus one. */
+    private Node[] ackStoreNodes;
+    private Map<Node, Integer> ackStoreNodeValues = new HashMap<Node, Integer>();
+    private SerialExecutor messageDeliveryExecutor;
+    private FragmentReassembler reassembler;
+    private int receiveBufferBytes;
 
     /**
      * Creates a new handler.
@@ -78,66 +93,121 @@ public final class LwCommListenerHandler extends SimpleChannelInboundHandler<Dat
      * Can be null if the message transport does not involve queues.
      * @param conf The LwComm configuration.
      * @param processedMessageStore The store of messages which have been processed in the near future.
-     * @param receivedAckStore The store of ACK messages (identifier maps to sender Node) which
+     * @param receivedAckStore The store of ACK messages (identifier maps to the first sender Node) which
      * have been processed in the near future.
      * @param release If true, a release() will be called on the incoming packet when processing completes.
      * Is set to true when the handling is done in a different thread, not netty's thread (i.e. when
      * the listener mode is NIO_SEPARATE).
      */
     public LwCommListenerHandler(QueueConnection queueConn, Configuration conf,
-            Cache<String, Object> processedMessageStore, Cache<String, Set<Node>> receivedAckStore) {
+            MessageIdStore processedMessageStore, MessageIdStore receivedAckStore) {
         this.queueConn = queueConn;
         this.deploymentMode = conf.getDeploymentMode();
         this.receiveMode = conf.getReceiveMode();
         this.messageReceiver = conf.getMessageReceiver();
+        this.binaryDeliverable = receiveMode == Configuration.ReceiveMode.LISTENER && messageReceiver != null
+                && messageReceiver.acceptsBinaryMessages();
         this.ackSendStrategy = conf.getAckSendStrategy();
         this.processedMessageStore = processedMessageStore;
         this.receivedAckStore = receivedAckStore;
-        this.messageDeliveryExecutor = new OrderedExecutor(Executors.newFixedThreadPool(conf
+        this.ackStoreNodes = conf.getAllNodes().toArray(new Node[0]);
+        for (int i = 0; i < ackStoreNodes.length; i++) {
+            ackStoreNodeValues.put(ackStoreNodes[i], i + 1);
+        }
+        this.messageDeliveryExecutor = new SerialExecutor(Executors.newFixedThreadPool(conf
                 .getReceiveWorkerPoolConfig().getMaxThreads(), new NamingThreadFactory("lwcomm_receive_worker")));
+        this.reassembler = new FragmentReassembler(PooledByteBufAllocator.DEFAULT, conf.getReassemblyBudgetBytes(),
+                conf.getAllNodes());
+        this.receiveBufferBytes = LwCommListener.receiveBufferBytes(conf);
     }
 
     public void channelRead0(ChannelHandlerContext context, DatagramPacket packet) throws Exception {
         long nanoBegin = System.nanoTime();
+        // the first message of the datagram, the handler time is accounted to its sender and tag
+        LwCommMessage first = null;
         try {
             MDC.put(LwCommUtil.LOGGER_MDC_MSGID_KEY, "unknown");
-            // TODO: content will be truncated at the receive buffer size. See LwCommListener.start()
-            String content = packet.content().toString(CharsetUtil.UTF_8);
-            LwCommServiceImpl.LOGGER.trace("Message got from {}, content:\n{}", packet.sender(), content);
-            LwCommMessage message = new LwCommMessage(content);
-            MDC.put(LwCommUtil.LOGGER_MDC_MSGID_KEY, message.getId());
-            LwCommServiceImpl.LOGGER.debug("LwCommHandler.channelRead0 - thread: {}", Thread.currentThread());
-            switch (message.getType()) {
-            case NORMAL:
-                handleNormalMessage(message, content, context);
-                break;
-            case ACK:
-                handleAck(message, content);
-                break;
-            case NACK:
-                handleNack(message);
-                break;
-            case HEARTBEAT:
-                LwCommServiceImpl.LOGGER.debug("heartbeat from {}", message.getFrom());
-                LwCommServiceImpl.getServiceImpl().getNodeCatalog().heartbeatFromNode(message.getFrom());
-                LwCommServiceImpl.getServiceImpl().getStatistics().incReceivedHeartbeatCount();
-                break;
-            case INVALID:
-                LwCommServiceImpl.LOGGER.warn("invalid message: {}", content);
+            ByteBuf buf = packet.content();
+            if (buf.readableBytes() >= receiveBufferBytes) {
+                // A full buffer means the datagram was probably truncated; the sender should have fragmented it
+                LwCommServiceImpl.LOGGER.warn("Datagram from {} filled the {} byte receive buffer, dropped as truncated",
+                        packet.sender(), receiveBufferBytes);
                 LwCommServiceImpl.getServiceImpl().getStatistics().incInvalidMessageCount();
-                break;
-            default:
-                LwCommServiceImpl.LOGGER.error("Unexpected message type: {}", message.getType());
-                break;
+            } else if (LwCommFragmentFormat.isFragment(buf)) {
+                ByteBuf datagram = reassembler.add(buf, packet.sender());
+                if (datagram != null) {
+                    try {
+                        first = handleDatagram(datagram, packet, context);
+                    } finally {
+                        datagram.release();
+                    }
+                }
+            } else {
+                first = handleDatagram(buf, packet, context);
             }
         } finally {
             long nanoEnd = System.nanoTime();
             long delay = (nanoEnd - nanoBegin) / 1000;
-            LwCommServiceImpl.getServiceImpl().getStatistics().timeSpentInChannelRead0(delay);
+            LwCommServiceImpl.getServiceImpl().getStatistics()
+                    .timeSpentInChannelRead0(first == null ? null : first.getFrom(),
+                            first == null ? null : first.getUserTag(), delay);
             LwCommServiceImpl.LOGGER.debug("Receive handler took: {}us.", delay);
         }
     }
 
+    private LwCommMessage handleDatagram(ByteBuf buf, DatagramPacket packet, ChannelHandlerContext context) {
+        // The raw content is only used for logging. For binary messages the parsed message is logged instead.
+        if (LwCommBinaryFormat.isBinary(buf)) {
+            // A datagram may contain more coalesced binary frames
+            LwCommMessage message;
+            LwCommMessage first = null;
+            do {
+                message = LwCommBinaryFormat.decode(buf);
+                LwCommServiceImpl.LOGGER.trace("Binary message got from {}, content:\n{}", packet.sender(), message);
+                handleMessage(message, message, context);
+                if (first == null) {
+                    first = message;
+                }
+            } while (message.getType() != LwCommMessage.Type.INVALID && LwCommBinaryFormat.isBinary(buf));
+            return first;
+        } else {
+            String content = buf.toString(CharsetUtil.UTF_8);
+            LwCommServiceImpl.LOGGER.trace("Message got from {}, content:\n{}", packet.sender(), content);
+            LwCommMessage message = new LwCommMessage(content);
+            handleMessage(message, content, context);
+            return message;
+        }
+    }
+
+    private void handleMessage(LwCommMessage message, Object content, ChannelHandlerContext context) {
+        MDC.put(LwCommUtil.LOGGER_MDC_MSGID_KEY, message.getId());
+        LwCommServiceImpl.LOGGER.debug("LwCommHandler.channelRead0 - thread: {}", Thread.currentThread());
+        switch (message.getType()) {
+        case NORMAL:
+            handleNormalMessage(message, content, context);
+            break;
+        case ACK:
+            handleAck(message, content);
+            break;
+        case NACK:
+            handleNack(message);
+            break;
+        case HEARTBEAT:
+            LwCommServiceImpl.LOGGER.debug("heartbeat from {}", message.getFrom());
+            LwCommServiceImpl.getServiceImpl().getNodeCatalog().heartbeatFromNode(message.getFrom(),
+                    message.getCapabilities());
+            LwCommServiceImpl.getServiceImpl().getStatistics().incReceivedHeartbeatCount();
+            break;
+        case INVALID:
+            LwCommServiceImpl.LOGGER.warn("invalid message: {}", content);
+            LwCommServiceImpl.getServiceImpl().getStatistics().incInvalidMessageCount();
+            break;
+        default:
+            LwCommServiceImpl.LOGGER.error("Unexpected message type: {}", message.getType());
+            break;
+        }
+    }
+
     @Override
     public void channelReadComplete(ChannelHandlerContext ctx) {
         ctx.flush();
@@ -150,9 +220,10 @@ public final class LwCommListenerHandler extends SimpleChannelInboundHandler<Dat
 
     public void shutdown() {
         messageDeliveryExecutor.shutdown();
+        reassembler.clear();
     }
 
-    private void handleNormalMessage(LwCommMessage message, String content, ChannelHandlerContext context) {
+    private void handleNormalMessage(LwCommMessage message, Object content, ChannelHandlerContext context) {
         if (message.getPayloadBytes() != message.getCalculatedPayloadBytes()) {
             LwCommServiceImpl.LOGGER.error(
                     "Payload size mismatch in message id {}. In header: {}, actual: {}, raw text received is:\n{}",
@@ -161,21 +232,28 @@ public final class LwCommListenerHandler extends SimpleChannelInboundHandler<Dat
         LwCommServiceImpl.LOGGER.debug("Message is normal message");
 
         AcceptMode acceptMode = LwCommServiceImpl.getServiceImpl().getAcceptMode(message.getUserTag());
+        if (acceptMode == AcceptMode.ACCEPT && message.isBinary() && !binaryDeliverable) {
+            // it would be acknowledged but never processed; rejecting it before the ACK lets the sender fail over
+            // instead of losing the message
+            LwCommServiceImpl.LOGGER.warn("Binary message {} from {} cannot be delivered, rejecting it",
+                    message.getId(), message.getFrom());
+            acceptMode = AcceptMode.REJECT;
+        }
         boolean sendAck = false, sendNack = false, deliver = false;
-        Object oldValue;
+        int oldValue;
 
         switch (acceptMode) {
         case ACCEPT:
-            oldValue = processedMessageStore.asMap().putIfAbsent(message.getId(), MESSAGE_SENDER_STORE_ACCEPTED_VALUE);
-            if (oldValue == null) {
+            oldValue = processedMessageStore.putIfAbsent(message.getId(), MESSAGE_SENDER_STORE_ACCEPTED_VALUE);
+            if (oldValue == MessageIdStore.ABSENT) {
                 deliver = true;
                 sendAck = true;
                 LwCommServiceImpl.LOGGER.debug("Accepting message");
             }
             break;
         case REJECT:
-            oldValue = processedMessageStore.asMap().putIfAbsent(message.getId(), MESSAGE_SENDER_STORE_REJECTED_VALUE);
-            if (oldValue == null) {
+            oldValue = processedMessageStore.putIfAbsent(message.getId(), MESSAGE_SENDER_STORE_REJECTED_VALUE);
+            if (oldValue == MessageIdStore.ABSENT) {
                 sendNack = true;
                 LwCommServiceImpl.LOGGER.debug("Rejecting message");
                 LwCommServiceImpl.getServiceImpl().getStatistics().incRejectedIncomingMessageCount();
@@ -183,40 +261,49 @@ public final class LwCommListenerHandler extends SimpleChannelInboundHandler<Dat
             break;
         case DROP:
             // don't store in map to allow accepting a later retransmit if the acceptMode changes back to ACCEPT
-            oldValue = processedMessageStore.asMap().get(message.getId());
-            if (oldValue == null) {
+            oldValue = processedMessageStore.get(message.getId());
+            if (oldValue == MessageIdStore.ABSENT) {
                 LwCommServiceImpl.LOGGER.debug("Dropping message");
                 LwCommServiceImpl.getServiceImpl().getStatistics().incDroppedIncomingMessageCount();
             }
             break;
         default:
             LwCommServiceImpl.LOGGER.error("Invalid acceptMode: {}", acceptMode);
+            message.releasePayload();
             return;
         }
 
-        if (MESSAGE_SENDER_STORE_ACCEPTED_VALUE.equals(oldValue)) {
+        if (oldValue == MESSAGE_SENDER_STORE_ACCEPTED_VALUE) {
             sendAck = true;
             LwCommServiceImpl.LOGGER.debug("Sending ACK again to previously accepted message");
-        } else if (MESSAGE_SENDER_STORE_REJECTED_VALUE.equals(oldValue)) {
+        } else if (oldValue == MESSAGE_SENDER_STORE_REJECTED_VALUE) {
             sendNack = true;
             LwCommServiceImpl.LOGGER.debug("Sending NACK again to previously rejected message");
         }
 
         if (deliver) {
             LwCommServiceImpl.LOGGER.debug("Delivering message");
-            messageDeliveryExecutor.execute(new DeliverMessageHandler(message), message.getGroupId());
+            LwCommServiceImpl.getServiceImpl().getStatistics().incReceiveWorkerBacklog();
+            try {
+                messageDeliveryExecutor.execute(new DeliverMessageHandler(message), message.getGroupId());
+            } catch (RuntimeException e) {
+                // the handler will not run to decrement it
+                LwCommServiceImpl.getServiceImpl().getStatistics().decReceiveWorkerBacklog();
+                throw e;
+            }
             LwCommServiceImpl.getServiceImpl().getStatistics().incProcessedIncomingMessageCount();
-        } else if (oldValue != null) {
-            // There was already a value in the cache
-            LwCommServiceImpl.LOGGER
-                    .info("Received message with id {} more than one times! However, this does not cause errors since the message has been delivered at most once. Message content:\n{}",
-                            message.getId(), content);
-            LwCommServiceImpl.getServiceImpl().getStatistics().incOutOfOrderMessageCount();
+        } else {
+            // the payload of a message not delivered is not needed any more
+            message.releasePayload();
+            if (oldValue != MessageIdStore.ABSENT) {
+                // There was already a value in the cache
+                LwCommServiceImpl.LOGGER
+                        .info("Received message with id {} more than one times! However, this does not cause errors since the message has been delivered at most once. Message content:\n{}",
+                                message.getId(), content);
+                LwCommServiceImpl.getServiceImpl().getStatistics().incOutOfOrderMessageCount();
+            }
         }
 
-        LwCommServiceImpl.getServiceImpl().getStatistics()
-                .setProcessedIncomingMessageStoreSize(processedMessageStore.size());
-
         if (!sendAck && !sendNack)
             return;
 
@@ -232,6 +319,17 @@ public final class LwCommListenerHandler extends SimpleChannelInboundHandler<Dat
                     : "NACK");
             MessageSender.createAck(message, sendAck, null).startSendCycle();
             break;
+        case BATCHED:
+            // Only positive ACKs are batched, and only towards nodes which can parse multi-id ACKs
+            if (sendAck && LwCommServiceImpl.getServiceImpl().isBatchingSupported(message.getFrom())) {
+                LwCommServiceImpl.LOGGER.debug("Adding ACK to the batch of {}", message.getFrom());
+                LwCommServiceImpl.getServiceImpl().getAckBatcher().add(message.getFrom(), message.getId());
+            } else {
+                LwCommServiceImpl.LOGGER.debug("Sending back {} in standard loop to dedicated port", sendAck ? "ACK"
+                        : "NACK");
+                MessageSender.createAck(message, sendAck, null).startSendCycle();
+            }
+            break;
         default:
             LwCommServiceImpl.LOGGER.error("Invalid ackSendStrategy: {}", ackSendStrategy);
             break;
@@ -241,41 +339,50 @@ public final class LwCommListenerHandler extends SimpleChannelInboundHandler<Dat
 
     private void sendAckImmediately(LwCommMessage message, boolean positive, ChannelHandlerContext context) {
         OutgoingMessage ack = positive ? OutgoingMessage.createAck(message) : OutgoingMessage.createNack(message);
-        DatagramPacket ackDp = new DatagramPacket(Unpooled.copiedBuffer(ack.toRawMessage(), CharsetUtil.UTF_8),
+        DatagramPacket ackDp = new DatagramPacket(NettyUtil.encode(ack, message.getFrom(), context.alloc()),
                 new InetSocketAddress(message.getFrom().getHost(), message.getFrom().getPort()));
         context.writeAndFlush(ackDp);
     }
 
-    private void handleAck(LwCommMessage message, String content) {
-        LwCommServiceImpl.LOGGER.debug("ACK arrived for {}", message.getId());
-        MessageSender ms = LwCommServiceImpl.getServiceImpl().getMessageSenderStore().getMessageSender(message.getId());
-        Set<Node> acksReceivedFrom = receivedAckStore.getIfPresent(message.getId());
+    private void handleAck(LwCommMessage message, Object content) {
+        // A batched ACK acknowledges more messages at once
+        for (String id : message.getAckedIds()) {
+            MDC.put(LwCommUtil.LOGGER_MDC_MSGID_KEY, id);
+            handleAck(id, message, content);
+        }
+    }
+
+    private void handleAck(String id, LwCommMessage message, Object content) {
+        LwCommServiceImpl.LOGGER.debug("ACK arrived for {}", id);
+        MessageSender ms = LwCommServiceImpl.getServiceImpl().getMessageSenderStore().getMessageSender(id);
+        int fromValue = ms != null && ms.isMulticast() ? MULTICAST_ACK_VALUE : ackStoreNodeValues.getOrDefault(
+                message.getFrom(), UNKNOWN_NODE_VALUE);
+        int firstFromValue = receivedAckStore.putIfAbsent(id, fromValue);
         if (ms != null) {
             ms.ackArrived(message);
             LwCommServiceImpl.getServiceImpl().getStatistics().incProcessedAckCount();
         } else {
-            if (acksReceivedFrom == null) {
+            if (firstFromValue == MessageIdStore.ABSENT) {
                 LwCommServiceImpl.LOGGER.warn(
                         "No MessageSender found for ACK message, and no ACK received in the near past. Message:\n{}",
                         message);
             } else {
                 LwCommServiceImpl.LOGGER
                         .warn("Multiple ACK received for message with id {}. This is usually caused by retransmits. Check the sender side logs. Message: {}",
-                                message.getId(), message);
+                                id, message);
             }
         }
-        if (acksReceivedFrom == null) {
-            acksReceivedFrom = new HashSet<Node>();
-            receivedAckStore.put(message.getId(), acksReceivedFrom);
-        }
-        acksReceivedFrom.add(message.getFrom());
-        if (acksReceivedFrom.size() > 1) {
+        if (firstFromValue != MessageIdStore.ABSENT && firstFromValue != MULTICAST_ACK_VALUE
+                && firstFromValue != fromValue) {
             LwCommServiceImpl.LOGGER
-                    .error("ACKs received for message ({}) from multiple nodes: {} -- This message has been processed multiple times! Message content:\n{}",
-                            message.getId(), acksReceivedFrom, content);
+                    .error("ACKs received for message ({}) from multiple nodes: {} and {} -- This message has been processed multiple times! Message content:\n{}",
+                            id, ackStoreNode(firstFromValue), message.getFrom(), content);
             LwCommServiceImpl.getServiceImpl().getStatistics().incOutOfOrderAckCount();
         }
-        LwCommServiceImpl.getServiceImpl().getStatistics().setReceivedAckStoreSize(receivedAckStore.size());
+    }
+
+    private Object ackStoreNode(int value) {
+        return value == UNKNOWN_NODE_VALUE ? "unknown node" : ackStoreNodes[value - 1];
     }
 
     private void handleNack(LwCommMessage message) {
@@ -296,15 +403,24 @@ public final class LwCommListenerHandler extends SimpleChannelInboundHandler<Dat
     private class DeliverMessageHandler implements Runnable {
 
         private LwCommMessage message;
+        private long queuedNanos;
 
         public DeliverMessageHandler(LwCommMessage message) {
             this.message = message;
+            this.queuedNanos = System.nanoTime();
         }
 
         @Override
         public void run() {
             MDC.put(LwCommUtil.LOGGER_MDC_MSGID_KEY, message.getId());
-            deliverMessage(message);
+            LwCommServiceImpl.getServiceImpl().getStatistics()
+                    .timeSpentInDeliveryQueue(message.getFrom(), message.getUserTag(),
+                            (System.nanoTime() - queuedNanos) / 1000);
+            try {
+                deliverMessage(message);
+            } finally {
+                LwCommServiceImpl.getServiceImpl().getStatistics().decReceiveWorkerBacklog();
+            }
         }
 
         private void deliverMessage(LwCommMessage message) {
@@ -313,11 +429,23 @@ public final class LwCommListenerHandler extends SimpleChannelInboundHandler<Dat
             try {
                 switch (receiveMode) {
                 case JMS_QUEUE:
-                    writeQueue(message.getTargetQueue(), message.getPayload());
+                    if (message.isBinary()) {
+                        // not expected: binary messages are rejected in this receive mode before the ACK is sent
+                        LwCommServiceImpl.LOGGER.error("Binary message {} accepted in JMS_QUEUE receive mode, dropped",
+                                message.getId());
+                        message.releasePayload();
+                    } else {
+                        writeQueue(message.getTargetQueue(), message.getPayload());
+                    }
                     break;
                 case LISTENER:
                     try {
-                        messageReceiver.onMessage(message.asIncomingTextMessage());
+                        if (message.isBinary()) {
+                            // the receiver takes over the payload
+                            messageReceiver.onMessage(message.asIncomingBinaryMessage());
+                        } else {
+                            messageReceiver.onMessage(message.asIncomingTextMessage());
+                        }
                     } catch (Exception ex) {
                         LwCommServiceImpl.LOGGER.error(
                                 "Error in group id locking or message receiver threw exception.", ex);
@@ -26,7 +26,10 @@ import io.netty.util.ThreadDeathWatcher;
 import io.netty.util.concurrent.GlobalEventExecutor;
 
 import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReadWriteLock;
@@ -40,13 +43,20 @@ import org.slf4j.LoggerFactory;
 import org.slf4j.MDC;
 
 import org.restcomm.imscf.common.lwcomm.config.Configuration;
+import org.restcomm.imscf.common.lwcomm.config.Node;
+import org.restcomm.imscf.common.lwcomm.config.Route;
+import org.restcomm.imscf.common.lwcomm.service.BinaryMessage;
 import org.restcomm.imscf.common.lwcomm.service.LwCommService;
 import org.restcomm.imscf.common.lwcomm.service.SendResult;
 import org.restcomm.imscf.common.lwcomm.service.SendResultFuture;
 import org.restcomm.imscf.common.lwcomm.service.TextMessage;
 import org.restcomm.imscf.common.lwcomm.service.impl.statistics.LwCommStatistics;
+import org.restcomm.imscf.common.lwcomm.service.messages.LwCommBinaryFormat;
+import org.restcomm.imscf.common.lwcomm.service.messages.LwCommFragmentFormat;
 import org.restcomm.imscf.common.lwcomm.service.messages.MessageSender;
 import org.restcomm.imscf.common.lwcomm.service.messages.MessageSenderStore;
+import org.restcomm.imscf.common.lwcomm.service.messages.RoutePlanCache;
+import org.restcomm.imscf.common.util.HashedWheelTimer;
 
 /**
  * LwCommService implementation.
@@ -58,6 +68,9 @@ public class LwCommServiceImpl implements LwCommService {
     public static final Logger LOGGER = LoggerFactory.getLogger(LwCommServiceImpl.class);
 
     private static final String STATISTICS_MBEAN_BASENAME = "org.restcomm.imscf.common.lwcomm:type=LwCommStatistics";
+    /** Precision of the retransmit timeouts. */
+    private static final int RETRANSMIT_TIMER_TICK_MS = 5;
+    private static final int RETRANSMIT_TIMER_WHEEL_SIZE = 1024;
 
     private static ReadWriteLock initShutdownLock = new ReentrantReadWriteLock();
 
@@ -65,16 +78,21 @@ public class LwCommServiceImpl implements LwCommService {
 
     private Configuration configuration;
     private NodeCatalog nodeCatalog;
+    private NodeLoadTracker nodeLoadTracker;
     private LwCommListener listener;
     private HeartbeatService heartbeatService;
     private MultithreadEventLoopGroup sendAndHeartbeatEventLoopGroup;
     private MultithreadEventLoopGroup receiveTransportEventLoopGroup;
     private NettyUtil nettyUtil;
+    private AckBatcher ackBatcher;
     private MessageSenderStore messageSenderStore;
+    private RoutePlanCache routePlanCache;
+    private HashedWheelTimer retransmitTimer;
     private LwCommStatistics statisticsMBean;
     private String statisticsMBeanName;
     private AcceptMode defaultAcceptMode;
     private ConcurrentHashMap<String, AcceptMode> overrideAcceptModes = new ConcurrentHashMap<>();
+    private Set<String> localCapabilities;
 
     private boolean inited = false;
 
@@ -89,6 +107,16 @@ public class LwCommServiceImpl implements LwCommService {
 
             service = new LwCommServiceImpl();
             service.configuration = config;
+            // Incoming binary messages are always accepted, so it is advertised regardless of the wire format
+            Set<String> capabilities = new HashSet<String>(config.getLocalCapabilities());
+            capabilities.add(LwCommBinaryFormat.CAPABILITY);
+            capabilities.add(LwCommBinaryFormat.BATCH_CAPABILITY);
+            capabilities.add(LwCommFragmentFormat.CAPABILITY);
+            if (config.getReceiveMode() == Configuration.ReceiveMode.LISTENER && config.getMessageReceiver() != null
+                    && config.getMessageReceiver().acceptsBinaryMessages()) {
+                capabilities.add(BinaryMessage.CAPABILITY);
+            }
+            service.localCapabilities = Collections.unmodifiableSet(capabilities);
 
             // Create executors
             // TODO handle PoolConfigs with REFERENCE type
@@ -112,7 +140,9 @@ public class LwCommServiceImpl implements LwCommService {
 
             // Create node catalog
             service.nodeCatalog = new NodeCatalog(config.getNodesToExpectHbFrom(config.getLocalNode()),
-                    config.getHeartbeatTimeoutMs(), service.sendAndHeartbeatEventLoopGroup);
+                    config.getHeartbeatTimeoutMs(), config.getFailureDetectorPhiThreshold(),
+                    config.getFailureDetectorAcceptablePauseMs(), service.sendAndHeartbeatEventLoopGroup);
+            service.nodeLoadTracker = new NodeLoadTracker();
             // Create listener service
             service.listener = new LwCommListener(config, service.receiveTransportEventLoopGroup);
             // Create heartbeat service
@@ -120,10 +150,24 @@ public class LwCommServiceImpl implements LwCommService {
                     config.getHeartbeatIntervalMs(), service.sendAndHeartbeatEventLoopGroup);
             // Create message sender storage
             service.messageSenderStore = new MessageSenderStore();
+            service.routePlanCache = new RoutePlanCache(service.nodeCatalog);
+            service.retransmitTimer = new HashedWheelTimer("LwCommRetransmit", service.sendAndHeartbeatEventLoopGroup,
+                    RETRANSMIT_TIMER_TICK_MS, TimeUnit.MILLISECONDS, RETRANSMIT_TIMER_WHEEL_SIZE);
 
             // Create netty utility (message sending)
             service.nettyUtil = new NettyUtil(config, service.sendAndHeartbeatEventLoopGroup,
                     service.receiveTransportEventLoopGroup, service.listener.getChannelHandler());
+            if (config.getAckSendStrategy() == Configuration.AckSendStrategy.BATCHED) {
+                service.ackBatcher = new AckBatcher(config.getAckBatchDelayMs(), config.getAckBatchMaxIds(),
+                        service.sendAndHeartbeatEventLoopGroup, service.nettyUtil);
+                for (Route r : config.getAllRoutesToLocalNode()) {
+                    if (!r.getRetransmitPattern().isEmpty()
+                            && r.getRetransmitPattern().get(0) <= config.getAckBatchDelayMs()) {
+                        LOGGER.warn("ACK batch delay {}ms is not below the first retransmit interval of route {}",
+                                config.getAckBatchDelayMs(), r);
+                    }
+                }
+            }
 
             // Initialize statistics MBean
             try {
@@ -145,6 +189,10 @@ public class LwCommServiceImpl implements LwCommService {
             } catch (Exception ex) {
                 LOGGER.error("Error registering statistics mbean", ex);
             }
+            service.retransmitTimer.registerMBean(service.statisticsMBeanName.replace("type=LwCommStatistics",
+                    "type=LwCommRetransmitTimer"));
+            service.nodeCatalog.registerMBean(service.statisticsMBeanName.replace("type=LwCommStatistics",
+                    "type=LwCommNodeCatalog"));
             // Start services
             service.nettyUtil.start();
             service.nodeCatalog.start();
@@ -182,14 +230,74 @@ public class LwCommServiceImpl implements LwCommService {
         return nodeCatalog;
     }
 
+    public NodeLoadTracker getNodeLoadTracker() {
+        return nodeLoadTracker;
+    }
+
     public MultithreadEventLoopGroup getSendAndHeartbeatEventLoopGroup() {
         return sendAndHeartbeatEventLoopGroup;
     }
 
+    /** Returns the capabilities advertised in the heartbeats of the local node. */
+    public Set<String> getLocalCapabilities() {
+        return localCapabilities;
+    }
+
+    /**
+     * Returns true if messages to the given node should be sent in binary format, i.e. binary format is configured
+     * and the node advertised that it can receive it.
+     */
+    public boolean isBinaryWireFormatUsable(Node target) {
+        return configuration.getWireFormat() == Configuration.WireFormat.BINARY
+                && nodeCatalog.getCapabilities(target).contains(LwCommBinaryFormat.CAPABILITY);
+    }
+
+    /**
+     * Returns true if multi-id ACKs and coalesced messages can be sent to the given node,
+     * i.e. the node advertised that it can receive them.
+     */
+    public boolean isBatchingSupported(Node target) {
+        return nodeCatalog.getCapabilities(target).contains(LwCommBinaryFormat.BATCH_CAPABILITY);
+    }
+
+    /** Returns true if binary messages can be sent to the given node, i.e. its receiver accepts them. */
+    public boolean isBinaryMessageSupported(Node target) {
+        return nodeCatalog.getCapabilities(target).contains(BinaryMessage.CAPABILITY);
+    }
+
+    /** Returns true if datagrams can be sent to the given node in fragments, i.e. the node can reassemble them. */
+    public boolean isFragmentationSupported(Node target) {
+        return nodeCatalog.getCapabilities(target).contains(LwCommFragmentFormat.CAPABILITY);
+    }
+
+    /** Returns the ACK batcher, or null if the ack send strategy is not BATCHED. */
+    public AckBatcher getAckBatcher() {
+        return ackBatcher;
+    }
+
     public MessageSenderStore getMessageSenderStore() {
         return messageSenderStore;
     }
 
+    public RoutePlanCache getRoutePlanCache() {
+        return routePlanCache;
+    }
+
+    /** Returns the timer wheel of the retransmit timeouts of outgoing messages. */
+    public HashedWheelTimer getRetransmitTimer() {
+        return retransmitTimer;
+    }
+
+    /** Returns the store of the recently processed incoming message ids. */
+    public MessageIdStore getProcessedMessageStore() {
+        return listener.getProcessedMessageStore();
+    }
+
+    /** Returns the store of the recently received ACK ids. */
+    public MessageIdStore getReceivedAckStore() {
+        return listener.getReceivedAckStore();
+    }
+
     public LwCommStatistics getStatistics() {
         return statisticsMBean;
     }
@@ -215,6 +323,27 @@ public class LwCommServiceImpl implements LwCommService {
         return overrideAcceptModes.getOrDefault(tag, defaultAcceptMode);
     }
 
+    @Override
+    public boolean isCapabilitySupported(String targetRoute, String capability) {
+        Route route = configuration.getRouteByName(targetRoute);
+        if (route == null) {
+            return false;
+        }
+        // a node which is down gets no message, so it does not decide the format; its capabilities are checked again
+        // when it comes back, with its new heartbeats
+        boolean anyAlive = false;
+        for (Node n : route.getDestinations()) {
+            if (!nodeCatalog.isNodeAlive(n)) {
+                continue;
+            }
+            if (!nodeCatalog.getCapabilities(n).contains(capability)) {
+                return false;
+            }
+            anyAlive = true;
+        }
+        return anyAlive;
+    }
+
     @Override
     public SendResultFuture<SendResult> send(String targetRoute, TextMessage message) {
         MDC.put(LwCommUtil.LOGGER_MDC_MSGID_KEY, LwCommUtil.LOGGER_MDC_UNKNOWN_MSGID);
@@ -228,13 +357,36 @@ public class LwCommServiceImpl implements LwCommService {
                 return ret;
             }
             SendResultFutureImpl ret = new SendResultFutureImpl(message);
-            MessageSender ms = MessageSender.createNormal(targetRoute, message, ret);
-            if (ms == null) {
+            startSendCycle(MessageSender.createNormal(targetRoute, message, ret), ret);
+            return ret;
+        } finally {
+            initShutdownLock.readLock().unlock();
+            LOGGER.trace("END   LwCommServiceImpl.send({}, {})", targetRoute, message);
+        }
+    }
+
+    @Override
+    public SendResultFuture<SendResult> send(String targetRoute, BinaryMessage message) {
+        MDC.put(LwCommUtil.LOGGER_MDC_MSGID_KEY, LwCommUtil.LOGGER_MDC_UNKNOWN_MSGID);
+        LOGGER.trace("BEGIN LwCommServiceImpl.send({}, {})", targetRoute, message);
+        try {
+            initShutdownLock.readLock().lock();
+            // the original message is not kept, its payload is released when the sending is finished
+            SendResultFutureImpl ret = new SendResultFutureImpl(null);
+            if (!inited) {
+                LOGGER.error("LwCommService not initialized!");
+                message.release();
                 ret.done(SendResult.FAILURE);
-            } else {
-                ret.setMessageId(ms.getMessageId());
-                ms.startSendCycle();
+                return ret;
+            }
+            Route route = configuration.getRouteByName(targetRoute);
+            if (route != null && !route.getDestinations().stream().allMatch(this::isBinaryMessageSupported)) {
+                LOGGER.warn("Not all destinations of route {} accept binary messages, message not sent", targetRoute);
+                message.release();
+                ret.done(SendResult.FAILURE);
+                return ret;
             }
+            startSendCycle(MessageSender.createNormal(targetRoute, message, ret), ret);
             return ret;
         } finally {
             initShutdownLock.readLock().unlock();
@@ -242,6 +394,16 @@ public class LwCommServiceImpl implements LwCommService {
         }
     }
 
+    private void startSendCycle(MessageSender ms, SendResultFutureImpl ret) {
+        if (ms == null) {
+            ret.done(SendResult.FAILURE);
+        } else {
+            ret.setMessageId(ms.getMessageId());
+            ret.setMessageSender(ms);
+            ms.startSendCycle();
+        }
+    }
+
     @Override
     public void shutdown() {
         try {
@@ -259,7 +421,12 @@ public class LwCommServiceImpl implements LwCommService {
                 LOGGER.warn("Error unregistering statistics MBean", ex);
             }
             listener.shutdown();
+            if (ackBatcher != null) {
+                ackBatcher.flushAll();
+            }
             heartbeatService.shutdown();
+            retransmitTimer.shutdown();
+            nodeCatalog.stop();
             nettyUtil.shutdown();
             try {
                 sendAndHeartbeatEventLoopGroup.shutdownGracefully().await();
@@ -0,0 +1,255 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ */
+package org.restcomm.imscf.common.lwcomm.service.impl;
+
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stores the ids of the recently received messages with a small int value, to detect duplicates.
+ * <p>
+ * The message ids generated by LwComm are 6 random bytes in Base64, so they are stored as numbers in open addressing
+ * primitive hash tables instead of strings in a map; other ids are stored by their 64 bit hash. No object is
+ * allocated per entry. The tables are split into segments by the id, each guarded by its own lock, as the store is
+ * used by all receive transport threads.
+ * </p>
+ * <p>
+ * Expiry is done by generations: each segment has a current and a previous table. When the current one is older than
+ * the age, the previous table is dropped and the current one becomes the previous. So an entry is kept at least for
+ * the age and at most for twice the age, without a timestamp per entry. The generations are switched when the
+ * segment is accessed.
+ * </p>
+ */
+public final class MessageIdStore {
+
+    /** Returned when the id is not in the store. Not a valid value. */
+    public static final int ABSENT = 0;
+
+    private static final int INITIAL_CAPACITY = 64;
+    /** The numeric key of LwComm generated ids has this bit set, hashed ids do not. A key is never 0. */
+    private static final long NUMERIC_KEY_FLAG = 1L << 63;
+
+    private final long ageNanos;
+    private final Segment[] segments;
+    private final int segmentMask;
+
+    /**
+     * Creates a store.
+     * @param ageSeconds the minimum time an entry is kept; if 0, nothing is stored
+     * @param concurrency the expected number of threads using the store
+     */
+    public MessageIdStore(int ageSeconds, int concurrency) {
+        this.ageNanos = TimeUnit.SECONDS.toNanos(ageSeconds);
+        int count = Integer.highestOneBit(Math.max(1, concurrency) * 4 - 1) << 1;
+        segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment();
+        }
+        segmentMask = count - 1;
+    }
+
+    /**
+     * Stores the value for the id if it is not in the store yet.
+     * @param value a value other than {@link #ABSENT}
+     * @return the value already stored for the id, or {@link #ABSENT} if the value has been stored now
+     */
+    public int putIfAbsent(String id, int value) {
+        if (value == ABSENT) {
+            throw new IllegalArgumentException("Invalid value: " + value);
+        }
+        if (ageNanos == 0) {
+            return ABSENT;
+        }
+        long key = key(id);
+        return segment(key).putIfAbsent(key, value, System.nanoTime());
+    }
+
+    /** Returns the value stored for the id, or {@link #ABSENT}. */
+    public int get(String id) {
+        if (ageNanos == 0) {
+            return ABSENT;
+        }
+        long key = key(id);
+        return segment(key).get(key, System.nanoTime());
+    }
+
+    /** The number of ids in the store, including the ones older than the age but not evicted yet. */
+    public long size() {
+        long ret = 0;
+        for (Segment s : segments) {
+            ret += s.size();
+        }
+        return ret;
+    }
+
+    /** The number of ids evicted from the store since it has been created. */
+    public long getEvictionCount() {
+        long ret = 0;
+        for (Segment s : segments) {
+            ret += s.getEvictionCount();
+        }
+        return ret;
+    }
+
+    private Segment segment(long key) {
+        return segments[mix(key) >>> 16 & segmentMask];
+    }
+
+    static long key(String id) {
+        if (id.length() == 8) {
+            try {
+                byte[] bytes = Base64.getDecoder().decode(id);
+                long ret = 0;
+                for (byte b : bytes) {
+                    ret = ret << 8 | b & 0xFF;
+                }
+                return ret | NUMERIC_KEY_FLAG;
+            } catch (IllegalArgumentException e) {
+                // not a generated id, hashed below
+            }
+        }
+        long h = 1125899906842597L;
+        for (int i = 0; i < id.length(); i++) {
+            h = 31 * h + id.charAt(i);
+        }
+        h &= ~NUMERIC_KEY_FLAG;
+        return h == 0 ? 1 : h;
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ h >>> 32);
+    }
+
+    /** A current and a previous table, guarded by the segment monitor. */
+    private final class Segment {
+        private Table current = new Table(INITIAL_CAPACITY);
+        private Table previous = new Table(INITIAL_CAPACITY);
+        private long currentSince = System.nanoTime();
+        private long evictionCount;
+
+        synchronized int putIfAbsent(long key, int value, long now) {
+            rotate(now);
+            int ret = current.get(key);
+            if (ret == ABSENT) {
+                ret = previous.get(key);
+            }
+            if (ret == ABSENT) {
+                current.put(key, value);
+            }
+            return ret;
+        }
+
+        synchronized int get(long key, long now) {
+            rotate(now);
+            int ret = current.get(key);
+            return ret != ABSENT ? ret : previous.get(key);
+        }
+
+        synchronized int size() {
+            return current.size + previous.size;
+        }
+
+        synchronized long getEvictionCount() {
+            return evictionCount;
+        }
+
+        private void rotate(long now) {
+            long elapsed = now - currentSince;
+            if (elapsed < ageNanos) {
+                return;
+            }
+            evictionCount += previous.size;
+            previous.clear();
+            if (elapsed >= 2 * ageNanos) {
+                // the current entries are old enough as well
+                evictionCount += current.size;
+                current.clear();
+            } else {
+                // the cleared table is reused as the new current one
+                Table t = previous;
+                previous = current;
+                current = t;
+            }
+            currentSince = now;
+        }
+    }
+
+    /** Open addressing hash table with linear probing, 0 key means an empty slot. */
+    private static final class Table {
+        private long[] keys;
+        private int[] values;
+        private int size;
+
+        Table(int capacity) {
+            keys = new long[capacity];
+            values = new int[capacity];
+        }
+
+        int get(long key) {
+            int mask = keys.length - 1;
+            for (int i = mix(key) & mask;; i = i + 1 & mask) {
+                long k = keys[i];
+                if (k == key) {
+                    return values[i];
+                } else if (k == 0) {
+                    return ABSENT;
+                }
+            }
+        }
+
+        /** Puts a key which is not in the table. */
+        void put(long key, int value) {
+            if (size + 1 > keys.length >> 1) {
+                resize();
+            }
+            insert(key, value);
+            size++;
+        }
+
+        private void insert(long key, int value) {
+            int mask = keys.length - 1;
+            int i = mix(key) & mask;
+            while (keys[i] != 0) {
+                i = i + 1 & mask;
+            }
+            keys[i] = key;
+            values[i] = value;
+        }
+
+        private void resize() {
+            long[] oldKeys = keys;
+            int[] oldValues = values;
+            keys = new long[oldKeys.length << 1];
+            values = new int[oldKeys.length << 1];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) {
+                    insert(oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+
+        void clear() {
+            // the arrays are kept, as the next generation is likely to be of similar size
+            Arrays.fill(keys, 0);
+            size = 0;
+        }
+    }
+}
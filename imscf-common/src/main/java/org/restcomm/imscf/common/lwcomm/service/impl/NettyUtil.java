@@ -19,27 +19,42 @@
 package org.restcomm.imscf.common.lwcomm.service.impl;
 
 import java.net.InetSocketAddress;
+import java.nio.CharBuffer;
 import java.security.SecureRandom;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.slf4j.MDC;
 
 import org.restcomm.imscf.common.lwcomm.config.Configuration;
 import org.restcomm.imscf.common.lwcomm.config.Node;
+import org.restcomm.imscf.common.lwcomm.service.messages.LwCommBinaryFormat;
+import org.restcomm.imscf.common.lwcomm.service.messages.LwCommFragmentFormat;
 import org.restcomm.imscf.common.lwcomm.service.messages.LwCommMessage;
+import org.restcomm.imscf.common.lwcomm.service.messages.MessageSender;
 import io.netty.bootstrap.Bootstrap;
-import io.netty.buffer.Unpooled;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
 import io.netty.channel.MultithreadEventLoopGroup;
+import io.netty.channel.WriteBufferWaterMark;
 import io.netty.channel.epoll.Epoll;
 import io.netty.channel.epoll.EpollDatagramChannel;
 import io.netty.channel.socket.DatagramChannel;
@@ -52,7 +67,7 @@ import io.netty.util.CharsetUtil;
  * @author Miklos Pocsaji
  *
  */
-public class NettyUtil {
+public final class NettyUtil {
 
     private MultithreadEventLoopGroup sendExecutor;
     private MultithreadEventLoopGroup receiveExecutor;
@@ -63,6 +78,16 @@ public class NettyUtil {
     private BlockingDeque<Channel> availableChannels = new LinkedBlockingDeque<Channel>();
     private Set<Channel> allChannels = new HashSet<Channel>();
     private Iterator<Integer> ports;
+    private int coalesceMaxBytes;
+    private ConcurrentHashMap<Node, CoalescingSender> coalescingSenders = new ConcurrentHashMap<>();
+    private Configuration.SendMode sendMode;
+    private int highWaterMark;
+    private int lowWaterMark;
+    /** The bound channels in DIRECT send mode, written without checkout. Null in POOLED mode. */
+    private Channel[] directChannels;
+    private int maxDatagramBytes;
+    private String localNodeName;
+    private AtomicInteger nextDatagramId = new AtomicInteger();
 
     /**
      * The only constructor.
@@ -83,6 +108,12 @@ public class NettyUtil {
             ports = new SecureRandom().ints(clientPortRange.getPortMin(), clientPortRange.getPortMax() + 1).iterator();
         }
         this.localHost = config.getLocalNode().getHost();
+        this.coalesceMaxBytes = config.getCoalesceMaxBytes();
+        this.sendMode = config.getSendMode();
+        this.highWaterMark = config.getSendHighWaterMarkBytes();
+        this.lowWaterMark = config.getSendLowWaterMarkBytes();
+        this.maxDatagramBytes = config.getMaxDatagramBytes();
+        this.localNodeName = config.getLocalNodeName();
     }
 
     public void start() {
@@ -91,7 +122,11 @@ public class NettyUtil {
 
         Bootstrap b = new Bootstrap();
         Class<? extends DatagramChannel> chClass = epoll ? EpollDatagramChannel.class : NioDatagramChannel.class;
-        b.group(receiveExecutor).channel(chClass).handler(new ChannelInitializer<Channel>() {
+        b.group(receiveExecutor).channel(chClass).option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT);
+        if (sendMode == Configuration.SendMode.DIRECT) {
+            b.option(ChannelOption.WRITE_BUFFER_WATER_MARK, new WriteBufferWaterMark(lowWaterMark, highWaterMark));
+        }
+        b.handler(new ChannelInitializer<Channel>() {
             @Override
             protected void initChannel(Channel channel) throws Exception {
                 channel.pipeline().addLast(channelHandler);
@@ -108,7 +143,11 @@ public class NettyUtil {
         } catch (InterruptedException e) {
             LwCommServiceImpl.LOGGER.error("await() interrupted", e);
         }
-        LwCommServiceImpl.LOGGER.info("NettyUtil initialized {} outbound channels.", availableChannels.size());
+        if (sendMode == Configuration.SendMode.DIRECT && !availableChannels.isEmpty()) {
+            directChannels = availableChannels.toArray(new Channel[availableChannels.size()]);
+        }
+        LwCommServiceImpl.LOGGER.info("NettyUtil initialized {} outbound channels, send mode: {}",
+                availableChannels.size(), sendMode);
     }
 
     public void shutdown() {
@@ -124,10 +163,201 @@ public class NettyUtil {
     public void sendMessage(final Node target, final LwCommMessage message) {
         MDC.put(LwCommUtil.LOGGER_MDC_MSGID_KEY, message.getId());
         LwCommServiceImpl.LOGGER.debug("BEGIN sendMessage()");
-        sendExecutor.execute(new SenderExecutor(target, message));
+        if (coalesceMaxBytes > 0 && message.getType() == LwCommMessage.Type.NORMAL
+                && LwCommServiceImpl.getServiceImpl().isBinaryWireFormatUsable(target)
+                && LwCommServiceImpl.getServiceImpl().isBatchingSupported(target)) {
+            // queued messages are encoded later, the payload must stay valid until then
+            message.retainPayload();
+            coalescingSenders.computeIfAbsent(target, CoalescingSender::new).add(message);
+        } else if (directChannels != null) {
+            Channel ch = getDirectChannel(target, message);
+            // no listener is needed, as the channel is not returned anywhere; write errors reach the channel handler
+            try {
+                writeDatagram(ch, encode(message, target, ch.alloc()), target, new InetSocketAddress(
+                        target.getHost(), target.getPort()), true);
+                ch.flush();
+            } catch (RuntimeException e) {
+                LwCommServiceImpl.LOGGER.error("Cannot send message {} to {}", message.getId(), target, e);
+                sendFailed(message.getId(), target);
+            }
+        } else {
+            message.retainPayload();
+            sendExecutor.execute(new SenderExecutor(target, message));
+        }
+        LwCommServiceImpl.LOGGER.debug("  END sendMessage()");
+    }
+
+    /**
+     * Sends the same message to more nodes (MULTICAST routes). The message is encoded once per wire format and the
+     * targets get duplicates of the same buffer. The message is not coalesced with others.
+     */
+    public void sendMessage(final Node[] targets, final LwCommMessage message) {
+        MDC.put(LwCommUtil.LOGGER_MDC_MSGID_KEY, message.getId());
+        LwCommServiceImpl.LOGGER.debug("BEGIN sendMessage() to {} nodes", targets.length);
+        if (directChannels != null) {
+            try {
+                writeToAll(null, targets, message);
+            } catch (RuntimeException e) {
+                LwCommServiceImpl.LOGGER.error("Cannot send message {} to {} nodes", message.getId(), targets.length,
+                        e);
+                for (Node target : targets) {
+                    sendFailed(message.getId(), target);
+                }
+            }
+        } else {
+            message.retainPayload();
+            sendExecutor.execute(new MulticastSenderExecutor(targets, message));
+        }
         LwCommServiceImpl.LOGGER.debug("  END sendMessage()");
     }
 
+    /**
+     * Writes and flushes the message to all the targets on the given channel, or on the channel of each target in
+     * DIRECT send mode if the channel is null.
+     * @return the future of the last write, null if nothing has been written
+     */
+    private ChannelFuture writeToAll(Channel pooledChannel, Node[] targets, LwCommMessage message) {
+        int binaryCount = 0;
+        for (Node target : targets) {
+            if (isBinaryFormatUsed(message, target)) {
+                binaryCount++;
+            }
+        }
+        int textCount = targets.length - binaryCount;
+        // all the channels use the pooled allocator, see start()
+        ByteBuf binary = binaryCount > 0 ? LwCommBinaryFormat.encode(message, PooledByteBufAllocator.DEFAULT) : null;
+        ByteBuf text;
+        try {
+            text = textCount > 0 ? encodeText(message, PooledByteBufAllocator.DEFAULT) : null;
+        } catch (RuntimeException e) {
+            if (binary != null) {
+                binary.release();
+            }
+            throw e;
+        }
+        // each target releases its duplicate once it has been written or dropped
+        if (binaryCount > 1) {
+            binary.retain(binaryCount - 1);
+        }
+        if (textCount > 1) {
+            text.retain(textCount - 1);
+        }
+        ChannelFuture last = null;
+        for (Node target : targets) {
+            ByteBuf datagram = (isBinaryFormatUsed(message, target) ? binary : text).duplicate();
+            InetSocketAddress address = new InetSocketAddress(target.getHost(), target.getPort());
+            if (pooledChannel == null) {
+                Channel ch = getDirectChannel(target, message);
+                writeDatagram(ch, datagram, target, address, true);
+                ch.flush();
+            } else {
+                last = writeDatagram(pooledChannel, datagram, target, address, false);
+            }
+        }
+        if (pooledChannel != null) {
+            pooledChannel.flush();
+        }
+        return last;
+    }
+
+    /**
+     * Returns false if a new message to the target should not be sent because the outbound buffer of its channel is
+     * above the high water mark. Always true in POOLED send mode, where the sender waits for a free channel instead.
+     */
+    public boolean isWritable(Node target, LwCommMessage message) {
+        return directChannels == null || getDirectChannel(target, message).isWritable();
+    }
+
+    /**
+     * Chooses the channel of a message in DIRECT send mode. Messages of the same group go through the same channel,
+     * so they are written in the order they are sent.
+     */
+    private Channel getDirectChannel(Node target, LwCommMessage message) {
+        String groupId = message.getGroupId();
+        return getDirectChannel(groupId != null ? groupId.hashCode() : target.hashCode());
+    }
+
+    private Channel getDirectChannel(int hash) {
+        return directChannels[(hash & Integer.MAX_VALUE) % directChannels.length];
+    }
+
+    /**
+     * Encodes the message to be sent to the given node into a buffer allocated from the allocator.
+     * Binary format is used if it is configured and the target supports it, text format otherwise.
+     */
+    static ByteBuf encode(LwCommMessage message, Node target, ByteBufAllocator alloc) {
+        if (isBinaryFormatUsed(message, target)) {
+            return LwCommBinaryFormat.encode(message, alloc);
+        }
+        return encodeText(message, alloc);
+    }
+
+    private static boolean isBinaryFormatUsed(LwCommMessage message, Node target) {
+        return message.getType() != LwCommMessage.Type.HEARTBEAT
+                && LwCommServiceImpl.getServiceImpl().isBinaryWireFormatUsable(target);
+    }
+
+    private static ByteBuf encodeText(LwCommMessage message, ByteBufAllocator alloc) {
+        return ByteBufUtil.encodeString(alloc, CharBuffer.wrap(message.toRawMessage()), CharsetUtil.UTF_8);
+    }
+
+    /**
+     * Writes (without flushing) a datagram to the target on a pooled channel. The datagram is released if the write
+     * fails with an exception.
+     * @return the future of the last write
+     */
+    private ChannelFuture write(Channel ch, ByteBuf datagram, Node target) {
+        try {
+            return writeDatagram(ch, datagram, target, new InetSocketAddress(target.getHost(), target.getPort()),
+                    false);
+        } catch (RuntimeException e) {
+            if (datagram.refCnt() > 0) {
+                datagram.release();
+            }
+            throw e;
+        }
+    }
+
+    /** Fails the message towards the target, as it could not be encoded or written. */
+    private static void sendFailed(String messageId, Node target) {
+        MessageSender ms = LwCommServiceImpl.getServiceImpl().getMessageSenderStore().getMessageSender(messageId);
+        if (ms != null) {
+            ms.sendFailed(target);
+        }
+    }
+
+    /**
+     * Writes (without flushing) a datagram to the target. If it is larger than the maximum datagram size and the
+     * target can reassemble fragments, it is written in fragments, otherwise in one piece.
+     * @param voidPromise if true, the writes use the void promise of the channel and the returned future is unusable
+     * @return the future of the last write
+     */
+    private ChannelFuture writeDatagram(Channel ch, ByteBuf datagram, Node target, InetSocketAddress address,
+            boolean voidPromise) {
+        int length = datagram.readableBytes();
+        if (length <= maxDatagramBytes
+                || !LwCommServiceImpl.getServiceImpl().isFragmentationSupported(target)) {
+            DatagramPacket dp = new DatagramPacket(datagram, address);
+            return voidPromise ? ch.write(dp, ch.voidPromise()) : ch.write(dp);
+        }
+        List<ByteBuf> fragments;
+        try {
+            fragments = LwCommFragmentFormat.fragment(datagram, localNodeName, nextDatagramId.incrementAndGet(),
+                    maxDatagramBytes, ch.alloc());
+        } catch (IllegalArgumentException e) {
+            LwCommServiceImpl.LOGGER.error("Cannot send datagram of {} bytes to {}", length, target, e);
+            return ch.newSucceededFuture();
+        }
+        LwCommServiceImpl.LOGGER.debug("Sending datagram to {} in {} fragments", target, fragments.size());
+        LwCommServiceImpl.getServiceImpl().getStatistics().incFragmentedDatagramCount();
+        ChannelFuture last = null;
+        for (ByteBuf fragment : fragments) {
+            DatagramPacket dp = new DatagramPacket(fragment, address);
+            last = voidPromise ? ch.write(dp, ch.voidPromise()) : ch.write(dp);
+        }
+        return last;
+    }
+
     private int pickBindPort() {
         if (clientPortRange == null || clientPortRange == Configuration.NO_CLIENT_PORT_RANGE) {
             return 0;
@@ -194,24 +424,222 @@ public class NettyUtil {
         public void run() {
             MDC.put(LwCommUtil.LOGGER_MDC_MSGID_KEY, message.getId());
             LwCommServiceImpl.LOGGER.trace("BEGIN NettyUtil.SenderExecutor.run()");
+            Channel ch = null;
+            boolean written = false;
             try {
                 long then = System.nanoTime();
-                Channel ch = availableChannels.takeFirst();
+                ch = availableChannels.takeFirst();
                 long now = System.nanoTime();
                 long delay = (now - then) / 1000;
                 LwCommServiceImpl.LOGGER.trace("Waited for an available channel {}us", delay);
                 LwCommServiceImpl.getServiceImpl().getStatistics().timeSpentWaitingForChannel(delay);
-                DatagramPacket dp = new DatagramPacket(
-                        Unpooled.copiedBuffer(message.toRawMessage(), CharsetUtil.UTF_8), new InetSocketAddress(
-                                target.getHost(), target.getPort()));
-                ch.writeAndFlush(dp).addListener(new WriteFinishedListener(message.getId()));
+                ChannelFuture cf = write(ch, encode(message, target, ch.alloc()), target);
+                ch.flush();
+                cf.addListener(new WriteFinishedListener(message.getId()));
+                written = true;
             } catch (InterruptedException e) {
                 LwCommServiceImpl.LOGGER.trace("Interrupted while waiting for free channel to send message", e);
+            } catch (RuntimeException e) {
+                LwCommServiceImpl.LOGGER.error("Cannot send message {} to {}", message.getId(), target, e);
+                sendFailed(message.getId(), target);
+            } finally {
+                if (ch != null && !written) {
+                    // the listener returns the channel only if the write has been issued
+                    availableChannels.addLast(ch);
+                }
+                message.releasePayload();
             }
             LwCommServiceImpl.LOGGER.trace("  END NettyUtil.SenderExecutor.run()");
         }
     }
 
+    /**
+     * Task for sending a message to more nodes on one channel.
+     */
+    private class MulticastSenderExecutor implements Runnable {
+        private Node[] targets;
+        private LwCommMessage message;
+
+        public MulticastSenderExecutor(Node[] targets, LwCommMessage message) {
+            this.targets = targets;
+            this.message = message;
+        }
+
+        public void run() {
+            MDC.put(LwCommUtil.LOGGER_MDC_MSGID_KEY, message.getId());
+            LwCommServiceImpl.LOGGER.trace("BEGIN NettyUtil.MulticastSenderExecutor.run()");
+            Channel ch = null;
+            boolean written = false;
+            try {
+                long then = System.nanoTime();
+                ch = availableChannels.takeFirst();
+                long delay = (System.nanoTime() - then) / 1000;
+                LwCommServiceImpl.getServiceImpl().getStatistics().timeSpentWaitingForChannel(delay);
+                ChannelFuture last = writeToAll(ch, targets, message);
+                if (last != null) {
+                    last.addListener(new WriteFinishedListener(message.getId()));
+                    written = true;
+                }
+            } catch (InterruptedException e) {
+                LwCommServiceImpl.LOGGER.trace("Interrupted while waiting for free channel to send message", e);
+            } catch (RuntimeException e) {
+                LwCommServiceImpl.LOGGER.error("Cannot send message {} to {} nodes", message.getId(), targets.length,
+                        e);
+                for (Node target : targets) {
+                    sendFailed(message.getId(), target);
+                }
+            } finally {
+                if (ch != null && !written) {
+                    // the listener returns the channel only if the write has been issued
+                    availableChannels.addLast(ch);
+                }
+                message.releasePayload();
+            }
+            LwCommServiceImpl.LOGGER.trace("  END NettyUtil.MulticastSenderExecutor.run()");
+        }
+    }
+
+    /**
+     * Sends the messages to one node, coalescing the ones waiting in the queue into as few datagrams as possible.
+     * Only one drain task runs at a time per node. Messages are not held back to wait for others, so coalescing
+     * only happens when messages are produced faster than they can be sent.
+     */
+    private class CoalescingSender implements Runnable {
+        private Node target;
+        private InetSocketAddress address;
+        private ConcurrentLinkedQueue<LwCommMessage> queue = new ConcurrentLinkedQueue<LwCommMessage>();
+        private AtomicBoolean scheduled = new AtomicBoolean();
+
+        public CoalescingSender(Node target) {
+            this.target = target;
+            this.address = new InetSocketAddress(target.getHost(), target.getPort());
+        }
+
+        public void add(LwCommMessage message) {
+            queue.add(message);
+            if (scheduled.compareAndSet(false, true)) {
+                sendExecutor.execute(this);
+            }
+        }
+
+        public void run() {
+            LwCommServiceImpl.LOGGER.trace("BEGIN NettyUtil.CoalescingSender.run()");
+            // true while this task owns the scheduled flag
+            boolean owner = true;
+            try {
+                while (owner) {
+                    drain();
+                    scheduled.set(false);
+                    // A message may have been added after the queue was found empty but before the flag was cleared
+                    owner = !queue.isEmpty() && scheduled.compareAndSet(false, true);
+                }
+            } catch (InterruptedException e) {
+                LwCommServiceImpl.LOGGER.trace("Interrupted while waiting for free channel to send message", e);
+            } finally {
+                if (owner) {
+                    // the remaining messages are sent by the task scheduled for the next message
+                    scheduled.set(false);
+                }
+            }
+            LwCommServiceImpl.LOGGER.trace("  END NettyUtil.CoalescingSender.run()");
+        }
+
+        private void drain() throws InterruptedException {
+            if (queue.isEmpty()) {
+                return;
+            }
+            Channel ch;
+            if (directChannels != null) {
+                ch = getDirectChannel(target.hashCode());
+            } else {
+                long then = System.nanoTime();
+                ch = availableChannels.takeFirst();
+                long delay = (System.nanoTime() - then) / 1000;
+                LwCommServiceImpl.getServiceImpl().getStatistics().timeSpentWaitingForChannel(delay);
+            }
+            ByteBuf datagram = null;
+            // the messages in the datagram being built
+            List<String> messageIds = new ArrayList<String>();
+            String lastId = null;
+            ChannelFuture lastWrite = null;
+            try {
+                LwCommMessage message;
+                while ((message = queue.poll()) != null) {
+                    MDC.put(LwCommUtil.LOGGER_MDC_MSGID_KEY, message.getId());
+                    ByteBuf frame;
+                    try {
+                        frame = LwCommBinaryFormat.encode(message, ch.alloc());
+                    } catch (RuntimeException e) {
+                        LwCommServiceImpl.LOGGER.error("Cannot encode message {} to {}", message.getId(), target, e);
+                        sendFailed(message.getId(), target);
+                        continue;
+                    } finally {
+                        message.releasePayload();
+                    }
+                    if (datagram != null && datagram.readableBytes() + frame.readableBytes() > coalesceMaxBytes) {
+                        ByteBuf full = datagram;
+                        datagram = null;
+                        lastWrite = write(ch, full, messageIds, lastWrite);
+                    }
+                    if (datagram == null) {
+                        datagram = ch.alloc().buffer(Math.max(coalesceMaxBytes, frame.readableBytes()));
+                        messageIds.clear();
+                    }
+                    try {
+                        datagram.writeBytes(frame);
+                    } finally {
+                        frame.release();
+                    }
+                    messageIds.add(message.getId());
+                    lastId = message.getId();
+                }
+                if (datagram != null) {
+                    ByteBuf full = datagram;
+                    datagram = null;
+                    lastWrite = write(ch, full, messageIds, lastWrite);
+                }
+                ch.flush();
+            } finally {
+                if (datagram != null) {
+                    datagram.release();
+                }
+                if (directChannels == null) {
+                    if (lastWrite != null) {
+                        // The channel is returned to the pool once the last datagram has been written
+                        lastWrite.addListener(new WriteFinishedListener(lastId));
+                    } else {
+                        availableChannels.addLast(ch);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Writes a datagram holding the given messages. If the write fails, the messages are failed.
+         * @return the future of the write, or the previous one if the write failed
+         */
+        private ChannelFuture write(Channel ch, ByteBuf datagram, List<String> messageIds, ChannelFuture previous) {
+            if (messageIds.size() > 1) {
+                LwCommServiceImpl.LOGGER.debug("Coalesced {} messages into one datagram to {}", messageIds.size(),
+                        target);
+                LwCommServiceImpl.getServiceImpl().getStatistics().incCoalescedDatagramCount();
+            }
+            try {
+                return writeDatagram(ch, datagram, target, address, directChannels != null);
+            } catch (RuntimeException e) {
+                LwCommServiceImpl.LOGGER.error("Cannot send datagram of {} messages to {}", messageIds.size(),
+                        target, e);
+                if (datagram.refCnt() > 0) {
+                    datagram.release();
+                }
+                for (String messageId : messageIds) {
+                    sendFailed(messageId, target);
+                }
+                return previous;
+            }
+        }
+    }
+
     /**
      * Runs when the message sending is finished. Puts back the channel to the available channels.
      * @author Miklos Pocsaji
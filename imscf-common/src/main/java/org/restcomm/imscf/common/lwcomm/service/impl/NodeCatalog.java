@@ -20,95 +20,349 @@ package org.restcomm.imscf.common.lwcomm.service.impl;
 
 import org.restcomm.imscf.common.lwcomm.config.Node;
 
+import java.lang.management.ManagementFactory;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.management.MBeanNotificationInfo;
+import javax.management.MBeanServer;
+import javax.management.Notification;
+import javax.management.NotificationBroadcasterSupport;
+import javax.management.ObjectName;
 
 /**
  * Stores if a remote node is reachable or not.
- * Schedules a task heartbeatTimeout later for each node - if the task is due, the remote node is marked unavailable.
- * If a heartbeat arrives for a node, the schedule above is reset and the node is marked available.
+ * <p>
+ * A heartbeat only stores its arrival time in a flat array. A single periodic sweeper task checks the time since the
+ * last heartbeat of each alive node, and marks the node not alive if it exceeds heartbeatTimeout, or earlier if the
+ * phi accrual failure detector suspects the node. Phi is the suspicion level derived from the mean and the deviation
+ * of the heartbeat intervals of the node: a phi of 8 means that a heartbeat this late would be expected once in
+ * 10^8 intervals. A heartbeat up to acceptablePauseMs later than the mean interval is not suspicious, so a GC pause
+ * of the remote node does not make it unavailable. If a heartbeat arrives from a node not alive, it is marked
+ * available immediately.
+ * </p>
+ * Liveness transitions are logged and sent as MBean notifications.
  * @author Miklos Pocsaji
  *
  */
-public class NodeCatalog {
+public class NodeCatalog extends NotificationBroadcasterSupport implements NodeCatalogMBean {
+
+    /** Notification type sent when a node becomes alive. */
+    public static final String NOTIFICATION_NODE_ALIVE = "lwcomm.node.alive";
+    /** Notification type sent when a node becomes not alive. */
+    public static final String NOTIFICATION_NODE_NOT_ALIVE = "lwcomm.node.notAlive";
+
+    /** Phi is only used after this many heartbeat intervals of the node have been measured. */
+    private static final int MIN_SAMPLES = 3;
+    /** Regular heartbeats would give a deviation near 0, where any jitter would make the node suspected. */
+    private static final double MIN_STD_DEVIATION_MS = 100;
+    /** Weight of a new interval in the smoothed mean and variance. */
+    private static final double SMOOTHING = 0.1;
 
     private int heartbeatTimeoutMs;
-    private Map<Node, NodeInfo> nodeInfoMap;
+    private long heartbeatTimeoutNanos;
+    private double phiThreshold;
+    private int acceptablePauseMs;
     private ScheduledExecutorService executor;
+    private ScheduledFuture<?> sweeper;
+    private Node[] nodes;
+    private Map<Node, Integer> indexes = new HashMap<Node, Integer>();
+    /** Arrival time (System.nanoTime()) of the last heartbeat of each node. */
+    private AtomicLongArray lastSeenNanos;
+    /** The alive flag of each node. Never modified, replaced under the monitor of the catalog on transitions. */
+    private volatile boolean[] alive;
+    private AtomicReferenceArray<Set<String>> capabilities;
+    /** Smoothed mean and variance of the heartbeat intervals and the number of intervals, guarded by the monitor. */
+    private double[] meanIntervalMs;
+    private double[] intervalVarianceMs2;
+    private int[] samples;
+    /** Incremented every time a node becomes alive or not alive. */
+    private final AtomicInteger aliveVersion = new AtomicInteger();
+    private final AtomicLong suspectedCount = new AtomicLong();
+    private final AtomicLong timedOutCount = new AtomicLong();
+    private final AtomicLong notificationSequence = new AtomicLong();
+    private ObjectName mbeanName;
 
-    public NodeCatalog(Collection<Node> allNodes, int heartbeatTimeoutMs, ScheduledExecutorService executor) {
+    public NodeCatalog(Collection<Node> allNodes, int heartbeatTimeoutMs, double phiThreshold, int acceptablePauseMs,
+            ScheduledExecutorService executor) {
         this.heartbeatTimeoutMs = heartbeatTimeoutMs;
+        this.heartbeatTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(heartbeatTimeoutMs);
+        this.phiThreshold = phiThreshold;
+        this.acceptablePauseMs = acceptablePauseMs;
         this.executor = executor;
-        this.nodeInfoMap = new HashMap<Node, NodeCatalog.NodeInfo>();
-        for (Node n : allNodes) {
-            NodeInfo ni = new NodeInfo();
-            nodeInfoMap.put(n, ni);
+        this.nodes = allNodes.toArray(new Node[allNodes.size()]);
+        for (int i = 0; i < nodes.length; i++) {
+            indexes.put(nodes[i], i);
+        }
+        this.lastSeenNanos = new AtomicLongArray(nodes.length);
+        this.alive = new boolean[nodes.length];
+        this.capabilities = new AtomicReferenceArray<Set<String>>(nodes.length);
+        for (int i = 0; i < nodes.length; i++) {
+            capabilities.set(i, Collections.emptySet());
         }
-        LwCommServiceImpl.LOGGER.info("NodeCatalog initialized, hb timeout: {}, nodeinfomap: {}", heartbeatTimeoutMs,
-                nodeInfoMap);
+        this.meanIntervalMs = new double[nodes.length];
+        this.intervalVarianceMs2 = new double[nodes.length];
+        this.samples = new int[nodes.length];
+        LwCommServiceImpl.LOGGER.info("NodeCatalog initialized, hb timeout: {}, phi threshold: {}, nodes: {}",
+                heartbeatTimeoutMs, phiThreshold, indexes.keySet());
     }
 
     public boolean isNodeAlive(Node n) {
-        return nodeInfoMap.get(n).alive;
+        Integer i = indexes.get(n);
+        return i != null && alive[i];
+    }
+
+    /**
+     * Returns the version of the set of alive nodes. The version changes whenever a node becomes alive or not alive,
+     * so information derived from the alive flags can be cached until the version changes.
+     */
+    public int getAliveVersion() {
+        return aliveVersion.get();
     }
 
     public boolean isInfoAvailable(Node n) {
-        return nodeInfoMap.containsKey(n);
+        return indexes.containsKey(n);
     }
 
     protected void start() {
-        for (Map.Entry<Node, NodeCatalog.NodeInfo> e : nodeInfoMap.entrySet()) {
-            NodeInfo ni = e.getValue();
-            ni.invalidator = executor.schedule(new InvalidatorTask(e.getKey()), heartbeatTimeoutMs,
-                    TimeUnit.MILLISECONDS);
+        long periodMs = Math.max(10, Math.min(100, heartbeatTimeoutMs / 10));
+        sweeper = executor.scheduleAtFixedRate(this::sweep, periodMs, periodMs, TimeUnit.MILLISECONDS);
+    }
+
+    protected void stop() {
+        if (sweeper != null) {
+            sweeper.cancel(false);
         }
+        unregisterMBean();
+    }
+
+    /**
+     * Returns the capabilities advertised by the node in its last heartbeat.
+     * Returns an empty set for unknown and not alive nodes.
+     */
+    public Set<String> getCapabilities(Node n) {
+        Integer i = indexes.get(n);
+        return i == null || !alive[i] ? Collections.emptySet() : capabilities.get(i);
     }
 
-    protected void heartbeatFromNode(Node n) {
-        NodeInfo ni = nodeInfoMap.get(n);
-        if (ni.invalidator != null && !ni.invalidator.isDone() && !ni.invalidator.isCancelled()) {
-            ni.invalidator.cancel(true);
+    protected void heartbeatFromNode(Node n, Set<String> capabilities) {
+        Integer index = indexes.get(n);
+        if (index == null) {
+            LwCommServiceImpl.LOGGER.debug("HB received from unexpected node {}, ignored", n);
+            return;
+        }
+        int i = index;
+        long now = System.nanoTime();
+        long previous = lastSeenNanos.getAndSet(i, now);
+        if (!capabilities.equals(this.capabilities.get(i))) {
+            LwCommServiceImpl.LOGGER.info("Capabilities of {}: {}", n, capabilities);
+            this.capabilities.set(i, capabilities);
         }
-        ni.invalidator = executor.schedule(new InvalidatorTask(n), heartbeatTimeoutMs, TimeUnit.MILLISECONDS);
-        if (!ni.alive) {
+        if (!recordInterval(i, (now - previous) / 1e6)) {
             LwCommServiceImpl.LOGGER.info("HB received from {}, marking as alive.", n);
+            setAlive(i, true, "heartbeat received");
         }
-        ni.alive = true;
     }
 
     /**
-     * Holds the following two information about the node.
-     * <li>alive flag</li>
-     * <li>the scheduled task which sets the alive flag to false (this task is cancelled and rescheduled when a hb arrives</li>
-     * @author Miklos Pocsaji
-     *
+     * Records the interval since the previous heartbeat of an alive node. Checked under the lock, so that the sweeper
+     * either sees the new heartbeat or marks the node not alive before this check.
+     * @return false if the node is not alive
      */
-    private static class NodeInfo {
-        private volatile boolean alive = false;
-        private volatile ScheduledFuture<?> invalidator;
+    private synchronized boolean recordInterval(int i, double intervalMs) {
+        if (!alive[i]) {
+            return false;
+        }
+        if (samples[i] == 0) {
+            meanIntervalMs[i] = intervalMs;
+            intervalVarianceMs2[i] = 0;
+        } else {
+            double diff = intervalMs - meanIntervalMs[i];
+            meanIntervalMs[i] += SMOOTHING * diff;
+            intervalVarianceMs2[i] = (1 - SMOOTHING) * (intervalVarianceMs2[i] + SMOOTHING * diff * diff);
+        }
+        if (samples[i] < Integer.MAX_VALUE) {
+            samples[i]++;
+        }
+        return true;
+    }
+
+    /** Returns the suspicion level of the node after the given time without a heartbeat, or 0 if not known yet. */
+    private synchronized double phi(int i, double elapsedMs) {
+        if (samples[i] < MIN_SAMPLES) {
+            return 0;
+        }
+        double mean = meanIntervalMs[i] + acceptablePauseMs;
+        double deviation = Math.max(MIN_STD_DEVIATION_MS, Math.sqrt(intervalVarianceMs2[i]));
+        // logistic approximation of the cumulative normal distribution
+        double y = (elapsedMs - mean) / deviation;
+        double e = Math.exp(-y * (1.5976 + 0.070566 * y * y));
+        return elapsedMs > mean ? -Math.log10(e / (1 + e)) : -Math.log10(1 - 1 / (1 + e));
+    }
+
+    private void sweep() {
+        try {
+            long now = System.nanoTime();
+            boolean[] current = alive;
+            for (int i = 0; i < nodes.length; i++) {
+                if (!current[i]) {
+                    continue;
+                }
+                long lastSeen = lastSeenNanos.get(i);
+                long elapsed = now - lastSeen;
+                if (elapsed > heartbeatTimeoutNanos) {
+                    if (markNotAlive(i, lastSeen, "no heartbeat in " + heartbeatTimeoutMs + "ms")) {
+                        LwCommServiceImpl.LOGGER.info("No HB received from {}, marked as not alive.", nodes[i]);
+                        timedOutCount.incrementAndGet();
+                    }
+                } else if (phiThreshold > 0) {
+                    double phi = phi(i, elapsed / 1e6);
+                    if (phi > phiThreshold && markNotAlive(i, lastSeen, "suspected, phi: " + phi)) {
+                        LwCommServiceImpl.LOGGER.info("No HB received from {} for {}ms, phi: {}, marked as not alive.",
+                                nodes[i], elapsed / 1000000, phi);
+                        suspectedCount.incrementAndGet();
+                    }
+                }
+            }
+        } catch (Exception e) {
+            LwCommServiceImpl.LOGGER.error("Error checking the heartbeats of the nodes", e);
+        }
     }
 
     /**
-     * The invalidator task.
-     * This task is scheduled for the hb timeout interval and is cancelled every time when a hb arrives.
-     * @author Miklos Pocsaji
-     *
+     * Marks the node not alive, unless a heartbeat has arrived since the sweeper read the given arrival time.
+     * @return true if the node has been marked not alive
      */
-    private class InvalidatorTask implements Runnable {
-        private Node nodeToInvalidate;
+    private boolean markNotAlive(int i, long lastSeen, String reason) {
+        synchronized (this) {
+            if (!alive[i] || lastSeenNanos.get(i) != lastSeen) {
+                return false;
+            }
+            updateAlive(i, false);
+        }
+        notifyAlive(i, false, reason);
+        return true;
+    }
 
-        public InvalidatorTask(Node nodeToInvalidate) {
-            this.nodeToInvalidate = nodeToInvalidate;
+    private void setAlive(int i, boolean value, String reason) {
+        synchronized (this) {
+            if (alive[i] == value) {
+                return;
+            }
+            updateAlive(i, value);
         }
+        notifyAlive(i, value, reason);
+    }
 
-        @Override
-        public void run() {
-            LwCommServiceImpl.LOGGER.info("No HB received from {}, marking as not alive.", nodeToInvalidate);
-            nodeInfoMap.get(nodeToInvalidate).alive = false;
+    private void updateAlive(int i, boolean value) {
+        assert Thread.holdsLock(this);
+        boolean[] copy = alive.clone();
+        copy[i] = value;
+        alive = copy;
+        if (!value) {
+            // the intervals before an outage say nothing about the ones after it
+            samples[i] = 0;
         }
+        aliveVersion.incrementAndGet();
+    }
+
+    private void notifyAlive(int i, boolean value, String reason) {
+        Notification n = new Notification(value ? NOTIFICATION_NODE_ALIVE : NOTIFICATION_NODE_NOT_ALIVE, this,
+                notificationSequence.incrementAndGet(), System.currentTimeMillis(), "LwComm node " + nodes[i].getName()
+                        + (value ? " is alive: " : " is not alive: ") + reason);
+        n.setUserData(nodes[i].getName());
+        sendNotification(n);
+    }
+
+    /** Registers the catalog as an MBean with the given name. */
+    public void registerMBean(String objectName) {
+        try {
+            MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+            ObjectName on = new ObjectName(objectName);
+            if (mbeanServer.isRegistered(on)) {
+                mbeanServer.unregisterMBean(on);
+            }
+            mbeanServer.registerMBean(this, on);
+            mbeanName = on;
+        } catch (Exception e) {
+            LwCommServiceImpl.LOGGER.warn("Cannot register MBean {} for the node catalog", objectName, e);
+        }
+    }
+
+    private void unregisterMBean() {
+        if (mbeanName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(mbeanName);
+        } catch (Exception e) {
+            LwCommServiceImpl.LOGGER.warn("Cannot unregister MBean {} of the node catalog", mbeanName, e);
+        }
+        mbeanName = null;
+    }
+
+    //
+    // MBean interface
+    //
+
+    @Override
+    public MBeanNotificationInfo[] getNotificationInfo() {
+        return new MBeanNotificationInfo[] { new MBeanNotificationInfo(new String[] { NOTIFICATION_NODE_ALIVE,
+                NOTIFICATION_NODE_NOT_ALIVE }, Notification.class.getName(),
+                "This notification is sent when a remote LwComm node becomes alive or not alive.") };
+    }
+
+    @Override
+    public String[] getNodeStates() {
+        long now = System.nanoTime();
+        boolean[] current = alive;
+        String[] ret = new String[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            long lastSeen = lastSeenNanos.get(i);
+            double elapsedMs = (now - lastSeen) / 1e6;
+            synchronized (this) {
+                ret[i] = String.format("%s: alive=%b, lastHeartbeatMsAgo=%s, meanIntervalMs=%.1f, stdDevMs=%.1f, "
+                        + "samples=%d, phi=%.2f", nodes[i].getName(), current[i], lastSeen == 0 ? "never"
+                        : String.valueOf(Math.round(elapsedMs)), meanIntervalMs[i], Math
+                        .sqrt(intervalVarianceMs2[i]), samples[i], current[i] ? phi(i, elapsedMs) : 0d);
+            }
+        }
+        return ret;
+    }
+
+    @Override
+    public int getAliveNodeCount() {
+        int ret = 0;
+        for (boolean b : alive) {
+            if (b) {
+                ret++;
+            }
+        }
+        return ret;
+    }
+
+    @Override
+    public double getPhiThreshold() {
+        return phiThreshold;
+    }
+
+    @Override
+    public long getSuspectedCount() {
+        return suspectedCount.get();
+    }
+
+    @Override
+    public long getTimedOutCount() {
+        return timedOutCount.get();
     }
 }
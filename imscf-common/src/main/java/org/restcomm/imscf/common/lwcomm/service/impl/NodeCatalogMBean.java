@@ -0,0 +1,42 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ */
+package org.restcomm.imscf.common.lwcomm.service.impl;
+
+/**
+ * MBean interface of {@link NodeCatalog}: the liveness of the remote nodes LwComm expects heartbeats from.
+ * Liveness transitions are sent as notifications of type {@link NodeCatalog#NOTIFICATION_NODE_ALIVE} and
+ * {@link NodeCatalog#NOTIFICATION_NODE_NOT_ALIVE}, with the node name as user data.
+ */
+public interface NodeCatalogMBean {
+
+    /** The state of each node: alive flag, time since the last heartbeat, heartbeat interval statistics and phi. */
+    String[] getNodeStates();
+
+    /** The number of nodes currently alive. */
+    int getAliveNodeCount();
+
+    /** The phi value above which a node is marked not alive before its heartbeat timeout, 0 if disabled. */
+    double getPhiThreshold();
+
+    /** The number of times a node has been marked not alive by the phi threshold, before its heartbeat timeout. */
+    long getSuspectedCount();
+
+    /** The number of times a node has been marked not alive because of the heartbeat timeout. */
+    long getTimedOutCount();
+}
@@ -0,0 +1,137 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ */
+package org.restcomm.imscf.common.lwcomm.service.impl;
+
+import org.restcomm.imscf.common.lwcomm.config.Node;
+import org.restcomm.imscf.common.lwcomm.config.Route.LoadBalancing;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tracks the load of the remote nodes as seen from the sending side and chooses the target of a LOADBALANCE route.
+ * <p>
+ * For each node, the number of outstanding (sent, but not yet acknowledged) messages and an exponentially weighted
+ * moving average of the ACK latency are kept. Interim timeouts count as a latency sample of the timeout, so an
+ * unresponsive node quickly becomes expensive. The cost of a node is <code>(outstanding + 1) * latency</code>.
+ * </p>
+ */
+public class NodeLoadTracker {
+
+    /** Weight of a new latency sample in the moving average. */
+    private static final double EWMA_WEIGHT = 0.1;
+    /** Latency assumed for a node without samples, so that new nodes are not flooded. */
+    private static final double INITIAL_LATENCY_US = 1000;
+
+    private final ConcurrentHashMap<Node, NodeLoad> loads = new ConcurrentHashMap<>();
+
+    /**
+     * Chooses the first target of a LOADBALANCE route for a new message. The other targets are tried as failover
+     * targets in the order following the chosen one.
+     * @param aliveTargets the alive targets of the route, not modified
+     * @param loadBalancing the load balancing mode of the route
+     * @return the index of the chosen target
+     */
+    public int chooseTarget(Node[] aliveTargets, LoadBalancing loadBalancing) {
+        int size = aliveTargets.length;
+        if (size < 2) {
+            return 0;
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int chosen = random.nextInt(size);
+        if (loadBalancing == LoadBalancing.LEAST_OUTSTANDING) {
+            // the scan starts at a random index, so ties are broken randomly
+            int start = chosen;
+            NodeLoad best = getLoad(aliveTargets[start]);
+            for (int i = 1; i < size; i++) {
+                int index = (start + i) % size;
+                NodeLoad nl = getLoad(aliveTargets[index]);
+                int diff = nl.outstanding.get() - best.outstanding.get();
+                if (diff < 0 || diff == 0 && nl.latencyUs < best.latencyUs) {
+                    best = nl;
+                    chosen = index;
+                }
+            }
+        } else if (loadBalancing == LoadBalancing.POWER_OF_TWO_CHOICES) {
+            // a second random target, different from the first one
+            int other = (chosen + 1 + random.nextInt(size - 1)) % size;
+            if (getLoad(aliveTargets[other]).cost() < getLoad(aliveTargets[chosen]).cost()) {
+                chosen = other;
+            }
+        }
+        return chosen;
+    }
+
+    /** A message was sent to the node and an ACK is expected. */
+    public void messageSent(Node n) {
+        getLoad(n).outstanding.incrementAndGet();
+    }
+
+    /**
+     * The ACK for a message arrived from a node after the given time.
+     * @param outstandingAt the node the message was counted as outstanding at, null if none. It differs from the
+     *        node of the ACK if a previous target ACKs the message after a failover.
+     * @param from the node the ACK arrived from, the latency is recorded for this node
+     * @param latencyUs the time since the first transmit to the node
+     */
+    public void ackReceived(Node outstandingAt, Node from, long latencyUs) {
+        if (outstandingAt != null) {
+            getLoad(outstandingAt).outstanding.decrementAndGet();
+        }
+        getLoad(from).addLatencySample(latencyUs);
+    }
+
+    /** No ACK arrived from the node in the given time, the message is retransmitted or sent to another node. */
+    public void timeout(Node n, long timeoutUs) {
+        getLoad(n).addLatencySample(timeoutUs);
+    }
+
+    /** The message sent to the node is no longer waiting for an ACK from it (failover, NACK, cancel). */
+    public void messageAbandoned(Node n) {
+        getLoad(n).outstanding.decrementAndGet();
+    }
+
+    /** Returns the load of each node as text, for statistics. */
+    public String[] getNodeLoads() {
+        return loads.entrySet().stream()
+                .map(e -> e.getKey().getName() + ": outstanding=" + e.getValue().outstanding.get()
+                        + ", ackLatencyUs=" + Math.round(e.getValue().latencyUs)).sorted().toArray(String[]::new);
+    }
+
+    private NodeLoad getLoad(Node n) {
+        NodeLoad nl = loads.get(n);
+        return nl != null ? nl : loads.computeIfAbsent(n, k -> new NodeLoad());
+    }
+
+    /** Load information of a node. */
+    private static final class NodeLoad {
+        private final AtomicInteger outstanding = new AtomicInteger();
+        /** Updated without synchronization: a sample lost in a race does not matter for an average. */
+        private volatile double latencyUs = INITIAL_LATENCY_US;
+
+        private void addLatencySample(long sampleUs) {
+            latencyUs += EWMA_WEIGHT * (sampleUs - latencyUs);
+        }
+
+        private double cost() {
+            return (outstanding.get() + 1) * latencyUs;
+        }
+    }
+}
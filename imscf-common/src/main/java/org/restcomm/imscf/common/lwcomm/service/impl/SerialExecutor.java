@@ -0,0 +1,160 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ */
+package org.restcomm.imscf.common.lwcomm.service.impl;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executor which runs the tasks submitted with the same key one after the other, in submission order.
+ * Tasks with a null key are passed to the delegate executor directly.
+ * <p>
+ * Every key has a mailbox with a queue and a state. The submitter which moves the state from idle to scheduled
+ * schedules the mailbox on the delegate, so at most one thread runs the tasks of a key at any time. A mailbox
+ * runs at most {@link #getFairnessLimit()} tasks in one turn, then it is rescheduled at the end of the delegate's
+ * queue, so a busy key cannot occupy a worker thread while other keys are waiting. When the queue is found empty,
+ * the runner goes idle and, if the queue is still empty, retires the mailbox and removes it from the map. A
+ * submitter finding its task in a retired mailbox takes it back and uses a new mailbox.
+ * </p>
+ */
+public class SerialExecutor {
+
+    /** The default number of tasks run for a key before giving the worker thread to other keys. */
+    public static final int DEFAULT_FAIRNESS_LIMIT = 32;
+
+    private static final int IDLE = 0;
+    private static final int SCHEDULED = 1;
+    private static final int RETIRED = 2;
+
+    private final ConcurrentHashMap<Object, Mailbox> mailboxes = new ConcurrentHashMap<Object, Mailbox>();
+    private final Executor delegate;
+    private final int fairnessLimit;
+    private volatile boolean stopped;
+
+    public SerialExecutor(Executor delegate) {
+        this(delegate, DEFAULT_FAIRNESS_LIMIT);
+    }
+
+    public SerialExecutor(Executor delegate, int fairnessLimit) {
+        if (fairnessLimit <= 0) {
+            throw new IllegalArgumentException("fairnessLimit must be positive: " + fairnessLimit);
+        }
+        this.delegate = delegate;
+        this.fairnessLimit = fairnessLimit;
+    }
+
+    public void execute(Runnable runnable, Object key) {
+        if (stopped) {
+            return;
+        }
+        if (key == null) {
+            delegate.execute(runnable);
+            return;
+        }
+        while (true) {
+            Mailbox mailbox = mailboxes.computeIfAbsent(key, Mailbox::new);
+            if (mailbox.offer(runnable)) {
+                return;
+            }
+            // The mailbox has just been retired, help removing it and use a new one
+            mailboxes.remove(key, mailbox);
+        }
+    }
+
+    public int getFairnessLimit() {
+        return fairnessLimit;
+    }
+
+    /** Returns the number of keys with pending tasks. */
+    public int getActiveKeyCount() {
+        return mailboxes.size();
+    }
+
+    public void shutdown() {
+        stopped = true;
+        mailboxes.clear();
+    }
+
+    /**
+     * The tasks of one key.
+     */
+    private final class Mailbox implements Runnable {
+        private final Object key;
+        private final ConcurrentLinkedQueue<Runnable> queue = new ConcurrentLinkedQueue<Runnable>();
+        /** IDLE, SCHEDULED or RETIRED. */
+        private final AtomicInteger state = new AtomicInteger(IDLE);
+
+        private Mailbox(Object key) {
+            this.key = key;
+        }
+
+        /** Adds the task, returns false if the mailbox is retired and cannot accept tasks any more. */
+        private boolean offer(Runnable runnable) {
+            if (state.get() == RETIRED) {
+                return false;
+            }
+            queue.add(runnable);
+            if (state.compareAndSet(IDLE, SCHEDULED)) {
+                delegate.execute(this);
+                return true;
+            }
+            if (state.get() == RETIRED) {
+                // Retired after the task was added. If the task is still there, nobody will run it from this
+                // mailbox, so take it back. Otherwise the last runner has already taken it.
+                return !queue.remove(runnable);
+            }
+            return true;
+        }
+
+        @Override
+        public void run() {
+            int processed = 0;
+            while (!stopped) {
+                Runnable r = queue.poll();
+                if (r == null) {
+                    state.set(IDLE);
+                    if (queue.isEmpty()) {
+                        // A submitter adding a task from now on either schedules the mailbox itself or sees it
+                        // retired and takes its task back
+                        if (state.compareAndSet(IDLE, RETIRED)) {
+                            mailboxes.remove(key, this);
+                        }
+                        return;
+                    }
+                    if (!state.compareAndSet(IDLE, SCHEDULED)) {
+                        // The submitter of the new task has scheduled the mailbox again
+                        return;
+                    }
+                    continue;
+                }
+                try {
+                    r.run();
+                } catch (Throwable t) {
+                    LwCommServiceImpl.LOGGER.error("Task for key {} threw exception", key, t);
+                }
+                if (++processed >= fairnessLimit) {
+                    delegate.execute(this);
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ */
+package org.restcomm.imscf.common.lwcomm.service.impl.statistics;
+
+import org.restcomm.imscf.common.lwcomm.config.Node;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Latency histograms of one hop (e.g. send-to-ACK round trip), kept in total, per peer node and per message tag.
+ * Histograms are created on first use. The number of distinct tags is limited, tags above the limit are
+ * recorded under {@link #OTHER_TAGS} so that a misbehaving client cannot make the statistics grow without bounds.
+ */
+final class LatencyStatistics {
+
+    static final int MAX_TAG_COUNT = 64;
+    static final String OTHER_TAGS = "<other>";
+    private static final String NO_TAG = "<none>";
+
+    private final LatencyHistogram total = new LatencyHistogram();
+    private final Map<String, LatencyHistogram> byNode = new ConcurrentSkipListMap<>();
+    private final Map<String, LatencyHistogram> byTag = new ConcurrentHashMap<>();
+
+    public void record(Node node, String tag, long microSeconds) {
+        total.record(microSeconds);
+        if (node != null) {
+            byNode.computeIfAbsent(node.getName(), n -> new LatencyHistogram()).record(microSeconds);
+        }
+        String key = tag == null ? NO_TAG : tag;
+        LatencyHistogram h = byTag.get(key);
+        if (h == null) {
+            h = byTag.computeIfAbsent(byTag.size() < MAX_TAG_COUNT ? key : OTHER_TAGS, t -> new LatencyHistogram());
+        }
+        h.record(microSeconds);
+    }
+
+    public LatencyHistogram getTotal() {
+        return total;
+    }
+
+    /**
+     * Lists the percentiles of the total, then of every node, then of every tag in alphabetical order.
+     * One line looks like <code>node EL1: count=1234, p50=180us, p99=950us, p99.9=2047us, max=3012us</code>.
+     */
+    public String[] getPercentiles() {
+        List<String> ret = new ArrayList<>(1 + byNode.size() + byTag.size());
+        ret.add(format("total", total));
+        byNode.forEach((name, h) -> ret.add(format("node " + name, h)));
+        new ConcurrentSkipListMap<>(byTag).forEach((tag, h) -> ret.add(format("tag " + tag, h)));
+        return ret.toArray(new String[ret.size()]);
+    }
+
+    public void reset() {
+        total.reset();
+        // Histograms are reset instead of removed so that concurrent recorders do not write into a lost instance.
+        byNode.values().forEach(LatencyHistogram::reset);
+        byTag.values().forEach(LatencyHistogram::reset);
+    }
+
+    private static String format(String name, LatencyHistogram h) {
+        return name + ": count=" + h.getCount() + ", p50=" + h.getValueAtPercentile(50) + "us, p99="
+                + h.getValueAtPercentile(99) + "us, p99.9=" + h.getValueAtPercentile(99.9) + "us, max=" + h.getMax()
+                + "us";
+    }
+}
@@ -18,6 +18,9 @@
  */
 package org.restcomm.imscf.common.lwcomm.service.impl.statistics;
 
+import org.restcomm.imscf.common.lwcomm.config.Node;
+import org.restcomm.imscf.common.lwcomm.service.impl.LwCommServiceImpl;
+
 import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
@@ -47,11 +50,16 @@ public class LwCommStatistics implements LwCommStatisticsMBean {
     private AtomicLong processedNackCount = new AtomicLong();
     private AtomicLong sentAckCount = new AtomicLong();
     private AtomicLong sentNackCount = new AtomicLong();
+    private AtomicLong sentMultiAckCount = new AtomicLong();
+    private AtomicLong coalescedDatagramCount = new AtomicLong();
+    private AtomicLong backpressureFailedMessageCount = new AtomicLong();
+    private AtomicLong fragmentedDatagramCount = new AtomicLong();
+    private AtomicLong reassembledDatagramCount = new AtomicLong();
+    private AtomicLong discardedReassemblyCount = new AtomicLong();
     private AtomicLong receivedHeartbeatCount = new AtomicLong();
     private AtomicLong sentHeartbeatCount = new AtomicLong();
     private long messageSenderStoreSize;
-    private long processedIncomingMessageStoreSize;
-    private long receivedAckStoreSize;
+    private AtomicLong receiveWorkerBacklog = new AtomicLong();
     private AtomicLong invalidMessageCount = new AtomicLong();
     private AtomicLong outOfOrderMessageCount = new AtomicLong();
     private AtomicLong outOfOrderAckCount = new AtomicLong();
@@ -60,10 +68,10 @@ public class LwCommStatistics implements LwCommStatisticsMBean {
     // Averages and maximums:
     //
 
-    private long[] timeChannelRead0Us = new long[AVERAGE_COUNT];
-    private AtomicInteger timeChannelRead0UsIndex = new AtomicInteger();
-    private long[] timeAckUs = new long[AVERAGE_COUNT];
-    private AtomicInteger timeAckUsIndex = new AtomicInteger();
+    private LatencyStatistics handlerLatencies = new LatencyStatistics();
+    private LatencyStatistics ackLatencies = new LatencyStatistics();
+    private LatencyStatistics deliveryQueueLatencies = new LatencyStatistics();
+    private volatile long latencyIntervalStartTimestamp;
     private long[] timeChannelWaitUs = new long[AVERAGE_COUNT];
     private AtomicInteger timeChannelWaitUsIndex = new AtomicInteger();
     private long[] timeWorker = new long[AVERAGE_COUNT];
@@ -71,6 +79,7 @@ public class LwCommStatistics implements LwCommStatisticsMBean {
 
     public LwCommStatistics() {
         startupTimestamp = System.currentTimeMillis();
+        latencyIntervalStartTimestamp = startupTimestamp;
     }
 
     //
@@ -133,6 +142,31 @@ public class LwCommStatistics implements LwCommStatisticsMBean {
         sentNackCount.incrementAndGet();
     }
 
+    public void addSentMultiAck(int ackCount) {
+        sentAckCount.addAndGet(ackCount);
+        sentMultiAckCount.incrementAndGet();
+    }
+
+    public void incCoalescedDatagramCount() {
+        coalescedDatagramCount.incrementAndGet();
+    }
+
+    public void incBackpressureFailedMessageCount() {
+        backpressureFailedMessageCount.incrementAndGet();
+    }
+
+    public void incFragmentedDatagramCount() {
+        fragmentedDatagramCount.incrementAndGet();
+    }
+
+    public void incReassembledDatagramCount() {
+        reassembledDatagramCount.incrementAndGet();
+    }
+
+    public void incDiscardedReassemblyCount() {
+        discardedReassemblyCount.incrementAndGet();
+    }
+
     public void incReceivedHeartbeatCount() {
         receivedHeartbeatCount.incrementAndGet();
     }
@@ -141,16 +175,16 @@ public class LwCommStatistics implements LwCommStatisticsMBean {
         sentHeartbeatCount.incrementAndGet();
     }
 
-    public void setMessageSenderStoreSize(long messageSenderStoreSize) {
-        this.messageSenderStoreSize = messageSenderStoreSize;
+    public void incReceiveWorkerBacklog() {
+        receiveWorkerBacklog.incrementAndGet();
     }
 
-    public void setProcessedIncomingMessageStoreSize(long processedIncomingMessageStoreSize) {
-        this.processedIncomingMessageStoreSize = processedIncomingMessageStoreSize;
+    public void decReceiveWorkerBacklog() {
+        receiveWorkerBacklog.decrementAndGet();
     }
 
-    public void setReceivedAckStoreSize(long receivedAckStoreSize) {
-        this.receivedAckStoreSize = receivedAckStoreSize;
+    public void setMessageSenderStoreSize(long messageSenderStoreSize) {
+        this.messageSenderStoreSize = messageSenderStoreSize;
     }
 
     public void incInvalidMessageCount() {
@@ -165,12 +199,28 @@ public class LwCommStatistics implements LwCommStatisticsMBean {
         outOfOrderAckCount.incrementAndGet();
     }
 
-    public void timeSpentInChannelRead0(long microSeconds) {
-        timeChannelRead0Us[Math.abs(timeChannelRead0UsIndex.getAndIncrement() % AVERAGE_COUNT)] = microSeconds;
+    /**
+     * @param from The sender of the (first) message in the datagram, null if unknown.
+     * @param tag The user tag of the (first) message in the datagram, may be null.
+     */
+    public void timeSpentInChannelRead0(Node from, String tag, long microSeconds) {
+        handlerLatencies.record(from, tag, microSeconds);
+    }
+
+    /**
+     * @param to The node which sent the ACK.
+     * @param tag The user tag of the acknowledged message, may be null.
+     */
+    public void timeForAck(Node to, String tag, long microSeconds) {
+        ackLatencies.record(to, tag, microSeconds);
     }
 
-    public void timeForAck(long microSeconds) {
-        timeAckUs[Math.abs(timeAckUsIndex.getAndIncrement() % AVERAGE_COUNT)] = microSeconds;
+    /**
+     * @param from The sender of the delivered message.
+     * @param tag The user tag of the delivered message, may be null.
+     */
+    public void timeSpentInDeliveryQueue(Node from, String tag, long microSeconds) {
+        deliveryQueueLatencies.record(from, tag, microSeconds);
     }
 
     public void timeSpentWaitingForChannel(long microSeconds) {
@@ -260,6 +310,36 @@ public class LwCommStatistics implements LwCommStatisticsMBean {
         return sentNackCount.get();
     }
 
+    @Override
+    public long getSentMultiAckCount() {
+        return sentMultiAckCount.get();
+    }
+
+    @Override
+    public long getCoalescedDatagramCount() {
+        return coalescedDatagramCount.get();
+    }
+
+    @Override
+    public long getBackpressureFailedMessageCount() {
+        return backpressureFailedMessageCount.get();
+    }
+
+    @Override
+    public long getFragmentedDatagramCount() {
+        return fragmentedDatagramCount.get();
+    }
+
+    @Override
+    public long getReassembledDatagramCount() {
+        return reassembledDatagramCount.get();
+    }
+
+    @Override
+    public long getDiscardedReassemblyCount() {
+        return discardedReassemblyCount.get();
+    }
+
     @Override
     public long getReceivedHeartbeatCount() {
         return receivedHeartbeatCount.get();
@@ -275,14 +355,39 @@ public class LwCommStatistics implements LwCommStatisticsMBean {
         return messageSenderStoreSize;
     }
 
+    @Override
+    public long getReceiveWorkerBacklog() {
+        return receiveWorkerBacklog.get();
+    }
+
+    @Override
+    public String[] getNodeLoads() {
+        LwCommServiceImpl service = LwCommServiceImpl.getServiceImpl();
+        return service == null ? new String[0] : service.getNodeLoadTracker().getNodeLoads();
+    }
+
     @Override
     public long getProcessedIncomingMessageStoreSize() {
-        return processedIncomingMessageStoreSize;
+        LwCommServiceImpl service = LwCommServiceImpl.getServiceImpl();
+        return service == null ? 0 : service.getProcessedMessageStore().size();
+    }
+
+    @Override
+    public long getProcessedIncomingMessageStoreEvictionCount() {
+        LwCommServiceImpl service = LwCommServiceImpl.getServiceImpl();
+        return service == null ? 0 : service.getProcessedMessageStore().getEvictionCount();
     }
 
     @Override
     public long getReceivedAckStoreSize() {
-        return receivedAckStoreSize;
+        LwCommServiceImpl service = LwCommServiceImpl.getServiceImpl();
+        return service == null ? 0 : service.getReceivedAckStore().size();
+    }
+
+    @Override
+    public long getReceivedAckStoreEvictionCount() {
+        LwCommServiceImpl service = LwCommServiceImpl.getServiceImpl();
+        return service == null ? 0 : service.getReceivedAckStore().getEvictionCount();
     }
 
     @Override
@@ -301,23 +406,23 @@ public class LwCommStatistics implements LwCommStatisticsMBean {
     }
 
     @Override
-    public synchronized long getAverageHandlerTimeUs() {
-        return getAvgOfLongArray(timeChannelRead0Us);
+    public long getAverageHandlerTimeUs() {
+        return handlerLatencies.getTotal().getMean();
     }
 
     @Override
     public long getMaxHandlerTimeUs() {
-        return getMaxOfLongArray(timeChannelRead0Us);
+        return handlerLatencies.getTotal().getMax();
     }
 
     @Override
     public long getAverageAckTurnaroundTimeUs() {
-        return getAvgOfLongArray(timeAckUs);
+        return ackLatencies.getTotal().getMean();
     }
 
     @Override
     public long getMaxAckTurnaroundTimeUs() {
-        return getMaxOfLongArray(timeAckUs);
+        return ackLatencies.getTotal().getMax();
     }
 
     @Override
@@ -340,6 +445,34 @@ public class LwCommStatistics implements LwCommStatisticsMBean {
         return getMaxOfLongArray(timeWorker);
     }
 
+    @Override
+    public long getLatencyIntervalStartTimestamp() {
+        return latencyIntervalStartTimestamp;
+    }
+
+    @Override
+    public String[] getHandlerTimePercentiles() {
+        return handlerLatencies.getPercentiles();
+    }
+
+    @Override
+    public String[] getAckTurnaroundTimePercentiles() {
+        return ackLatencies.getPercentiles();
+    }
+
+    @Override
+    public String[] getDeliveryQueueTimePercentiles() {
+        return deliveryQueueLatencies.getPercentiles();
+    }
+
+    @Override
+    public void resetLatencyStatistics() {
+        latencyIntervalStartTimestamp = System.currentTimeMillis();
+        handlerLatencies.reset();
+        ackLatencies.reset();
+        deliveryQueueLatencies.reset();
+    }
+
     private long getAvgOfLongArray(long[] array) {
         long sum = 0;
         long cnt = 0;
@@ -379,22 +512,23 @@ public class LwCommStatistics implements LwCommStatisticsMBean {
         processedIncomingMessageCount.set(0);
         rejectedIncomingMessageCount.set(0);
         droppedIncomingMessageCount.set(0);
-        processedIncomingMessageStoreSize = 0;
         queuedIncomingMessageCount.set(0);
-        receivedAckStoreSize = 0;
         receivedHeartbeatCount.set(0);
         retransmitMessageCount.set(0);
         sentHeartbeatCount.set(0);
         sentAckCount.set(0);
         sentNackCount.set(0);
+        sentMultiAckCount.set(0);
+        coalescedDatagramCount.set(0);
+        backpressureFailedMessageCount.set(0);
+        fragmentedDatagramCount.set(0);
+        reassembledDatagramCount.set(0);
+        discardedReassemblyCount.set(0);
         timeoutMessageCount.set(0);
-        Arrays.fill(timeChannelRead0Us, 0);
-        Arrays.fill(timeAckUs, 0);
         Arrays.fill(timeChannelWaitUs, 0);
         Arrays.fill(timeWorker, 0);
-        timeChannelRead0UsIndex.set(0);
-        timeAckUsIndex.set(0);
         timeChannelWaitUsIndex.set(0);
         timeWorkerIndex.set(0);
+        resetLatencyStatistics();
     }
 }
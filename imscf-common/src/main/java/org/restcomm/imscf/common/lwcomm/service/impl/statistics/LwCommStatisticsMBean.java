@@ -117,6 +117,45 @@ public interface LwCommStatisticsMBean {
      */
     long getSentNackCount();
 
+    /**
+     * Count of ACK datagrams sent with more than one message id in them.
+     * The ACKs in these are counted one by one in the sent ACK count.
+     * @return Datagram count
+     */
+    long getSentMultiAckCount();
+
+    /**
+     * Count of datagrams sent with more than one normal message coalesced into them.
+     * @return Datagram count
+     */
+    long getCoalescedDatagramCount();
+
+    /**
+     * Count of messages failed without being sent, because the outbound buffer of their channel was full.
+     * Only in DIRECT send mode.
+     * @return Message count
+     */
+    long getBackpressureFailedMessageCount();
+
+    /**
+     * Count of datagrams sent in fragments because they were larger than the maximum datagram size.
+     * @return Datagram count
+     */
+    long getFragmentedDatagramCount();
+
+    /**
+     * Count of datagrams reassembled from received fragments.
+     * @return Datagram count
+     */
+    long getReassembledDatagramCount();
+
+    /**
+     * Count of fragmented datagrams dropped because the reassembly budget of the sender node was exceeded or not all
+     * the fragments arrived in time.
+     * @return Datagram count
+     */
+    long getDiscardedReassemblyCount();
+
     /**
      * Count of HB messages received.
      * @return Message count
@@ -136,20 +175,50 @@ public interface LwCommStatisticsMBean {
      */
     long getMessageSenderStoreSize();
 
+    /**
+     * Returns the number of received messages waiting for or being delivered to the message receiver.
+     * This is a gauge, it is not affected by reset.
+     * @return Message count
+     */
+    long getReceiveWorkerBacklog();
+
+    /**
+     * Returns the load of the remote nodes used by load-aware LOADBALANCE routes: the number of messages waiting for
+     * an ACK and the average ACK latency of each node. Not affected by reset.
+     * @return One line per node
+     */
+    String[] getNodeLoads();
+
     /**
      * The number of messages which have been processed
      * in the near past.
+     * This is a gauge, it is not affected by reset.
      * @return Element count
      */
     long getProcessedIncomingMessageStoreSize();
 
+    /**
+     * The number of message ids evicted from the processed message store since LwComm has been started.
+     * Not affected by reset.
+     * @return Element count
+     */
+    long getProcessedIncomingMessageStoreEvictionCount();
+
     /**
      * The number of elements in the received ACK store.
      * That is, the ACK identifiers received in the "near past" to track multiple ACKs.
+     * This is a gauge, it is not affected by reset.
      * @return Element count
      */
     long getReceivedAckStoreSize();
 
+    /**
+     * The number of ACK identifiers evicted from the received ACK store since LwComm has been started.
+     * Not affected by reset.
+     * @return Element count
+     */
+    long getReceivedAckStoreEvictionCount();
+
     /**
      * The number of unparseable messages received.
      * @return Message count
@@ -171,25 +240,27 @@ public interface LwCommStatisticsMBean {
     long getOutOfOrderAckCount();
 
     /**
-     * Gets the average time spent in channelRead0 - the main entry point of incoming messages.
+     * Gets the average time spent in channelRead0 - the main entry point of incoming messages -
+     * since the start of the latency interval.
      * @return Average time interval in microseconds (1 millisec = 1.000 microsec = 1.000.000 nanosec)
      */
     long getAverageHandlerTimeUs();
 
     /**
-     * Gets the maximum time spent in channelRead0 - the main entry point of incoming messages.
+     * Gets the maximum time spent in channelRead0 - the main entry point of incoming messages -
+     * since the start of the latency interval.
      * @return Maximum time interval in microseconds (1 millisec = 1.000 microsec = 1.000.000 nanosec)
      */
     long getMaxHandlerTimeUs();
 
     /**
-     * Gets the average time in microseconds to wait for an outgoing message's ACK.
+     * Gets the average time in microseconds to wait for an outgoing message's ACK since the start of the latency interval.
      * @return Average time interval in microseconds (1 millisec = 1.000 microsec = 1.000.000 nanosec)
      */
     long getAverageAckTurnaroundTimeUs();
 
     /**
-     * Gets the maximum time in microseconds to wait for an outgoing message's ACK.
+     * Gets the maximum time in microseconds to wait for an outgoing message's ACK since the start of the latency interval.
      * @return Maximum time interval in microseconds (1 millisec = 1.000 microsec = 1.000.000 nanosec)
      */
     long getMaxAckTurnaroundTimeUs();
@@ -221,7 +292,39 @@ public interface LwCommStatisticsMBean {
     long getMaxWorkerTimeUs();
 
     /**
-     * Resets the statistics.
+     * Gets the time when the current latency interval started, i.e. when the latency histograms were last reset.
+     * @return Timestamp in milliseconds.
+     */
+    long getLatencyIntervalStartTimestamp();
+
+    /**
+     * Gets the p50/p99/p99.9 percentiles of the time spent in channelRead0, in total, per sender node and per
+     * message tag. Percentiles have a precision of about 6%.
+     * @return One line per histogram, e.g. <code>node EL1: count=1234, p50=180us, p99=950us, p99.9=2047us, max=3012us</code>
+     */
+    String[] getHandlerTimePercentiles();
+
+    /**
+     * Gets the p50/p99/p99.9 percentiles of the send-to-ACK round trip time, in total, per destination node and per
+     * message tag. Percentiles have a precision of about 6%.
+     * @return One line per histogram, e.g. <code>node EL1: count=1234, p50=180us, p99=950us, p99.9=2047us, max=3012us</code>
+     */
+    String[] getAckTurnaroundTimePercentiles();
+
+    /**
+     * Gets the p50/p99/p99.9 percentiles of the time incoming messages wait in the receive worker queue before
+     * delivery, in total, per sender node and per message tag. Percentiles have a precision of about 6%.
+     * @return One line per histogram, e.g. <code>node EL1: count=1234, p50=180us, p99=950us, p99.9=2047us, max=3012us</code>
+     */
+    String[] getDeliveryQueueTimePercentiles();
+
+    /**
+     * Resets the latency histograms only, starting a new latency interval.
+     */
+    void resetLatencyStatistics();
+
+    /**
+     * Resets the statistics, including the latency histograms.
      */
     void resetStatistics();
 }
@@ -0,0 +1,224 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ */
+package org.restcomm.imscf.common.lwcomm.service.messages;
+
+import org.restcomm.imscf.common.lwcomm.service.impl.LwCommServiceImpl;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.util.CharsetUtil;
+
+/**
+ * Binary wire format of LwComm messages.
+ * <p>
+ * The text format needs the whole datagram decoded to a String and parsed line by line. The binary format has a
+ * fixed header followed by length prefixed fields, so it can be read directly from and written directly to a
+ * Netty ByteBuf:
+ * <pre>
+ * magic(1) version(1) type(1) flags(1) retransmitCount(1)
+ * from id groupId tag targetRoute targetQueue   -- each: length(2) + UTF-8 bytes, length 0xFFFF means null
+ * payloadLength(4) payload(payloadLength)       -- payloadLength -1 means no payload
+ * </pre>
+ * The payload is UTF-8 text, or raw bytes if the binary payload flag is set. A binary payload is decoded as a slice
+ * of the datagram buffer, so it is not copied.
+ * The magic byte is not a valid first character of a text message, so the two formats can be told apart by the
+ * first byte of the datagram. Heartbeats are always sent in text format, as the capabilities carried in them tell
+ * whether the remote node understands the binary format.
+ * </p>
+ * <p>
+ * As the frames are self-delimiting, more of them can be coalesced into one datagram, and an ACK frame can carry
+ * more message ids separated by spaces. These are only sent to nodes advertising {@link #BATCH_CAPABILITY}.
+ * </p>
+ */
+public final class LwCommBinaryFormat {
+
+    /** The capability advertised by nodes which can receive the binary format. */
+    public static final String CAPABILITY = "LwCommBinaryV1";
+    /** The capability advertised by nodes which can receive coalesced frames and multi-id ACKs. */
+    public static final String BATCH_CAPABILITY = "LwCommBatchV1";
+
+    private static final byte MAGIC = (byte) 0xB1;
+    private static final byte VERSION_1 = 1;
+
+    private static final int FLAG_FAILOVER = 0x01;
+    private static final int FLAG_BINARY_PAYLOAD = 0x02;
+
+    /** The length of a null string field. Longer fields cannot be sent. */
+    private static final int NULL_LENGTH = 0xFFFF;
+
+    /** Fixed header, six string length fields and the payload length. */
+    private static final int FIXED_LENGTH = 5 + 6 * Short.BYTES + Integer.BYTES;
+
+    /** Heartbeats are not listed, they are always sent as text. */
+    private static final LwCommMessage.Type[] TYPES = { LwCommMessage.Type.NORMAL, LwCommMessage.Type.ACK,
+            LwCommMessage.Type.NACK };
+
+    private LwCommBinaryFormat() {
+        // Do nothing.
+    }
+
+    /** Returns true if the buffer starts with a binary framed message. Does not modify the reader index. */
+    public static boolean isBinary(ByteBuf buf) {
+        return buf.readableBytes() > 0 && buf.getByte(buf.readerIndex()) == MAGIC;
+    }
+
+    /**
+     * Parses the next message from the readable bytes of the buffer, leaving the reader index after it.
+     * Returns a message of type INVALID if the buffer cannot be parsed.
+     */
+    public static LwCommMessage decode(ByteBuf buf) {
+        LwCommMessage ret = new LwCommMessage();
+        try {
+            buf.skipBytes(1); // magic
+            byte version = buf.readByte();
+            if (version != VERSION_1) {
+                LwCommServiceImpl.LOGGER.error("Unsupported binary message version: {}", version);
+                ret.type = LwCommMessage.Type.INVALID;
+                return ret;
+            }
+            int typeIndex = buf.readUnsignedByte();
+            if (typeIndex >= TYPES.length) {
+                LwCommServiceImpl.LOGGER.error("Unknown binary message type: {}", typeIndex);
+                ret.type = LwCommMessage.Type.INVALID;
+                return ret;
+            }
+            ret.type = TYPES[typeIndex];
+            int flags = buf.readUnsignedByte();
+            ret.failover = (flags & FLAG_FAILOVER) != 0;
+            ret.retransmitCount = buf.readUnsignedByte();
+            String from = readString(buf);
+            ret.from = from == null ? null : LwCommServiceImpl.getServiceImpl().getConfiguration().getNodeByName(from);
+            String id = readString(buf);
+            if (ret.type == LwCommMessage.Type.ACK && id != null) {
+                ret.setAckedIds(id);
+            } else {
+                ret.id = id;
+            }
+            ret.groupId = readString(buf);
+            ret.userTag = readString(buf);
+            ret.targetRoute = readString(buf);
+            ret.targetQueue = readString(buf);
+            int payloadLength = buf.readInt();
+            if (payloadLength >= 0 && (flags & FLAG_BINARY_PAYLOAD) != 0) {
+                // the slice keeps the datagram buffer until the message is released
+                ret.binaryPayload = buf.slice(buf.readerIndex(), payloadLength).retain();
+                buf.skipBytes(payloadLength);
+                ret.payloadBytes = payloadLength;
+                ret.calculatedPayloadBytes = payloadLength;
+            } else if (payloadLength >= 0) {
+                ret.payload = buf.toString(buf.readerIndex(), payloadLength, CharsetUtil.UTF_8);
+                buf.skipBytes(payloadLength);
+                ret.payloadBytes = payloadLength;
+                ret.calculatedPayloadBytes = payloadLength;
+            }
+        } catch (IndexOutOfBoundsException e) {
+            LwCommServiceImpl.LOGGER.error("Truncated binary message", e);
+            ret.type = LwCommMessage.Type.INVALID;
+        }
+        return ret;
+    }
+
+    /**
+     * Writes the message into a new buffer allocated from the given allocator.
+     * The caller is responsible for releasing the buffer (writing it to a channel does that).
+     */
+    public static ByteBuf encode(LwCommMessage message, ByteBufAllocator alloc) {
+        byte[] from = bytes(message.from == null ? null : message.from.getName());
+        byte[] id = bytes(message.type == LwCommMessage.Type.ACK ? String.join(" ", message.getAckedIds())
+                : message.id);
+        byte[] groupId = bytes(message.groupId);
+        byte[] tag = bytes(message.userTag);
+        byte[] route = bytes(message.targetRoute);
+        byte[] queue = bytes(message.targetQueue);
+        byte[] payload = message.payload == null ? null : message.payload.getBytes(CharsetUtil.UTF_8);
+        ByteBuf binaryPayload = message.binaryPayload;
+        int payloadLength = binaryPayload != null ? binaryPayload.readableBytes() : payload != null ? payload.length
+                : 0;
+
+        int type = typeIndex(message.type);
+        int length = FIXED_LENGTH + length(from) + length(id) + length(groupId) + length(tag) + length(route)
+                + length(queue) + payloadLength;
+        ByteBuf buf = alloc.buffer(length);
+        try {
+            buf.writeByte(MAGIC);
+            buf.writeByte(VERSION_1);
+            buf.writeByte(type);
+            buf.writeByte((message.failover ? FLAG_FAILOVER : 0) | (binaryPayload != null ? FLAG_BINARY_PAYLOAD : 0));
+            buf.writeByte(Math.min(message.retransmitCount, 0xFF));
+            writeBytes(buf, from);
+            writeBytes(buf, id);
+            writeBytes(buf, groupId);
+            writeBytes(buf, tag);
+            writeBytes(buf, route);
+            writeBytes(buf, queue);
+            if (binaryPayload != null) {
+                buf.writeInt(payloadLength);
+                buf.writeBytes(binaryPayload, binaryPayload.readerIndex(), payloadLength);
+            } else if (payload == null) {
+                buf.writeInt(-1);
+            } else {
+                buf.writeInt(payload.length);
+                buf.writeBytes(payload);
+            }
+        } catch (RuntimeException e) {
+            buf.release();
+            throw e;
+        }
+        return buf;
+    }
+
+    private static int typeIndex(LwCommMessage.Type type) {
+        for (int i = 0; i < TYPES.length; i++) {
+            if (TYPES[i] == type) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("Message type cannot be sent: " + type);
+    }
+
+    private static byte[] bytes(String s) {
+        return s == null ? null : s.getBytes(CharsetUtil.UTF_8);
+    }
+
+    private static int length(byte[] bytes) {
+        return bytes == null ? 0 : bytes.length;
+    }
+
+    private static void writeBytes(ByteBuf buf, byte[] bytes) {
+        if (bytes == null) {
+            buf.writeShort(NULL_LENGTH);
+            return;
+        }
+        if (bytes.length >= NULL_LENGTH) {
+            throw new IllegalArgumentException("Header field too long: " + bytes.length);
+        }
+        buf.writeShort(bytes.length);
+        buf.writeBytes(bytes);
+    }
+
+    private static String readString(ByteBuf buf) {
+        int length = buf.readUnsignedShort();
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        String ret = buf.toString(buf.readerIndex(), length, CharsetUtil.UTF_8);
+        buf.skipBytes(length);
+        return ret;
+    }
+}
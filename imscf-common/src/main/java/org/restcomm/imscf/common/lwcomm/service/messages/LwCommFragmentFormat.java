@@ -0,0 +1,176 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ */
+package org.restcomm.imscf.common.lwcomm.service.messages;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.util.CharsetUtil;
+
+/**
+ * Fragments of LwComm datagrams larger than the maximum datagram size.
+ * <p>
+ * A datagram (a text message, or one or more binary frames) which does not fit into the maximum datagram size is split
+ * into fragments, each sent in its own datagram with the following header:
+ * <pre>
+ * magic(1) version(1) from(2 + UTF-8 bytes) datagramId(4) fragmentIndex(2) fragmentCount(2) totalLength(4) offset(4)
+ * </pre>
+ * followed by the bytes of the original datagram starting at offset. The datagram id is unique per sending node, so
+ * the receiver can reassemble the original datagram from the fragments arriving in any order. A retransmit is
+ * fragmented again with a new datagram id. Fragments are only sent to nodes advertising {@link #CAPABILITY}.
+ * </p>
+ */
+public final class LwCommFragmentFormat {
+
+    /** The capability advertised by nodes which can reassemble fragmented datagrams. */
+    public static final String CAPABILITY = "LwCommFragmentV1";
+
+    private static final byte MAGIC = (byte) 0xB2;
+    private static final byte VERSION_1 = 1;
+
+    /** Header without the bytes of the node name. */
+    private static final int FIXED_HEADER_LENGTH = 2 + Short.BYTES + Integer.BYTES + 2 * Short.BYTES + 2
+            * Integer.BYTES;
+
+    private LwCommFragmentFormat() {
+        // Do nothing.
+    }
+
+    /** Returns true if the buffer starts with a fragment. Does not modify the reader index. */
+    public static boolean isFragment(ByteBuf buf) {
+        return buf.readableBytes() > 0 && buf.getByte(buf.readerIndex()) == MAGIC;
+    }
+
+    /**
+     * Splits the readable bytes of the datagram into fragments of at most maxDatagramBytes, allocated from the
+     * allocator. The datagram is released.
+     * @throws IllegalArgumentException if the datagram needs more than 65535 fragments
+     */
+    public static List<ByteBuf> fragment(ByteBuf datagram, String from, int datagramId, int maxDatagramBytes,
+            ByteBufAllocator alloc) {
+        try {
+            byte[] fromBytes = from.getBytes(CharsetUtil.UTF_8);
+            int totalLength = datagram.readableBytes();
+            int fragmentDataLength = maxDatagramBytes - FIXED_HEADER_LENGTH - fromBytes.length;
+            if (fragmentDataLength <= 0) {
+                throw new IllegalArgumentException("Maximum datagram size too small for fragments: " + maxDatagramBytes);
+            }
+            int count = (totalLength + fragmentDataLength - 1) / fragmentDataLength;
+            if (count > 0xFFFF) {
+                throw new IllegalArgumentException("Datagram too long: " + totalLength);
+            }
+            List<ByteBuf> ret = new ArrayList<ByteBuf>(count);
+            for (int index = 0; index < count; index++) {
+                int offset = index * fragmentDataLength;
+                int length = Math.min(fragmentDataLength, totalLength - offset);
+                ByteBuf fragment = alloc.buffer(FIXED_HEADER_LENGTH + fromBytes.length + length);
+                fragment.writeByte(MAGIC);
+                fragment.writeByte(VERSION_1);
+                fragment.writeShort(fromBytes.length);
+                fragment.writeBytes(fromBytes);
+                fragment.writeInt(datagramId);
+                fragment.writeShort(index);
+                fragment.writeShort(count);
+                fragment.writeInt(totalLength);
+                fragment.writeInt(offset);
+                fragment.writeBytes(datagram, datagram.readerIndex() + offset, length);
+                ret.add(fragment);
+            }
+            return ret;
+        } finally {
+            datagram.release();
+        }
+    }
+
+    /**
+     * Reads the header of a fragment, leaving the reader index at the first byte of the fragment data.
+     * Returns null if the header cannot be parsed or is inconsistent.
+     */
+    public static Header readHeader(ByteBuf buf) {
+        try {
+            buf.skipBytes(1); // magic
+            if (buf.readByte() != VERSION_1) {
+                return null;
+            }
+            int fromLength = buf.readUnsignedShort();
+            String from = buf.toString(buf.readerIndex(), fromLength, CharsetUtil.UTF_8);
+            buf.skipBytes(fromLength);
+            Header ret = new Header(from, buf.readInt(), buf.readUnsignedShort(), buf.readUnsignedShort(),
+                    buf.readInt(), buf.readInt());
+            if (ret.fragmentIndex >= ret.fragmentCount || ret.offset < 0 || ret.totalLength < 0
+                    || (long) ret.offset + buf.readableBytes() > ret.totalLength) {
+                return null;
+            }
+            return ret;
+        } catch (IndexOutOfBoundsException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Header of a fragment.
+     */
+    public static final class Header {
+        private final String from;
+        private final int datagramId;
+        private final int fragmentIndex;
+        private final int fragmentCount;
+        private final int totalLength;
+        private final int offset;
+
+        private Header(String from, int datagramId, int fragmentIndex, int fragmentCount, int totalLength,
+                int offset) {
+            this.from = from;
+            this.datagramId = datagramId;
+            this.fragmentIndex = fragmentIndex;
+            this.fragmentCount = fragmentCount;
+            this.totalLength = totalLength;
+            this.offset = offset;
+        }
+
+        /** The name of the sending node. */
+        public String getFrom() {
+            return from;
+        }
+
+        public int getDatagramId() {
+            return datagramId;
+        }
+
+        public int getFragmentIndex() {
+            return fragmentIndex;
+        }
+
+        public int getFragmentCount() {
+            return fragmentCount;
+        }
+
+        /** The length of the original datagram. */
+        public int getTotalLength() {
+            return totalLength;
+        }
+
+        /** The position of the data of this fragment in the original datagram. */
+        public int getOffset() {
+            return offset;
+        }
+    }
+}
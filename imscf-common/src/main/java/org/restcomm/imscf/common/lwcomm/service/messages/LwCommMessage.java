@@ -19,13 +19,23 @@
 package org.restcomm.imscf.common.lwcomm.service.messages;
 
 import org.restcomm.imscf.common.lwcomm.config.Node;
+import org.restcomm.imscf.common.lwcomm.service.IncomingBinaryMessage;
 import org.restcomm.imscf.common.lwcomm.service.IncomingTextMessage;
 import org.restcomm.imscf.common.lwcomm.service.impl.LwCommServiceImpl;
 import org.restcomm.imscf.common.lwcomm.service.impl.LwCommUtil;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
 import java.io.BufferedReader;
 import java.io.StringReader;
 import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import org.slf4j.MDC;
 
@@ -54,11 +64,21 @@ public class LwCommMessage {
     protected String targetQueue;
     protected int retransmitCount;
     protected String payload;
+    /**
+     * The payload of binary messages, in which case payload is null. Reference counted: outgoing messages own it
+     * until the sending is finished, incoming ones until they are delivered.
+     */
+    protected ByteBuf binaryPayload;
     protected int payloadBytes;
     protected boolean failover;
     protected String targetRoute;
     protected String groupId;
     protected String userTag;
+    protected Set<String> capabilities = Collections.emptySet();
+    /** All message ids acknowledged by a multi-id ACK, null for single id messages. */
+    protected List<String> ackedIds;
+    /** Payload length in bytes if already known from parsing, -1 otherwise. */
+    protected int calculatedPayloadBytes = -1;
 
     public static final String ACK = "ACK";
     public static final String HEARTBEAT = "HEARTBEAT";
@@ -70,6 +90,9 @@ public class LwCommMessage {
     public static final String HEADER_TARGET_ROUTE = "Target-Route";
     public static final String HEADER_GROUP_ID = "Group-Id";
     public static final String HEADER_USER_TAG = "Tag";
+    /** Present with value base64 if the payload is binary. */
+    public static final String HEADER_PAYLOAD_ENCODING = "Payload-Encoding";
+    private static final String PAYLOAD_ENCODING_BASE64 = "base64";
 
     protected LwCommMessage() {
         // Constructor is empty to allow only subclasses and self static methods to instantiate.
@@ -82,6 +105,7 @@ public class LwCommMessage {
     public LwCommMessage(String rawMessage) {
         // read message line by line
         BufferedReader reader = new BufferedReader(new StringReader(rawMessage));
+        boolean base64Payload = false;
 
         try {
             String firstLine = reader.readLine();
@@ -94,12 +118,18 @@ public class LwCommMessage {
             // strings, but it cannot contain a space.
             if (firstLine.startsWith("ACK ")) {
                 type = Type.ACK;
-                id = firstLine.split(" ")[1];
+                // A batched ACK lists multiple ids separated by spaces. Older versions only read the first one.
+                setAckedIds(firstLine.substring(ACK.length() + 1));
             } else if (firstLine.startsWith("NACK ")) {
                 type = Type.NACK;
                 id = firstLine.split(" ")[1];
             } else if (firstLine.startsWith("HEARTBEAT")) {
                 type = Type.HEARTBEAT;
+                // Capabilities are listed after the HEARTBEAT keyword, older versions simply ignore them
+                String capabilityList = firstLine.substring(HEARTBEAT.length()).trim();
+                if (!capabilityList.isEmpty()) {
+                    capabilities = new HashSet<String>(Arrays.asList(capabilityList.split(",")));
+                }
                 // Next line MUST be the "From: "
                 parseLine(reader.readLine());
                 id = "N/A";
@@ -109,15 +139,24 @@ public class LwCommMessage {
             }
             String line = reader.readLine();
             while (line != null) {
-                boolean inTheBody = parseLine(line);
-                if (inTheBody)
+                if (line.startsWith(HEADER_PAYLOAD_ENCODING)) {
+                    base64Payload = PAYLOAD_ENCODING_BASE64.equals(line.split(" ")[1]);
+                } else if (parseLine(line)) {
+                    // in the body
                     break;
+                }
                 line = reader.readLine();
             }
             int payloadStart = rawMessage.indexOf(DOUBLE_LINETERMINATOR);
             if (payloadStart > 0) {
                 payload = rawMessage.substring(payloadStart + DOUBLE_LINETERMINATOR.length());
             }
+            if (base64Payload && payload != null) {
+                // The text format cannot carry binary data, so it has to be decoded here
+                calculatedPayloadBytes = payload.length();
+                binaryPayload = Unpooled.wrappedBuffer(Base64.getDecoder().decode(payload));
+                payload = null;
+            }
             reader.close();
         } catch (Exception ex) {
             LwCommServiceImpl.LOGGER.error("Error while parsing message", ex);
@@ -159,6 +198,29 @@ public class LwCommMessage {
         return payload;
     }
 
+    /** Returns the payload of a binary message, null for text messages. */
+    public ByteBuf getBinaryPayload() {
+        return binaryPayload;
+    }
+
+    public boolean isBinary() {
+        return binaryPayload != null;
+    }
+
+    /** Increases the reference count of the binary payload, if any. */
+    public void retainPayload() {
+        if (binaryPayload != null) {
+            binaryPayload.retain();
+        }
+    }
+
+    /** Decreases the reference count of the binary payload, if any. */
+    public void releasePayload() {
+        if (binaryPayload != null) {
+            binaryPayload.release();
+        }
+    }
+
     public Node getFrom() {
         return from;
     }
@@ -195,6 +257,24 @@ public class LwCommMessage {
         return userTag;
     }
 
+    public Set<String> getCapabilities() {
+        return capabilities;
+    }
+
+    /**
+     * Returns the ids acknowledged by this ACK message.
+     * A batched ACK acknowledges more messages, otherwise the list contains only the id of the message.
+     */
+    public List<String> getAckedIds() {
+        return ackedIds != null ? ackedIds : Collections.singletonList(id);
+    }
+
+    void setAckedIds(String idList) {
+        String[] ids = idList.split(" ");
+        id = ids[0];
+        ackedIds = ids.length > 1 ? Arrays.asList(ids) : null;
+    }
+
     public String toRawMessage() {
         MDC.put(LwCommUtil.LOGGER_MDC_MSGID_KEY, id);
         if (type == Type.INVALID) {
@@ -208,13 +288,17 @@ public class LwCommMessage {
         StringBuilder ret = new StringBuilder();
         switch (type) {
         case ACK:
-            ret.append("ACK ").append(id).append("\n");
+            ret.append("ACK ").append(String.join(" ", getAckedIds())).append("\n");
             break;
         case NACK:
             ret.append("NACK ").append(id).append("\n");
             break;
         case HEARTBEAT:
-            ret.append("HEARTBEAT\n");
+            ret.append("HEARTBEAT");
+            if (!capabilities.isEmpty()) {
+                ret.append(" ").append(String.join(",", capabilities));
+            }
+            ret.append("\n");
             break;
         case NORMAL:
             ret.append(id).append("\n");
@@ -247,7 +331,15 @@ public class LwCommMessage {
             ret.append(HEADER_USER_TAG).append(": ").append(userTag).append("\n");
         }
 
-        if (payload != null) {
+        if (binaryPayload != null) {
+            byte[] bytes = new byte[binaryPayload.readableBytes()];
+            binaryPayload.getBytes(binaryPayload.readerIndex(), bytes);
+            String encoded = Base64.getEncoder().encodeToString(bytes);
+            ret.append(HEADER_PAYLOAD_ENCODING).append(": ").append(PAYLOAD_ENCODING_BASE64).append("\n");
+            ret.append(HEADER_PAYLOAD_BYTES).append(": ").append(String.valueOf(encoded.length())).append("\n");
+            ret.append("\n");
+            ret.append(encoded);
+        } else if (payload != null) {
             ret.append(HEADER_PAYLOAD_BYTES).append(": ").append(String.valueOf(payloadBytes)).append("\n");
             ret.append("\n");
             ret.append(payload);
@@ -259,6 +351,12 @@ public class LwCommMessage {
     }
 
     public int getCalculatedPayloadBytes() {
+        if (calculatedPayloadBytes >= 0) {
+            return calculatedPayloadBytes;
+        }
+        if (binaryPayload != null) {
+            return binaryPayload.readableBytes();
+        }
         return payload.getBytes(Charset.forName("UTF-8")).length;
     }
 
@@ -267,10 +365,21 @@ public class LwCommMessage {
                 .setTag(userTag).create();
     }
 
+    /** Wraps the binary payload into an API message, which takes over the reference of this message. */
+    public IncomingBinaryMessage asIncomingBinaryMessage() {
+        return IncomingBinaryMessage.builder(binaryPayload, from, id).setGroupId(groupId)
+                .setTargetQueue(targetQueue).setTag(userTag).create();
+    }
+
+    /** Returns the payload for logging, binary payloads are only shown by their size. */
+    protected Object describePayload() {
+        return binaryPayload != null ? binaryPayload.readableBytes() + " bytes" : payload;
+    }
+
     @Override
     public String toString() {
         return "LwCommMessage [id=" + id + ", type=" + type + ", from=" + from + ", targetQueue=" + targetQueue
-                + ", retransmitCount=" + retransmitCount + ", payload=" + payload + ", failover=" + failover
+                + ", retransmitCount=" + retransmitCount + ", payload=" + describePayload() + ", failover=" + failover
                 + ", targetRoute=" + targetRoute + ", groupId=" + groupId + ", userTag=" + userTag + "]";
     }
 
@@ -21,21 +21,21 @@ package org.restcomm.imscf.common.lwcomm.service.messages;
 import org.restcomm.imscf.common.lwcomm.config.Node;
 import org.restcomm.imscf.common.lwcomm.config.Route;
 import org.restcomm.imscf.common.lwcomm.config.Route.Mode;
+import org.restcomm.imscf.common.lwcomm.service.BinaryMessage;
 import org.restcomm.imscf.common.lwcomm.service.SendResult;
 import org.restcomm.imscf.common.lwcomm.service.TextMessage;
 import org.restcomm.imscf.common.lwcomm.service.impl.LwCommServiceImpl;
 import org.restcomm.imscf.common.lwcomm.service.impl.LwCommUtil;
 import org.restcomm.imscf.common.lwcomm.service.impl.NettyUtil;
-import org.restcomm.imscf.common.lwcomm.service.impl.NodeCatalog;
+import org.restcomm.imscf.common.lwcomm.service.impl.NodeLoadTracker;
 import org.restcomm.imscf.common.lwcomm.service.impl.SendResultFutureImpl;
+import org.restcomm.imscf.common.lwcomm.service.messages.RoutePlanCache.RoutePlan;
+import org.restcomm.imscf.common.util.HashedWheelTimer;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Objects;
-import java.util.concurrent.Future;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 
 import org.slf4j.MDC;
@@ -44,7 +44,18 @@ import org.slf4j.MDC;
  * Sender for a particular message.
  * A new instance is created for every outgoing message (normal, ACK and HB as well).
  * Handles retransmission.
- * MULTICAST mode is not implemented!
+ * <p>
+ * The message is sent to the targets of the route one after the other, starting with the chosen one, each of them
+ * once for every interval of the retransmit pattern. In LOADBALANCE mode the targets after the chosen one are tried in
+ * a random order per message, in FAILOVER mode in the order of the route. The targets and the intervals are shared by
+ * all the messages of the route (see {@link RoutePlanCache}), the sender itself only keeps its position: the index of
+ * the current target and the number of the current attempt. Retransmit timeouts are scheduled on the shared retransmit timer wheel.
+ * </p>
+ * <p>
+ * A message of a MULTICAST route is sent to all the alive destinations at once, encoded only once, and each
+ * destination is retransmitted separately until it ACKs the message (see {@link Multicast}). The ACKs of all the
+ * destinations arrive to the same sender, as the message id is the same. There is no failover in this mode.
+ * </p>
  * @author Miklos Pocsaji
  * @author Tamas Gyorgyey
  */
@@ -52,97 +63,126 @@ import org.slf4j.MDC;
 @SuppressWarnings("PMD.GodClass")
 public final class MessageSender {
 
+    /** Intervals of ACKs and heartbeats: a single transmit without retransmit. */
+    private static final int[] NO_RETRANSMIT = { -1 };
+
     private OutgoingMessage messageToSend;
-    private SendChainElement currentSendChainElement;
     private NettyUtil nettyUtil;
-    private ScheduledExecutorService executor;
-    private LinkedList<SendChainElement> sendChain;
-    private Future<?> timeoutFuture;
-    // private NodeCatalog nodeCatalog;
+    private HashedWheelTimer retransmitTimer;
+    /** The targets to try, starting at index firstTarget and wrapping around. */
+    private Node[] targets;
+    /** The time to wait for the ACK of each attempt to a target, in ms. -1 means no retransmit. */
+    private int[] intervals;
+    private int firstTarget;
+    /** LOADBALANCE only: the targets in random order after the first one, built on the first failover. */
+    private Node[] failoverOrder;
+    /** True if the targets after the first one are tried in random order instead of the order of the route. */
+    private boolean randomFailover;
+    /** The number of targets tried before the current one. */
+    private int targetIndex;
+    /** The number of transmits to the current target before the current one, -1 before the first transmit. */
+    private int attempt = -1;
+    private HashedWheelTimer.Handle timeout;
     private SendResultFutureImpl sendResultFuture;
     private volatile boolean active = true;
+    /** The time of the first transmit of the message, retransmits and failovers do not reset it. */
     private long startTimeNanos;
     private TimeoutHandler timeoutHandler = new TimeoutHandler();
-
-    private MessageSender(OutgoingMessage messageToSend, LinkedList<SendChainElement> sendChain,
+    /** Tracks the outstanding normal messages per node, null for ACKs and heartbeats. */
+    private NodeLoadTracker nodeLoadTracker;
+    /** The node this message is counted as outstanding at. */
+    private Node outstandingAt;
+    /** The time of the first transmit to outstandingAt. */
+    private long outstandingSinceNanos;
+    /** Per-destination state of a MULTICAST message, null for other messages. */
+    private Multicast multicast;
+    /** True once the binary payload of the message has been released, after that it must not be sent. */
+    private boolean payloadReleased;
+
+    private MessageSender(OutgoingMessage messageToSend, Node[] targets, int[] intervals,
             SendResultFutureImpl sendResultFuture) {
         this.messageToSend = messageToSend;
         this.nettyUtil = LwCommServiceImpl.getServiceImpl().getNettyUtil();
-        this.executor = LwCommServiceImpl.getServiceImpl().getSendAndHeartbeatEventLoopGroup();
-        // this.nodeCatalog = LwCommServiceImpl.getServiceImpl().getNodeCatalog();
-        this.sendChain = sendChain;
+        this.retransmitTimer = LwCommServiceImpl.getServiceImpl().getRetransmitTimer();
+        this.targets = targets;
+        this.intervals = intervals;
         this.sendResultFuture = sendResultFuture;
     }
 
     public static MessageSender createNormal(String targetRoute, TextMessage textMessage,
             SendResultFutureImpl sendResultFuture) {
         Route route = LwCommServiceImpl.getServiceImpl().getConfiguration().getRouteByName(targetRoute);
-        OutgoingMessage messageToSend = OutgoingMessage.create(route, textMessage);
+        return createNormal(route, OutgoingMessage.create(route, textMessage), textMessage, sendResultFuture);
+    }
+
+    /**
+     * Creates the sender of a binary message, which takes over the reference of the message to its payload.
+     * The payload is released when the sender is unregistered, or right away if null is returned.
+     */
+    public static MessageSender createNormal(String targetRoute, BinaryMessage binaryMessage,
+            SendResultFutureImpl sendResultFuture) {
+        Route route = LwCommServiceImpl.getServiceImpl().getConfiguration().getRouteByName(targetRoute);
+        return createNormal(route, OutgoingMessage.create(route, binaryMessage), binaryMessage, sendResultFuture);
+    }
+
+    private static MessageSender createNormal(Route route, OutgoingMessage messageToSend, Object originalMessage,
+            SendResultFutureImpl sendResultFuture) {
         MDC.put(LwCommUtil.LOGGER_MDC_MSGID_KEY, messageToSend.getId());
-        NodeCatalog nodeCatalog = LwCommServiceImpl.getServiceImpl().getNodeCatalog();
         Node localNode = LwCommServiceImpl.getServiceImpl().getConfiguration().getLocalNode();
 
         if (!route.getPossibleSources().contains(localNode)) {
             LwCommServiceImpl.LOGGER.error(
                     "Local node {} is not among the possible sources of route {}, so message '{}' cannot be sent",
-                    localNode, route, textMessage);
+                    localNode, route, originalMessage);
+            messageToSend.releasePayload();
             return null;
         }
 
-        // First, check for multicast mode - it's not implemented yet
+        RoutePlan plan = LwCommServiceImpl.getServiceImpl().getRoutePlanCache().getPlan(route);
+        MessageSender ret = new MessageSender(messageToSend, plan.targets, plan.intervals, sendResultFuture);
         if (route.getMode() == Mode.MULTICAST) {
-            throw new UnsupportedOperationException("MULTICAST mode is not yet implemented");
+            ret.multicast = ret.new Multicast(plan.destinations);
+            LwCommServiceImpl.getServiceImpl().getMessageSenderStore().registerMessageSender(ret);
+            return ret;
         }
-
-        List<Node> aliveTargets = new ArrayList<Node>();
-        route.getDestinations().forEach(n -> {
-            if (nodeCatalog.isNodeAlive(n))
-                aliveTargets.add(n);
-        });
         // LOADBALANCE and FAILOVER modes only differ that in FAILOVER mode the targets are probed in a fix order
+        NodeLoadTracker nodeLoadTracker = LwCommServiceImpl.getServiceImpl().getNodeLoadTracker();
         if (route.getMode() == Mode.LOADBALANCE) {
-            Collections.shuffle(aliveTargets);
-        }
-        LinkedList<SendChainElement> sendChain = new LinkedList<SendChainElement>();
-        boolean failover = false;
-        for (Node target : aliveTargets) {
-            int retransmitCount = 0;
-            int prevTimeout = 0;
-            for (int timeout : route.getRetransmitPattern()) {
-                SendChainElement sce = new SendChainElement(target, timeout - prevTimeout, retransmitCount++, failover);
-                sendChain.add(sce);
-                prevTimeout = timeout;
-            }
-            failover = true;
+            ret.firstTarget = nodeLoadTracker.chooseTarget(plan.targets, route.getLoadBalancing());
+            ret.randomFailover = true;
         }
-        MessageSender ret = new MessageSender(messageToSend, sendChain, sendResultFuture);
+        ret.nodeLoadTracker = nodeLoadTracker;
         LwCommServiceImpl.getServiceImpl().getMessageSenderStore().registerMessageSender(ret);
         return ret;
     }
 
     public static MessageSender createAck(LwCommMessage ackFor, boolean positive, SendResultFutureImpl sendResultFuture) {
         OutgoingMessage messageToSend = positive ? OutgoingMessage.createAck(ackFor) : OutgoingMessage.createNack(ackFor);
-        LinkedList<SendChainElement> sendChain = new LinkedList<SendChainElement>();
-        sendChain.add(new SendChainElement(ackFor.getFrom(), -1, 0, false));
-        return new MessageSender(messageToSend, sendChain, sendResultFuture);
+        return new MessageSender(messageToSend, new Node[] { ackFor.getFrom() }, NO_RETRANSMIT, sendResultFuture);
     }
 
     public static MessageSender createHeartbeat(Node target, SendResultFutureImpl sendResultFuture) {
         OutgoingMessage messageToSend = OutgoingMessage.createHeartbeat();
-        LinkedList<SendChainElement> sendChain = new LinkedList<SendChainElement>();
-        sendChain.add(new SendChainElement(target, -1, 0, false));
-        return new MessageSender(messageToSend, sendChain, sendResultFuture);
+        return new MessageSender(messageToSend, new Node[] { target }, NO_RETRANSMIT, sendResultFuture);
     }
 
     public void startSendCycle() {
         MDC.put(LwCommUtil.LOGGER_MDC_MSGID_KEY, messageToSend.getId());
         LwCommServiceImpl.LOGGER.trace("BEGIN MessageSender.startSendCycle()");
-        currentSendChainElement = getNextSendChainElement();
-        if (currentSendChainElement == null) {
-            LwCommServiceImpl.LOGGER.debug("No more send chain elements for message {}", getMessageId());
+        if (multicast != null) {
+            multicast.start();
+        } else if (!nextTransmit(false)) {
+            LwCommServiceImpl.LOGGER.debug("No alive target for message {}", getMessageId());
+            sendResultFuture.done(SendResult.FAILURE);
+            LwCommServiceImpl.getServiceImpl().getMessageSenderStore().unregisterMessageSender(this);
+        } else if (!skipNotWritableTargets()) {
+            LwCommServiceImpl.LOGGER.debug("Outbound buffer towards all the targets is full, message {} is not sent",
+                    getMessageId());
+            LwCommServiceImpl.getServiceImpl().getStatistics().incBackpressureFailedMessageCount();
             sendResultFuture.done(SendResult.FAILURE);
             LwCommServiceImpl.getServiceImpl().getMessageSenderStore().unregisterMessageSender(this);
         } else {
+            startTimeNanos = System.nanoTime();
             sendCurrent();
         }
         LwCommServiceImpl.LOGGER.trace("END   MessageSender.startSendCycle()");
@@ -150,9 +190,14 @@ public final class MessageSender {
 
     public synchronized boolean cancel(boolean mayInterruptIfRunning) {
         active = false;
-        if (timeoutFuture != null) {
-            boolean canceled = timeoutFuture.cancel(mayInterruptIfRunning);
-            // TODO timeoutFuture = null; ?
+        if (multicast != null) {
+            return multicast.cancel();
+        }
+        releaseOutstanding();
+        releaseMessage();
+        if (timeout != null) {
+            boolean canceled = timeout.cancel();
+            // TODO timeout = null; ?
             return canceled;
         } else
             // TODO return previous result of cancel?
@@ -160,37 +205,55 @@ public final class MessageSender {
     }
 
     public synchronized void ackArrived(LwCommMessage ack) {
+        if (multicast != null) {
+            multicast.ackArrived(ack);
+            return;
+        }
         boolean wasActive = active;
         if (active) {
             active = false;
             sendResultFuture.done(new SendResult(ack.getFrom()));
             long finished = System.nanoTime();
-            LwCommServiceImpl.getServiceImpl().getStatistics().timeForAck((finished - startTimeNanos) / 1000);
-        }
-        if (timeoutFuture != null) {
-            // Cancel fails if already running or done. If it is already running though, it is still outside of its
-            // synchronized block and hasn't yet checked the active flag. As we have set active to false above, even if
-            // the timeout task executes, it will not send any further messages, nor will it schedule a new timeout
-            // task. Trying to cancel it twice would make no sense either, so try to cancel once and clear reference no matter what.
-            if (!timeoutFuture.cancel(true)) {
-                LwCommServiceImpl.LOGGER.debug("Could not cancel timeout timer (timeoutFuture: {}, wasActive: {}) for message {}", timeoutFuture, wasActive, messageToSend);
+            LwCommServiceImpl.getServiceImpl().getStatistics()
+                    .timeForAck(ack.getFrom(), messageToSend.getUserTag(), (finished - startTimeNanos) / 1000);
+            if (nodeLoadTracker != null) {
+                // a late ACK from a previous target only has the time since the first transmit of the message
+                long sinceNanos = ack.getFrom().equals(outstandingAt) ? outstandingSinceNanos : startTimeNanos;
+                nodeLoadTracker.ackReceived(outstandingAt, ack.getFrom(), (finished - sinceNanos) / 1000);
+                outstandingAt = null;
+            }
+        }
+        if (timeout != null) {
+            // Cancel fails if already expired. If the timeout task is already running though, it is still outside of
+            // its synchronized block and hasn't yet checked the active flag. As we have set active to false above,
+            // even if the timeout task executes, it will not send any further messages, nor will it schedule a new
+            // timeout task. Trying to cancel it twice would make no sense either, so try to cancel once and clear
+            // reference no matter what.
+            if (!timeout.cancel()) {
+                LwCommServiceImpl.LOGGER.debug("Could not cancel timeout timer (wasActive: {}) for message {}",
+                        wasActive, messageToSend);
             }
             // no point in keeping the reference, clear it out even if cancel failed.
-            timeoutFuture = null;
-            LwCommServiceImpl.getServiceImpl().getMessageSenderStore().unregisterMessageSender(this);
+            timeout = null;
         }
+        // the sending is finished whether or not a retransmit was pending, unregistering releases the payload
+        LwCommServiceImpl.getServiceImpl().getMessageSenderStore().unregisterMessageSender(this);
+        releaseMessage();
     }
 
     public synchronized void nackArrived(LwCommMessage nack) {
+        if (multicast != null) {
+            multicast.nackArrived(nack);
+            return;
+        }
         boolean wasActive = active;
         // clear current retransmit timer, tryNextSend will create a new one if necessary
-        if (timeoutFuture != null) {
-            if (!timeoutFuture.cancel(true)) {
-                LwCommServiceImpl.LOGGER.debug(
-                        "Could not cancel timeout timer (timeoutFuture: {}, wasActive: {}) for message {}",
-                        timeoutFuture, wasActive, messageToSend);
+        if (timeout != null) {
+            if (!timeout.cancel()) {
+                LwCommServiceImpl.LOGGER.debug("Could not cancel timeout timer (wasActive: {}) for message {}",
+                        wasActive, messageToSend);
             }
-            timeoutFuture = null;
+            timeout = null;
         }
         if (active) {
             // stay active if there is a subsequent target
@@ -200,32 +263,141 @@ public final class MessageSender {
         // else ??? possibly a late NACK for a retransmit
     }
 
+    /**
+     * Fails the message towards the given node without further retransmits or failover, because it could not be
+     * encoded or written to the network.
+     */
+    public synchronized void sendFailed(Node target) {
+        if (multicast != null) {
+            multicast.sendFailed(target);
+            return;
+        }
+        if (!active) {
+            return;
+        }
+        LwCommServiceImpl.LOGGER.error("Sending message {} to {} failed", getMessageId(), target);
+        active = false;
+        if (timeout != null) {
+            timeout.cancel();
+            timeout = null;
+        }
+        releaseOutstanding();
+        sendResultFuture.done(SendResult.FAILURE);
+        LwCommServiceImpl.getServiceImpl().getMessageSenderStore().unregisterMessageSender(this);
+        releaseMessage();
+    }
+
+    /**
+     * Releases the binary payload of the message, if any. Called when the sender is unregistered or canceled,
+     * the message is not sent after that.
+     */
+    public synchronized void releaseMessage() {
+        active = false;
+        if (!payloadReleased) {
+            payloadReleased = true;
+            messageToSend.releasePayload();
+        }
+    }
+
     public String getMessageId() {
         return messageToSend.getId();
     }
 
-    private SendChainElement getNextSendChainElement() {
-        return sendChain.poll();
+    /** Returns true if the message is sent on a MULTICAST route, so ACKs are expected from more nodes. */
+    public boolean isMulticast() {
+        return multicast != null;
+    }
+
+    /**
+     * Steps to the next transmit: the next retransmit to the current target, or the first transmit to the next target.
+     * @param skipSameNode if true, the remaining retransmits to the current target are skipped
+     * @return false if there is no next transmit
+     */
+    private boolean nextTransmit(boolean skipSameNode) {
+        if (attempt < 0) {
+            attempt = 0;
+        } else if (!skipSameNode && attempt + 1 < intervals.length) {
+            attempt++;
+            return true;
+        } else {
+            targetIndex++;
+            attempt = 0;
+        }
+        return targetIndex < targets.length && intervals.length > 0;
+    }
+
+    /**
+     * Backpressure: a new message is not queued on a channel which is not writable, it fails over to the next target
+     * instead. Retransmits are queued regardless.
+     * @return false if the channel of none of the remaining targets is writable
+     */
+    private boolean skipNotWritableTargets() {
+        if (messageToSend.getType() != LwCommMessage.Type.NORMAL) {
+            return true;
+        }
+        do {
+            Node destination = getDestination();
+            if (nettyUtil.isWritable(destination, messageToSend)) {
+                return true;
+            }
+            LwCommServiceImpl.LOGGER.debug("Outbound buffer towards {} is full, message {} is not sent there",
+                    destination, getMessageId());
+        } while (nextTransmit(true));
+        return false;
+    }
+
+    private Node getDestination() {
+        if (targetIndex == 0 || !randomFailover) {
+            return targets[(firstTarget + targetIndex) % targets.length];
+        }
+        if (failoverOrder == null) {
+            failoverOrder = shuffleFailoverOrder(targets, firstTarget);
+        }
+        return failoverOrder[targetIndex];
+    }
+
+    /**
+     * Returns a copy of the targets with the first target at index 0 and the others in random order. The plan's
+     * array is shared by all the messages of the route, so it is copied only when a message actually fails over.
+     */
+    private static Node[] shuffleFailoverOrder(Node[] targets, int firstTarget) {
+        Node[] ret = new Node[targets.length];
+        ret[0] = targets[firstTarget];
+        for (int i = 1; i < ret.length; i++) {
+            ret[i] = targets[(firstTarget + i) % targets.length];
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = ret.length - 1; i > 1; i--) {
+            int j = 1 + random.nextInt(i);
+            Node tmp = ret[i];
+            ret[i] = ret[j];
+            ret[j] = tmp;
+        }
+        return ret;
+    }
+
+    private boolean isFailover() {
+        return targetIndex > 0;
     }
 
     private void sendCurrent() {
         MDC.put(LwCommUtil.LOGGER_MDC_MSGID_KEY, messageToSend.getId());
         LwCommServiceImpl.LOGGER.trace("BEGIN MessageSender.sendCurrent()");
-        LwCommServiceImpl.LOGGER.debug("Using SendChainElement for sending message {}: {}", messageToSend.getId(),
-                currentSendChainElement);
-        messageToSend.setRetransmitCount(currentSendChainElement.getRetransmitCount());
-        messageToSend.setFailover(currentSendChainElement.isFailover());
+        Node destination = getDestination();
+        int interval = intervals[attempt];
+        LwCommServiceImpl.LOGGER.debug("Sending message {} to {}, timeout: {}, retransmitCount: {}, failover: {}",
+                messageToSend.getId(), destination, interval, attempt, isFailover());
+        messageToSend.setRetransmitCount(attempt);
+        messageToSend.setFailover(isFailover());
         updateStatistics();
         synchronized (this) {
-            startTimeNanos = System.nanoTime();
             if (active) {
-                nettyUtil.sendMessage(currentSendChainElement.getDestination(), messageToSend);
-                if (currentSendChainElement.getTimeout() > 0) {
-                    // create timeout handler
-                    timeoutHandler.setCurrentTimeout(currentSendChainElement.getTimeout());
-                    timeoutFuture = executor.schedule(timeoutHandler, currentSendChainElement.getTimeout(),
-                            TimeUnit.MILLISECONDS);
+                countOutstanding(destination);
+                if (interval > 0) {
+                    // create timeout handler before sending, so that sendFailed() cancels it if the send fails
+                    timeout = retransmitTimer.newTimeout(timeoutHandler, interval, TimeUnit.MILLISECONDS);
                 }
+                nettyUtil.sendMessage(destination, messageToSend);
             } else {
                 LwCommServiceImpl.LOGGER
                         .warn("MessageSender became inactive. Not sending message, you can safely ignore the previous warning about timeout, if any.");
@@ -234,15 +406,33 @@ public final class MessageSender {
         LwCommServiceImpl.LOGGER.trace("END   MessageSender.sendCurrent()");
     }
 
+    private void countOutstanding(Node destination) {
+        assert Thread.holdsLock(this);
+        if (nodeLoadTracker != null && !destination.equals(outstandingAt)) {
+            releaseOutstanding();
+            nodeLoadTracker.messageSent(destination);
+            outstandingAt = destination;
+            outstandingSinceNanos = System.nanoTime();
+        }
+    }
+
+    private void releaseOutstanding() {
+        assert Thread.holdsLock(this);
+        if (outstandingAt != null) {
+            nodeLoadTracker.messageAbandoned(outstandingAt);
+            outstandingAt = null;
+        }
+    }
+
     private void updateStatistics() {
-        if (currentSendChainElement.isFailover()) {
-            if (currentSendChainElement.getRetransmitCount() > 0) {
+        if (isFailover()) {
+            if (attempt > 0) {
                 LwCommServiceImpl.getServiceImpl().getStatistics().incFailoverRetransmitMessageCount();
             } else {
                 LwCommServiceImpl.getServiceImpl().getStatistics().incFailoverMessageCount();
             }
         } else {
-            if (currentSendChainElement.getRetransmitCount() > 0) {
+            if (attempt > 0) {
                 LwCommServiceImpl.getServiceImpl().getStatistics().incRetransmitMessageCount();
             } else {
                 switch (messageToSend.getType()) {
@@ -265,17 +455,6 @@ public final class MessageSender {
         }
     }
 
-    private SendChainElement getNextSendChainElement(boolean skipSameNode) {
-        SendChainElement next = getNextSendChainElement();
-        if (skipSameNode) {
-            Node currentDest = currentSendChainElement.getDestination();
-            while (next != null && Objects.equals(currentDest, next.getDestination())) {
-                next = getNextSendChainElement();
-            }
-        }
-        return next;
-    }
-
     /** Reason for sending the next retransmit. */
     private static enum RetryReason {
         /** The previous transmit timed out without a response. */
@@ -288,8 +467,7 @@ public final class MessageSender {
         assert Thread.holdsLock(this);
         // if a NACK was received, we don't try retransmits for the same node as it will just reject again
         // if a timeout occurred, we try again with the next retransmit
-        currentSendChainElement = getNextSendChainElement(reason == RetryReason.REJECT);
-        if (currentSendChainElement != null && currentSendChainElement.getTimeout() > 0) {
+        if (nextTransmit(reason == RetryReason.REJECT) && intervals[attempt] > 0) {
             // retransmit or failover
             sendCurrent();
         } else {
@@ -297,6 +475,7 @@ public final class MessageSender {
             LwCommServiceImpl.LOGGER
                     .error("Final {} occured for message id {} and no more failover target nodes found - message sending failed. Message:{}",
                             reason == RetryReason.TIMEOUT ? "timeout" : "reject", messageToSend.getId(), messageToSend);
+            releaseOutstanding();
             sendResultFuture.done(SendResult.FAILURE);
             LwCommServiceImpl.getServiceImpl().getMessageSenderStore().unregisterMessageSender(MessageSender.this);
             LwCommServiceImpl.getServiceImpl().getStatistics().incTimeoutMessageCount(); // TODO more generic failed
@@ -311,25 +490,23 @@ public final class MessageSender {
      */
     private class TimeoutHandler implements Runnable {
 
-        private int currentTimeout;
-
-        public void setCurrentTimeout(int currentTimeout) {
-            this.currentTimeout = currentTimeout;
-        }
-
         @Override
         public void run() {
             MDC.put(LwCommUtil.LOGGER_MDC_MSGID_KEY, messageToSend.getId());
             synchronized (MessageSender.this) {
                 if (active) {
+                    int currentTimeout = intervals[attempt];
                     LwCommServiceImpl.LOGGER.warn("Interim ({}ms) timeout occured for message {}", currentTimeout,
                             messageToSend);
+                    if (outstandingAt != null) {
+                        nodeLoadTracker.timeout(outstandingAt, currentTimeout * 1000L);
+                    }
                     tryNextSend(RetryReason.TIMEOUT);
                 } else {
                     // This is a simple race condition that the "active" check above is for.
-                    // It can occur if the task was cancelled or an ACK arrived after the scheduled task
-                    // has already started but has not yet entered the synchronized block. In this state, the task
-                    // cannot be cancelled through Future.cancel(boolean) and will continue to execute.
+                    // It can occur if the task was cancelled or an ACK arrived after the timeout has already expired
+                    // but the task has not yet entered the synchronized block. In this state, the timeout cannot be
+                    // cancelled and the task will continue to execute.
                     LwCommServiceImpl.LOGGER.debug("Timeout occured for message but in the meantime became inactive.");
                 }
             }
@@ -337,47 +514,192 @@ public final class MessageSender {
     }
 
     /**
-     * For every message, a list of SendChainElements is constructed.
-     * This list is constructed from the mode (loadbalance or failover), retransmit pattern
-     * and the destinations. A SendChainElement represents one physical outgoing UDP message.
-     * @author Miklos Pocsaji
-     *
+     * Delivery state of a MULTICAST message: the attempt number, retransmit timeout and result of each destination,
+     * indexed as the destinations of the route. Guarded by the MessageSender monitor. The destinations not alive when
+     * the message is sent fail immediately. The message completes when all the destinations have a result.
      */
-    private static final class SendChainElement {
-        private Node destination;
-        private int timeout;
-        private int retransmitCount;
-        private boolean failover;
+    private final class Multicast {
+        private final Node[] destinations;
+        private final int[] attempts;
+        private final HashedWheelTimer.Handle[] timeouts;
+        private final Runnable[] timeoutHandlers;
+        private final SendResult[] results;
+        private int pending;
+
+        Multicast(Node[] destinations) {
+            this.destinations = destinations;
+            this.attempts = new int[destinations.length];
+            this.timeouts = new HashedWheelTimer.Handle[destinations.length];
+            this.timeoutHandlers = new Runnable[destinations.length];
+            this.results = new SendResult[destinations.length];
+            for (int i = 0; i < destinations.length; i++) {
+                final int index = i;
+                timeoutHandlers[i] = () -> timeout(index);
+            }
+        }
+
+        void start() {
+            synchronized (MessageSender.this) {
+                startTimeNanos = System.nanoTime();
+                if (intervals.length == 0 || intervals[0] <= 0) {
+                    // without a timeout, the destinations not answering would never get a result
+                    LwCommServiceImpl.LOGGER.error(
+                            "Multicast message {} cannot be sent, the retransmit pattern {} has no first timeout",
+                            getMessageId(), Arrays.toString(intervals));
+                    Arrays.fill(results, SendResult.FAILURE);
+                    finish();
+                    return;
+                }
+                Node[] sendTo = new Node[targets.length];
+                int count = 0;
+                for (int i = 0; i < destinations.length; i++) {
+                    Node destination = destinations[i];
+                    if (!contains(targets, destination)) {
+                        LwCommServiceImpl.LOGGER.debug("Multicast destination {} is not alive", destination);
+                        results[i] = SendResult.FAILURE;
+                    } else if (!nettyUtil.isWritable(destination, messageToSend)) {
+                        LwCommServiceImpl.LOGGER.debug("Outbound buffer towards {} is full, message {} is not sent",
+                                destination, getMessageId());
+                        LwCommServiceImpl.getServiceImpl().getStatistics().incBackpressureFailedMessageCount();
+                        results[i] = SendResult.FAILURE;
+                    } else {
+                        sendTo[count++] = destination;
+                        pending++;
+                        timeouts[i] = retransmitTimer.newTimeout(timeoutHandlers[i], intervals[0],
+                                TimeUnit.MILLISECONDS);
+                    }
+                }
+                if (count == 0) {
+                    LwCommServiceImpl.LOGGER.debug("No alive target for message {}", getMessageId());
+                    finish();
+                    return;
+                }
+                if (count < sendTo.length) {
+                    Node[] tmp = new Node[count];
+                    System.arraycopy(sendTo, 0, tmp, 0, count);
+                    sendTo = tmp;
+                }
+                LwCommServiceImpl.LOGGER.debug("Sending multicast message {} to {} nodes, timeout: {}",
+                        getMessageId(), count, intervals[0]);
+                messageToSend.setRetransmitCount(0);
+                messageToSend.setFailover(false);
+                LwCommServiceImpl.getServiceImpl().getStatistics().incFirstOutgoingMessageCount();
+                nettyUtil.sendMessage(sendTo, messageToSend);
+            }
+        }
+
+        boolean cancel() {
+            assert Thread.holdsLock(MessageSender.this);
+            boolean ret = true;
+            for (int i = 0; i < timeouts.length; i++) {
+                if (timeouts[i] != null) {
+                    ret &= timeouts[i].cancel();
+                    timeouts[i] = null;
+                }
+            }
+            LwCommServiceImpl.getServiceImpl().getMessageSenderStore().unregisterMessageSender(MessageSender.this);
+            return ret;
+        }
 
-        public SendChainElement(Node destination, int timeout, int retransmitCount, boolean failover) {
-            this.destination = destination;
-            this.timeout = timeout;
-            this.retransmitCount = retransmitCount;
-            this.failover = failover;
+        void ackArrived(LwCommMessage ack) {
+            assert Thread.holdsLock(MessageSender.this);
+            int i = indexOf(ack.getFrom());
+            if (i < 0 || results[i] != null) {
+                LwCommServiceImpl.LOGGER.debug("Ignoring ACK of message {} from {}, no result is pending",
+                        getMessageId(), ack.getFrom());
+                return;
+            }
+            LwCommServiceImpl.getServiceImpl().getStatistics()
+                    .timeForAck(ack.getFrom(), messageToSend.getUserTag(), (System.nanoTime() - startTimeNanos) / 1000);
+            complete(i, new SendResult(ack.getFrom()));
         }
 
-        public Node getDestination() {
-            return destination;
+        void nackArrived(LwCommMessage nack) {
+            assert Thread.holdsLock(MessageSender.this);
+            int i = indexOf(nack.getFrom());
+            if (i >= 0 && results[i] == null) {
+                // there is no failover target, and a retransmit would be rejected again
+                // the NACK itself is counted as processed by the listener, it is not a timeout
+                LwCommServiceImpl.LOGGER.error("Multicast message {} rejected by {}", getMessageId(), nack.getFrom());
+                complete(i, SendResult.FAILURE);
+            }
         }
 
-        public int getTimeout() {
-            return timeout;
+        void sendFailed(Node target) {
+            assert Thread.holdsLock(MessageSender.this);
+            int i = indexOf(target);
+            if (active && i >= 0 && results[i] == null) {
+                LwCommServiceImpl.LOGGER.error("Sending multicast message {} to {} failed", getMessageId(), target);
+                complete(i, SendResult.FAILURE);
+            }
+        }
+
+        private void timeout(int i) {
+            MDC.put(LwCommUtil.LOGGER_MDC_MSGID_KEY, messageToSend.getId());
+            synchronized (MessageSender.this) {
+                if (!active || results[i] != null) {
+                    LwCommServiceImpl.LOGGER.debug("Timeout occured for message but in the meantime became inactive.");
+                    return;
+                }
+                Node destination = destinations[i];
+                int attempt = ++attempts[i];
+                if (attempt < intervals.length && intervals[attempt] > 0) {
+                    LwCommServiceImpl.LOGGER.warn("Interim ({}ms) timeout occured for multicast message {} to {}",
+                            intervals[attempt - 1], messageToSend, destination);
+                    // The retransmit count is only informative, a concurrent retransmit to another node may overwrite it
+                    messageToSend.setRetransmitCount(attempt);
+                    LwCommServiceImpl.getServiceImpl().getStatistics().incRetransmitMessageCount();
+                    // scheduled before sending, so that sendFailed() cancels it if the send fails
+                    timeouts[i] = retransmitTimer.newTimeout(timeoutHandlers[i], intervals[attempt],
+                            TimeUnit.MILLISECONDS);
+                    nettyUtil.sendMessage(destination, messageToSend);
+                } else {
+                    LwCommServiceImpl.LOGGER.error("Final timeout occured for multicast message id {} to {}. Message:{}",
+                            messageToSend.getId(), destination, messageToSend);
+                    LwCommServiceImpl.getServiceImpl().getStatistics().incTimeoutMessageCount();
+                    complete(i, SendResult.FAILURE);
+                }
+            }
         }
 
-        public int getRetransmitCount() {
-            return retransmitCount;
+        private void complete(int i, SendResult result) {
+            results[i] = result;
+            if (timeouts[i] != null) {
+                timeouts[i].cancel();
+                timeouts[i] = null;
+            }
+            if (--pending == 0) {
+                finish();
+            }
         }
 
-        public boolean isFailover() {
-            return failover;
+        private void finish() {
+            active = false;
+            Map<Node, SendResult> nodeResults = new LinkedHashMap<Node, SendResult>();
+            for (int i = 0; i < destinations.length; i++) {
+                nodeResults.put(destinations[i], results[i]);
+            }
+            sendResultFuture.done(new SendResult(nodeResults));
+            LwCommServiceImpl.getServiceImpl().getMessageSenderStore().unregisterMessageSender(MessageSender.this);
         }
 
-        @Override
-        public String toString() {
-            return "SendChainElement [destination=" + destination + ", timeout=" + timeout + ", retransmitCount="
-                    + retransmitCount + ", failover=" + failover + "]";
+        private int indexOf(Node node) {
+            for (int i = 0; i < destinations.length; i++) {
+                if (destinations[i].equals(node)) {
+                    return i;
+                }
+            }
+            return -1;
         }
 
+        private boolean contains(Node[] nodes, Node node) {
+            for (Node n : nodes) {
+                if (n.equals(node)) {
+                    return true;
+                }
+            }
+            return false;
+        }
     }
 
 //
@@ -42,6 +42,9 @@ public class MessageSenderStore {
 
     public void unregisterMessageSender(MessageSender ms) {
         MessageSender removed = store.remove(ms.getMessageId());
+        if (removed != null) {
+            removed.releaseMessage();
+        }
         LwCommServiceImpl.getServiceImpl().getStatistics().setMessageSenderStoreSize(store.size());
         LwCommServiceImpl.LOGGER.debug("MessageSender with key {} removed from store: {}, store size is {}",
                 ms.getMessageId(), removed == null ? "failure" : "success", store.size());
@@ -19,11 +19,13 @@
 package org.restcomm.imscf.common.lwcomm.service.messages;
 
 import org.restcomm.imscf.common.lwcomm.config.Route;
+import org.restcomm.imscf.common.lwcomm.service.BinaryMessage;
 import org.restcomm.imscf.common.lwcomm.service.TextMessage;
 import org.restcomm.imscf.common.lwcomm.service.impl.LwCommServiceImpl;
 
 import java.security.SecureRandom;
 import java.util.Base64;
+import java.util.List;
 
 /**
  * Internal representation of an outgoing message.
@@ -44,6 +46,19 @@ public class OutgoingMessage extends LwCommMessage {
         return ret;
     }
 
+    /**
+     * Creates a single ACK datagram acknowledging all the given message ids.
+     * Must be sent only to nodes advertising {@link LwCommBinaryFormat#BATCH_CAPABILITY}.
+     */
+    public static OutgoingMessage createMultiAck(List<String> ids) {
+        OutgoingMessage ret = new OutgoingMessage();
+        ret.type = Type.ACK;
+        ret.id = ids.get(0);
+        ret.ackedIds = ids.size() > 1 ? ids : null;
+        ret.from = LwCommServiceImpl.getServiceImpl().getConfiguration().getLocalNode();
+        return ret;
+    }
+
     public static OutgoingMessage createNack(LwCommMessage msg) {
         OutgoingMessage ret = new OutgoingMessage();
         ret.type = Type.NACK;
@@ -59,6 +74,7 @@ public class OutgoingMessage extends LwCommMessage {
         ret.type = Type.HEARTBEAT;
         ret.id = "N/A";
         ret.from = LwCommServiceImpl.getServiceImpl().getConfiguration().getLocalNode();
+        ret.capabilities = LwCommServiceImpl.getServiceImpl().getLocalCapabilities();
         return ret;
     }
 
@@ -76,6 +92,21 @@ public class OutgoingMessage extends LwCommMessage {
         return ret;
     }
 
+    /** Creates a message with binary payload, which takes over the reference of the message to the payload. */
+    public static OutgoingMessage create(Route targetRoute, BinaryMessage message) {
+        OutgoingMessage ret = new OutgoingMessage();
+        ret.type = Type.NORMAL;
+        ret.id = generateNewMessageId();
+        ret.binaryPayload = message.getPayload();
+        ret.targetQueue = message.getTargetQueue() == null ? targetRoute.getDefaultQueue() : message.getTargetQueue();
+        ret.targetRoute = targetRoute.getName();
+        ret.groupId = message.getGroupId();
+        ret.userTag = message.getTag();
+        ret.from = LwCommServiceImpl.getServiceImpl().getConfiguration().getLocalNode();
+        ret.payloadBytes = ret.getCalculatedPayloadBytes();
+        return ret;
+    }
+
     public void setRetransmitCount(int retransmitCount) {
         this.retransmitCount = retransmitCount;
     }
@@ -93,7 +124,7 @@ public class OutgoingMessage extends LwCommMessage {
     @Override
     public String toString() {
         return "OutgoingMessage [id=" + id + ", type=" + type + ", from=" + from + ", targetQueue=" + targetQueue
-                + ", retransmitCount=" + retransmitCount + ", payload=" + payload + ", failover=" + failover
+                + ", retransmitCount=" + retransmitCount + ", payload=" + describePayload() + ", failover=" + failover
                 + ", targetRoute=" + targetRoute + ", groupId=" + groupId + ", userTag=" + userTag + "]";
     }
 
@@ -0,0 +1,106 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ */
+package org.restcomm.imscf.common.lwcomm.service.messages;
+
+import org.restcomm.imscf.common.lwcomm.config.Node;
+import org.restcomm.imscf.common.lwcomm.config.Route;
+import org.restcomm.imscf.common.lwcomm.service.impl.NodeCatalog;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caches the send plan of each route for the current set of alive nodes.
+ * <p>
+ * A plan holds the alive destinations of the route and the retransmit intervals derived from its retransmit pattern.
+ * Plans are immutable and shared by the MessageSenders of the route. A new plan is only built after a node became
+ * alive or not alive, so sending a message does not need to filter and copy the destinations of the route.
+ * </p>
+ */
+public class RoutePlanCache {
+
+    private NodeCatalog nodeCatalog;
+    private ConcurrentHashMap<Route, RoutePlan> plans = new ConcurrentHashMap<Route, RoutePlan>();
+
+    public RoutePlanCache(NodeCatalog nodeCatalog) {
+        this.nodeCatalog = nodeCatalog;
+    }
+
+    /** Returns the plan of the route for the current set of alive nodes. */
+    RoutePlan getPlan(Route route) {
+        // read the version first: if a node changes state while the plan is built, the plan is rebuilt next time
+        int aliveVersion = nodeCatalog.getAliveVersion();
+        RoutePlan plan = plans.get(route);
+        if (plan == null || plan.aliveVersion != aliveVersion) {
+            int[] intervals = plan == null ? toIntervals(route.getRetransmitPattern()) : plan.intervals;
+            Node[] destinations = plan == null ? route.getDestinations().toArray(new Node[0]) : plan.destinations;
+            plan = new RoutePlan(aliveVersion, destinations, getAliveTargets(route), intervals);
+            plans.put(route, plan);
+        }
+        return plan;
+    }
+
+    private Node[] getAliveTargets(Route route) {
+        List<Node> destinations = route.getDestinations();
+        Node[] alive = new Node[destinations.size()];
+        int count = 0;
+        for (Node n : destinations) {
+            if (nodeCatalog.isNodeAlive(n)) {
+                alive[count++] = n;
+            }
+        }
+        if (count < alive.length) {
+            Node[] ret = new Node[count];
+            System.arraycopy(alive, 0, ret, 0, count);
+            return ret;
+        }
+        return alive;
+    }
+
+    /** Converts the retransmit pattern (timeouts measured from the first transmit) to the time between transmits. */
+    private static int[] toIntervals(List<Integer> retransmitPattern) {
+        int[] ret = new int[retransmitPattern.size()];
+        int prevTimeout = 0;
+        for (int i = 0; i < ret.length; i++) {
+            int timeout = retransmitPattern.get(i);
+            ret[i] = timeout - prevTimeout;
+            prevTimeout = timeout;
+        }
+        return ret;
+    }
+
+    /**
+     * The alive targets of a route and its retransmit intervals.
+     * A message is sent to the targets one after the other, each of them as many times as there are intervals.
+     * Messages of MULTICAST routes are sent to all the targets at once, and they need all the destinations as well.
+     */
+    static final class RoutePlan {
+        private final int aliveVersion;
+        final Node[] destinations;
+        final Node[] targets;
+        final int[] intervals;
+
+        RoutePlan(int aliveVersion, Node[] destinations, Node[] targets, int[] intervals) {
+            this.aliveVersion = aliveVersion;
+            this.destinations = destinations;
+            this.targets = targets;
+            this.intervals = intervals;
+        }
+    }
+}
@@ -176,7 +176,9 @@ public class TCAPListenerImscfAdapter implements TCListener {
     public void onTCBegin(TCBeginIndication ind) {
         LOGGER.debug("TCAPListenerImscfAdapter ind={} delegating onTCBegin call", ind);
         rewriteLocalAddressIfGTPresentAndRouteOnSsn(ind.getDialog());
-        if (OverloadProtector.getInstance().getCurrentState().isCpuOrHeapOverloaded()) {
+        ApplicationContextName acn = ind.getDialog().getApplicationContextName();
+        String trafficClass = acn == null ? null : String.valueOf(ImscfTCAPUtil.getApplicationContext(acn.getOid()));
+        if (!OverloadProtector.getInstance().getAdmissionController().tryAdmit(trafficClass)) {
             LOGGER.debug("System is overloaded. Send back TCAP ABORT.");
             TCUserAbortRequest uabort = tcapProvider.getDialogPrimitiveFactory().createUAbort(ind.getDialog());
             try {
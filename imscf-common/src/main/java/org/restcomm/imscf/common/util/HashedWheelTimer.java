@@ -0,0 +1,408 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ */
+package org.restcomm.imscf.common.util;
+
+import java.lang.management.ManagementFactory;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Hashed timing wheel for a large number of one-shot timers, e.g. call timers or message retransmits.
+ * <p>
+ * Scheduling a task on a {@link ScheduledExecutorService} puts a future on its delay queue, a binary heap with
+ * O(log n) insertion and removal. This timer keeps the tasks in a wheel of buckets, each holding the tasks expiring in
+ * one tick, so scheduling and cancelling are O(1) and cost a single object per task. The price is precision: tasks are
+ * fired at most one tick late, never early.
+ * </p>
+ * <p>
+ * The wheel is advanced by a single periodic task on the executor, which is also used to run the expired tasks.
+ * Scheduling and cancelling only push the task to a lock-free stack; the buckets are only touched by the tick.
+ * </p>
+ */
+public final class HashedWheelTimer implements HashedWheelTimerMBean {
+
+    /** Timing wheels are used for named timers unless set to "disabled". */
+    public static final boolean ENABLED = !"disabled".equals(System.getProperty("imscf.timer.wheel"));
+    private static final int DEFAULT_TICK_MS = Integer.getInteger("imscf.timer.wheel.tickMs", 10);
+    private static final int DEFAULT_WHEEL_SIZE = Integer.getInteger("imscf.timer.wheel.size", 512);
+
+    private static final Logger LOG = LoggerFactory.getLogger(HashedWheelTimer.class);
+
+    private final String name;
+    private final ScheduledExecutorService executor;
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final long startTime = System.nanoTime();
+    private final ConcurrentHashMap<String, Timeout> timeouts = new ConcurrentHashMap<>();
+    private final LongAdder pendingCount = new LongAdder();
+    private final AtomicReference<Timeout> added = new AtomicReference<>();
+    private final AtomicReference<Timeout> cancelled = new AtomicReference<>();
+    private final ScheduledFuture<?> ticker;
+    private ObjectName mbeanName;
+
+    /** The next tick to process, only accessed by the tick task. */
+    private long currentTick;
+
+    private final LongAdder scheduledCount = new LongAdder();
+    private final LongAdder cancelledCount = new LongAdder();
+    private volatile long expiredCount;
+    private volatile long totalLagNanos;
+    private volatile long maxLagNanos;
+    private volatile boolean resetRequested;
+
+    /**
+     * Creates a timer with the tick and wheel size set in the system properties <code>imscf.timer.wheel.tickMs</code>
+     * (default 10) and <code>imscf.timer.wheel.size</code> (default 512).
+     */
+    public HashedWheelTimer(String name, ScheduledExecutorService executor) {
+        this(name, executor, DEFAULT_TICK_MS, TimeUnit.MILLISECONDS, DEFAULT_WHEEL_SIZE);
+    }
+
+    /**
+     * Creates a timer.
+     * @param name the name of the timer, used in logs
+     * @param executor the executor advancing the wheel and running the expired tasks
+     * @param tick the duration of a tick, i.e. the precision of the timer
+     * @param unit the unit of tick
+     * @param wheelSize the number of buckets, rounded up to a power of two. Tasks further than wheelSize ticks remain
+     *        in their bucket for more than one round.
+     */
+    public HashedWheelTimer(String name, ScheduledExecutorService executor, long tick, TimeUnit unit, int wheelSize) {
+        if (tick <= 0 || wheelSize <= 0) {
+            throw new IllegalArgumentException("Tick and wheel size must be positive!");
+        }
+        this.name = Objects.requireNonNull(name);
+        this.executor = Objects.requireNonNull(executor);
+        this.tickNanos = unit.toNanos(tick);
+        int size = Integer.highestOneBit(wheelSize);
+        if (size < wheelSize) {
+            size <<= 1;
+        }
+        this.wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Bucket();
+        }
+        this.mask = size - 1;
+        this.ticker = executor.scheduleAtFixedRate(this::tick, tickNanos, tickNanos, TimeUnit.NANOSECONDS);
+        LOG.info("Timer wheel {} started with tick {}ms, wheel size {}", name, unit.toMillis(tick), size);
+    }
+
+    /** Schedules a task with the specified unique name. */
+    public void scheduleNamedTask(String taskName, Runnable command, long delay, TimeUnit unit) {
+        Objects.requireNonNull(taskName, "Task name cannot be null");
+        Timeout t = new Timeout(taskName, command, System.nanoTime() - startTime + unit.toNanos(delay));
+        if (timeouts.putIfAbsent(taskName, t) != null) {
+            throw new IllegalStateException("A task named '" + taskName + "' exists already!");
+        }
+        add(t);
+    }
+
+    /** Cancels the task with the given name. Returns false if there is no such task or it has already expired. */
+    public boolean cancelNamedTask(String taskName) {
+        Timeout t = timeouts.remove(taskName);
+        return t != null && t.cancel();
+    }
+
+    /**
+     * Schedules an anonymous task. Cheaper than a named task, as no name has to be looked up; the returned handle can
+     * be used to cancel it.
+     */
+    public Handle newTimeout(Runnable command, long delay, TimeUnit unit) {
+        Timeout t = new Timeout(null, command, System.nanoTime() - startTime + unit.toNanos(delay));
+        add(t);
+        return t;
+    }
+
+    private void add(Timeout t) {
+        pendingCount.increment();
+        push(added, t, true);
+        scheduledCount.increment();
+    }
+
+    /** Stops the timer, pending tasks are not executed. The executor is not shut down. */
+    public void shutdown() {
+        ticker.cancel(false);
+        timeouts.clear();
+        unregisterMBean();
+        LOG.info("Timer wheel {} stopped", name);
+    }
+
+    /** Registers the timer statistics as an MBean with the given name. */
+    public void registerMBean(String objectName) {
+        try {
+            MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+            ObjectName on = new ObjectName(objectName);
+            if (mbeanServer.isRegistered(on)) {
+                mbeanServer.unregisterMBean(on);
+            }
+            mbeanServer.registerMBean(this, on);
+            mbeanName = on;
+        } catch (Exception e) {
+            LOG.warn("Cannot register MBean {} for timer wheel {}", objectName, name, e);
+        }
+    }
+
+    private void unregisterMBean() {
+        if (mbeanName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(mbeanName);
+        } catch (Exception e) {
+            LOG.warn("Cannot unregister MBean {} of timer wheel {}", mbeanName, name, e);
+        }
+        mbeanName = null;
+    }
+
+    private static void push(AtomicReference<Timeout> stack, Timeout t, boolean addStack) {
+        Timeout head;
+        do {
+            head = stack.get();
+            if (addStack) {
+                t.nextAdded = head;
+            } else {
+                t.nextCancelled = head;
+            }
+        } while (!stack.compareAndSet(head, t));
+    }
+
+    private void tick() {
+        try {
+            long now = System.nanoTime() - startTime;
+            long lastTick = now / tickNanos;
+            if (resetRequested) {
+                resetRequested = false;
+                expiredCount = 0;
+                totalLagNanos = 0;
+                maxLagNanos = 0;
+            }
+            transferAdded();
+            removeCancelled();
+            // process every tick since the last run, in case this run was delayed
+            for (; currentTick <= lastTick; currentTick++) {
+                expire(wheel[(int) (currentTick & mask)], now);
+            }
+        } catch (Exception e) {
+            LOG.error("Error in tick of timer wheel {}", name, e);
+        }
+    }
+
+    private void transferAdded() {
+        for (Timeout t = added.getAndSet(null); t != null;) {
+            Timeout next = t.nextAdded;
+            t.nextAdded = null;
+            if (t.state == Timeout.PENDING) {
+                // round up so that the task never fires early
+                long expiryTick = Math.max(currentTick, (t.deadline + tickNanos - 1) / tickNanos);
+                t.remainingRounds = (expiryTick - currentTick) >> Integer.numberOfTrailingZeros(wheel.length);
+                wheel[(int) (expiryTick & mask)].add(t);
+            }
+            t = next;
+        }
+    }
+
+    private void removeCancelled() {
+        for (Timeout t = cancelled.getAndSet(null); t != null;) {
+            Timeout next = t.nextCancelled;
+            t.nextCancelled = null;
+            if (t.bucket != null) {
+                t.bucket.remove(t);
+            }
+            t = next;
+        }
+    }
+
+    private void expire(Bucket bucket, long now) {
+        for (Timeout t = bucket.head; t != null;) {
+            Timeout next = t.next;
+            if (t.state != Timeout.PENDING) {
+                bucket.remove(t);
+            } else if (t.remainingRounds <= 0) {
+                bucket.remove(t);
+                if (STATE.compareAndSet(t, Timeout.PENDING, Timeout.EXPIRED)) {
+                    if (t.name != null) {
+                        timeouts.remove(t.name, t);
+                    }
+                    pendingCount.decrement();
+                    long lag = now - t.deadline;
+                    totalLagNanos += lag;
+                    if (lag > maxLagNanos) {
+                        maxLagNanos = lag;
+                    }
+                    expiredCount++;
+                    executor.execute(t.command);
+                }
+            } else {
+                t.remainingRounds--;
+            }
+            t = next;
+        }
+    }
+
+    //
+    // MBean interface
+    //
+
+    @Override
+    public long getTickMs() {
+        return TimeUnit.NANOSECONDS.toMillis(tickNanos);
+    }
+
+    @Override
+    public int getWheelSize() {
+        return wheel.length;
+    }
+
+    @Override
+    public int getPendingTimerCount() {
+        return pendingCount.intValue();
+    }
+
+    @Override
+    public long getScheduledCount() {
+        return scheduledCount.sum();
+    }
+
+    @Override
+    public long getCancelledCount() {
+        return cancelledCount.sum();
+    }
+
+    @Override
+    public long getExpiredCount() {
+        return expiredCount;
+    }
+
+    @Override
+    public long getAverageLagUs() {
+        long count = expiredCount;
+        return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalLagNanos / count);
+    }
+
+    @Override
+    public long getMaxLagUs() {
+        return TimeUnit.NANOSECONDS.toMicros(maxLagNanos);
+    }
+
+    @Override
+    public void resetStatistics() {
+        // counters written by the tick are reset by the tick itself, so that no update is lost
+        resetRequested = true;
+        scheduledCount.reset();
+        cancelledCount.reset();
+    }
+
+    @Override
+    public String toString() {
+        return "HashedWheelTimer [name=" + name + ", tickMs=" + getTickMs() + ", wheelSize=" + wheel.length
+                + ", pending=" + pendingCount.intValue() + "]";
+    }
+
+    private static final AtomicIntegerFieldUpdater<Timeout> STATE = AtomicIntegerFieldUpdater.newUpdater(
+            Timeout.class, "state");
+
+    /** Handle of a task scheduled with {@link HashedWheelTimer#newTimeout(Runnable, long, TimeUnit)}. */
+    public interface Handle {
+        /** Cancels the task. Returns false if it has already expired or been cancelled. */
+        boolean cancel();
+    }
+
+    /** A scheduled task. Also the node of the bucket list and of the added / cancelled stacks. */
+    private final class Timeout implements Handle {
+        private static final int PENDING = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+
+        private final String name;
+        private final Runnable command;
+        /** Expiry time relative to the start of the timer in nanoseconds. */
+        private final long deadline;
+        private volatile int state = PENDING;
+        private long remainingRounds;
+        private Bucket bucket;
+        private Timeout prev;
+        private Timeout next;
+        private Timeout nextAdded;
+        private Timeout nextCancelled;
+
+        private Timeout(String name, Runnable command, long deadline) {
+            this.name = name;
+            this.command = command;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public boolean cancel() {
+            if (!STATE.compareAndSet(this, PENDING, CANCELLED)) {
+                return false;
+            }
+            // the tick removes it from its bucket so that long timers do not hold memory after the cancel
+            push(cancelled, this, false);
+            pendingCount.decrement();
+            cancelledCount.increment();
+            return true;
+        }
+    }
+
+    /** Doubly linked list of the tasks in a slot of the wheel. Only accessed by the tick. */
+    private static final class Bucket {
+        private Timeout head;
+        private Timeout tail;
+
+        private void add(Timeout t) {
+            t.bucket = this;
+            t.prev = tail;
+            if (tail == null) {
+                head = t;
+            } else {
+                tail.next = t;
+            }
+            tail = t;
+        }
+
+        private void remove(Timeout t) {
+            if (t.prev == null) {
+                head = t.next;
+            } else {
+                t.prev.next = t.next;
+            }
+            if (t.next == null) {
+                tail = t.prev;
+            } else {
+                t.next.prev = t.prev;
+            }
+            t.prev = null;
+            t.next = null;
+            t.bucket = null;
+        }
+    }
+}
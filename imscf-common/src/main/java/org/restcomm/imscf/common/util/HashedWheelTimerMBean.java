@@ -0,0 +1,52 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ */
+package org.restcomm.imscf.common.util;
+
+/**
+ * MBean interface for the statistics of {@link HashedWheelTimer}.
+ */
+public interface HashedWheelTimerMBean {
+
+    /** The duration of a tick, i.e. the precision of the timer. */
+    long getTickMs();
+
+    /** The number of buckets in the wheel. */
+    int getWheelSize();
+
+    /** The number of timers scheduled, but neither expired nor cancelled yet. Not reset. */
+    int getPendingTimerCount();
+
+    /** The number of timers scheduled since the last reset. */
+    long getScheduledCount();
+
+    /** The number of timers cancelled before expiry since the last reset. */
+    long getCancelledCount();
+
+    /** The number of timers expired since the last reset. */
+    long getExpiredCount();
+
+    /** The average time between the deadline and the actual expiry of the timers, in microseconds. */
+    long getAverageLagUs();
+
+    /** The maximum time between the deadline and the actual expiry of the timers, in microseconds. */
+    long getMaxLagUs();
+
+    /** Resets the counters and the lag statistics. */
+    void resetStatistics();
+}
@@ -19,10 +19,7 @@
 package org.restcomm.imscf.common.util.history;
 
 import java.text.SimpleDateFormat;
-import java.util.Collections;
 import java.util.Date;
-import java.util.LinkedList;
-import java.util.List;
 import java.util.Locale;
 
 import org.slf4j.Logger;
@@ -30,10 +27,17 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Stores a call history.
+ * <p>
+ * Events are recorded as compact entries (event, arguments, time delta) in a ring buffer and only rendered to text when
+ * the history is logged, so recording an event does not format strings on the signalling path. If a call has more
+ * events than <code>imscf.audit.log.maxEvents</code> (default 64), the oldest ones are dropped.
+ * </p>
  * @author Miklos Pocsaji
  */
 public class CallHistory {
     private static final boolean AUDITLOG_ENABLED = "enabled".equals(System.getProperty("imscf.audit.log"));
+    private static final int MAX_EVENTS = Math.max(1, Integer.getInteger("imscf.audit.log.maxEvents", 64));
+    private static final int INITIAL_EVENTS = Math.min(16, MAX_EVENTS);
 
     private static final String DATE_FORMAT = "yyyy-MM-dd HH:mm:ss,SSS";
 
@@ -47,40 +51,104 @@ public class CallHistory {
     private static final Logger AUDITLOG = LoggerFactory.getLogger("audit");
 
     private static final String SEPARATOR = "|";
+    private static final int CALLID_WIDTH = 20;
+    /** Number of array slots per event: event, first argument, second argument. */
+    private static final int SLOTS = 3;
 
     private long startMillis;
     private long lastEventMillis;
     private String imscfCallId;
-    private List<String> events;
+    /** Ring buffer of the events, allocated on the first event. */
+    private Object[] events;
+    private int[] millisDeltas;
+    /** The number of events added, including the dropped ones. */
+    private int eventCount;
 
     public CallHistory(String imscfCallId) {
         long now = System.currentTimeMillis();
         startMillis = now;
         lastEventMillis = now;
         this.imscfCallId = imscfCallId;
-        events = Collections.synchronizedList(new LinkedList<String>());
     }
 
-    public void addEvent(String event) {
+    /** Returns whether the audit log is enabled. If not, events are not recorded at all. */
+    public static boolean isEnabled() {
+        return AUDITLOG_ENABLED;
+    }
+
+    /** Adds an event. The event is rendered with its toString() method or as described in {@link CallHistoryEvent}. */
+    public void addEvent(Object event) {
+        if (AUDITLOG_ENABLED) {
+            record(event, null, null);
+        }
+    }
+
+    /** Adds an event with an argument. Rendering of the argument is deferred until the history is logged. */
+    public void addEvent(Object event, Object arg) {
+        if (AUDITLOG_ENABLED) {
+            record(event, arg, null);
+        }
+    }
+
+    /** Adds an event with two arguments. Rendering of the arguments is deferred until the history is logged. */
+    public void addEvent(Object event, Object arg1, Object arg2) {
         if (AUDITLOG_ENABLED) {
-            events.add(createEventString(event));
+            record(event, arg1, arg2);
         }
     }
 
+    /** Returns an event argument rendered as <code>label: 0x&lt;value in hex&gt;</code> when logged. */
+    public static Object hexArg(String label, long value) {
+        return new HexArg(label, value);
+    }
+
     public void log() {
         if (AUDITLOG_ENABLED) {
             AUDITLOG.info(createCallHistoryString());
         }
     }
 
-    private String createCallHistoryString() {
-        String start = String.format("%s - %20s", formatStart(), imscfCallId);
-        StringBuilder ret = new StringBuilder(start);
-        synchronized (events) {
-            for (String event : events) {
-                ret.append(" ").append(SEPARATOR).append(" ").append(event);
+    private synchronized void record(Object event, Object arg1, Object arg2) {
+        if (events == null) {
+            events = new Object[INITIAL_EVENTS * SLOTS];
+            millisDeltas = new int[INITIAL_EVENTS];
+        } else if (eventCount == millisDeltas.length && eventCount < MAX_EVENTS) {
+            int capacity = Math.min(MAX_EVENTS, eventCount * 2);
+            Object[] newEvents = new Object[capacity * SLOTS];
+            System.arraycopy(events, 0, newEvents, 0, events.length);
+            events = newEvents;
+            int[] newDeltas = new int[capacity];
+            System.arraycopy(millisDeltas, 0, newDeltas, 0, millisDeltas.length);
+            millisDeltas = newDeltas;
+        }
+        long now = System.currentTimeMillis();
+        int index = eventCount % millisDeltas.length;
+        millisDeltas[index] = (int) (now - lastEventMillis);
+        lastEventMillis = now;
+        events[index * SLOTS] = event;
+        events[index * SLOTS + 1] = arg1;
+        events[index * SLOTS + 2] = arg2;
+        eventCount++;
+    }
+
+    private synchronized String createCallHistoryString() {
+        StringBuilder ret = new StringBuilder(128 + eventCount * 32).append(formatStart()).append(" - ");
+        for (int i = String.valueOf(imscfCallId).length(); i < CALLID_WIDTH; i++) {
+            ret.append(' ');
+        }
+        ret.append(imscfCallId);
+        if (events != null) {
+            int capacity = millisDeltas.length;
+            int first = Math.max(0, eventCount - capacity);
+            if (first > 0) {
+                ret.append(" ").append(SEPARATOR).append(" (").append(first).append(" events dropped)");
             }
-		}
+            for (int i = first; i < eventCount; i++) {
+                int index = i % capacity;
+                ret.append(" ").append(SEPARATOR).append(" +").append(millisDeltas[index]).append(' ');
+                appendEvent(ret, events[index * SLOTS], events[index * SLOTS + 1], events[index * SLOTS + 2]);
+            }
+        }
         int firstToLast = (int) (lastEventMillis - startMillis);
         int firstToPrint = (int) (System.currentTimeMillis() - startMillis);
         ret.append(" ").append(SEPARATOR).append(" to-last:").append(firstToLast).append(", to-print:")
@@ -88,15 +156,54 @@ public class CallHistory {
         return ret.toString();
     }
 
-    private String createEventString(String event) {
-        long now = System.currentTimeMillis();
-        int millisDelta = (int) (now - lastEventMillis);
-        lastEventMillis = now;
-        return String.format("+%d %s", millisDelta, event);
+    private static void appendEvent(StringBuilder sb, Object event, Object arg1, Object arg2) {
+        String postfix = "";
+        if (event instanceof CallHistoryEvent) {
+            sb.append(((CallHistoryEvent) event).getPrefix());
+            postfix = ((CallHistoryEvent) event).getPostfix();
+        } else {
+            sb.append(event);
+        }
+        if (arg1 != null) {
+            sb.append('(');
+            appendArg(sb, arg1);
+            if (arg2 != null) {
+                sb.append(", ");
+                appendArg(sb, arg2);
+            }
+            sb.append(')');
+        }
+        sb.append(postfix);
+    }
+
+    private static void appendArg(StringBuilder sb, Object arg) {
+        if (arg instanceof Object[]) {
+            Object[] args = (Object[]) arg;
+            for (int i = 0; i < args.length; i++) {
+                sb.append(i == 0 ? "" : ", ").append(args[i]);
+            }
+        } else {
+            sb.append(arg);
+        }
     }
 
     private String formatStart() {
         return SDF.get().format(new Date(startMillis));
     }
 
+    /** Event argument rendered as a labeled hex number. */
+    private static final class HexArg {
+        private final String label;
+        private final long value;
+
+        private HexArg(String label, long value) {
+            this.label = label;
+            this.value = value;
+        }
+
+        @Override
+        public String toString() {
+            return label + ": 0x" + Long.toHexString(value);
+        }
+    }
 }
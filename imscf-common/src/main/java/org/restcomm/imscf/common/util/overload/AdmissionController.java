@@ -0,0 +1,335 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ */
+package org.restcomm.imscf.common.util.overload;
+
+import org.restcomm.imscf.common.lwcomm.service.LwCommServiceProvider;
+import org.restcomm.imscf.common.lwcomm.service.impl.LwCommServiceImpl;
+import org.restcomm.imscf.common.lwcomm.service.impl.statistics.LwCommStatistics;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Admission control of new sessions (TC_BEGIN, initial SIP requests) with a continuous accept rate.
+ * <p>
+ * The on/off overload flags of {@link OverloadProtector} reject every new session above the threshold and accept all
+ * below it, which makes the load oscillate. This controller computes a pressure for each load signal, where 1.0
+ * is the target: CPU and heap usage relative to their overload thresholds, the LwComm receive worker backlog, the
+ * number of in-flight LwComm messages and the average LwComm message processing time relative to their limits. While
+ * the smoothed maximum pressure is above 1.0, the accept rate is at most the base rate divided by the pressure, and
+ * it is increased additively once the pressure falls below {@link #RECOVERY_PRESSURE}. The base rate is the accept
+ * rate at the start of the current sample period, which is the data collection period of {@link OverloadProtector}:
+ * the CPU and heap usage are only sampled that often, so the same sample is not applied to the rate more than once.
+ * </p>
+ * <p>
+ * The rate is applied per traffic class (application context, SSN, SIP method...). Each class admits the rate
+ * multiplied by its weight of the sessions offered to it, spread evenly by a credit counter. The limit is relative to
+ * the load offered in each class, so a high volume class is not kept from using most of the capacity, a higher weight
+ * only lets through a larger part of the sessions of its class. Weights can be set with the system property
+ * <code>imscf.overload.admission.weights</code>, e.g. <code>CAP_2=2,SIP INVITE=0.5</code>.
+ * </p>
+ * <p>
+ * Admission control is only used if <code>-Dimscf.overload.admission=enabled</code> is set. The accept rate never
+ * goes below <code>imscf.overload.admission.minAcceptPercent</code> (5% by default), so some new sessions are always
+ * let through to measure the load.
+ * </p>
+ */
+public final class AdmissionController implements AdmissionControllerMBean {
+    private static final Logger LOGGER = LoggerFactory.getLogger(AdmissionController.class);
+
+    /** Admission control is only used if set to "enabled". */
+    private static final boolean ENABLED = "enabled".equals(System.getProperty("imscf.overload.admission"));
+    private static final int UPDATE_PERIOD_MS = Integer.getInteger("imscf.overload.admission.updatePeriodMs", 200);
+    private static final int MAX_RECEIVE_BACKLOG = Integer.getInteger("imscf.overload.admission.maxReceiveBacklog",
+            2000);
+    private static final int MAX_IN_FLIGHT = Integer.getInteger("imscf.overload.admission.maxInFlight", 10000);
+    private static final int MAX_LATENCY_US = Integer.getInteger("imscf.overload.admission.maxLatencyUs", 50000);
+    private static final int DEFAULT_MIN_ACCEPT_PERCENT = 5;
+    private static final double MIN_ACCEPT_RATE = minAcceptPercent() / 100d;
+
+    /** Weight of the new pressure sample in the smoothed pressure. */
+    private static final double SMOOTHING = 0.3;
+    /** The accept rate is increased only below this pressure, to avoid oscillating around 1.0. */
+    static final double RECOVERY_PRESSURE = 0.9;
+    private static final double INCREASE_STEP = 0.05;
+    /** Sessions without a traffic class and above this number of classes are counted in the default class. */
+    private static final int MAX_TRAFFIC_CLASSES = 256;
+    private static final String DEFAULT_TRAFFIC_CLASS = "default";
+
+    private final OverloadProtectorParameters parameters;
+    private final Map<String, Double> weights;
+    private final ConcurrentHashMap<String, TrafficClass> trafficClasses = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService executor;
+    private final long samplePeriodNanos;
+
+    private volatile double acceptRate = 1;
+    /** The accept rate at the start of the current sample period, only used by the update thread. */
+    private double baseRate = 1;
+    private long baseRateNanos;
+    private volatile double pressure;
+    private volatile double cpuPressure;
+    private volatile double heapPressure;
+    private volatile double receiveBacklogPressure;
+    private volatile double inFlightPressure;
+    private volatile double latencyPressure;
+
+    AdmissionController(OverloadProtectorParameters parameters) {
+        this.parameters = parameters;
+        this.weights = parseWeights(System.getProperty("imscf.overload.admission.weights"));
+        this.samplePeriodNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(UPDATE_PERIOD_MS,
+                parameters.getDataCollectionPeriodSec() * 1000L));
+        this.baseRateNanos = System.nanoTime();
+        if (ENABLED) {
+            executor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "Admission Controller Thread");
+                t.setDaemon(true);
+                return t;
+            });
+            executor.scheduleAtFixedRate(this::update, UPDATE_PERIOD_MS, UPDATE_PERIOD_MS, TimeUnit.MILLISECONDS);
+            LOGGER.info("Admission control enabled, update period: {}ms, min accept rate: {}, weights: {}",
+                    UPDATE_PERIOD_MS, MIN_ACCEPT_RATE, weights);
+        } else {
+            executor = null;
+            LOGGER.info("Admission control disabled, new sessions are rejected only when CPU or heap is overloaded");
+        }
+    }
+
+    /** Reads the accept floor, which must be between 1 and 100 percent. */
+    private static int minAcceptPercent() {
+        int percent = Integer.getInteger("imscf.overload.admission.minAcceptPercent", DEFAULT_MIN_ACCEPT_PERCENT);
+        if (percent < 1 || percent > 100) {
+            LOGGER.warn("Invalid imscf.overload.admission.minAcceptPercent {}, using {}", percent,
+                    DEFAULT_MIN_ACCEPT_PERCENT);
+            return DEFAULT_MIN_ACCEPT_PERCENT;
+        }
+        return percent;
+    }
+
+    void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Decides whether a new session of the traffic class is accepted. May be called concurrently.
+     * @param trafficClass the application context, service key etc. of the session, may be null
+     * @return true if the session should be accepted, false if it should be rejected due to overload
+     */
+    public boolean tryAdmit(String trafficClass) {
+        if (!ENABLED) {
+            return !OverloadProtector.getInstance().getCurrentState().isCpuOrHeapOverloaded();
+        }
+        return getTrafficClass(trafficClass).admit(acceptRate);
+    }
+
+    private TrafficClass getTrafficClass(String name) {
+        if (name == null) {
+            name = DEFAULT_TRAFFIC_CLASS;
+        }
+        TrafficClass tc = trafficClasses.get(name);
+        if (tc == null) {
+            if (trafficClasses.size() >= MAX_TRAFFIC_CLASSES) {
+                name = DEFAULT_TRAFFIC_CLASS;
+            }
+            tc = trafficClasses.computeIfAbsent(name, n -> new TrafficClass(n, weights.getOrDefault(n, 1d)));
+        }
+        return tc;
+    }
+
+    private void update() {
+        try {
+            OverloadState state = OverloadProtector.getInstance() == null ? null : OverloadProtector.getInstance()
+                    .getCurrentState();
+            cpuPressure = state == null ? 0 : (double) state.getCpuPercent()
+                    / parameters.getCpuOverloadThresholdPercent();
+            heapPressure = state == null ? 0 : (double) state.getHeapPercent()
+                    / parameters.getHeapOverloadThresholdPercent();
+            if (LwCommServiceProvider.isServiceInitialized()) {
+                LwCommStatistics stats = LwCommServiceImpl.getServiceImpl().getStatistics();
+                receiveBacklogPressure = (double) stats.getReceiveWorkerBacklog() / MAX_RECEIVE_BACKLOG;
+                inFlightPressure = (double) stats.getMessageSenderStoreSize() / MAX_IN_FLIGHT;
+                latencyPressure = (double) stats.getAverageWorkerTimeUs() / MAX_LATENCY_US;
+            }
+            double current = Math.max(Math.max(cpuPressure, heapPressure),
+                    Math.max(receiveBacklogPressure, Math.max(inFlightPressure, latencyPressure)));
+            double smoothed = pressure + SMOOTHING * (current - pressure);
+            pressure = smoothed;
+
+            double oldRate = acceptRate;
+            long now = System.nanoTime();
+            if (now - baseRateNanos >= samplePeriodNanos) {
+                baseRate = oldRate;
+                baseRateNanos = now;
+            }
+            double newRate = oldRate;
+            if (smoothed > 1) {
+                // relative to the base rate, so the rate does not keep falling while the pressure sample is the same
+                newRate = Math.max(MIN_ACCEPT_RATE, Math.min(oldRate, baseRate / smoothed));
+            } else if (smoothed < RECOVERY_PRESSURE) {
+                newRate = Math.min(1, oldRate + INCREASE_STEP);
+            }
+            acceptRate = newRate;
+            if (oldRate == 1 && newRate < 1) {
+                LOGGER.warn("Throttling new sessions, accept rate: {}%. {}", Math.round(newRate * 100), this);
+            } else if (oldRate < 1 && newRate == 1) {
+                LOGGER.warn("Accepting all new sessions again. {}", this);
+            } else {
+                LOGGER.trace("Admission state: {}", this);
+            }
+        } catch (Exception e) {
+            LOGGER.error("Error updating admission state", e);
+        }
+    }
+
+    private static Map<String, Double> parseWeights(String property) {
+        Map<String, Double> ret = new HashMap<>();
+        if (property == null || property.trim().isEmpty()) {
+            return ret;
+        }
+        for (String entry : property.split(",")) {
+            int eq = entry.lastIndexOf('=');
+            try {
+                ret.put(entry.substring(0, eq).trim(), Double.parseDouble(entry.substring(eq + 1).trim()));
+            } catch (IndexOutOfBoundsException | NumberFormatException e) {
+                LOGGER.error("Invalid admission weight '{}', ignored", entry);
+            }
+        }
+        return ret;
+    }
+
+    //
+    // MBean interface
+    //
+
+    @Override
+    public boolean isEnabled() {
+        return ENABLED;
+    }
+
+    @Override
+    public double getAcceptRatePercent() {
+        return acceptRate * 100;
+    }
+
+    @Override
+    public double getPressure() {
+        return pressure;
+    }
+
+    @Override
+    public double getCpuPressure() {
+        return cpuPressure;
+    }
+
+    @Override
+    public double getHeapPressure() {
+        return heapPressure;
+    }
+
+    @Override
+    public double getReceiveBacklogPressure() {
+        return receiveBacklogPressure;
+    }
+
+    @Override
+    public double getInFlightPressure() {
+        return inFlightPressure;
+    }
+
+    @Override
+    public double getLatencyPressure() {
+        return latencyPressure;
+    }
+
+    @Override
+    public String getOverloadState() {
+        OverloadProtector op = OverloadProtector.getInstance();
+        return op == null ? null : String.valueOf(op.getCurrentState());
+    }
+
+    @Override
+    public String[] getTrafficClasses() {
+        return trafficClasses.values().stream().map(TrafficClass::toString).sorted().toArray(String[]::new);
+    }
+
+    @Override
+    public void resetCounters() {
+        trafficClasses.values().forEach(TrafficClass::reset);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("AdmissionController [acceptRate=%.1f%%, pressure=%.2f, cpu=%.2f, heap=%.2f, "
+                + "receiveBacklog=%.2f, inFlight=%.2f, latency=%.2f]", acceptRate * 100, pressure, cpuPressure,
+                heapPressure, receiveBacklogPressure, inFlightPressure, latencyPressure);
+    }
+
+    /** Admission state of a traffic class. */
+    private static final class TrafficClass {
+        private final String name;
+        private final double weight;
+        private final LongAdder admitted = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+        /** Accumulated accept rate of the offered sessions, one session is admitted for each whole unit. */
+        private double credit;
+
+        private TrafficClass(String name, double weight) {
+            this.name = name;
+            this.weight = weight;
+        }
+
+        private boolean admit(double acceptRate) {
+            double rate = Math.min(1, acceptRate * weight);
+            boolean ret;
+            if (rate >= 1) {
+                ret = true;
+            } else {
+                synchronized (this) {
+                    credit += rate;
+                    ret = credit >= 1;
+                    if (ret) {
+                        credit -= 1;
+                    }
+                }
+            }
+            (ret ? admitted : rejected).increment();
+            return ret;
+        }
+
+        private void reset() {
+            admitted.reset();
+            rejected.reset();
+        }
+
+        @Override
+        public String toString() {
+            long a = admitted.sum(), r = rejected.sum();
+            return name + ": weight=" + weight + ", offered=" + (a + r) + ", admitted=" + a + ", rejected=" + r;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ */
+package org.restcomm.imscf.common.util.overload;
+
+/**
+ * MBean interface for the decision state of {@link AdmissionController}.
+ */
+public interface AdmissionControllerMBean {
+
+    /**
+     * Whether the admission controller decides on new sessions.
+     * If false, new sessions are rejected only when CPU or heap is overloaded.
+     */
+    boolean isEnabled();
+
+    /** The current accept rate applied to new sessions of traffic classes with weight 1, in percent. */
+    double getAcceptRatePercent();
+
+    /** The smoothed load pressure: the maximum of the signal pressures, 1.0 is the target load. */
+    double getPressure();
+
+    /** CPU usage relative to the CPU overload threshold. */
+    double getCpuPressure();
+
+    /** Heap usage relative to the heap overload threshold. */
+    double getHeapPressure();
+
+    /** LwComm receive worker backlog relative to its limit. */
+    double getReceiveBacklogPressure();
+
+    /** In-flight LwComm messages relative to their limit. */
+    double getInFlightPressure();
+
+    /** Average LwComm message processing time relative to its limit. */
+    double getLatencyPressure();
+
+    /** The overload state of {@link OverloadProtector}, as text. */
+    String getOverloadState();
+
+    /** The state of each traffic class: weight, offered, admitted and rejected session count. */
+    String[] getTrafficClasses();
+
+    /** Resets the offered, admitted and rejected counters of the traffic classes. */
+    void resetCounters();
+}
@@ -45,6 +45,8 @@ public final class OverloadProtector {
     private OverloadProtectorParameters parameters;
     private OverloadState currentState;
     private List<OverloadListener> listeners;
+    private AdmissionController admissionController;
+    private ObjectName admissionMBeanName;
 
     private volatile boolean quit = false;
     private volatile Object semaphor = new Object();
@@ -65,6 +67,8 @@ public final class OverloadProtector {
                 .createOverloadStateWithNonHeapAmount(0, false, 0, false, 0, false);
         tmpInstance.parameters = parameters.copy();
         tmpInstance.listeners = new ArrayList<>();
+        tmpInstance.admissionController = new AdmissionController(tmpInstance.parameters);
+        tmpInstance.registerAdmissionMBean();
         tmpInstance.new OverloadProtectorThread().start();
 
         instance = tmpInstance;
@@ -83,6 +87,11 @@ public final class OverloadProtector {
         return currentState;
     }
 
+    /** Returns the admission controller deciding on new sessions. */
+    public AdmissionController getAdmissionController() {
+        return admissionController;
+    }
+
     public void addListener(OverloadListener listener) {
         listeners.add(listener);
         LOGGER.debug("Added overload listener {}, listeners are: {}", listener, listeners);
@@ -99,12 +108,42 @@ public final class OverloadProtector {
         OverloadProtector oldInstance = instance;
         instance = null;
         oldInstance.quit = true;
+        oldInstance.admissionController.shutdown();
+        oldInstance.unregisterAdmissionMBean();
         synchronized (oldInstance.semaphor) {
             oldInstance.semaphor.notifyAll();
         }
         LOGGER.info("OverloadProtector.shutdown() END");
     }
 
+    private void registerAdmissionMBean() {
+        if (parameters.getMBeanDomain() == null) {
+            return;
+        }
+        try {
+            MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+            ObjectName on = new ObjectName(parameters.getMBeanDomain() + ":type=AdmissionControl");
+            if (mbeanServer.isRegistered(on)) {
+                mbeanServer.unregisterMBean(on);
+            }
+            mbeanServer.registerMBean(admissionController, on);
+            admissionMBeanName = on;
+        } catch (Exception e) {
+            LOGGER.warn("Cannot register admission control MBean", e);
+        }
+    }
+
+    private void unregisterAdmissionMBean() {
+        if (admissionMBeanName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(admissionMBeanName);
+        } catch (Exception e) {
+            LOGGER.warn("Cannot unregister admission control MBean", e);
+        }
+    }
+
     /**
      * The thread which checks if the system is overloaded and notifies the listener of the events.
      */
@@ -49,6 +49,7 @@ public final class OverloadProtectorParameters {
     private int nonHeapOverloadThresholdPercent = DEFAULT_HEAP_OVERLOAD_THRESHOLD_PERCENT;
     private int nonHeapOverloadThresholdAmount;
     private NonHeapOverloadCheckPolicy nonHeapOverloadCheckPolicy = NonHeapOverloadCheckPolicy.PERCENT;
+    private String mBeanDomain;
 
     public OverloadProtectorParameters() {
         // Empty constructor
@@ -62,6 +63,7 @@ public final class OverloadProtectorParameters {
         this.nonHeapOverloadThresholdPercent = other.nonHeapOverloadThresholdPercent;
         this.nonHeapOverloadThresholdAmount = other.nonHeapOverloadThresholdAmount;
         this.nonHeapOverloadCheckPolicy = other.nonHeapOverloadCheckPolicy;
+        this.mBeanDomain = other.mBeanDomain;
     }
 
     OverloadProtectorParameters copy() {
@@ -123,4 +125,13 @@ public final class OverloadProtectorParameters {
     public void setNonHeapOverloadCheckPolicy(NonHeapOverloadCheckPolicy nonHeapOverloadCheckPolicy) {
         this.nonHeapOverloadCheckPolicy = nonHeapOverloadCheckPolicy;
     }
+
+    public String getMBeanDomain() {
+        return mBeanDomain;
+    }
+
+    /** The JMX domain of the admission control MBean. If not set, the MBean is not registered. */
+    public void setMBeanDomain(String mBeanDomain) {
+        this.mBeanDomain = mBeanDomain;
+    }
 }
@@ -0,0 +1,275 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ */
+package org.restcomm.imscf.common;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+/**
+ * Tests of {@link PackedDialogTable}.
+ */
+public class PackedDialogTableTest {
+
+    private static final int SSN = 146;
+    private static final SccpDialogId PEER = new SccpDialogId("3630000000", SSN, SSN);
+    private static final SccpDialogId OTHER_PEER = new SccpDialogId("3630000001", SSN, SSN);
+    private static final SccpDialogId NO_GT = new SccpDialogId(null, SSN, SSN);
+
+    @Test
+    public void testRemoteTidAddedLater() {
+        PackedDialogTable<String> table = new PackedDialogTable<>(16);
+        // outgoing TC_BEGIN, only the local TID is known
+        assertNull(table.set(PEER, tid(null, 100L), "el1"));
+        assertEquals("el1", table.get(PEER, tid(null, 100L)));
+        assertNull(table.get(PEER, tid(7L, null)));
+        assertEquals(0, table.getPeerCount());
+
+        // first TC_CONTINUE from the remote side adds the remote TID
+        assertEquals("el1", table.get(PEER, tid(7L, 100L)));
+        assertEquals("el1", table.get(PEER, tid(7L, null)));
+        assertEquals("el1", table.get(NO_GT, tid(7L, null)));
+        assertNull(table.get(OTHER_PEER, tid(7L, null)));
+        assertEquals(1, table.size());
+        assertEquals(1, table.getPeerCount());
+    }
+
+    @Test
+    public void testReplaceAndRemove() {
+        PackedDialogTable<String> table = new PackedDialogTable<>(16);
+        for (int i = 0; i < 5000; i++) {
+            table.set(PEER, tid((long) i, 100000L + i), "el" + i);
+        }
+        assertEquals(5000, table.size());
+        assertEquals("el1", table.set(PEER, tid(1L, 100001L), "other"));
+        assertEquals("other", table.get(PEER, tid(1L, null)));
+
+        for (int i = 0; i < 5000; i += 2) {
+            assertTrue(table.set(PEER, tid((long) i, 100000L + i), null) != null);
+        }
+        for (int i = 0; i < 5000; i++) {
+            String expected = i % 2 == 0 ? null : i == 1 ? "other" : "el" + i;
+            assertEquals(expected, table.get(PEER, tid((long) i, null)));
+            assertEquals(expected, table.get(PEER, tid(null, 100000L + i)));
+        }
+        assertEquals(2500, table.size());
+
+        // removing again changes nothing
+        assertNull(table.set(PEER, tid(0L, 100000L), null));
+        assertEquals(2500, table.size());
+        for (int i = 1; i < 5000; i += 2) {
+            table.set(PEER, tid((long) i, 100000L + i), null);
+        }
+        assertEquals(0, table.size());
+        assertEquals(0, table.getPeerCount());
+        assertEquals(0, table.getTimeOfMapping(PEER, tid(1L, null)));
+    }
+
+    @Test
+    public void testMismatchedTid() {
+        PackedDialogTable<String> table = new PackedDialogTable<>(16);
+        table.set(PEER, tid(7L, 100L), "el1");
+        try {
+            table.get(PEER, tid(7L, 200L));
+            fail("mismatched local TID accepted");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertEquals("el1", table.get(PEER, tid(7L, 100L)));
+    }
+
+    @Test
+    public void testNoGtKeyCollision() {
+        PackedDialogTable<String> table = new PackedDialogTable<>(16);
+        // three peers with the same remote TID and SSNs have the same no GT key
+        List<SccpDialogId> peers = new ArrayList<>();
+        for (int p = 0; p < 3; p++) {
+            peers.add(new SccpDialogId("363000000" + p, SSN, SSN));
+            table.set(peers.get(p), tid(7L, 100L + p), "el" + p);
+        }
+        assertEquals(3, table.getPeerCount());
+        assertEquals("el0", table.get(NO_GT, tid(7L, null)));
+
+        // removing the indexed dialog lets the next one take over the key
+        table.set(peers.get(0), tid(7L, 100L), null);
+        String next = table.get(NO_GT, tid(7L, null));
+        assertTrue("el1".equals(next) || "el2".equals(next));
+        assertEquals(2, table.getPeerCount());
+
+        // removing a waiting dialog does not affect the indexed one
+        table.set(peers.get(2), tid(7L, 102L), null);
+        assertEquals("el1", table.get(NO_GT, tid(7L, null)));
+        table.set(peers.get(1), tid(7L, 101L), null);
+        assertNull(table.get(NO_GT, tid(7L, null)));
+        assertEquals(0, table.size());
+        assertEquals(0, table.getPeerCount());
+    }
+
+    @Test
+    public void testKeyTakenOverByNewerDialog() {
+        PackedDialogTable<String> table = new PackedDialogTable<>(16);
+        // a dialog left over with the remote TID 7, and a new one from the same peer reusing it
+        table.set(PEER, tid(7L, 100L), "old");
+        table.set(PEER, tid(null, 200L), "new");
+        assertEquals("new", table.get(PEER, tid(7L, 200L)));
+        assertEquals("new", table.get(PEER, tid(7L, null)));
+        assertEquals("old", table.get(PEER, tid(null, 100L)));
+
+        // removing the old dialog keeps the key of the new one
+        assertEquals("old", table.set(PEER, tid(null, 100L), null));
+        assertEquals("new", table.get(PEER, tid(7L, null)));
+        assertEquals(1, table.getPeerCount());
+        assertEquals("new", table.set(PEER, tid(7L, 200L), null));
+        assertEquals(0, table.size());
+        assertEquals(0, table.getPeerCount());
+    }
+
+    @Test
+    public void testReusedSlotNotFoundByOldKeys() {
+        PackedDialogTable<String> table = new PackedDialogTable<>(16);
+        table.set(PEER, tid(7L, 100L), "old");
+        table.set(PEER, tid(7L, 100L), null);
+        // the freed slot is reused for a dialog without remote TID
+        table.set(PEER, tid(null, 200L), "new");
+        assertNull(table.get(PEER, tid(7L, null)));
+        assertNull(table.get(NO_GT, tid(7L, null)));
+        assertNull(table.get(PEER, tid(null, 100L)));
+        assertEquals("new", table.get(PEER, tid(null, 200L)));
+        assertEquals(0, table.getPeerCount());
+    }
+
+    @Test
+    public void testForEach() {
+        PackedDialogTable<String> table = new PackedDialogTable<>(16);
+        table.set(PEER, tid(7L, 100L), "el1");
+        table.set(PEER, tid(null, 200L), "el2");
+        Map<Long, String> visited = new HashMap<>();
+        table.forEach((sdid, tdid, data) -> {
+            if (tdid.isRemoteTIDSet()) {
+                assertEquals(PEER, sdid);
+            } else {
+                assertEquals(PEER.localSideOnly(), sdid);
+            }
+            visited.put(tdid.getLocalTcapTID(), data);
+        });
+        assertEquals(2, visited.size());
+        assertEquals("el1", visited.get(100L));
+        assertEquals("el2", visited.get(200L));
+    }
+
+    @Test
+    public void testLookupOfRemovedDialogDuringSlotReuse() throws Exception {
+        PackedDialogTable<String> table = new PackedDialogTable<>(16);
+        int writers = 4;
+        AtomicBoolean stop = new AtomicBoolean();
+        ExecutorService executor = Executors.newFixedThreadPool(writers * 2);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < writers; t++) {
+                final int thread = t;
+                // each writer removes a dialog with a remote TID, then reuses its slot for one without remote TID
+                futures.add(executor.submit((Callable<Void>) () -> {
+                    for (int i = 0; i < 50000; i++) {
+                        long localTid = thread * 1000000L + i;
+                        table.set(PEER, tid((long) thread, localTid), "remote-" + thread);
+                        table.set(PEER, tid((long) thread, localTid), null);
+                        table.set(PEER, tid(null, localTid), "local-" + thread);
+                        table.set(PEER, tid(null, localTid), null);
+                    }
+                    return null;
+                }));
+                // readers look up the removed dialogs by remote TID only
+                futures.add(executor.submit((Callable<Void>) () -> {
+                    while (!stop.get()) {
+                        String data = table.get(PEER, tid((long) thread, null));
+                        if (data != null && !data.equals("remote-" + thread)) {
+                            throw new AssertionError("Found " + data + " for remote TID " + thread);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (int t = 0; t < writers; t++) {
+                futures.get(t * 2).get();
+            }
+            stop.set(true);
+            for (Future<?> f : futures) {
+                f.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(0, table.size());
+        assertEquals(0, table.getPeerCount());
+    }
+
+    @Test
+    public void testConcurrentSetGetRemove() throws Exception {
+        PackedDialogTable<String> table = new PackedDialogTable<>(16);
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                final int thread = t;
+                futures.add(executor.submit((Callable<Void>) () -> {
+                    Random random = new Random(thread);
+                    for (int i = 0; i < 50000; i++) {
+                        SccpDialogId peer = new SccpDialogId("36" + thread + random.nextInt(5), SSN, SSN);
+                        long remoteTid = random.nextInt(20);
+                        long localTid = thread * 1000000L + i;
+                        String data = "el" + i;
+                        table.set(peer, tid(null, localTid), data);
+                        assertEquals(data, table.get(peer, tid(remoteTid, localTid)));
+                        assertEquals(data, table.get(peer, tid(remoteTid, null)));
+                        assertTrue(table.get(NO_GT, tid(remoteTid, null)) != null);
+                        assertEquals(data, table.set(peer, tid(remoteTid, localTid), null));
+                        assertNull(table.get(peer, tid(null, localTid)));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> f : futures) {
+                f.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(0, table.size());
+        assertEquals(0, table.getPeerCount());
+    }
+
+    private static TcapDialogId tid(Long remoteTid, Long localTid) {
+        return new TcapDialogId(remoteTid, localTid);
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ */
+package org.restcomm.imscf.common;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.mobicents.protocols.ss7.indicator.NatureOfAddress;
+import org.mobicents.protocols.ss7.indicator.NumberingPlan;
+import org.mobicents.protocols.ss7.indicator.RoutingIndicator;
+import org.mobicents.protocols.ss7.sccp.impl.SccpStackImpl;
+import org.mobicents.protocols.ss7.sccp.impl.message.MessageFactoryImpl;
+import org.mobicents.protocols.ss7.sccp.impl.parameter.BCDEvenEncodingScheme;
+import org.mobicents.protocols.ss7.sccp.impl.parameter.BCDOddEncodingScheme;
+import org.mobicents.protocols.ss7.sccp.impl.parameter.GlobalTitle0001Impl;
+import org.mobicents.protocols.ss7.sccp.impl.parameter.GlobalTitle0010Impl;
+import org.mobicents.protocols.ss7.sccp.impl.parameter.GlobalTitle0011Impl;
+import org.mobicents.protocols.ss7.sccp.impl.parameter.GlobalTitle0100Impl;
+import org.mobicents.protocols.ss7.sccp.impl.parameter.HopCounterImpl;
+import org.mobicents.protocols.ss7.sccp.impl.parameter.ImportanceImpl;
+import org.mobicents.protocols.ss7.sccp.impl.parameter.SccpAddressImpl;
+import org.mobicents.protocols.ss7.sccp.message.MessageFactory;
+import org.mobicents.protocols.ss7.sccp.message.SccpDataMessage;
+import org.mobicents.protocols.ss7.sccp.parameter.GlobalTitle;
+import org.mobicents.protocols.ss7.sccp.parameter.GlobalTitle0001;
+import org.mobicents.protocols.ss7.sccp.parameter.GlobalTitle0010;
+import org.mobicents.protocols.ss7.sccp.parameter.GlobalTitle0011;
+import org.mobicents.protocols.ss7.sccp.parameter.GlobalTitle0100;
+import org.mobicents.protocols.ss7.sccp.parameter.SccpAddress;
+
+/**
+ * Round trip tests of {@link SccpBinaryCodec} and of the binary methods of {@link SccpSerializer}.
+ */
+public class SccpBinaryCodecTest {
+
+    private static final MessageFactory FACTORY = new MessageFactoryImpl(new SccpStackImpl("SccpBinaryCodecTest"));
+    private static final byte[] TCAP_DATA = { 100, 6, 73, 4, 1, 2, 3, 12 };
+
+    @Test
+    public void testClass1WithGt0011() {
+        SccpDataMessage msg = FACTORY.createDataMessageClass1(
+                address(RoutingIndicator.ROUTING_BASED_ON_GLOBAL_TITLE, new GlobalTitle0011Impl("363012345678", 0,
+                        BCDEvenEncodingScheme.INSTANCE, NumberingPlan.ISDN_TELEPHONY), 280, 123),
+                address(RoutingIndicator.ROUTING_BASED_ON_GLOBAL_TITLE, new GlobalTitle0011Impl("363015555585", 0,
+                        BCDEvenEncodingScheme.INSTANCE, NumberingPlan.ISDN_TELEPHONY), 321, 44), TCAP_DATA, 1, 146,
+                false, new HopCounterImpl(2), new ImportanceImpl((byte) 1));
+
+        assertMessageEquals(msg, SccpBinaryCodec.decode(SccpBinaryCodec.encode(msg)));
+    }
+
+    @Test
+    public void testClass0WithGt0100AndNoGt() {
+        SccpDataMessage msg = FACTORY.createDataMessageClass0(
+                address(RoutingIndicator.ROUTING_BASED_ON_GLOBAL_TITLE, new GlobalTitle0100Impl("36309879050", 0,
+                        BCDOddEncodingScheme.INSTANCE, NumberingPlan.ISDN_TELEPHONY, NatureOfAddress.INTERNATIONAL),
+                        0, 146),
+                address(RoutingIndicator.ROUTING_BASED_ON_DPC_AND_SSN, null, 4321, 147), TCAP_DATA, 146, true, null,
+                null);
+        msg.setIncomingOpc(1234);
+        msg.setIncomingDpc(5678);
+        msg.setNetworkId(2);
+
+        SccpDataMessage decoded = SccpBinaryCodec.decode(SccpBinaryCodec.encode(msg));
+        assertMessageEquals(msg, decoded);
+        assertNull(decoded.getHopCounter());
+        assertNull(decoded.getImportance());
+        assertNull(decoded.getCallingPartyAddress().getGlobalTitle());
+    }
+
+    @Test
+    public void testGt0001AndGt0010() {
+        SccpDataMessage msg = FACTORY.createDataMessageClass1(
+                address(RoutingIndicator.ROUTING_BASED_ON_GLOBAL_TITLE, new GlobalTitle0001Impl("3630123",
+                        NatureOfAddress.NATIONAL), 0, 6),
+                address(RoutingIndicator.ROUTING_BASED_ON_GLOBAL_TITLE, new GlobalTitle0010Impl("36301", 7), 0, 8),
+                TCAP_DATA, 5, 8, false, null, null);
+
+        assertMessageEquals(msg, SccpBinaryCodec.decode(SccpBinaryCodec.encode(msg)));
+    }
+
+    @Test
+    public void testEmptyAndMaximalData() {
+        for (byte[] data : new byte[][] { new byte[0], new byte[0xFFFF] }) {
+            Arrays.fill(data, (byte) 0xA5);
+            SccpDataMessage msg = FACTORY.createDataMessageClass0(
+                    address(RoutingIndicator.ROUTING_BASED_ON_DPC_AND_SSN, null, 1, 146),
+                    address(RoutingIndicator.ROUTING_BASED_ON_DPC_AND_SSN, null, 2, 146), data, 146, false, null, null);
+            assertMessageEquals(msg, SccpBinaryCodec.decode(SccpBinaryCodec.encode(msg)));
+        }
+    }
+
+    @Test
+    public void testTooLongDataRejected() {
+        SccpDataMessage msg = FACTORY.createDataMessageClass0(
+                address(RoutingIndicator.ROUTING_BASED_ON_DPC_AND_SSN, null, 1, 146),
+                address(RoutingIndicator.ROUTING_BASED_ON_DPC_AND_SSN, null, 2, 146), new byte[0x10000], 146, false,
+                null, null);
+        try {
+            SccpBinaryCodec.encode(msg);
+            fail("data longer than 65535 bytes encoded");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testUnknownVersionRejected() {
+        byte[] encoded = SccpBinaryCodec.encode(simpleMessage());
+        encoded[0] = SccpBinaryCodec.VERSION_1 + 1;
+        try {
+            SccpBinaryCodec.decode(encoded);
+            fail("unknown version decoded");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testTruncatedContentRejected() {
+        byte[] encoded = SccpBinaryCodec.encode(simpleMessage());
+        for (int length : new int[] { 0, 1, encoded.length / 2, encoded.length - 1 }) {
+            try {
+                SccpBinaryCodec.decode(Arrays.copyOf(encoded, length));
+                fail("truncated content of " + length + " bytes decoded");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testDecodeKeepsBufferPosition() {
+        byte[] encoded = SccpBinaryCodec.encode(simpleMessage());
+        ByteBuffer buf = ByteBuffer.allocate(encoded.length + 3);
+        buf.put(new byte[] { 9, 9, 9 }).put(encoded);
+        buf.position(3);
+
+        assertMessageEquals(simpleMessage(), SccpBinaryCodec.decode(buf));
+        assertEquals(3, buf.position());
+    }
+
+    @Test
+    public void testSerializerByteBufRoundTrip() {
+        SccpDataMessage msg = simpleMessage();
+        ByteBuf encoded = SccpSerializer.serializeBinary(msg);
+        // the payload of a received message is a slice of the datagram, starting after the LwComm headers
+        ByteBuf datagram = Unpooled.buffer().writeBytes(new byte[] { 9, 9, 9 }).writeBytes(encoded);
+        datagram.skipBytes(3);
+        try {
+            assertMessageEquals(msg, SccpSerializer.deserializeBinary(datagram));
+            assertEquals(3, datagram.readerIndex());
+        } finally {
+            encoded.release();
+            datagram.release();
+        }
+    }
+
+    private static SccpDataMessage simpleMessage() {
+        return FACTORY.createDataMessageClass1(
+                address(RoutingIndicator.ROUTING_BASED_ON_GLOBAL_TITLE, new GlobalTitle0011Impl("3630111", 0,
+                        BCDOddEncodingScheme.INSTANCE, NumberingPlan.ISDN_TELEPHONY), 0, 146),
+                address(RoutingIndicator.ROUTING_BASED_ON_DPC_AND_SSN, null, 99, 146), TCAP_DATA, 3, 146, false,
+                new HopCounterImpl(15), null);
+    }
+
+    private static SccpAddress address(RoutingIndicator ri, GlobalTitle gt, int pc, int ssn) {
+        return new SccpAddressImpl(ri, gt, pc, ssn);
+    }
+
+    private static void assertMessageEquals(SccpDataMessage expected, SccpDataMessage actual) {
+        assertEquals(expected.getProtocolClass().getProtocolClass(), actual.getProtocolClass().getProtocolClass());
+        assertEquals(expected.getProtocolClass().getReturnMessageOnError(), actual.getProtocolClass()
+                .getReturnMessageOnError());
+        if (expected.getHopCounter() == null) {
+            assertNull(actual.getHopCounter());
+        } else {
+            assertEquals(expected.getHopCounter().getValue(), actual.getHopCounter().getValue());
+        }
+        if (expected.getImportance() == null) {
+            assertNull(actual.getImportance());
+        } else {
+            assertEquals(expected.getImportance().getValue(), actual.getImportance().getValue());
+        }
+        if (expected.getProtocolClass().getProtocolClass() == 1) {
+            assertEquals(expected.getSls(), actual.getSls());
+        }
+        assertEquals(expected.getOriginLocalSsn(), actual.getOriginLocalSsn());
+        assertEquals(expected.getIncomingOpc(), actual.getIncomingOpc());
+        assertEquals(expected.getIncomingDpc(), actual.getIncomingDpc());
+        assertEquals(expected.getNetworkId(), actual.getNetworkId());
+        assertAddressEquals(expected.getCalledPartyAddress(), actual.getCalledPartyAddress());
+        assertAddressEquals(expected.getCallingPartyAddress(), actual.getCallingPartyAddress());
+        assertArrayEquals(expected.getData(), actual.getData());
+    }
+
+    private static void assertAddressEquals(SccpAddress expected, SccpAddress actual) {
+        assertSame(expected.getAddressIndicator().getRoutingIndicator(), actual.getAddressIndicator()
+                .getRoutingIndicator());
+        assertEquals(expected.getSignalingPointCode(), actual.getSignalingPointCode());
+        assertEquals(expected.getSubsystemNumber(), actual.getSubsystemNumber());
+        GlobalTitle egt = expected.getGlobalTitle();
+        GlobalTitle agt = actual.getGlobalTitle();
+        if (egt == null) {
+            assertNull(agt);
+            return;
+        }
+        assertSame(egt.getClass(), agt.getClass());
+        assertEquals(egt.getDigits(), agt.getDigits());
+        if (egt instanceof GlobalTitle0100) {
+            GlobalTitle0100 e = (GlobalTitle0100) egt;
+            GlobalTitle0100 a = (GlobalTitle0100) agt;
+            assertEquals(e.getTranslationType(), a.getTranslationType());
+            assertSame(e.getNumberingPlan(), a.getNumberingPlan());
+            assertSame(e.getEncodingScheme().getClass(), a.getEncodingScheme().getClass());
+            assertSame(e.getNatureOfAddress(), a.getNatureOfAddress());
+        } else if (egt instanceof GlobalTitle0011) {
+            GlobalTitle0011 e = (GlobalTitle0011) egt;
+            GlobalTitle0011 a = (GlobalTitle0011) agt;
+            assertEquals(e.getTranslationType(), a.getTranslationType());
+            assertSame(e.getNumberingPlan(), a.getNumberingPlan());
+            assertSame(e.getEncodingScheme().getClass(), a.getEncodingScheme().getClass());
+        } else if (egt instanceof GlobalTitle0010) {
+            assertEquals(((GlobalTitle0010) egt).getTranslationType(), ((GlobalTitle0010) agt).getTranslationType());
+        } else if (egt instanceof GlobalTitle0001) {
+            assertSame(((GlobalTitle0001) egt).getNatureOfAddress(), ((GlobalTitle0001) agt).getNatureOfAddress());
+        }
+    }
+}
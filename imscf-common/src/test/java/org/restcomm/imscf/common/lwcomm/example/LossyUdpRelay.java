@@ -0,0 +1,77 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ */
+package org.restcomm.imscf.common.lwcomm.example;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Forwards UDP datagrams from a local port to a target address, dropping a percentage of them to simulate packet loss
+ * in benchmarks. The datagrams are forwarded in order by a single thread.
+ */
+public final class LossyUdpRelay implements AutoCloseable {
+
+    private static final int MAX_DATAGRAM_BYTES = 65535;
+
+    private final DatagramSocket socket;
+    private final InetSocketAddress target;
+    private final Thread thread;
+    private volatile int lossPercent;
+
+    public LossyUdpRelay(InetSocketAddress listenAddress, InetSocketAddress target) throws IOException {
+        this.socket = new DatagramSocket(listenAddress);
+        this.target = target;
+        this.thread = new Thread(this::relay, "lossy-udp-relay");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** Sets the percentage of the datagrams dropped, 0 to forward all of them. */
+    public void setLossPercent(int lossPercent) {
+        this.lossPercent = lossPercent;
+    }
+
+    private void relay() {
+        DatagramPacket packet = new DatagramPacket(new byte[MAX_DATAGRAM_BYTES], MAX_DATAGRAM_BYTES);
+        while (!socket.isClosed()) {
+            try {
+                packet.setLength(MAX_DATAGRAM_BYTES);
+                socket.receive(packet);
+                if (lossPercent > 0 && ThreadLocalRandom.current().nextInt(100) < lossPercent) {
+                    continue;
+                }
+                packet.setSocketAddress(target);
+                socket.send(packet);
+            } catch (IOException e) {
+                if (!socket.isClosed()) {
+                    throw new IllegalStateException("Relaying to " + target + " failed", e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        socket.close();
+        thread.join();
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ */
+package org.restcomm.imscf.common.lwcomm.example;
+
+import org.restcomm.imscf.common.lwcomm.config.Node;
+import org.restcomm.imscf.common.lwcomm.config.Route;
+import org.restcomm.imscf.common.lwcomm.config.impl.NodeImpl;
+import org.restcomm.imscf.common.lwcomm.config.impl.RouteImpl;
+import org.restcomm.imscf.common.lwcomm.service.FutureListener;
+import org.restcomm.imscf.common.lwcomm.service.ListenableFuture;
+import org.restcomm.imscf.common.lwcomm.service.LwCommService;
+import org.restcomm.imscf.common.lwcomm.service.SendResult;
+import org.restcomm.imscf.common.lwcomm.service.TextMessage;
+import org.restcomm.imscf.common.lwcomm.service.impl.LwCommServiceImpl;
+
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import ch.qos.logback.classic.Level;
+
+/**
+ * Throughput of {@link LwCommService#send(String, TextMessage)} on loopback: the "sender" node of
+ * {@link LocalConfig} sends to itself on the "loopback" route, with and without packet loss simulated by a
+ * {@link LossyUdpRelay} in front of the node. Only the messages pass the relay, heartbeats and ACKs are sent directly.
+ * Lost messages are retransmitted after the timeouts of the route, so the loss measures the cost of the retransmit
+ * timers as well.
+ * The number of messages waiting for an ACK is limited by a window.
+ * <p>
+ * Usage: <code>java LwCommSendBenchmark [messages] [window] [loss percent...]</code>
+ * </p>
+ */
+public final class LwCommSendBenchmark {
+
+    private static final int ROUNDS = 3;
+    private static final String ROUTE = "loopback";
+    private static final int RELAY_PORT = 3310;
+    private static final String PAYLOAD = "sjdklfldsfkgjldfkgjldfskjgldsfkjglkdfgjsladkjvlksdfjvlkdfjvldfjdflsjvdlsfjv";
+
+    private LwCommSendBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int messages = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int window = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int[] lossPercents = { 0, 1, 5 };
+        if (args.length > 2) {
+            lossPercents = new int[args.length - 2];
+            for (int i = 2; i < args.length; i++) {
+                lossPercents[i - 2] = Integer.parseInt(args[i]);
+            }
+        }
+        // logging every message, retransmit and failure would be measured instead of the sending
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.OFF);
+
+        LoopbackConfig config = new LoopbackConfig();
+        Node sender = config.getLocalNode();
+        LwCommServiceImpl.init(config);
+        try (LossyUdpRelay relay = new LossyUdpRelay(new InetSocketAddress("localhost", RELAY_PORT),
+                new InetSocketAddress(sender.getHost(), sender.getPort()))) {
+            LwCommService service = LwCommServiceImpl.getServiceImpl();
+            System.out.println("Waiting for the heartbeat of the local node...");
+            Thread.sleep(6000);
+            for (int lossPercent : lossPercents) {
+                relay.setLossPercent(lossPercent);
+                for (int round = 0; round < ROUNDS; round++) {
+                    // the first rounds are warmup, only the last one is printed
+                    run(service, messages, window, lossPercent, round == ROUNDS - 1);
+                }
+            }
+        } finally {
+            LwCommServiceImpl.getServiceImpl().shutdown();
+        }
+    }
+
+    private static void run(LwCommService service, int messages, int window, int lossPercent, boolean print)
+            throws InterruptedException {
+        Semaphore inFlight = new Semaphore(window);
+        CountDownLatch done = new CountDownLatch(messages);
+        Listener listener = new Listener(inFlight, done);
+        TextMessage tm = TextMessage.builder(PAYLOAD).create();
+        long then = System.nanoTime();
+        for (int i = 0; i < messages; i++) {
+            inFlight.acquire();
+            service.send(ROUTE, tm).addListener(listener, null);
+        }
+        done.await();
+        long elapsedNanos = System.nanoTime() - then;
+        if (print) {
+            System.out.printf("loss: %2d%% messages: %d window: %d time: %6dms throughput: %d msg/s failed: %d%n",
+                    lossPercent, messages, window, TimeUnit.NANOSECONDS.toMillis(elapsedNanos), messages
+                            * 1000000000L / elapsedNanos, listener.failed.sum());
+        }
+    }
+
+    /**
+     * {@link LocalConfig} of the "sender" node with a "loopback" route to itself through the relay port. Nodes are
+     * equal by name, so the destination is the local node, only its address is the one of the relay.
+     */
+    private static final class LoopbackConfig extends LocalConfig {
+        private final RouteImpl loopback = new RouteImpl();
+
+        private LoopbackConfig() {
+            super("sender");
+            loopback.setName(ROUTE);
+            loopback.setDefaultQueue("jms/queue/TestQueue");
+            loopback.setPossibleSources(Collections.singleton(getLocalNode()));
+            loopback.setDestinations(Collections.<Node> singletonList(new NodeImpl("sender", "localhost", RELAY_PORT)));
+            loopback.setMode(Route.Mode.FAILOVER);
+            loopback.setRetransmitPattern(Arrays.asList(50, 100, 150, 200, 250));
+        }
+
+        @Override
+        public Set<Route> getAllRoutes() {
+            Set<Route> ret = new HashSet<Route>(super.getAllRoutes());
+            ret.add(loopback);
+            return ret;
+        }
+
+        @Override
+        public Route getRouteByName(String name) {
+            return ROUTE.equals(name) ? loopback : super.getRouteByName(name);
+        }
+    }
+
+    /**
+     * Counts the failed messages and frees a place in the window when a message is done.
+     */
+    private static final class Listener implements FutureListener<SendResult> {
+        private final Semaphore inFlight;
+        private final CountDownLatch done;
+        private final LongAdder failed = new LongAdder();
+
+        private Listener(Semaphore inFlight, CountDownLatch done) {
+            this.inFlight = inFlight;
+            this.done = done;
+        }
+
+        @Override
+        public void done(ListenableFuture<SendResult> listenableFuture) {
+            try {
+                if (listenableFuture.get().getType() != SendResult.Type.SUCCESS) {
+                    failed.increment();
+                }
+            } catch (InterruptedException | ExecutionException e) {
+                failed.increment();
+            }
+            inFlight.release();
+            done.countDown();
+        }
+    }
+}
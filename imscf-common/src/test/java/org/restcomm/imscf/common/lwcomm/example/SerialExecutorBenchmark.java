@@ -0,0 +1,84 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ */
+package org.restcomm.imscf.common.lwcomm.example;
+
+import org.restcomm.imscf.common.lwcomm.service.impl.SerialExecutor;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Throughput of {@link SerialExecutor} used for LwComm message delivery, compared to submitting the tasks to the
+ * thread pool directly without ordering. Two workloads are measured: many keys with a few tasks each (many concurrent
+ * calls) and a few hot keys with a lot of tasks each.
+ * <p>
+ * Usage: <code>java SerialExecutorBenchmark [threads] [tasks]</code>
+ * </p>
+ */
+public final class SerialExecutorBenchmark {
+
+    private static final int ROUNDS = 5;
+    private static final int MANY_KEYS = 10000;
+    private static final int HOT_KEYS = 4;
+
+    private SerialExecutorBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int tasks = args.length > 1 ? Integer.parseInt(args[1]) : 1000000;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            for (int keys : new int[] { MANY_KEYS, HOT_KEYS }) {
+                for (int round = 0; round < ROUNDS; round++) {
+                    // the first rounds are warmup, only the last one is printed
+                    boolean print = round == ROUNDS - 1;
+                    run("unordered", keys, tasks, (task, key) -> pool.execute(task), print);
+                    SerialExecutor serial = new SerialExecutor(pool);
+                    run("SerialExecutor", keys, tasks, serial::execute, print);
+                }
+            }
+        } finally {
+            pool.shutdown();
+            pool.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+
+    private static void run(String name, int keys, int tasks, BiConsumer<Runnable, Object> executor, boolean print)
+            throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(tasks);
+        Integer[] keyObjects = new Integer[keys];
+        for (int i = 0; i < keys; i++) {
+            keyObjects[i] = i;
+        }
+        long then = System.nanoTime();
+        for (int i = 0; i < tasks; i++) {
+            executor.accept(done::countDown, keyObjects[i % keys]);
+        }
+        done.await();
+        long elapsedNanos = System.nanoTime() - then;
+        if (print) {
+            System.out.printf("%-16s keys: %6d tasks: %d time: %6dms throughput: %d tasks/s%n", name, keys, tasks,
+                    TimeUnit.NANOSECONDS.toMillis(elapsedNanos), tasks * 1000000000L / elapsedNanos);
+        }
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ */
+package org.restcomm.imscf.common.lwcomm.service.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Tests of {@link SerialExecutor}.
+ */
+public class SerialExecutorTest {
+
+    private static final int KEYS = 50;
+    private static final int TASKS_PER_KEY = 2000;
+
+    @Test
+    public void testTasksOfKeyRunInOrderOneAtATime() throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            SerialExecutor executor = new SerialExecutor(pool, 4);
+            List<List<Integer>> runs = new ArrayList<List<Integer>>();
+            AtomicInteger[] running = new AtomicInteger[KEYS];
+            AtomicBoolean overlap = new AtomicBoolean();
+            for (int k = 0; k < KEYS; k++) {
+                // only one thread at a time appends to the list of a key if the executor is correct
+                runs.add(Collections.synchronizedList(new ArrayList<Integer>()));
+                running[k] = new AtomicInteger();
+            }
+            CountDownLatch done = new CountDownLatch(KEYS * TASKS_PER_KEY);
+            for (int i = 0; i < TASKS_PER_KEY; i++) {
+                for (int k = 0; k < KEYS; k++) {
+                    final int key = k;
+                    final int seq = i;
+                    executor.execute(() -> {
+                        if (running[key].incrementAndGet() != 1) {
+                            overlap.set(true);
+                        }
+                        runs.get(key).add(seq);
+                        running[key].decrementAndGet();
+                        done.countDown();
+                    }, "key" + key);
+                }
+            }
+            assertTrue("tasks not finished", done.await(30, TimeUnit.SECONDS));
+            assertTrue("tasks of the same key ran concurrently", !overlap.get());
+            for (int k = 0; k < KEYS; k++) {
+                List<Integer> run = runs.get(k);
+                assertEquals(TASKS_PER_KEY, run.size());
+                for (int i = 0; i < TASKS_PER_KEY; i++) {
+                    assertEquals("order of key" + k, i, run.get(i).intValue());
+                }
+            }
+        } finally {
+            pool.shutdown();
+            pool.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void testExceptionDoesNotStopKey() {
+        ManualExecutor delegate = new ManualExecutor();
+        SerialExecutor executor = new SerialExecutor(delegate);
+        List<String> ran = new ArrayList<String>();
+        executor.execute(() -> ran.add("first"), "key");
+        executor.execute(() -> {
+            throw new IllegalStateException("expected by the test");
+        }, "key");
+        executor.execute(() -> ran.add("third"), "key");
+        delegate.runAll();
+        assertEquals(2, ran.size());
+        assertEquals("first", ran.get(0));
+        assertEquals("third", ran.get(1));
+
+        // the key is still usable afterwards
+        executor.execute(() -> ran.add("fourth"), "key");
+        delegate.runAll();
+        assertEquals(3, ran.size());
+        assertEquals(0, executor.getActiveKeyCount());
+    }
+
+    @Test
+    public void testErrorDoesNotStopKey() {
+        ManualExecutor delegate = new ManualExecutor();
+        SerialExecutor executor = new SerialExecutor(delegate);
+        AtomicInteger ran = new AtomicInteger();
+        executor.execute(() -> {
+            throw new AssertionError("expected by the test");
+        }, "key");
+        executor.execute(ran::incrementAndGet, "key");
+        delegate.runAll();
+        assertEquals(1, ran.get());
+    }
+
+    @Test
+    public void testFairnessLimit() {
+        ManualExecutor delegate = new ManualExecutor();
+        SerialExecutor executor = new SerialExecutor(delegate, 2);
+        List<String> ran = new ArrayList<String>();
+        for (int i = 0; i < 5; i++) {
+            final int seq = i;
+            executor.execute(() -> ran.add("hot" + seq), "hot");
+        }
+        executor.execute(() -> ran.add("other"), "other");
+        assertEquals(2, delegate.size());
+
+        // a turn of the hot key runs two tasks, then the other key gets its turn
+        delegate.runNext();
+        assertEquals(2, ran.size());
+        delegate.runNext();
+        assertEquals("other", ran.get(2));
+        delegate.runAll();
+        assertEquals(6, ran.size());
+        for (int i = 0; i < 5; i++) {
+            assertEquals("hot" + i, ran.get(i < 2 ? i : i + 1));
+        }
+    }
+
+    @Test
+    public void testMailboxRetiredWhenIdle() {
+        ManualExecutor delegate = new ManualExecutor();
+        SerialExecutor executor = new SerialExecutor(delegate);
+        AtomicInteger ran = new AtomicInteger();
+        executor.execute(ran::incrementAndGet, "a");
+        executor.execute(ran::incrementAndGet, "b");
+        executor.execute(ran::incrementAndGet, "a");
+        assertEquals(2, executor.getActiveKeyCount());
+        // one scheduling per key, the second task of "a" is queued in its mailbox
+        assertEquals(2, delegate.size());
+        delegate.runAll();
+        assertEquals(3, ran.get());
+        assertEquals(0, executor.getActiveKeyCount());
+
+        executor.execute(ran::incrementAndGet, "a");
+        assertEquals(1, executor.getActiveKeyCount());
+        delegate.runAll();
+        assertEquals(4, ran.get());
+        assertEquals(0, executor.getActiveKeyCount());
+    }
+
+    @Test
+    public void testNullKeyRunsDirectly() {
+        ManualExecutor delegate = new ManualExecutor();
+        SerialExecutor executor = new SerialExecutor(delegate);
+        AtomicInteger ran = new AtomicInteger();
+        executor.execute(ran::incrementAndGet, null);
+        executor.execute(ran::incrementAndGet, null);
+        assertEquals(2, delegate.size());
+        assertEquals(0, executor.getActiveKeyCount());
+        delegate.runAll();
+        assertEquals(2, ran.get());
+    }
+
+    @Test
+    public void testNoTasksRunAfterShutdown() {
+        ManualExecutor delegate = new ManualExecutor();
+        SerialExecutor executor = new SerialExecutor(delegate);
+        AtomicInteger ran = new AtomicInteger();
+        executor.execute(ran::incrementAndGet, "key");
+        executor.shutdown();
+        executor.execute(ran::incrementAndGet, "key");
+        delegate.runAll();
+        assertEquals(0, ran.get());
+    }
+
+    @Test
+    public void testInvalidFairnessLimit() {
+        try {
+            new SerialExecutor(new ManualExecutor(), 0);
+            fail("IllegalArgumentException expected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    /** Delegate running the scheduled tasks in the test thread, when the test asks for it. */
+    private static final class ManualExecutor implements Executor {
+        private final Queue<Runnable> tasks = new ArrayDeque<Runnable>();
+
+        @Override
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+
+        int size() {
+            return tasks.size();
+        }
+
+        void runNext() {
+            tasks.poll().run();
+        }
+
+        void runAll() {
+            while (!tasks.isEmpty()) {
+                runNext();
+            }
+        }
+    }
+}
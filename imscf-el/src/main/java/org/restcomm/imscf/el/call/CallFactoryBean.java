@@ -18,6 +18,7 @@
  */
 package org.restcomm.imscf.el.call;
 
+import org.restcomm.imscf.el.call.history.ElEvent;
 import org.restcomm.imscf.el.call.history.ElEventCreator;
 import org.restcomm.imscf.el.call.impl.IMSCFCallBase;
 import org.restcomm.imscf.el.call.impl.ImscfCallMaxAgeTimerListener;
@@ -39,6 +40,7 @@ import org.restcomm.imscf.el.sip.servlets.AppSessionHelper;
 import org.restcomm.imscf.el.sip.servlets.MainServlet;
 import org.restcomm.imscf.el.stack.SLELRouterBean;
 import org.restcomm.imscf.el.stack.SlElMappingData;
+import org.restcomm.imscf.el.statistics.ElStatistics;
 import org.restcomm.imscf.el.tcap.call.TCAPCall;
 import org.restcomm.imscf.common.SccpDialogId;
 import org.restcomm.imscf.common.TcapDialogId;
@@ -129,6 +131,10 @@ public class CallFactoryBean {
         CapSipCsCallImpl call = initCall(specificCall, module);
         call.setIdp(idp);
         call.setCsCapState(CAPCSCall.CAPState.IDP_ARRIVED);
+        if (capData != null) {
+            // the service key is known from now on, TCAP statistics of the dialog go to its counters
+            capData.setStatisticsSetter(ElStatistics.getServiceKeyStatisticsSetter(call.getServiceIdentifier()));
+        }
         CAPDialogCircuitSwitchedCall dialog = idp.getCAPDialog();
         call.setCapDialog(dialog);
         dialog.setIdleTaskTimeout(module.getTcapIdleTimeoutMillis());
@@ -165,7 +171,7 @@ public class CallFactoryBean {
         }
 
         MapSipCallImpl call = initCall(specificCall, mapModule);
-        call.getCallHistory().addEvent(ElEventCreator.createIncomingSipEvent(subscribeRequest));
+        ElEventCreator.addIncomingSipEvent(call, subscribeRequest);
         ((IMSCFCallBase) call).populateMDC();
         callStore.updateCall(call);
         LOG.debug("Created MAP call: {}", call);
@@ -192,7 +198,7 @@ public class CallFactoryBean {
             call.setSipModule((SipModule) capModule);
         }
         initCall(call, capModule);
-        call.getCallHistory().addEvent(ElEventCreator.createIncomingSipEvent(inviteRequest));
+        ElEventCreator.addIncomingSipEvent(call, inviteRequest);
 
         CAPDialogCircuitSwitchedCall capDialog;
         try {
@@ -419,7 +425,7 @@ public class CallFactoryBean {
                     + manMsg.serialize();
             SendResultFuture<SendResult> result = LwCommServiceImpl.getService().send(route,
                     TextMessage.builder(payload).setGroupId(call.getImscfCallId()).create());
-            call.getCallHistory().addEvent("<-LWC(" + manMsg.getType() + ", " + result.getMessageId() + ")");
+            call.getCallHistory().addEvent(ElEvent.LWC_OUT, manMsg.getType(), result.getMessageId());
         }
     }
 }
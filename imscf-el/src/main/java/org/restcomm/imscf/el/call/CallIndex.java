@@ -0,0 +1,49 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ */
+package org.restcomm.imscf.el.call;
+
+import org.restcomm.imscf.el.sip.SIPCall;
+import org.restcomm.imscf.el.tcap.call.TCAPCall;
+
+/**
+ * Storage behind {@link CallStoreBean}. Stores and returns the unwrapped calls, locking is left to the caller.
+ * <h1>Concurrency</h1> All methods may be called concurrently.
+ */
+interface CallIndex {
+
+    IMSCFCall getByImscfCallId(String imscfCallId);
+
+    SIPCall getByAppSessionId(String appSessionId);
+
+    TCAPCall getByLocalTcapTrId(Long localTcapTrId);
+
+    /** Stores the call, or updates the keys of an already stored call. */
+    void update(IMSCFCall call);
+
+    void remove(IMSCFCall call);
+
+    /** Returns the number of stored calls of the given type. */
+    int countCalls(CallType type);
+
+    int getImscfCallIdIndexSize();
+
+    int getAppSessionIdIndexSize();
+
+    int getLocalTcapTrIdIndexSize();
+}
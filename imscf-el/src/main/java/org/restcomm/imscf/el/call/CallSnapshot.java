@@ -0,0 +1,108 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ */
+package org.restcomm.imscf.el.call;
+
+import org.restcomm.imscf.common.util.history.CallHistory;
+import org.restcomm.imscf.el.call.impl.CallResourceAdapter;
+import org.restcomm.imscf.el.tcap.call.TCAPCall;
+
+import java.util.Objects;
+
+/**
+ * Immutable view of the attributes of a call, as of the time the call lock was last released. Returned by the
+ * <code>peek</code> methods of {@link CallStore} for code that only reads the call, so that it does not have to wait
+ * for the threads processing the call.
+ * <p>
+ * The call history is the live, thread safe history of the call, so events can be added through a snapshot.
+ * </p>
+ */
+public final class CallSnapshot {
+
+    private final String imscfCallId;
+    private final CallType type;
+    private final String appSessionId;
+    private final Long localTcapTrId;
+    private final ImscfCallLifeCycleState imscfState;
+    private final long creationTime;
+    private final CallHistory callHistory;
+
+    private CallSnapshot(IMSCFCall call) {
+        imscfCallId = call.getImscfCallId();
+        type = CallType.of(call);
+        appSessionId = call.getAppSessionId();
+        localTcapTrId = call instanceof TCAPCall ? ((TCAPCall) call).getLocalTcapTrId() : null;
+        imscfState = call.getImscfState();
+        creationTime = call.getCreationTime();
+        callHistory = call.getCallHistory();
+    }
+
+    /**
+     * Returns the snapshot of the current attributes of the call, which is the previous snapshot if none of them has
+     * changed. Must be called by the thread holding the call lock, or before the call is shared.
+     */
+    public static CallSnapshot of(IMSCFCall call, CallSnapshot previous) {
+        IMSCFCall c = CallResourceAdapter.unwrap(call);
+        if (previous != null && previous.imscfState == c.getImscfState()
+                && Objects.equals(previous.imscfCallId, c.getImscfCallId())
+                && Objects.equals(previous.appSessionId, c.getAppSessionId())
+                && (!(c instanceof TCAPCall) || Objects.equals(previous.localTcapTrId,
+                        ((TCAPCall) c).getLocalTcapTrId()))) {
+            return previous;
+        }
+        return new CallSnapshot(c);
+    }
+
+    public String getImscfCallId() {
+        return imscfCallId;
+    }
+
+    public CallType getType() {
+        return type;
+    }
+
+    public String getAppSessionId() {
+        return appSessionId;
+    }
+
+    public Long getLocalTcapTrId() {
+        return localTcapTrId;
+    }
+
+    public ImscfCallLifeCycleState getImscfState() {
+        return imscfState;
+    }
+
+    public long getCreationTime() {
+        return creationTime;
+    }
+
+    public long getAge() {
+        return System.currentTimeMillis() - creationTime;
+    }
+
+    public CallHistory getCallHistory() {
+        return callHistory;
+    }
+
+    @Override
+    public String toString() {
+        return "CallSnapshot [imscfCallId=" + imscfCallId + ", type=" + type + ", appSessionId=" + appSessionId
+                + ", localTcapTrId=" + localTcapTrId + ", imscfState=" + imscfState + "]";
+    }
+}
@@ -48,6 +48,19 @@ public interface CallStore {
 
     SIPCall getSipCall(SipServletMessage msg);
 
+    /**
+     * Returns the attributes of the call without locking it, for read-only use such as statistics, history and
+     * logging. The returned snapshot reflects the call as of the last release of its lock.
+     * @return the snapshot, or null if there is no such call
+     */
+    CallSnapshot peekCallByImscfCallId(String imscfCallId);
+
+    /** Like {@link #peekCallByImscfCallId(String)}, looking up the call by its SIP application session id. */
+    CallSnapshot peekCallByAppSessionId(String appSessionId);
+
+    /** Like {@link #peekCallByImscfCallId(String)}, looking up the call by its local TCAP transaction id. */
+    CallSnapshot peekCallByLocalTcapTrId(Long localTcapTrId);
+
     void updateCall(IMSCFCall call);
 
     void removeCall(IMSCFCall call);
@@ -18,61 +18,83 @@
  */
 package org.restcomm.imscf.el.call;
 
+import org.restcomm.imscf.el.call.impl.CallLockStatistics;
 import org.restcomm.imscf.el.call.impl.CallResourceAdapter;
+import org.restcomm.imscf.el.call.impl.IMSCFCallBase;
 import org.restcomm.imscf.el.cap.call.CAPCall;
 import org.restcomm.imscf.el.map.call.MAPCall;
 import org.restcomm.imscf.el.sip.SIPCall;
 import org.restcomm.imscf.el.tcap.call.TCAPCall;
-
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import org.restcomm.imscf.util.MBeanHelper;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.ejb.ConcurrencyManagement;
 import javax.ejb.ConcurrencyManagementType;
 import javax.ejb.Singleton;
 import javax.servlet.sip.SipServletMessage;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 /**
  * Singleton bean implementing {@link CallStore}.
- *
+ * <p>
+ * The calls are stored in a {@link StripedCallTable} by default, or in a {@link MapCallIndex} if
+ * <code>-Dimscf.callstore.table=map</code> is set.
+ * </p>
  */
 @ConcurrencyManagement(ConcurrencyManagementType.BEAN)
 @Singleton
 public class CallStoreBean implements CallStore {
+    private static final Logger LOG = LoggerFactory.getLogger(CallStoreBean.class);
+    /** Selects the {@link MapCallIndex} storage instead of the striped table. */
+    private static final boolean STRIPED_TABLE_ENABLED = !"map".equals(System.getProperty("imscf.callstore.table"));
+    /** Initial capacity of the striped table indexes. */
+    private static final int STRIPED_TABLE_INITIAL_CAPACITY = Integer.getInteger(
+            "imscf.callstore.table.initialCapacity", 1 << 14);
+    private static final String CALLSTORE_MBEAN_NAME = MBeanHelper.EL_MBEAN_DOMAIN + ":type=CallStore";
+    private static final String CALLLOCK_MBEAN_NAME_PREFIX = MBeanHelper.EL_MBEAN_DOMAIN + ":type=CallLock,name=";
 
-    // primary store, all calls have an imscf call id
-    Map<String, IMSCFCall> callsByImscfCallId;
-    // different views of the same store
-    Map<String, SIPCall> callsByAppSessionId;
-    Map<Long, TCAPCall> callsByLocalTcapTrId;
+    CallIndex calls;
 
     @PostConstruct
     public void init() {
-        callsByAppSessionId = new ConcurrentHashMap<String, SIPCall>();
-        callsByImscfCallId = new ConcurrentHashMap<String, IMSCFCall>();
-        callsByLocalTcapTrId = new ConcurrentHashMap<Long, TCAPCall>();
+        calls = STRIPED_TABLE_ENABLED ? new StripedCallTable(STRIPED_TABLE_INITIAL_CAPACITY) : new MapCallIndex();
+        LOG.info("Call store initialized with {}", calls);
+        MBeanHelper.registerMBean(new CallStoreStatistics(calls), CALLSTORE_MBEAN_NAME);
+        for (CallType type : CallType.values()) {
+            MBeanHelper.registerMBean(CallLockStatistics.of(type), CALLLOCK_MBEAN_NAME_PREFIX + type);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        MBeanHelper.unregisterMBean(CALLSTORE_MBEAN_NAME);
+        for (CallType type : CallType.values()) {
+            MBeanHelper.unregisterMBean(CALLLOCK_MBEAN_NAME_PREFIX + type);
+        }
     }
 
     @Override
     public IMSCFCall getCallByImscfCallId(String imscfCallId) {
-        return CallResourceAdapter.wrap(callsByImscfCallId.get(imscfCallId));
+        return CallResourceAdapter.wrap(calls.getByImscfCallId(imscfCallId));
     }
 
     @Override
     public SIPCall getCallByAppSessionId(String appSessionId) {
-        return CallResourceAdapter.wrap(callsByAppSessionId.get(appSessionId));
+        return CallResourceAdapter.wrap(calls.getByAppSessionId(appSessionId));
     }
 
     @Override
     public TCAPCall getCallByLocalTcapTrId(Long localTcapTrId) {
-        return CallResourceAdapter.wrap(callsByLocalTcapTrId.get(localTcapTrId));
+        return CallResourceAdapter.wrap(calls.getByLocalTcapTrId(localTcapTrId));
     }
 
     //This method is dedicated for onDialogTimeout handling. We do not want to perform locking in that case
     @Override
     public TCAPCall getCallByLocalTcapTrIdUnlocked(Long localTcapTrId) {
-        return CallResourceAdapter.wrapUnlocked(callsByLocalTcapTrId.get(localTcapTrId));
+        return CallResourceAdapter.wrapUnlocked(calls.getByLocalTcapTrId(localTcapTrId));
     }
 
     @Override
@@ -96,37 +118,34 @@ public class CallStoreBean implements CallStore {
         return getCallByAppSessionId(msg.getApplicationSession(false).getId());
     }
 
+    @Override
+    public CallSnapshot peekCallByImscfCallId(String imscfCallId) {
+        return snapshotOf(calls.getByImscfCallId(imscfCallId));
+    }
+
+    @Override
+    public CallSnapshot peekCallByAppSessionId(String appSessionId) {
+        return snapshotOf(calls.getByAppSessionId(appSessionId));
+    }
+
+    @Override
+    public CallSnapshot peekCallByLocalTcapTrId(Long localTcapTrId) {
+        return snapshotOf(calls.getByLocalTcapTrId(localTcapTrId));
+    }
+
+    private static CallSnapshot snapshotOf(IMSCFCall call) {
+        return call == null ? null : ((IMSCFCallBase) call).getSnapshot();
+    }
+
     @Override
     public void updateCall(IMSCFCall wrappedCall) {
         IMSCFCall call = CallResourceAdapter.unwrap(wrappedCall);
-        if (call.getImscfCallId() != null)
-            callsByImscfCallId.put(call.getImscfCallId(), call);
-        if (call instanceof SIPCall) {
-            SIPCall s = (SIPCall) call;
-            if (s.getAppSessionId() != null)
-                callsByAppSessionId.put(s.getAppSessionId(), s);
-        }
-        if (call instanceof TCAPCall) {
-            TCAPCall t = (TCAPCall) call;
-            if (t.getLocalTcapTrId() != null)
-                callsByLocalTcapTrId.put(t.getLocalTcapTrId(), t);
-        }
+        ((IMSCFCallBase) call).publishSnapshot();
+        calls.update(call);
     }
 
     @Override
     public void removeCall(IMSCFCall wrappedCall) {
-        IMSCFCall call = CallResourceAdapter.unwrap(wrappedCall);
-        if (call.getImscfCallId() != null)
-            callsByImscfCallId.remove(call.getImscfCallId());
-        if (call instanceof SIPCall) {
-            SIPCall s = (SIPCall) call;
-            if (s.getAppSessionId() != null)
-                callsByAppSessionId.remove(s.getAppSessionId());
-        }
-        if (call instanceof TCAPCall) {
-            TCAPCall t = (TCAPCall) call;
-            if (t.getLocalTcapTrId() != null)
-                callsByLocalTcapTrId.remove(t.getLocalTcapTrId());
-        }
+        calls.remove(CallResourceAdapter.unwrap(wrappedCall));
     }
 }
@@ -0,0 +1,77 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ */
+package org.restcomm.imscf.el.call;
+
+import org.restcomm.imscf.common.el.statistics.CallStoreStatisticsMBean;
+
+/**
+ * MBean exposing the call counts and index sizes of the {@link CallIndex} used by {@link CallStoreBean}.
+ */
+final class CallStoreStatistics implements CallStoreStatisticsMBean {
+
+    private final CallIndex index;
+
+    CallStoreStatistics(CallIndex index) {
+        this.index = index;
+    }
+
+    @Override
+    public String getImplementation() {
+        return index.getClass().getSimpleName();
+    }
+
+    @Override
+    public int getLiveCallCount() {
+        int count = 0;
+        for (CallType type : CallType.values()) {
+            count += index.countCalls(type);
+        }
+        return count;
+    }
+
+    @Override
+    public int getLiveCapCsCallCount() {
+        return index.countCalls(CallType.CAP_CS);
+    }
+
+    @Override
+    public int getLiveCapSmsCallCount() {
+        return index.countCalls(CallType.CAP_SMS);
+    }
+
+    @Override
+    public int getLiveMapCallCount() {
+        return index.countCalls(CallType.MAP);
+    }
+
+    @Override
+    public int getImscfCallIdIndexSize() {
+        return index.getImscfCallIdIndexSize();
+    }
+
+    @Override
+    public int getAppSessionIdIndexSize() {
+        return index.getAppSessionIdIndexSize();
+    }
+
+    @Override
+    public int getLocalTcapTrIdIndexSize() {
+        return index.getLocalTcapTrIdIndexSize();
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ */
+package org.restcomm.imscf.el.call;
+
+import org.restcomm.imscf.el.cap.call.CAPCSCall;
+import org.restcomm.imscf.el.cap.call.CapSmsCall;
+import org.restcomm.imscf.el.call.impl.CallResourceAdapter;
+import org.restcomm.imscf.el.map.call.MAPCall;
+
+/**
+ * Call types distinguished by the call store statistics.
+ */
+public enum CallType {
+    CAP_CS, CAP_SMS, MAP, OTHER;
+
+    /** Returns the type of the (possibly wrapped) call. */
+    public static CallType of(IMSCFCall call) {
+        IMSCFCall c = CallResourceAdapter.unwrap(call);
+        if (c instanceof CAPCSCall)
+            return CAP_CS;
+        else if (c instanceof CapSmsCall)
+            return CAP_SMS;
+        else if (c instanceof MAPCall)
+            return MAP;
+        else
+            return OTHER;
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ */
+package org.restcomm.imscf.el.call;
+
+import org.restcomm.imscf.el.sip.SIPCall;
+import org.restcomm.imscf.el.tcap.call.TCAPCall;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link CallIndex} with a separate concurrent map for each key. The maps are updated one after the other, so a
+ * concurrent lookup may see a call in one view but not yet in the other.
+ */
+final class MapCallIndex implements CallIndex {
+
+    // primary store, all calls have an imscf call id
+    private final Map<String, IMSCFCall> callsByImscfCallId = new ConcurrentHashMap<String, IMSCFCall>();
+    // different views of the same store
+    private final Map<String, SIPCall> callsByAppSessionId = new ConcurrentHashMap<String, SIPCall>();
+    private final Map<Long, TCAPCall> callsByLocalTcapTrId = new ConcurrentHashMap<Long, TCAPCall>();
+
+    @Override
+    public IMSCFCall getByImscfCallId(String imscfCallId) {
+        return callsByImscfCallId.get(imscfCallId);
+    }
+
+    @Override
+    public SIPCall getByAppSessionId(String appSessionId) {
+        return callsByAppSessionId.get(appSessionId);
+    }
+
+    @Override
+    public TCAPCall getByLocalTcapTrId(Long localTcapTrId) {
+        return callsByLocalTcapTrId.get(localTcapTrId);
+    }
+
+    @Override
+    public void update(IMSCFCall call) {
+        if (call.getImscfCallId() != null)
+            callsByImscfCallId.put(call.getImscfCallId(), call);
+        if (call instanceof SIPCall) {
+            SIPCall s = (SIPCall) call;
+            if (s.getAppSessionId() != null)
+                callsByAppSessionId.put(s.getAppSessionId(), s);
+        }
+        if (call instanceof TCAPCall) {
+            TCAPCall t = (TCAPCall) call;
+            if (t.getLocalTcapTrId() != null)
+                callsByLocalTcapTrId.put(t.getLocalTcapTrId(), t);
+        }
+    }
+
+    @Override
+    public void remove(IMSCFCall call) {
+        if (call.getImscfCallId() != null)
+            callsByImscfCallId.remove(call.getImscfCallId());
+        if (call instanceof SIPCall) {
+            SIPCall s = (SIPCall) call;
+            if (s.getAppSessionId() != null)
+                callsByAppSessionId.remove(s.getAppSessionId());
+        }
+        if (call instanceof TCAPCall) {
+            TCAPCall t = (TCAPCall) call;
+            if (t.getLocalTcapTrId() != null)
+                callsByLocalTcapTrId.remove(t.getLocalTcapTrId());
+        }
+    }
+
+    @Override
+    public int countCalls(CallType type) {
+        // only called from JMX, a scan is acceptable here
+        return (int) callsByImscfCallId.values().stream().filter(c -> CallType.of(c) == type).count();
+    }
+
+    @Override
+    public int getImscfCallIdIndexSize() {
+        return callsByImscfCallId.size();
+    }
+
+    @Override
+    public int getAppSessionIdIndexSize() {
+        return callsByAppSessionId.size();
+    }
+
+    @Override
+    public int getLocalTcapTrIdIndexSize() {
+        return callsByLocalTcapTrId.size();
+    }
+
+    @Override
+    public String toString() {
+        return "MapCallIndex [calls=" + callsByImscfCallId.size() + "]";
+    }
+}
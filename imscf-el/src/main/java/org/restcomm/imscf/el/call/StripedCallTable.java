@@ -0,0 +1,433 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ */
+package org.restcomm.imscf.el.call;
+
+import org.restcomm.imscf.el.sip.SIPCall;
+import org.restcomm.imscf.el.tcap.call.TCAPCall;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.ToLongFunction;
+
+/**
+ * {@link CallIndex} with a single entry per call, found through <code>long</code> keys of a segmented hash index.
+ * <p>
+ * The keys of an entry are:
+ * <ul>
+ * <li>call handle: a 62 bit hash of the IMSCF call id, computed without allocation. This is the primary key, the
+ * entry is stored while its call handle is indexed.</li>
+ * <li>app session key: a 62 bit hash of the SIP application session id.</li>
+ * <li>TCAP key: the local TCAP transaction id.</li>
+ * </ul>
+ * Entries keep the current id values, and a lookup only returns the call if the found entry still has the id that
+ * was looked up. Different ids with the same hash are detected this way, such ids are stored in a fallback map.
+ * </p>
+ * <p>
+ * An entry and its keys are only modified while holding the monitor of the entry, and the call reference of the
+ * entry is cleared before its keys on removal, so lookups through any key see either the stored call with its
+ * current ids or nothing. Each index segment has its own lock, so operations on unrelated calls rarely contend.
+ * </p>
+ */
+final class StripedCallTable implements CallIndex {
+
+    private static final long TYPE_CALL = 1L << 62;
+    private static final long TYPE_APP_SESSION = 2L << 62;
+    private static final long TYPE_TCAP = 3L << 62;
+    private static final long VALUE_MASK = (1L << 62) - 1;
+    private static final long NONE = Long.MIN_VALUE;
+
+    private static final int SEGMENT_COUNT = 64;
+
+    private final ToLongFunction<String> idHash;
+    private final KeyIndex[] segments = new KeyIndex[SEGMENT_COUNT];
+    private final ConcurrentHashMap<String, Entry> collidingCallIds = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Entry> collidingAppSessionIds = new ConcurrentHashMap<>();
+    /** Number of stored calls by CallType ordinal. */
+    private final AtomicIntegerArray callCounts = new AtomicIntegerArray(CallType.values().length);
+    /** Number of keys by type: call handle, app session, TCAP. */
+    private final AtomicIntegerArray keyCounts = new AtomicIntegerArray(3);
+
+    StripedCallTable(int initialIndexCapacity) {
+        this(initialIndexCapacity, StripedCallTable::hash);
+    }
+
+    /** Creates a table hashing the string ids with the given function, only the low 62 bits of the hash are used. */
+    StripedCallTable(int initialIndexCapacity, ToLongFunction<String> idHash) {
+        this.idHash = idHash;
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new KeyIndex(Math.max(16, initialIndexCapacity / SEGMENT_COUNT));
+        }
+    }
+
+    /** Returns the numeric handle of the IMSCF call id, the primary key of the table. */
+    long callHandle(String imscfCallId) {
+        return TYPE_CALL | idHash.applyAsLong(imscfCallId) & VALUE_MASK;
+    }
+
+    @Override
+    public IMSCFCall getByImscfCallId(String imscfCallId) {
+        Entry e = find(callHandle(imscfCallId), imscfCallId, collidingCallIds);
+        return e == null ? null : e.call;
+    }
+
+    @Override
+    public SIPCall getByAppSessionId(String appSessionId) {
+        Entry e = find(appSessionKey(appSessionId), appSessionId, collidingAppSessionIds);
+        return e == null ? null : (SIPCall) e.call;
+    }
+
+    @Override
+    public TCAPCall getByLocalTcapTrId(Long localTcapTrId) {
+        long tid = localTcapTrId;
+        long key = tcapKey(tid);
+        Entry e = segment(key).get(key);
+        return e == null || e.localTcapTrId != tid ? null : (TCAPCall) e.call;
+    }
+
+    @Override
+    public void update(IMSCFCall call) {
+        String imscfCallId = call.getImscfCallId();
+        if (imscfCallId == null) {
+            throw new IllegalArgumentException("Cannot store call without IMSCF call id: " + call);
+        }
+        long key = callHandle(imscfCallId);
+        while (true) {
+            Entry e = find(key, imscfCallId, collidingCallIds);
+            if (e == null) {
+                e = new Entry(imscfCallId, CallType.of(call));
+                synchronized (e) {
+                    if (!addKey(key, imscfCallId, e, collidingCallIds, false)) {
+                        // stored concurrently by another thread, update that entry
+                        continue;
+                    }
+                    e.call = call;
+                    updateSecondaryKeys(e, call);
+                }
+                callCounts.incrementAndGet(e.type.ordinal());
+                return;
+            }
+            synchronized (e) {
+                if (e.call == null) {
+                    // removed concurrently, its keys are gone by now
+                    continue;
+                }
+                e.call = call;
+                updateSecondaryKeys(e, call);
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void remove(IMSCFCall call) {
+        String imscfCallId = call.getImscfCallId();
+        if (imscfCallId == null) {
+            return;
+        }
+        long key = callHandle(imscfCallId);
+        Entry e = find(key, imscfCallId, collidingCallIds);
+        if (e == null) {
+            return;
+        }
+        synchronized (e) {
+            if (e.call == null) {
+                return;
+            }
+            e.call = null;
+            if (e.appSessionId != null) {
+                removeKey(appSessionKey(e.appSessionId), e.appSessionId, e, collidingAppSessionIds);
+            }
+            if (e.localTcapTrId != NONE) {
+                removeKey(tcapKey(e.localTcapTrId), null, e, null);
+            }
+            removeKey(key, imscfCallId, e, collidingCallIds);
+        }
+        callCounts.decrementAndGet(e.type.ordinal());
+    }
+
+    @Override
+    public int countCalls(CallType type) {
+        return callCounts.get(type.ordinal());
+    }
+
+    @Override
+    public int getImscfCallIdIndexSize() {
+        return keyCounts.get(keyType(TYPE_CALL));
+    }
+
+    @Override
+    public int getAppSessionIdIndexSize() {
+        return keyCounts.get(keyType(TYPE_APP_SESSION));
+    }
+
+    @Override
+    public int getLocalTcapTrIdIndexSize() {
+        return keyCounts.get(keyType(TYPE_TCAP));
+    }
+
+    @Override
+    public String toString() {
+        return "StripedCallTable [calls=" + getImscfCallIdIndexSize() + ", collisions="
+                + (collidingCallIds.size() + collidingAppSessionIds.size()) + "]";
+    }
+
+    /** Indexes the secondary keys of the call which are not yet known or have changed. Must hold the entry monitor. */
+    private void updateSecondaryKeys(Entry e, IMSCFCall call) {
+        if (call instanceof SIPCall) {
+            String appSessionId = ((SIPCall) call).getAppSessionId();
+            if (appSessionId != null && !appSessionId.equals(e.appSessionId)) {
+                if (e.appSessionId != null) {
+                    removeKey(appSessionKey(e.appSessionId), e.appSessionId, e, collidingAppSessionIds);
+                }
+                e.appSessionId = appSessionId;
+                addKey(appSessionKey(appSessionId), appSessionId, e, collidingAppSessionIds, true);
+            }
+        }
+        if (call instanceof TCAPCall) {
+            Long localTcapTrId = ((TCAPCall) call).getLocalTcapTrId();
+            if (localTcapTrId != null && localTcapTrId != e.localTcapTrId) {
+                if (e.localTcapTrId != NONE) {
+                    removeKey(tcapKey(e.localTcapTrId), null, e, null);
+                }
+                e.localTcapTrId = localTcapTrId;
+                addKey(tcapKey(localTcapTrId), null, e, null, true);
+            }
+        }
+    }
+
+    /** Returns the entry having the id, or null. */
+    private Entry find(long key, String id, ConcurrentHashMap<String, Entry> colliding) {
+        Entry e = segment(key).get(key);
+        if (e != null && id.equals(e.id(key))) {
+            return e;
+        }
+        if (!colliding.isEmpty()) {
+            e = colliding.get(id);
+            if (e != null && id.equals(e.id(key))) {
+                return e;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Indexes the entry by the key. If another entry is indexed with the same id, it is replaced if requested,
+     * otherwise false is returned. Entries with a different id but the same key go to the colliding map. The id is
+     * null for TCAP keys, where the key is the id itself.
+     */
+    private boolean addKey(long key, String id, Entry e, ConcurrentHashMap<String, Entry> colliding, boolean replace) {
+        KeyIndex segment = segment(key);
+        while (true) {
+            Entry old = segment.putIfAbsent(key, e);
+            if (old == null) {
+                keyCounts.incrementAndGet(keyType(key));
+                return true;
+            }
+            if (old == e) {
+                return true;
+            }
+            if (id == null || id.equals(old.id(key))) {
+                if (!replace) {
+                    return false;
+                }
+                if (segment.replace(key, old, e)) {
+                    return true;
+                }
+                // the old entry was removed concurrently, try again
+                continue;
+            }
+            old = colliding.putIfAbsent(id, e);
+            if (old == null) {
+                keyCounts.incrementAndGet(keyType(key));
+                return true;
+            }
+            if (!replace) {
+                return false;
+            }
+            if (colliding.replace(id, old, e)) {
+                return true;
+            }
+        }
+    }
+
+    private void removeKey(long key, String id, Entry e, ConcurrentHashMap<String, Entry> colliding) {
+        if (segment(key).remove(key, e) || id != null && colliding.remove(id, e)) {
+            keyCounts.decrementAndGet(keyType(key));
+        }
+    }
+
+    private long appSessionKey(String appSessionId) {
+        return TYPE_APP_SESSION | idHash.applyAsLong(appSessionId) & VALUE_MASK;
+    }
+
+    private static long tcapKey(long localTcapTrId) {
+        return TYPE_TCAP | localTcapTrId & VALUE_MASK;
+    }
+
+    private static int keyType(long key) {
+        return (int) (key >>> 62) - 1;
+    }
+
+    /** 62 bit FNV-1a hash of the characters. */
+    private static long hash(String s) {
+        long h = 0xCBF29CE484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001B3L;
+        }
+        return h & VALUE_MASK;
+    }
+
+    private static long mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 32);
+    }
+
+    private KeyIndex segment(long key) {
+        return segments[(int) (mix(key) >>> 58) & (SEGMENT_COUNT - 1)];
+    }
+
+    /** A stored call with its current ids. Modified while holding its monitor, read without locking. */
+    private static final class Entry {
+        private final String imscfCallId;
+        private final CallType type;
+        private volatile IMSCFCall call;
+        private volatile String appSessionId;
+        private volatile long localTcapTrId = NONE;
+
+        private Entry(String imscfCallId, CallType type) {
+            this.imscfCallId = imscfCallId;
+            this.type = type;
+        }
+
+        /** Returns the id the key is derived from, if it is a string. */
+        private String id(long key) {
+            return (key & ~VALUE_MASK) == TYPE_APP_SESSION ? appSessionId : imscfCallId;
+        }
+    }
+
+    /**
+     * Open addressing hash map from long keys to entries, with linear probing and backward shift deletion.
+     * Key 0 marks an empty cell, the keys are never 0 as they have the type bits set.
+     */
+    private static final class KeyIndex {
+        private long[] keys;
+        private Entry[] values;
+        private int mask;
+        private int count;
+
+        private KeyIndex(int capacity) {
+            int c = Integer.highestOneBit(capacity - 1) << 1;
+            keys = new long[c];
+            values = new Entry[c];
+            mask = c - 1;
+        }
+
+        synchronized Entry get(long key) {
+            int i = indexOf(key);
+            return i < 0 ? null : values[i];
+        }
+
+        /** Returns the entry already mapped to the key, or null if the new entry was stored. */
+        synchronized Entry putIfAbsent(long key, Entry value) {
+            int i = (int) mix(key) & mask;
+            while (true) {
+                long k = keys[i];
+                if (k == key) {
+                    return values[i];
+                }
+                if (k == 0) {
+                    keys[i] = key;
+                    values[i] = value;
+                    if (++count * 4 >= keys.length * 3) {
+                        resize();
+                    }
+                    return null;
+                }
+                i = (i + 1) & mask;
+            }
+        }
+
+        /** Replaces the entry mapped to the key if it is the expected one. */
+        synchronized boolean replace(long key, Entry expected, Entry value) {
+            int i = indexOf(key);
+            if (i < 0 || values[i] != expected) {
+                return false;
+            }
+            values[i] = value;
+            return true;
+        }
+
+        /** Removes the key if it is mapped to the given entry. */
+        synchronized boolean remove(long key, Entry value) {
+            int i = indexOf(key);
+            if (i < 0 || values[i] != value) {
+                return false;
+            }
+            // shift back the following entries which would not be found after emptying this cell
+            int gap = i;
+            i = (i + 1) & mask;
+            while (keys[i] != 0) {
+                int home = (int) mix(keys[i]) & mask;
+                if (((i - home) & mask) >= ((i - gap) & mask)) {
+                    keys[gap] = keys[i];
+                    values[gap] = values[i];
+                    gap = i;
+                }
+                i = (i + 1) & mask;
+            }
+            keys[gap] = 0;
+            values[gap] = null;
+            count--;
+            return true;
+        }
+
+        private int indexOf(long key) {
+            int i = (int) mix(key) & mask;
+            while (true) {
+                long k = keys[i];
+                if (k == key) {
+                    return i;
+                }
+                if (k == 0) {
+                    return -1;
+                }
+                i = (i + 1) & mask;
+            }
+        }
+
+        private void resize() {
+            long[] oldKeys = keys;
+            Entry[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new Entry[oldKeys.length * 2];
+            mask = keys.length - 1;
+            for (int j = 0; j < oldKeys.length; j++) {
+                if (oldKeys[j] != 0) {
+                    int i = (int) mix(oldKeys[j]) & mask;
+                    while (keys[i] != 0) {
+                        i = (i + 1) & mask;
+                    }
+                    keys[i] = oldKeys[j];
+                    values[i] = oldValues[j];
+                }
+            }
+        }
+    }
+}
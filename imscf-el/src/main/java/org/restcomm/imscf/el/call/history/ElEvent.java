@@ -0,0 +1,55 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ */
+package org.restcomm.imscf.el.call.history;
+
+import org.restcomm.imscf.common.util.history.CallHistoryEvent;
+
+/**
+ * Call history events of the EL which are recorded with arguments, so that their text is only rendered when the
+ * call history is logged.
+ */
+public enum ElEvent implements CallHistoryEvent {
+
+    /** LwComm message from SL, arguments: message type, message id. */
+    LWC_IN("->LWC", ""),
+    /** LwComm message to SL, arguments: message type, message id. */
+    LWC_OUT("<-LWC", ""),
+    /** LwComm message successfully sent to SL, arguments: message type, message id. */
+    LWC_OUT_OK("<-LWC_OK", ""),
+    /** LwComm message could not be sent to SL, arguments: message type, message id. */
+    LWC_OUT_ERROR("<-LWC_ERROR", "");
+
+    private final String prefix;
+    private final String postfix;
+
+    private ElEvent(String prefix, String postfix) {
+        this.prefix = prefix;
+        this.postfix = postfix;
+    }
+
+    @Override
+    public String getPrefix() {
+        return prefix;
+    }
+
+    @Override
+    public String getPostfix() {
+        return postfix;
+    }
+}
@@ -18,10 +18,11 @@
  */
 package org.restcomm.imscf.el.call.history;
 
+import org.restcomm.imscf.common.util.history.CallHistory;
 import org.restcomm.imscf.el.call.IMSCFCall;
+import org.restcomm.imscf.el.call.CallSnapshot;
 import org.restcomm.imscf.el.call.CallStore;
 import org.restcomm.imscf.el.cap.sip.SipSessionAttributes;
-import org.restcomm.imscf.el.sip.SIPCall;
 import org.restcomm.imscf.el.stack.CallContext;
 
 import java.net.HttpURLConnection;
@@ -33,6 +34,7 @@ import javax.servlet.sip.SipServletResponse;
 
 /**
  * Helper class for auditlog event strings.
+ * The add methods do nothing, not even create the event string, if the audit log is disabled.
  * @author Miklos Pocsaji
  *
  */
@@ -86,33 +88,55 @@ public final class ElEventCreator {
         return String.valueOf(resp.getStatus()) + "(" + resp.getMethod() + legID + ")<-";
     }
 
+    public static void addIncomingSipEvent(IMSCFCall call, SipServletMessage msg) {
+        if (CallHistory.isEnabled()) {
+            call.getCallHistory().addEvent(createIncomingSipEvent(msg));
+        }
+    }
+
     public static void addIncomingSipEvent(String appSessionId, SipServletMessage msg) {
+        if (!CallHistory.isEnabled()) {
+            return;
+        }
         String event = createIncomingSipEvent(msg);
         addEventByAppSessionId(appSessionId, event);
     }
 
     public static void addOutgoingSipEvent(String appSessionId, SipServletMessage msg) {
+        if (!CallHistory.isEnabled()) {
+            return;
+        }
         String event = createOutgoingSipEvent(msg);
         addEventByAppSessionId(appSessionId, event);
     }
 
     public static void addEventByAppSessionId(String appSessionId, String event) {
+        if (!CallHistory.isEnabled()) {
+            return;
+        }
         CallStore cs = Objects.requireNonNull((CallStore) CallContext.get(CallContext.CALLSTORE),
                 "CallStore from context is null");
-        try (SIPCall call = cs.getCallByAppSessionId(appSessionId)) {
-            if (call != null) {
-                call.getCallHistory().addEvent(event);
-            }
+        // the history is thread safe, no need to wait for the call lock
+        CallSnapshot call = cs.peekCallByAppSessionId(appSessionId);
+        if (call != null) {
+            call.getCallHistory().addEvent(event);
         }
     }
 
     public static void addEventByImscfCallId(String imscfCallId, String event) {
+        addEventByImscfCallId(imscfCallId, event, null, null);
+    }
+
+    /** Adds an event with arguments, which are only rendered when the call history is logged. */
+    public static void addEventByImscfCallId(String imscfCallId, Object event, Object arg1, Object arg2) {
+        if (!CallHistory.isEnabled()) {
+            return;
+        }
         CallStore cs = Objects.requireNonNull((CallStore) CallContext.get(CallContext.CALLSTORE),
                 "CallStore from context is null");
-        try (IMSCFCall call = cs.getCallByImscfCallId(imscfCallId)) {
-            if (call != null) {
-                call.getCallHistory().addEvent(event);
-            }
+        CallSnapshot call = cs.peekCallByImscfCallId(imscfCallId);
+        if (call != null) {
+            call.getCallHistory().addEvent(event, arg1, arg2);
         }
     }
 
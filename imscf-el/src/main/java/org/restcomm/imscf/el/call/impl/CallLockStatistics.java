@@ -0,0 +1,108 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ */
+package org.restcomm.imscf.el.call.impl;
+
+import org.restcomm.imscf.common.el.statistics.CallLockStatisticsMBean;
+import org.restcomm.imscf.el.call.CallType;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock wait and hold times of the calls of one {@link CallType}, collected by {@link IMSCFCallBase}.
+ */
+public final class CallLockStatistics implements CallLockStatisticsMBean {
+
+    private static final CallLockStatistics[] STATISTICS = new CallLockStatistics[CallType.values().length];
+
+    static {
+        for (int i = 0; i < STATISTICS.length; i++) {
+            STATISTICS[i] = new CallLockStatistics();
+        }
+    }
+
+    private final LongAdder acquisitions = new LongAdder();
+    private final LongAdder contendedAcquisitions = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAccumulator maxWaitNanos = new LongAccumulator(Long::max, 0);
+    private final LongAdder holdNanos = new LongAdder();
+    private final LongAccumulator maxHoldNanos = new LongAccumulator(Long::max, 0);
+
+    private CallLockStatistics() {
+    }
+
+    public static CallLockStatistics of(CallType type) {
+        return STATISTICS[type.ordinal()];
+    }
+
+    void contended(long nanos) {
+        contendedAcquisitions.increment();
+        waitNanos.add(nanos);
+        maxWaitNanos.accumulate(nanos);
+    }
+
+    void released(long heldNanos) {
+        acquisitions.increment();
+        holdNanos.add(heldNanos);
+        maxHoldNanos.accumulate(heldNanos);
+    }
+
+    @Override
+    public long getAcquisitions() {
+        return acquisitions.sum();
+    }
+
+    @Override
+    public long getContendedAcquisitions() {
+        return contendedAcquisitions.sum();
+    }
+
+    @Override
+    public long getAverageWaitMicros() {
+        long count = contendedAcquisitions.sum();
+        return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(waitNanos.sum() / count);
+    }
+
+    @Override
+    public long getMaxWaitMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(maxWaitNanos.get());
+    }
+
+    @Override
+    public long getAverageHoldMicros() {
+        long count = acquisitions.sum();
+        return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(holdNanos.sum() / count);
+    }
+
+    @Override
+    public long getMaxHoldMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(maxHoldNanos.get());
+    }
+
+    @Override
+    public void resetStatistics() {
+        acquisitions.reset();
+        contendedAcquisitions.reset();
+        waitNanos.reset();
+        maxWaitNanos.reset();
+        holdNanos.reset();
+        maxHoldNanos.reset();
+    }
+}
@@ -24,12 +24,24 @@ import org.restcomm.imscf.el.cap.call.CapSipSmsCall;
 import org.restcomm.imscf.el.map.call.MAPSIPCall;
 import org.restcomm.imscf.el.stack.CallContext;
 
-/** Delegate for handling Call as a resource. */
+/**
+ * Delegate for handling Call as a resource.
+ * <p>
+ * The locked adapters open on a thread are remembered, and wrapping the same call again on that thread returns the
+ * open adapter instead of a new one. Each wrap still takes the call lock and each {@link #close()} releases it.
+ * </p>
+ */
 public abstract class CallResourceAdapter implements DelegatingIMSCFCall {
 
+    private static final int OPEN_ADAPTERS_PER_THREAD = 4;
+    private static final ThreadLocal<CallResourceAdapter[]> OPEN_ADAPTERS = ThreadLocal
+            .withInitial(() -> new CallResourceAdapter[OPEN_ADAPTERS_PER_THREAD]);
+
     IMSCFCall delegate;
     private boolean isLocked;
     private int reentryCounter = 0;
+    // number of wraps returning this locked adapter not yet closed
+    private int openCount;
 
     protected CallResourceAdapter(IMSCFCall delegate, boolean lock) {
         this.delegate = delegate;
@@ -37,6 +49,14 @@ public abstract class CallResourceAdapter implements DelegatingIMSCFCall {
         // first lock is always the appsession lock, no need for TCAP locking
         if(isLocked) {
             ((IMSCFCallBase) delegate).lock();
+            openCount = 1;
+            CallResourceAdapter[] open = OPEN_ADAPTERS.get();
+            for (int i = 0; i < open.length; i++) {
+                if (open[i] == null) {
+                    open[i] = this;
+                    break;
+                }
+            }
 	    }
 	    else {
 			reentryCounter++;
@@ -62,7 +82,11 @@ public abstract class CallResourceAdapter implements DelegatingIMSCFCall {
             return null;
         else if (call instanceof CallResourceAdapter)
             return call;
-        else if (call instanceof CapSipCsCall)
+        CallResourceAdapter open = lock ? findOpenAdapter(call) : null;
+        if (open != null) {
+            open.reopen();
+            return (T) open;
+        } else if (call instanceof CapSipCsCall)
             return (T) new CallResourceAdapterCapSipCsCall((CapSipCsCall) call, lock);
         else if (call instanceof CapSipSmsCall)
             return (T) new CallResourceAdapterCapSipSmsCall((CapSipSmsCall) call, lock);
@@ -72,6 +96,22 @@ public abstract class CallResourceAdapter implements DelegatingIMSCFCall {
             throw new IllegalArgumentException();
     }
 
+    private static CallResourceAdapter findOpenAdapter(IMSCFCall call) {
+        for (CallResourceAdapter a : OPEN_ADAPTERS.get()) {
+            if (a != null && a.delegate == call) {
+                return a;
+            }
+        }
+        return null;
+    }
+
+    private void reopen() {
+        ((IMSCFCallBase) delegate).lock();
+        openCount++;
+        ((IMSCFCallBase) delegate).populateMDC();
+        CallContext.put(CallContext.IMSCFCALLID, delegate.getImscfCallId());
+    }
+
     @SuppressWarnings("unchecked")
     public static final <T extends IMSCFCall> T unwrap(T call) {
         if (call == null)
@@ -95,6 +135,15 @@ public abstract class CallResourceAdapter implements DelegatingIMSCFCall {
     @Override
     public final void close() {
         if(isLocked) {
+            if (--openCount == 0) {
+                CallResourceAdapter[] open = OPEN_ADAPTERS.get();
+                for (int i = 0; i < open.length; i++) {
+                    if (open[i] == this) {
+                        open[i] = null;
+                        break;
+                    }
+                }
+            }
             boolean lastHolder = ((IMSCFCallBase) delegate).unlock();
             if (lastHolder) {
                delegate.close();
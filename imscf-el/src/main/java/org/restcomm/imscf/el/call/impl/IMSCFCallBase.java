@@ -18,6 +18,8 @@
  */
 package org.restcomm.imscf.el.call.impl;
 
+import org.restcomm.imscf.el.call.CallSnapshot;
+import org.restcomm.imscf.el.call.CallType;
 import org.restcomm.imscf.el.call.IMSCFCall;
 import org.restcomm.imscf.el.call.ImscfCallLifeCycleListener;
 import org.restcomm.imscf.el.call.ImscfCallLifeCycleState;
@@ -58,6 +60,10 @@ public abstract class IMSCFCallBase implements IMSCFCall {
     private List<Object> eventQueue = new ArrayList<Object>();
     private Map<String, TimerListener> timerListeners = new HashMap<>();
     private ReentrantLock lock = new ReentrantLock(false); // no fairness required
+    private final CallLockStatistics lockStatistics = CallLockStatistics.of(CallType.of(this));
+    // time of taking the lock by the current holder, guarded by the lock
+    private long lockedAtNanos;
+    private volatile CallSnapshot snapshot;
     private ImscfCallLifeCycleState imscfState = ImscfCallLifeCycleState.INITIAL;
     private long creationTime = System.currentTimeMillis();
     private Set<ImscfCallLifeCycleListener> imscfLifeCycleListeners = new HashSet<>();
@@ -66,7 +72,14 @@ public abstract class IMSCFCallBase implements IMSCFCall {
 
     public void lock() {
         LOG.trace("Trying to lock");
-        lock.lock(); // blocking lock
+        if (!lock.tryLock()) {
+            long start = System.nanoTime();
+            lock.lock(); // blocking lock
+            lockStatistics.contended(System.nanoTime() - start);
+        }
+        if (lock.getHoldCount() == 1) {
+            lockedAtNanos = System.nanoTime();
+        }
         LOG.trace("Lock acquired, hold count is {}", lock.getHoldCount());
     }
 
@@ -79,6 +92,8 @@ public abstract class IMSCFCallBase implements IMSCFCall {
         boolean last = lock.getHoldCount() == 1;
         if (last) {
             LOG.trace("Releasing last lock");
+            publishSnapshot();
+            lockStatistics.released(System.nanoTime() - lockedAtNanos);
         } else {
             LOG.trace("Releasing lock");
         }
@@ -86,6 +101,21 @@ public abstract class IMSCFCallBase implements IMSCFCall {
         return last;
     }
 
+    /**
+     * Makes the current attributes of the call visible to {@link #getSnapshot()}. Called when the last lock is
+     * released, and by the call store when the call is stored.
+     */
+    public void publishSnapshot() {
+        snapshot = CallSnapshot.of(this, snapshot);
+    }
+
+    /** Returns the attributes of the call as of the last {@link #publishSnapshot()}, without locking. */
+    public CallSnapshot getSnapshot() {
+        CallSnapshot s = snapshot;
+        // never published if the call has not been stored yet, then only its creator can see it
+        return s != null ? s : CallSnapshot.of(this, null);
+    }
+
     @Override
     public final String getImscfCallId() {
         return imscfCallId;
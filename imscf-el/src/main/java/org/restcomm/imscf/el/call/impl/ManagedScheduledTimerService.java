@@ -18,6 +18,7 @@
  */
 package org.restcomm.imscf.el.call.impl;
 
+import org.restcomm.imscf.common.util.HashedWheelTimer;
 import org.restcomm.imscf.el.call.IMSCFCall;
 import org.restcomm.imscf.el.call.CallFactoryBean;
 import org.restcomm.imscf.el.call.CallStore;
@@ -28,9 +29,11 @@ import org.restcomm.imscf.el.sip.servlets.TimerInfo.TimerType;
 import org.restcomm.imscf.el.stack.CallContext;
 import org.restcomm.imscf.el.stack.CallContext.ContextLayer;
 import org.restcomm.imscf.util.JNDIHelper;
+import org.restcomm.imscf.util.MBeanHelper;
 import org.restcomm.imscf.util.NamedScheduledExecutorService;
 
 import java.util.Objects;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
@@ -42,6 +45,7 @@ import org.slf4j.LoggerFactory;
 public class ManagedScheduledTimerService {
 
     private static final Logger LOG = LoggerFactory.getLogger(ManagedScheduledTimerService.class);
+    private static final String WHEEL_MBEAN_NAME = MBeanHelper.EL_MBEAN_DOMAIN + ":type=TimerWheel,name=CallTimers";
 
     private static ManagedScheduledTimerService instance;
 
@@ -49,12 +53,21 @@ public class ManagedScheduledTimerService {
     private final CallStore callStore;
     private final CallFactoryBean callFactory;
     private final NamedScheduledExecutorService executorService;
+    private final HashedWheelTimer wheel;
 
     public ManagedScheduledTimerService() {
         callStore = Objects.requireNonNull(JNDIHelper.getCallStore(), "CallStore not found");
         configBean = Objects.requireNonNull(JNDIHelper.getConfigBean(), "ConfigBean not found");
         callFactory = Objects.requireNonNull(JNDIHelper.getCallFactory(), "CallFactory not found");
-        executorService = new NamedScheduledExecutorService(JNDIHelper.getManagedScheduledExecutorService());
+        ScheduledExecutorService executor = Objects.requireNonNull(JNDIHelper.getManagedScheduledExecutorService(),
+                "ManagedScheduledExecutorService not found");
+        if (HashedWheelTimer.ENABLED) {
+            wheel = new HashedWheelTimer("CallTimers", executor);
+            wheel.registerMBean(WHEEL_MBEAN_NAME);
+        } else {
+            wheel = null;
+        }
+        executorService = new NamedScheduledExecutorService(executor, wheel);
         LOG.trace("ScheduledTimerListenerImpl created");
     }
 
@@ -62,6 +75,14 @@ public class ManagedScheduledTimerService {
         instance = new ManagedScheduledTimerService();
     }
 
+    /** Stops the timer wheel if initialized. Timers not yet expired are dropped. */
+    public static void shutdown() {
+        if (instance != null && instance.wheel != null) {
+            instance.wheel.shutdown();
+        }
+        instance = null;
+    }
+
     public static ManagedScheduledTimerService getInstance() {
         if (instance == null)
             throw new IllegalStateException("ScheduledTimerListenerImpl must be initialized before use!");
@@ -18,11 +18,18 @@
  */
 package org.restcomm.imscf.el.cap.call;
 
+import org.restcomm.imscf.el.statistics.TcapStatisticsSetter;
+
 /**
  * Call data stored in the CAP dialog.
  */
 public class CapDialogCallData {
     private String imscfCallId;
+    /**
+     * The statistics counters of the call's service key or MAP alias, resolved once the call is created. The TCAP
+     * statistics callbacks use this instead of looking up (and locking) the call.
+     */
+    private volatile TcapStatisticsSetter statisticsSetter;
 
     public String getImscfCallId() {
         return imscfCallId;
@@ -32,4 +39,12 @@ public class CapDialogCallData {
         this.imscfCallId = imscfCallId;
     }
 
+    public TcapStatisticsSetter getStatisticsSetter() {
+        return statisticsSetter;
+    }
+
+    public void setStatisticsSetter(TcapStatisticsSetter statisticsSetter) {
+        this.statisticsSetter = statisticsSetter;
+    }
+
 }
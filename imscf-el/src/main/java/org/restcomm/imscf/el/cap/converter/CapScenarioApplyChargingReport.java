@@ -92,7 +92,8 @@ public class CapScenarioApplyChargingReport implements
             SipServletRequest msg = sip.createRequest("INFO");
 
             try {
-                msg.setContent(Jss7ToXml.encode(acr, "applyChargingReport"), SipConstants.CONTENTTYPE_CAP_XML_STRING);
+                msg.setContent(Jss7ToXml.encodeToBytes(acr, "applyChargingReport"),
+                        SipConstants.CONTENTTYPE_CAP_XML_STRING);
 
                 call.getSipScenarios().add(WaitForFinalAnswerScenario.start("Wait for ACR INFO OK", msg));
                 call.queueMessage(msg);
@@ -241,9 +241,9 @@ public class CapScenarioIncomingERBCSM implements CapScenarioEventReportBCSM {
                 call.setPendingReleaseCause(cause);
             });
 
-            String xml = Jss7ToXml.encode(erbcsm, "eventReportBCSM");
+            byte[] xml = Jss7ToXml.encodeToBytes(erbcsm, "eventReportBCSM");
             if (xml == null) { // serialization error
-                xml = "";
+                xml = new byte[0];
             }
             // try to insert content even if empty, the status code and SDP may still be relevant to the AS
             try {
@@ -288,7 +288,7 @@ public class CapScenarioIncomingERBCSM implements CapScenarioEventReportBCSM {
         });
     }
 
-    private void setContent(SipServletMessage msg, String xmlContent, boolean insertSdp) throws MessagingException,
+    private void setContent(SipServletMessage msg, byte[] xmlContent, boolean insertSdp) throws MessagingException,
             UnsupportedEncodingException {
         if (insertSdp) {
             // create multipart content with ERBCSM and SDP
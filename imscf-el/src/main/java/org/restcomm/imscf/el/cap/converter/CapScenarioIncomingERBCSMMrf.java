@@ -148,7 +148,7 @@ public final class CapScenarioIncomingERBCSMMrf implements CapScenarioEventRepor
     private void sendMrfBye(CapSipCsCall call, SipSession sipMrf, EventReportBCSMRequest erbcsm) {
         SipServletRequest msg = sipMrf.createRequest("BYE");
         try {
-            setContent(msg, Jss7ToXml.encode(erbcsm, "eventReportBCSM"));
+            setContent(msg, Jss7ToXml.encodeToBytes(erbcsm, "eventReportBCSM"));
         } catch (IOException | MessagingException e) {
             LOG.warn("Failed to insert eventReport body into MRF BYE request", e);
             // continue, better to send empty message than none
@@ -171,7 +171,7 @@ public final class CapScenarioIncomingERBCSMMrf implements CapScenarioEventRepor
         });
     }
 
-    private void setContent(SipServletMessage msg, String xmlContent) throws MessagingException,
+    private void setContent(SipServletMessage msg, byte[] xmlContent) throws MessagingException,
             UnsupportedEncodingException {
         // create multipart content with ERBCSM and SDP
         MimeMultipart mm = new MultipartBuilder().addPartBody(SipConstants.CONTENTTYPE_CAP_XML_STRING, xmlContent)
@@ -89,7 +89,7 @@ public final class CapScenarioInitiateCallAttempt implements
         SipServletResponse resp = invite.createResponse(SipServletResponse.SC_SESSION_PROGRESS);
         SipUtil.prepareIcaResponseToAS(resp, invite.getRemoteHost());
 
-        String xmlContent = Jss7ToXml.encode(response, "initiateCallAttemptResponse");
+        byte[] xmlContent = Jss7ToXml.encodeToBytes(response, "initiateCallAttemptResponse");
         String sdpContent = SipUtil.createSdpForLegs(invite.getSession());
 
         try {
@@ -138,7 +138,7 @@ public final class CapScenarioPromptAndCollectUserInformation implements
             SipServletRequest msg = sip.createRequest("INFO");
 
             try {
-                msg.setContent(Jss7ToXml.encode(response, "promptAndCollectUserInformationResult"),
+                msg.setContent(Jss7ToXml.encodeToBytes(response, "promptAndCollectUserInformationResult"),
                         SipConstants.CONTENTTYPE_CAP_XML_STRING);
 
                 call.getSipScenarios().add(WaitForFinalAnswerScenario.start("Wait for PACUI result INFO OK", msg));
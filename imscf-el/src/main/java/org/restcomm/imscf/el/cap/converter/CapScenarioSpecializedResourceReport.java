@@ -68,7 +68,7 @@ public class CapScenarioSpecializedResourceReport implements
             SipServletRequest msgInfo = sip.createRequest("INFO");
 
             try {
-                msgInfo.setContent(Jss7ToXml.encode(srr, "specializedResourceReport"),
+                msgInfo.setContent(Jss7ToXml.encodeToBytes(srr, "specializedResourceReport"),
                         SipConstants.CONTENTTYPE_CAP_XML_STRING);
 
                 call.getSipScenarios().add(WaitForFinalAnswerScenario.start("Wait for SRR INFO OK", msgInfo));
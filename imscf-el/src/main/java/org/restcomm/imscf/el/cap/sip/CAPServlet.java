@@ -19,6 +19,7 @@
 package org.restcomm.imscf.el.cap.sip;
 
 import org.restcomm.imscf.el.cap.CAPModule;
+import org.restcomm.imscf.el.cap.call.CapDialogCallData;
 import org.restcomm.imscf.el.cap.call.CapSipCsCall;
 import org.restcomm.imscf.el.modules.ModuleStore;
 import org.restcomm.imscf.el.sip.SIPCall;
@@ -26,6 +27,7 @@ import org.restcomm.imscf.el.sip.adapters.SipServletRequestAdapter;
 import org.restcomm.imscf.el.sip.servlets.MainServlet;
 import org.restcomm.imscf.el.sip.servlets.ScenarioBasedServlet;
 import org.restcomm.imscf.el.stack.CallContext;
+import org.restcomm.imscf.el.statistics.ElStatistics;
 
 import java.io.IOException;
 import java.util.Objects;
@@ -91,6 +93,9 @@ public class CAPServlet extends ScenarioBasedServlet {
             Objects.requireNonNull(call, "Invalid state, call cannot be null"); // it was created above
 
             call.setAsProvidedServiceIdentifier(getAsProvidedServiceIdentifier(invite));
+            // the service identifier is known from now on, TCAP statistics of the dialog go to its counters
+            ((CapDialogCallData) call.getCapDialog().getUserObject()).setStatisticsSetter(ElStatistics
+                    .getServiceKeyStatisticsSetter(call.getServiceIdentifier()));
 
             // ask module to init the appropriate scenarios
             call.getCapModule().onAsInitiatedCall(imscfCallId);
@@ -181,7 +181,7 @@ public final class SipScenarioInitialDp {
         }
 
         MimeMultipart mm = new MultipartBuilder()
-                .addPartBody(SipConstants.CONTENTTYPE_CAP_XML_STRING, Jss7ToXml.encode(idp, "initialDP"))
+                .addPartBody(SipConstants.CONTENTTYPE_CAP_XML_STRING, Jss7ToXml.encodeToBytes(idp, "initialDP"))
                 .addPartBody(SipConstants.CONTENTTYPE_SDP_STRING, SipUtil.createSdpForLegs(session)).getResult();
         invite.setContent(mm, mm.getContentType());
 
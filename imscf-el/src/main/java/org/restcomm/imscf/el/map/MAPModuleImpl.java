@@ -182,7 +182,7 @@ public class MAPModuleImpl implements MAPModule, SipModule {
         CallStore callStore = (CallStore) CallContext.get(CallContext.CALLSTORE);
         try (MAPSIPCall call = (MAPSIPCall) callStore.getCallByLocalTcapTrId(atiResp.getMAPDialog().getLocalDialogId())) {
             getMatchingOutgoingScenarios(call, atiResp).forEachOrdered(s -> s.onReturnResult(atiResp));
-            ElStatistics.createOneShotMapStatisticsSetter(call.getAtiRequest().getTargetRemoteSystem())
+            ElStatistics.getMapStatisticsSetter(call.getAtiRequest().getTargetRemoteSystem())
                     .incAnyTimeInterrogationResultCount();
         }
     }
@@ -26,13 +26,16 @@ import org.restcomm.imscf.common.config.NatureOfAddressType;
 import org.restcomm.imscf.common.config.NumberingPlanType;
 import org.restcomm.imscf.common.config.Ss7AddressType;
 import org.restcomm.imscf.el.call.CallStore;
+import org.restcomm.imscf.el.cap.call.CapDialogCallData;
 import org.restcomm.imscf.el.map.MAPModule;
 import org.restcomm.imscf.el.map.MapPrimitiveMapper;
 import org.restcomm.imscf.el.map.call.AtiRequest;
 import org.restcomm.imscf.el.map.call.MAPSIPCall;
 import org.restcomm.imscf.el.modules.ModuleStore;
 import org.restcomm.imscf.el.stack.CallContext;
+import org.restcomm.imscf.el.statistics.ElStatistics;
 
+import org.mobicents.protocols.ss7.map.MAPDialogImpl;
 import org.mobicents.protocols.ss7.map.api.MAPApplicationContext;
 import org.mobicents.protocols.ss7.map.api.MAPApplicationContextName;
 import org.mobicents.protocols.ss7.map.api.MAPApplicationContextVersion;
@@ -168,6 +171,11 @@ public final class MapAnyTimeInterrogationRequestScenario implements MapOutgoing
                 .createNewDialog(ctx, localSccpAddress, null, remoteSccpAddress, null);
 
         mapDialog.setIdleTaskTimeout((mapModule.getModuleConfiguration().getMapTimeoutSec() + 1) * 1000);
+        // set before the dialog is sent, so that the TCAP statistics of the first message already find it
+        CapDialogCallData data = new CapDialogCallData();
+        data.setImscfCallId(call.getImscfCallId());
+        data.setStatisticsSetter(ElStatistics.getMapStatisticsSetter(hlrAlias));
+        ((MAPDialogImpl) mapDialog).setUserObject(data);
         call.setMAPDialog(mapDialog);
         call.setLocalTcapTrId(mapDialog.getLocalDialogId());
         getCallStore().updateCall(call);
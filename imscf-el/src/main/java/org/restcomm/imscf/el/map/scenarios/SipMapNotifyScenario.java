@@ -60,9 +60,7 @@ public final class SipMapNotifyScenario extends Scenario {
             AnyTimeInterrogationResponse atiResp) throws MessagingException, ServletParseException,
             UnsupportedEncodingException, IOException {
 
-        String atiResponse = Jss7ToXml.encode(atiResp, "anyTimeInterrogationResult");
-
-        byte[] atiResponseBytes = atiResponse.getBytes(StandardCharsets.UTF_8);
+        byte[] atiResponseBytes = Jss7ToXml.encodeToBytes(atiResp, "anyTimeInterrogationResult");
         Object content = atiResponseBytes;
         String contentType = SipConstants.CONTENTTYPE_MAP_XML_STRING;
 
@@ -111,7 +111,9 @@ public class ScenarioBasedServlet extends SipServlet {
                 }
 
                 if (call == null) {
-                    if (req != null && OverloadProtector.getInstance().getCurrentState().isCpuOrHeapOverloaded()) {
+                    if (req != null
+                            && !OverloadProtector.getInstance().getAdmissionController()
+                                    .tryAdmit("SIP " + ((SipServletRequest) req).getMethod())) {
                         // If the incoming message is a request and the system is overloaded
                         // then send back 503
                         LOG.debug("System is overloaded. Send back 503.");
@@ -132,7 +134,7 @@ public class ScenarioBasedServlet extends SipServlet {
                     setAppropriateOutboundInterface((SipServletRequest) req);
                 }
 
-                call.getCallHistory().addEvent(ElEventCreator.createIncomingSipEvent(msgA));
+                ElEventCreator.addIncomingSipEvent(call, msgA);
                 // if the call already exists, scenarios should handle the message
                 runScenarios(call, msgA);
             }
@@ -21,6 +21,7 @@ package org.restcomm.imscf.el.sip.servlets;
 import static org.restcomm.imscf.el.sip.SipApplicationSessionAttributes.TIMER_KEEPS_APPSESSION_ALIVE;
 import org.restcomm.imscf.el.call.IMSCFCall;
 import org.restcomm.imscf.el.call.CallFactoryBean;
+import org.restcomm.imscf.el.call.CallSnapshot;
 import org.restcomm.imscf.el.call.CallStore;
 import org.restcomm.imscf.el.cap.sip.SipUtil;
 import org.restcomm.imscf.el.config.ConfigBean;
@@ -69,8 +70,10 @@ public class SipSessionListenerImpl implements SipSessionListener {
     @Override
     public void sessionCreated(SipSessionEvent arg0) {
         try (ContextLayer cl = CallContext.with(callStore, config, callFactory)) {
-            try (IMSCFCall call = CallContext.getCallStore().getCallByAppSessionId(
-                    arg0.getSession().getApplicationSession().getId())) {
+            if (LOG.isTraceEnabled()) {
+                // logging only, no need to wait for the call lock
+                CallSnapshot call = CallContext.getCallStore().peekCallByAppSessionId(
+                        arg0.getSession().getApplicationSession().getId());
                 LOG.trace("SipSession created: {} in {}", arg0.getSession().getId(), call != null ? call
                         : describeNoCall(arg0.getSession().getApplicationSession()));
             }
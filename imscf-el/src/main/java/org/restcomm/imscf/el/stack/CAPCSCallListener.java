@@ -60,7 +60,7 @@ public class CAPCSCallListener extends ImscfStackListener implements GsmScfCsCal
                 LOG.warn("Could not find call for onActivityTestResponse: {}", arg0);
                 return;
             }
-            ElStatistics.createOneShotServiceKeyStatisticsSetter(call.getServiceIdentifier())
+            ElStatistics.getServiceKeyStatisticsSetter(call.getServiceIdentifier())
                     .incActivityTestResponseCount();
             try {
                 call.getCapModule().onActivityTestResponse(arg0);
@@ -78,7 +78,7 @@ public class CAPCSCallListener extends ImscfStackListener implements GsmScfCsCal
                 LOG.warn("Could not find call for onApplyChargingReportRequest: {}", arg0);
                 return;
             }
-            ElStatistics.createOneShotServiceKeyStatisticsSetter(call.getServiceIdentifier())
+            ElStatistics.getServiceKeyStatisticsSetter(call.getServiceIdentifier())
                     .incApplyChargingReportCount();
             try {
                 call.getCapModule().onApplyChargingReportRequest(arg0);
@@ -128,7 +128,7 @@ public class CAPCSCallListener extends ImscfStackListener implements GsmScfCsCal
                 LOG.warn("Could not find call for onEventReportBCSMRequest: {}", arg0);
                 return;
             }
-            ElStatistics.createOneShotServiceKeyStatisticsSetter(call.getServiceIdentifier()).incEventReportBcsmCount();
+            ElStatistics.getServiceKeyStatisticsSetter(call.getServiceIdentifier()).incEventReportBcsmCount();
             try {
                 call.getCapModule().onEventReportBCSMRequest(arg0);
             } catch (RuntimeException ex) {
@@ -157,13 +157,13 @@ public class CAPCSCallListener extends ImscfStackListener implements GsmScfCsCal
         imscfCallId = callFactory.newCall(arg0, module); // should return the same though...
         try (CAPCSCall call = (CAPCSCall) callStore.getCallByImscfCallId(imscfCallId)) {
 
-            ElStatistics.createOneShotServiceKeyStatisticsSetter(call.getServiceIdentifier()).incInitialDpCount();
+            ElStatistics.getServiceKeyStatisticsSetter(call.getServiceIdentifier()).incInitialDpCount();
             // Since when TcapStatisticsListener is notified no call existed it cannot know the service key.
             // So TCAP-level counters could not have been increased.
             // Increase here tcapBeginReceivedCount and tcapInvokeReceivedCount.
-            ElStatistics.createOneShotServiceKeyStatisticsSetter(call.getServiceIdentifier())
+            ElStatistics.getServiceKeyStatisticsSetter(call.getServiceIdentifier())
                     .incTcapBeginReceivedCount();
-            ElStatistics.createOneShotServiceKeyStatisticsSetter(call.getServiceIdentifier())
+            ElStatistics.getServiceKeyStatisticsSetter(call.getServiceIdentifier())
                     .incTcapInvokeReceivedCount();
             try {
                 call.getCapModule().onInitialDPRequest(arg0);
@@ -181,7 +181,7 @@ public class CAPCSCallListener extends ImscfStackListener implements GsmScfCsCal
                 LOG.warn("Could not find call for onInitiateCallAttemptResponse: {}", arg0);
                 return;
             }
-            ElStatistics.createOneShotServiceKeyStatisticsSetter(call.getServiceIdentifier())
+            ElStatistics.getServiceKeyStatisticsSetter(call.getServiceIdentifier())
                     .incInitiateCallAttemptResponseCount();
             try {
                 call.getCapModule().onInitiateCallAttemptResponse(arg0);
@@ -199,7 +199,7 @@ public class CAPCSCallListener extends ImscfStackListener implements GsmScfCsCal
                 LOG.warn("Could not find call for onMoveLegResponse: {}", arg0);
                 return;
             }
-            ElStatistics.createOneShotServiceKeyStatisticsSetter(call.getServiceIdentifier()).incMoveLegResponseCount();
+            ElStatistics.getServiceKeyStatisticsSetter(call.getServiceIdentifier()).incMoveLegResponseCount();
             try {
                 call.getCapModule().onMoveLegResponse(arg0);
             } catch (RuntimeException ex) {
@@ -216,7 +216,7 @@ public class CAPCSCallListener extends ImscfStackListener implements GsmScfCsCal
                 LOG.warn("Could not find call for onPromptAndCollectUserInformationResponse: {}", arg0);
                 return;
             }
-            ElStatistics.createOneShotServiceKeyStatisticsSetter(call.getServiceIdentifier())
+            ElStatistics.getServiceKeyStatisticsSetter(call.getServiceIdentifier())
                     .incPromptAndCollectUserInformationResultCount();
             try {
                 call.getCapModule().onPromptAndCollectUserInformationResponse(arg0);
@@ -234,7 +234,7 @@ public class CAPCSCallListener extends ImscfStackListener implements GsmScfCsCal
                 LOG.warn("Could not find call for onSpecializedResourceReportRequest: {}", arg0);
                 return;
             }
-            ElStatistics.createOneShotServiceKeyStatisticsSetter(call.getServiceIdentifier())
+            ElStatistics.getServiceKeyStatisticsSetter(call.getServiceIdentifier())
                     .incSpecializedResourceReportCount();
             try {
                 call.getCapModule().onSpecializedResourceReportRequest(arg0);
@@ -252,7 +252,7 @@ public class CAPCSCallListener extends ImscfStackListener implements GsmScfCsCal
                 LOG.warn("Could not find call for onSplitLegResponse: {}", arg0);
                 return;
             }
-            ElStatistics.createOneShotServiceKeyStatisticsSetter(call.getServiceIdentifier())
+            ElStatistics.getServiceKeyStatisticsSetter(call.getServiceIdentifier())
                     .incSplitLegResponseCount();
             try {
                 call.getCapModule().onSplitLegResponse(arg0);
@@ -78,7 +78,7 @@ public class CAPSMSListener extends ImscfStackListener implements GsmScfSmsListe
     public void onInitialDPSMSRequest(InitialDPSMSRequest arg0) {
         String imscfCallId = (String) CallContext.get(CallContext.IMSCFCALLID);
         LOG.debug("New InitialDPSMS received with call id {}:\n{}", imscfCallId, arg0);
-        // ElStatistics.createOneShotServiceKeyStatisticsSetter(arg0.getServiceKey()).incInitialDpSmsCount();
+        // ElStatistics.getServiceKeyStatisticsSetter(arg0.getServiceKey()).incInitialDpSmsCount();
         CapDialogCallData data = new CapDialogCallData();
         data.setImscfCallId(imscfCallId);
         arg0.getCAPDialog().setUserObject(data);
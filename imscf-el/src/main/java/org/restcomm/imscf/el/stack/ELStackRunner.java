@@ -167,7 +167,7 @@ public class ELStackRunner implements ConfigurationChangeListener {
             if (configBean.isSigtranStackNeeded()) {
                 logger.info("Initializing SIGTRAN stack");
                 initSUA(); // "sccp stack"
-                lwcommListener.addModuleListener("SUA", sua); // SCCP listener
+                lwcommListener.addModuleListener(LwcommMessageReceiver.SCCP_TARGET, sua); // SCCP listener
 
                 initTCAP();
 
@@ -254,12 +254,16 @@ public class ELStackRunner implements ConfigurationChangeListener {
             ElStatistics.shutdownStatistics();
         }
 
+        ManagedScheduledTimerService.shutdown();
         OverloadProtector.shutdown();
         // Remove stuck in objects from threadlocals
         String javolutionClassPattern = "javolution\\..*";
         String gsonClassPattern = "com\\.google\\.gson\\.Gson";
         String callContextClassPattern = "org\\.restcomm\\.imscf\\.el\\.stack\\.CallContext";
-        ThreadLocalCleaner.cleanThreadLocals(javolutionClassPattern, gsonClassPattern, callContextClassPattern);
+        String jss7ToXmlCodecClassPattern = "org\\.restcomm\\.imscf\\.util\\.Jss7ToXml\\$Codec";
+        String adapterArrayClassPattern = "\\[Lorg\\.restcomm\\.imscf\\.el\\.call\\.impl\\.CallResourceAdapter;";
+        ThreadLocalCleaner.cleanThreadLocals(javolutionClassPattern, gsonClassPattern, callContextClassPattern,
+                jss7ToXmlCodecClassPattern, adapterArrayClassPattern);
 
         logger.info("EL stopped.");
     }
@@ -332,6 +336,7 @@ public class ELStackRunner implements ConfigurationChangeListener {
         } else {
             logger.error("Neither nonHeapOverloadThresholdAmount nor nonHeapOverloadThresholdPercent is set in configuration!");
         }
+        p.setMBeanDomain(MBeanHelper.EL_MBEAN_DOMAIN);
 
         OverloadProtector.init(p);
         OverloadProtector.getInstance().addListener((oldStatus, newStatus) -> {
@@ -18,6 +18,7 @@
  */
 package org.restcomm.imscf.el.stack;
 
+import org.restcomm.imscf.common.lwcomm.service.IncomingBinaryMessage;
 import org.restcomm.imscf.common.lwcomm.service.IncomingTextMessage;
 import org.restcomm.imscf.common.lwcomm.service.MessageReceiver;
 import org.restcomm.imscf.el.call.MDCParameters;
@@ -38,6 +39,8 @@ public class LwcommMessageReceiver implements LwCommMessageProvider, MessageRece
 
     private static final Logger LOG = LoggerFactory.getLogger(LwcommMessageReceiver.class);
     public static final Pattern LWC_MESSAGE_PATTERN = Pattern.compile("^Target: (.*)\r\nContent: (.*)\r\n\r\n(.*)$");
+    /** The target of SCCP messages, binary messages from SL are always delivered to it. */
+    public static final String SCCP_TARGET = "SUA";
 
     private ConcurrentHashMap<String, MessageReceiver> modules = new ConcurrentHashMap<>();
 
@@ -76,4 +79,28 @@ public class LwcommMessageReceiver implements LwCommMessageProvider, MessageRece
         }
     }
 
+    @Override
+    public void onMessage(IncomingBinaryMessage lwcommMessage) {
+        MDC.clear();
+        try {
+            Optional.ofNullable(lwcommMessage.getGroupId()).ifPresent(
+                    gid -> MDC.put(MDCParameters.IMSCF_CALLID.getKey(), gid));
+            LOG.debug("Binary message from SL: {}", lwcommMessage);
+            MessageReceiver module = modules.get(SCCP_TARGET);
+            if (module != null && module.acceptsBinaryMessages()) {
+                module.onMessage(lwcommMessage);
+            } else {
+                lwcommMessage.release();
+                LOG.warn("No EL target for binary messages: {}", SCCP_TARGET);
+            }
+        } finally {
+            MDC.clear();
+        }
+    }
+
+    @Override
+    public boolean acceptsBinaryMessages() {
+        return true;
+    }
+
 }
@@ -22,6 +22,7 @@ import static org.restcomm.imscf.el.stack.LwcommMessageReceiver.LWC_MESSAGE_PATT
 import org.restcomm.imscf.el.call.IMSCFCall;
 import org.restcomm.imscf.el.call.CallFactoryBean;
 import org.restcomm.imscf.el.call.CallStore;
+import org.restcomm.imscf.el.call.history.ElEvent;
 import org.restcomm.imscf.el.call.history.ElEventCreator;
 import org.restcomm.imscf.el.config.ConfigBean;
 import org.restcomm.imscf.el.sip.adapters.SipApplicationSessionAdapter;
@@ -36,7 +37,11 @@ import org.restcomm.imscf.common.TcapDialogId;
 import org.restcomm.imscf.common.util.TCAPMessageInfo;
 import org.restcomm.imscf.common.util.TCAPMessageInfo.MessageType;
 import org.restcomm.imscf.common.util.ImscfCallId;
+import org.restcomm.imscf.common.lwcomm.config.Node;
+import org.restcomm.imscf.common.lwcomm.service.BinaryMessage;
+import org.restcomm.imscf.common.lwcomm.service.IncomingBinaryMessage;
 import org.restcomm.imscf.common.lwcomm.service.IncomingTextMessage;
+import org.restcomm.imscf.common.lwcomm.service.LwCommService;
 import org.restcomm.imscf.common.lwcomm.service.LwCommServiceProvider;
 import org.restcomm.imscf.common.lwcomm.service.MessageReceiver;
 import org.restcomm.imscf.common.lwcomm.service.SendResult;
@@ -107,19 +112,20 @@ public class SUAImpl implements MessageReceiver, SccpProvider {
         this.callFactoryBean = callFactoryBean;
     }
 
-    private TCAPMessageInfo updateSLMappingForIncomingMessage(IncomingTextMessage lwcmsg, SccpDataMessage msg) {
+    private TCAPMessageInfo updateSLMappingForIncomingMessage(Node from, String groupId, String messageId,
+            SccpDataMessage msg) {
         TCAPMessageInfo info = TCAPMessageInfo.parse(msg.getData());
         logger.debug("Incoming TCAP info: " + info.toString());
         SccpDialogId sdid = SccpDialogId.extractFromSccpMessage(msg, true);
         TcapDialogId tdid = TcapDialogId.extractFromTCAPMessageInfo(info, true);
 
         SlElMappingData mappingData = new SlElMappingData();
-        mappingData.setNodeName(lwcmsg.getFrom().getName());
-        ImscfCallId imscfCallId = ImscfCallId.parse(lwcmsg.getGroupId());
+        mappingData.setNodeName(from.getName());
+        ImscfCallId imscfCallId = ImscfCallId.parse(groupId);
         mappingData.setImscfCallId(imscfCallId);
         try (IMSCFCall call = callStore.getCallByImscfCallId(imscfCallId.toString())) {
             if (call != null) {
-                call.getCallHistory().addEvent("->LWC(" + info.getMessageType() + ", " + lwcmsg.getId() + ")");
+                call.getCallHistory().addEvent(ElEvent.LWC_IN, info.getMessageType(), messageId);
             }
         }
 
@@ -149,49 +155,9 @@ public class SUAImpl implements MessageReceiver, SccpProvider {
             content = m.group(2);
             data = m.group(3);
             switch (content) { // NOPMD ignore switch with less than 2 branches check
-            case "SccpDataMessage":
-
-                SccpDataMessage sdm = SccpSerializer.deserialize(data);
-
-                TCAPMessageInfo info = updateSLMappingForIncomingMessage(lwcommMessage, sdm);
-
-                int ssn = sdm.getCalledPartyAddress().getSubsystemNumber();
-                SccpListener listener = sccpListeners.get(ssn);
-                if (listener != null) {
-                    String imscfCallId = lwcommMessage.getGroupId();
-                    // Create if it doesn't exist, but only for TC_BEGIN - in other cases, the SAS must already be
-                    // present. If it isn't, it could be due to a CONTINUE/END received for an already deleted call and
-                    // the SAS should not be recreated. The TCAP stack will simply respond with a P_ABORT / missing
-                    // dialog.
-                    SipApplicationSession sas = SipServletResources.getSipSessionsUtil().getApplicationSessionByKey(
-                            imscfCallId, info.getMessageType() == MessageType.TC_BEGIN);
-                    assert sas == null
-                            || sas instanceof SipApplicationSessionAdapter
-                            && ((SipApplicationSessionAdapter) sas).getDelegate() instanceof MobicentsSipApplicationSession;
-
-                    if (sas != null) {
-                        // lock on appsession here, before TCAP stack locks on TCAP dialog
-                        logger.trace("Trying to lock on appsession for call {}", imscfCallId);
-                        ((MobicentsSipApplicationSession) ((SipApplicationSessionAdapter) sas).getDelegate()).acquire();
-                        logger.trace("Lock acquired");
-                    } else {
-                        logger.trace("No appsession to lock on for {} in call {}", info.getMessageType(), imscfCallId);
-                    }
-
-                    // call id is used later by cap/map listener when creating the actual call
-                    try (ContextLayer cl = CallContext.with(imscfCallId, callStore, configBean, callFactoryBean)) {
-                        listener.onMessage(sdm);
-                    } finally {
-                        if (sas != null) {
-                            logger.trace("Trying to unlock appsession for call {}", imscfCallId);
-                            ((MobicentsSipApplicationSession) ((SipApplicationSessionAdapter) sas).getDelegate())
-                                    .release();
-                            logger.trace("Lock released");
-                        }
-                    }
-                } else {
-                    logger.error("No SCCP listener for SSN: {}!", ssn);
-                }
+            case SccpSerializer.CONTENT_TYPE_JSON:
+                handleSccpDataMessage(lwcommMessage.getFrom(), lwcommMessage.getGroupId(), lwcommMessage.getId(),
+                        SccpSerializer.deserialize(data));
                 break;
             default:
                 logger.error("Unknown content: " + content);
@@ -202,6 +168,76 @@ public class SUAImpl implements MessageReceiver, SccpProvider {
         }
     }
 
+    /**
+     * Binary messages from SL carry an SCCP message received from the network, encoded by
+     * {@link SccpSerializer#serializeBinary(SccpDataMessage)}.
+     */
+    @Override
+    public void onMessage(IncomingBinaryMessage lwcommMessage) {
+        MDC.clear();
+        SccpDataMessage sdm;
+        try {
+            sdm = SccpSerializer.deserializeBinary(lwcommMessage.getPayload());
+        } catch (IllegalArgumentException e) {
+            logger.error("Binary message from SL not understood: {}", e.getMessage());
+            return;
+        } finally {
+            lwcommMessage.release();
+        }
+        handleSccpDataMessage(lwcommMessage.getFrom(), lwcommMessage.getGroupId(), lwcommMessage.getId(), sdm);
+    }
+
+    @Override
+    public boolean acceptsBinaryMessages() {
+        return true;
+    }
+
+    /**
+     * Passes an SCCP message received from SL to the listener of its SSN.
+     * @param from the SL node which sent the message
+     * @param imscfCallId the LwComm group id, i.e. the ImscfCallId of the call
+     * @param messageId the LwComm message id
+     */
+    private void handleSccpDataMessage(Node from, String imscfCallId, String messageId, SccpDataMessage sdm) {
+        TCAPMessageInfo info = updateSLMappingForIncomingMessage(from, imscfCallId, messageId, sdm);
+
+        int ssn = sdm.getCalledPartyAddress().getSubsystemNumber();
+        SccpListener listener = sccpListeners.get(ssn);
+        if (listener != null) {
+            // Create if it doesn't exist, but only for TC_BEGIN - in other cases, the SAS must already be
+            // present. If it isn't, it could be due to a CONTINUE/END received for an already deleted call and
+            // the SAS should not be recreated. The TCAP stack will simply respond with a P_ABORT / missing
+            // dialog.
+            SipApplicationSession sas = SipServletResources.getSipSessionsUtil().getApplicationSessionByKey(
+                    imscfCallId, info.getMessageType() == MessageType.TC_BEGIN);
+            assert sas == null
+                    || sas instanceof SipApplicationSessionAdapter
+                    && ((SipApplicationSessionAdapter) sas).getDelegate() instanceof MobicentsSipApplicationSession;
+
+            if (sas != null) {
+                // lock on appsession here, before TCAP stack locks on TCAP dialog
+                logger.trace("Trying to lock on appsession for call {}", imscfCallId);
+                ((MobicentsSipApplicationSession) ((SipApplicationSessionAdapter) sas).getDelegate()).acquire();
+                logger.trace("Lock acquired");
+            } else {
+                logger.trace("No appsession to lock on for {} in call {}", info.getMessageType(), imscfCallId);
+            }
+
+            // call id is used later by cap/map listener when creating the actual call
+            try (ContextLayer cl = CallContext.with(imscfCallId, callStore, configBean, callFactoryBean)) {
+                listener.onMessage(sdm);
+            } finally {
+                if (sas != null) {
+                    logger.trace("Trying to unlock appsession for call {}", imscfCallId);
+                    ((MobicentsSipApplicationSession) ((SipApplicationSessionAdapter) sas).getDelegate()).release();
+                    logger.trace("Lock released");
+                }
+            }
+        } else {
+            logger.error("No SCCP listener for SSN: {}!", ssn);
+        }
+    }
+
     @Override
     public void deregisterManagementEventListener(SccpManagementEventListener arg0) {
         throw new RuntimeException("Operation not allowed");
@@ -282,20 +318,31 @@ public class SUAImpl implements MessageReceiver, SccpProvider {
             throw new AssertionError(info.getMessageType());
         }
 
-        String payload = "Target: SccpProvider\r\n" + "Content: SccpDataMessage\r\n" + "\r\n"
-                + SccpSerializer.serialize(sdm);
+        LwCommService lwc = LwCommServiceProvider.getService();
+        SendResultFuture<SendResult> result;
+        // binary if the SL nodes of the route accept it, otherwise JSON in a text message
+        BinaryMessage binaryMessage = SccpSerializer.toBinaryMessage(sdm, lwc, lwcommRouteName, callid.toString(),
+                lwcTag);
+        if (binaryMessage != null) {
+            logger.debug("Sending {} / {} {} to SL on route: [{}], binary: {}", sdid, tdid, info.getMessageType(),
+                    lwcommRouteName, sdm);
+            result = lwc.send(lwcommRouteName, binaryMessage);
+        } else {
+            String payload = "Target: SccpProvider\r\n" + "Content: SccpDataMessage\r\n" + "\r\n"
+                    + SccpSerializer.serialize(sdm);
 
-        logger.debug("Sending {} / {} {} to SL on route: [{}], payload:\n{}", sdid, tdid, info.getMessageType(),
-                lwcommRouteName, payload);
+            logger.debug("Sending {} / {} {} to SL on route: [{}], payload:\n{}", sdid, tdid,
+                    info.getMessageType(), lwcommRouteName, payload);
 
-        SendResultFuture<SendResult> result = LwCommServiceProvider.getService().send(lwcommRouteName,
-                TextMessage.builder(payload).setGroupId(callid.toString()).setTag(lwcTag).create());
+            result = lwc.send(lwcommRouteName, TextMessage.builder(payload).setGroupId(callid.toString())
+                    .setTag(lwcTag).create());
+        }
         // for now we wait for the sending to complete here
         try {
             SendResult sr = result.get();
             if (sr.getType() == Type.SUCCESS) {
-                ElEventCreator.addEventByImscfCallId(callid.toString(), "<-LWC_OK(" + info.getMessageType() + ", "
-                        + result.getMessageId() + ")");
+                ElEventCreator.addEventByImscfCallId(callid.toString(), ElEvent.LWC_OUT_OK, info.getMessageType(),
+                        result.getMessageId());
                 String name = sr.getActualDestination().getName();
                 logger.debug("Message sent to SL: {}", sr);
                 if (info.getMessageType() == MessageType.TC_BEGIN) {
@@ -307,8 +354,8 @@ public class SUAImpl implements MessageReceiver, SccpProvider {
             } else {
                 logger.warn("Failed to send message to SL node! {} / {} -> {}, result: {}", sdid, tdid,
                         lwcommRouteName, sr);
-                ElEventCreator.addEventByImscfCallId(callid.toString(), "<-LWC_ERROR(" + info.getMessageType() + ", "
-                        + result.getMessageId() + ")");
+                ElEventCreator.addEventByImscfCallId(callid.toString(), ElEvent.LWC_OUT_ERROR,
+                        info.getMessageType(), result.getMessageId());
             }
         } catch (InterruptedException | ExecutionException e) {
             logger.error("Error getting SendResult", e);
@@ -23,9 +23,9 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
@@ -40,6 +40,9 @@ import org.restcomm.imscf.util.MBeanHelper;
 
 /**
  * Helper class for execution layer server statistics.
+ * Service key and MAP statistics MBeans are created and registered on first use and kept in a registry for the
+ * lifetime of the statistics subsystem. The MBeans themselves are the setters, so incrementing a counter is a map
+ * lookup and a striped add on the caller thread.
  * @author Miklos Pocsaji
  *
  */
@@ -47,12 +50,20 @@ public final class ElStatistics {
 
     private static final Logger LOG = LoggerFactory.getLogger(ElStatistics.class);
 
+    private static final int CHECK_NOTIFICATIONS_FREQUENCY_MS = 10000;
+    private static final int SHUTDOWN_WAIT_MS = 2000;
+
     private static volatile ElStatistics instance;
 
     /** SIP AS groupName --> (SIP AS instanceName --> statistics MBean). */
     private Map<String, Map<String, SipAs>> sipAsMap;
 
-    private StatisticsThread statisticsThread;
+    /** Service identifier --> statistics MBean. */
+    private final Map<String, ServiceKeyStatistics> serviceKeyStatistics = new ConcurrentHashMap<>();
+    /** MAP alias --> statistics MBean. */
+    private final Map<String, MapStatistics> mapStatistics = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService notificationExecutor;
 
     private int windowSeconds;
 
@@ -97,8 +108,13 @@ public final class ElStatistics {
         }
 
         LOG.info("Starting statistics thread...");
-        tmpInstance.statisticsThread = new StatisticsThread();
-        tmpInstance.statisticsThread.start();
+        tmpInstance.notificationExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "IMSCF EL statistics thread");
+            t.setDaemon(true);
+            return t;
+        });
+        tmpInstance.notificationExecutor.scheduleWithFixedDelay(tmpInstance::checkCountersAndSendNotifications,
+                CHECK_NOTIFICATIONS_FREQUENCY_MS, CHECK_NOTIFICATIONS_FREQUENCY_MS, TimeUnit.MILLISECONDS);
         LOG.info("EL statistics initialized.");
         instance = tmpInstance;
     }
@@ -115,18 +131,22 @@ public final class ElStatistics {
             MBeanHelper.unregisterMBean(s);
         });
 
-        instance.statisticsThread.quit = true;
+        instance.notificationExecutor.shutdown();
         try {
-            // Wait at most twice as much the thread is sleeping
-            boolean success = instance.statisticsThread.shutdownCdl.await(StatisticsThread.WAIT_MS * 2,
-                    TimeUnit.MILLISECONDS);
+            boolean success = instance.notificationExecutor.awaitTermination(SHUTDOWN_WAIT_MS, TimeUnit.MILLISECONDS);
             if (!success) {
-                LOG.warn("Shutting down StatisticsThread timed out. (Waited {} ms.)", StatisticsThread.WAIT_MS * 2);
+                LOG.warn("Shutting down statistics thread timed out. (Waited {} ms.)", SHUTDOWN_WAIT_MS);
             }
         } catch (InterruptedException e) {
-            LOG.error("Error while waiting for StatisticsThread to shut down.", e);
+            LOG.error("Error while waiting for statistics thread to shut down.", e);
+            Thread.currentThread().interrupt();
         }
 
+        LOG.info("Unregistering statistics MBeans");
+        instance.serviceKeyStatistics.keySet().forEach(
+                id -> MBeanHelper.unregisterMBean(constructServiceKeyMBeanName(id)));
+        instance.mapStatistics.keySet().forEach(alias -> MBeanHelper.unregisterMBean(constructMapMBeanName(alias)));
+
         instance = null;
         LOG.info("EL statistics shut down.");
     }
@@ -147,109 +167,72 @@ public final class ElStatistics {
         }
     }
 
-    public static MapStatisticsSetter createOneShotMapStatisticsSetter(String alias) {
-        if (instance == null) {
+    /**
+     * Returns the setter of the MAP statistics of an alias, registering the MBean on the first call for the alias.
+     * The returned setter may be kept and used any number of times.
+     */
+    public static MapStatisticsSetter getMapStatisticsSetter(String alias) {
+        ElStatistics current = instance;
+        if (current == null) {
             LOG.error("ElStatistics is not initialized");
             return null;
         }
-        MapStatisticsSetterImpl ret = new MapStatisticsSetterImpl(alias, instance.windowSeconds,
-                instance.mapNotifications);
-        instance.statisticsThread.setterQueue.add(ret);
+        MapStatistics ret = current.mapStatistics.get(alias);
+        if (ret == null) {
+            ret = current.mapStatistics.computeIfAbsent(alias, a -> {
+                MapStatistics mbean = new MapStatistics(a, current.windowSeconds, current.mapNotifications);
+                String name = constructMapMBeanName(a);
+                LOG.info("Creating new MBean: {}", name);
+                MBeanHelper.registerMBean(mbean, name);
+                return mbean;
+            });
+        }
         return ret;
     }
 
-    public static ServiceKeyStatisticsSetter createOneShotServiceKeyStatisticsSetter(String serviceIdentifier) {
-        if (instance == null) {
+    /**
+     * Returns the setter of the statistics of a service key, registering the MBean on the first call for the service
+     * identifier. The returned setter may be kept and used any number of times.
+     */
+    public static ServiceKeyStatisticsSetter getServiceKeyStatisticsSetter(String serviceIdentifier) {
+        ElStatistics current = instance;
+        if (current == null) {
             LOG.error("ElStatistics is not initialized");
             return null;
         }
-        ServiceKeyStatisticsSetterImpl ret = new ServiceKeyStatisticsSetterImpl(serviceIdentifier,
-                instance.windowSeconds, instance.serviceKeyNotifications);
-        instance.statisticsThread.setterQueue.add(ret);
+        ServiceKeyStatistics ret = current.serviceKeyStatistics.get(serviceIdentifier);
+        if (ret == null) {
+            ret = current.serviceKeyStatistics.computeIfAbsent(serviceIdentifier, id -> {
+                ServiceKeyStatistics mbean = new ServiceKeyStatistics(id, current.windowSeconds,
+                        current.serviceKeyNotifications);
+                String name = constructServiceKeyMBeanName(id);
+                LOG.info("Creating new MBean ({}), notifications: {}", name, current.serviceKeyNotifications);
+                MBeanHelper.registerMBean(mbean, name);
+                return mbean;
+            });
+        }
         return ret;
     }
 
+    private void checkCountersAndSendNotifications() {
+        try {
+            serviceKeyStatistics.values().forEach(bean -> bean.checkCountersAndSendNotifications());
+            mapStatistics.values().forEach(bean -> bean.checkCountersAndSendNotifications());
+        } catch (RuntimeException e) {
+            // must not propagate, that would cancel the periodic task
+            LOG.error("Error while checking statistics notifications", e);
+        }
+    }
+
     private static String constructSipAsMBeanName(String asName, String asGroupName) {
         return MBeanHelper.EL_MBEAN_DOMAIN + ":type=SipAs,group=" + asGroupName + ",name=" + asName;
     }
 
-    /**
-     * The thread which actually increments the counters, periodically does a cleanup and checks for notifications
-     * Registers the MBeans if needed.
-     * Only one instance of this thread should be running.
-     * @author Miklos Pocsaji
-     *
-     */
-    private static class StatisticsThread extends Thread {
-        private volatile boolean quit;
-        private BlockingQueue<StatisticsSetterBase> setterQueue = new LinkedBlockingQueue<>();
-        private Map<String, SlidingWindowStatisticsMBeanBase> mbeanMap = new HashMap<String, SlidingWindowStatisticsMBeanBase>();
-        private CountDownLatch shutdownCdl = new CountDownLatch(1);
-        private long lastCleanupTimestamp = System.currentTimeMillis();
-        private long lastCheckNotificationsTimestamp = System.currentTimeMillis();
-
-        private static final int WAIT_MS = 1000;
-        private static final int CLEANUP_FREQUENCY_MS = 30000;
-        private static final int CHECK_NOTIFICATIONS_FREQUENCY_MS = 10000;
-
-        public StatisticsThread() {
-            super("IMSCF EL statistics thread");
-        }
+    private static String constructServiceKeyMBeanName(String serviceIdentifier) {
+        return MBeanHelper.EL_MBEAN_DOMAIN + ":type=ServiceKeyStatistics,serviceIdentifier=" + serviceIdentifier;
+    }
 
-        @Override
-        public void run() {
-            while (!quit) {
-                StatisticsSetterBase ssb = null;
-                try {
-                    ssb = setterQueue.poll(WAIT_MS, TimeUnit.MILLISECONDS);
-                } catch (InterruptedException e) {
-                    LOG.warn("Wait interrupted, shutting down.", e);
-                    quit = true;
-                    break;
-                }
-                long now = System.currentTimeMillis();
-                if (lastCleanupTimestamp + CLEANUP_FREQUENCY_MS < now) {
-                    mbeanMap.values().stream().forEach(bean -> bean.cleanupCounters());
-                    lastCleanupTimestamp = now;
-                }
-                if (lastCheckNotificationsTimestamp + CHECK_NOTIFICATIONS_FREQUENCY_MS < now) {
-                    mbeanMap.values().stream().forEach(bean -> bean.checkCountersAndSendNotifications());
-                    lastCheckNotificationsTimestamp = now;
-                }
-                if (ssb == null)
-                    continue;
-                // Wait for the "user" to call one of the inc.. methods on the setter
-                try {
-                    boolean b = ssb.waitForReady(WAIT_MS, TimeUnit.MILLISECONDS);
-                    if (!b) {
-                        // timeout occured
-                        LOG.error(
-                                "No call to one of the incXXX() methods has been issued after {} milliseconds of getting the one-shot setter! This counter increase will not be done: {}",
-                                WAIT_MS, ssb.getCounterName());
-                        continue;
-                    }
-                } catch (InterruptedException e) {
-                    LOG.warn("Wait interrupted, shutting down.", e);
-                    quit = true;
-                    break;
-                }
-                // At this time we have the info which counter should be increased.
-                String mbeanName = ssb.getMBeanName();
-                SlidingWindowStatisticsMBeanBase theMBean = mbeanMap.get(mbeanName);
-                if (theMBean == null) {
-                    // The MBean is not yet registered
-                    LOG.info("Creating new MBean: {}", mbeanName);
-                    theMBean = ssb.createNewMBeanInstance();
-                    MBeanHelper.registerMBean(theMBean, mbeanName);
-                    mbeanMap.put(mbeanName, theMBean);
-                }
-                ssb.applyOnMBean(theMBean);
-            }
-            LOG.info("ElStatistics.StatisticsThread loop ended. Unregistering MBeans");
-            for (String name : mbeanMap.keySet()) {
-                MBeanHelper.unregisterMBean(name);
-            }
-            shutdownCdl.countDown();
-        }
+    private static String constructMapMBeanName(String alias) {
+        return MBeanHelper.EL_MBEAN_DOMAIN + ":type=MapStatistics,alias=" + alias;
     }
 }
@@ -29,9 +29,10 @@ import java.util.List;
  * @author Miklos Pocsaji
  *
  */
-public class MapStatistics extends TcapStatisticsMBeanBase implements MapStatisticsMBean {
+public class MapStatistics extends TcapStatisticsMBeanBase implements MapStatisticsMBean, MapStatisticsSetter {
 
     private String alias;
+    private final SlidingWindowCounter[] counters = new SlidingWindowCounter[Counter.values().length];
 
     /**
      * The possible counters in this MBean.
@@ -46,10 +47,14 @@ public class MapStatistics extends TcapStatisticsMBeanBase implements MapStatist
         super(windowSeconds, SlidingWindowStatisticsMBeanBase.convertFromMapThresholdNotifications(notifications));
         this.alias = alias;
         for (Counter c : Counter.values()) {
-            addCounter(c.toString());
+            counters[c.ordinal()] = addCounter(c.toString());
         }
     }
 
+    private void incCounter(Counter counter) {
+        counters[counter.ordinal()].increment();
+    }
+
     @Override
     protected String resolveNotificationVariable(String variable) {
         if ("serviceIdentifier".equals(variable)) {
@@ -73,12 +78,14 @@ public class MapStatistics extends TcapStatisticsMBeanBase implements MapStatist
         return getCounter(Counter.anyTimeInterrogationResultCount.name());
     }
 
+    @Override
     public void incAnyTimeInterrogationCount() {
-        incCounter(Counter.anyTimeInterrogationCount.name());
+        incCounter(Counter.anyTimeInterrogationCount);
     }
 
+    @Override
     public void incAnyTimeInterrogationResultCount() {
-        incCounter(Counter.anyTimeInterrogationResultCount.name());
+        incCounter(Counter.anyTimeInterrogationResultCount);
     }
 
 }
@@ -33,6 +33,7 @@ public class ServiceKeyStatistics extends TcapStatisticsMBeanBase implements Ser
         ServiceKeyStatisticsSetter {
 
     private String serviceIdentifier;
+    private final SlidingWindowCounter[] counters = new SlidingWindowCounter[Counter.values().length];
 
     /**
      * The counter names for a service key.
@@ -104,10 +105,14 @@ public class ServiceKeyStatistics extends TcapStatisticsMBeanBase implements Ser
                 .convertFromServiceKeyThresholdNotifications(notifications));
         this.serviceIdentifier = serviceIdentifier;
         for (Counter c : Counter.values()) {
-            addCounter(c.toString());
+            counters[c.ordinal()] = addCounter(c.toString());
         }
     }
 
+    private void incCounter(Counter counter) {
+        counters[counter.ordinal()].increment();
+    }
+
     @Override
     protected String resolveNotificationVariable(String variable) {
         if ("serviceIdentifier".equals(variable)) {
@@ -263,142 +268,142 @@ public class ServiceKeyStatistics extends TcapStatisticsMBeanBase implements Ser
 
     @Override
     public void incRequestReportBcsmEventCount() {
-        incCounter(Counter.requestReportBcsmEventCount.name());
+        incCounter(Counter.requestReportBcsmEventCount);
     }
 
     @Override
     public void incActivityTestRequestCount() {
-        incCounter(Counter.activityTestRequestCount.name());
+        incCounter(Counter.activityTestRequestCount);
     }
 
     @Override
     public void incActivityTestResponseCount() {
-        incCounter(Counter.activityTestResponseCount.name());
+        incCounter(Counter.activityTestResponseCount);
     }
 
     @Override
     public void incApplyChargingCount() {
-        incCounter(Counter.applyChargingCount.name());
+        incCounter(Counter.applyChargingCount);
     }
 
     @Override
     public void incApplyChargingReportCount() {
-        incCounter(Counter.applyChargingReportCount.name());
+        incCounter(Counter.applyChargingReportCount);
     }
 
     @Override
     public void incCancelCount() {
-        incCounter(Counter.cancelCount.name());
+        incCounter(Counter.cancelCount);
     }
 
     @Override
     public void incConnectCount() {
-        incCounter(Counter.connectCount.name());
+        incCounter(Counter.connectCount);
     }
 
     @Override
     public void incConnectToResourceCount() {
-        incCounter(Counter.connectToResourceCount.name());
+        incCounter(Counter.connectToResourceCount);
     }
 
     @Override
     public void incContinueCount() {
-        incCounter(Counter.continueCount.name());
+        incCounter(Counter.continueCount);
     }
 
     @Override
     public void incContinueWithArgumentCount() {
-        incCounter(Counter.continueWithArgumentCount.name());
+        incCounter(Counter.continueWithArgumentCount);
     }
 
     @Override
     public void incDisconnectForwardConnectionCount() {
-        incCounter(Counter.disconnectForwardConnectionCount.name());
+        incCounter(Counter.disconnectForwardConnectionCount);
     }
 
     @Override
     public void incDisconnectForwardConnectionWithArgumentCount() {
-        incCounter(Counter.disconnectForwardConnectionWithArgumentCount.name());
+        incCounter(Counter.disconnectForwardConnectionWithArgumentCount);
     }
 
     @Override
     public void incDisconnectLegCount() {
-        incCounter(Counter.disconnectLegCount.name());
+        incCounter(Counter.disconnectLegCount);
     }
 
     @Override
     public void incEventReportBcsmCount() {
-        incCounter(Counter.eventReportBcsmCount.name());
+        incCounter(Counter.eventReportBcsmCount);
     }
 
     @Override
     public void incFurnishChargingInformationCount() {
-        incCounter(Counter.furnishChargingInformationCount.name());
+        incCounter(Counter.furnishChargingInformationCount);
     }
 
     @Override
     public void incInitialDpCount() {
-        incCounter(Counter.initialDpCount.name());
+        incCounter(Counter.initialDpCount);
     }
 
     @Override
     public void incInitiateCallAttemptRequestCount() {
-        incCounter(Counter.initiateCallAttemptRequestCount.name());
+        incCounter(Counter.initiateCallAttemptRequestCount);
     }
 
     @Override
     public void incInitiateCallAttemptResponseCount() {
-        incCounter(Counter.initiateCallAttemptResponseCount.name());
+        incCounter(Counter.initiateCallAttemptResponseCount);
     }
 
     @Override
     public void incMoveLegRequestCount() {
-        incCounter(Counter.moveLegRequestCount.name());
+        incCounter(Counter.moveLegRequestCount);
     }
 
     @Override
     public void incMoveLegResponseCount() {
-        incCounter(Counter.moveLegResponseCount.name());
+        incCounter(Counter.moveLegResponseCount);
     }
 
     @Override
     public void incPlayAnnouncementCount() {
-        incCounter(Counter.playAnnouncementCount.name());
+        incCounter(Counter.playAnnouncementCount);
     }
 
     @Override
     public void incPromptAndCollectUserInformationCount() {
-        incCounter(Counter.promptAndCollectUserInformationCount.name());
+        incCounter(Counter.promptAndCollectUserInformationCount);
     }
 
     @Override
     public void incPromptAndCollectUserInformationResultCount() {
-        incCounter(Counter.promptAndCollectUserInformationResultCount.name());
+        incCounter(Counter.promptAndCollectUserInformationResultCount);
     }
 
     @Override
     public void incReleaseCallCount() {
-        incCounter(Counter.releaseCallCount.name());
+        incCounter(Counter.releaseCallCount);
     }
 
     @Override
     public void incResetTimerCount() {
-        incCounter(Counter.resetTimerCount.name());
+        incCounter(Counter.resetTimerCount);
     }
 
     @Override
     public void incSpecializedResourceReportCount() {
-        incCounter(Counter.specializedResourceReportCount.name());
+        incCounter(Counter.specializedResourceReportCount);
     }
 
     @Override
     public void incSplitLegCount() {
-        incCounter(Counter.splitLegCount.name());
+        incCounter(Counter.splitLegCount);
     }
 
     @Override
     public void incSplitLegResponseCount() {
-        incCounter(Counter.splitLegResponseCount.name());
+        incCounter(Counter.splitLegResponseCount);
     }
 
 }
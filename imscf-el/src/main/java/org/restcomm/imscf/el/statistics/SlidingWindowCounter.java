@@ -0,0 +1,112 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ */
+package org.restcomm.imscf.el.statistics;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A single counter of a statistics MBean, counting events in a sliding time window.
+ * <p>
+ * Every second of the window has its own striped {@link LongAdder} slot, so concurrent increments neither allocate
+ * nor contend on a single memory location. There is one more slot than seconds in the window: the first increment in
+ * a new second clears the slot of the following second in advance, so increments never have to wait for or race
+ * with the reset of their own slot. Seconds which had no increments at all are cleared by the next increment and are
+ * skipped by readers in the meantime, so no periodic cleanup is needed.
+ * </p>
+ * <p>
+ * Increments racing with the first increment after an idle period of more than one second may be lost.
+ * </p>
+ */
+final class SlidingWindowCounter {
+
+    private static final AtomicLongFieldUpdater<SlidingWindowCounter> LAST_SEC_UPDATER = AtomicLongFieldUpdater
+            .newUpdater(SlidingWindowCounter.class, "lastSec");
+
+    private final int windowSeconds;
+    private final LongAdder[] slots;
+    /** The last second in which an increment happened and for which the following slot has been cleared. */
+    private volatile long lastSec;
+
+    SlidingWindowCounter(int windowSeconds) {
+        this.windowSeconds = windowSeconds;
+        this.slots = new LongAdder[windowSeconds + 1];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = new LongAdder();
+        }
+        this.lastSec = getTimeSec();
+    }
+
+    void increment() {
+        long now = getTimeSec();
+        if (lastSec < now) {
+            advance(now);
+        }
+        slots[slotIndex(now)].increment();
+    }
+
+    private void advance(long now) {
+        long last = lastSec;
+        if (last >= now || !LAST_SEC_UPDATER.compareAndSet(this, last, now)) {
+            // another thread has already advanced the window
+            return;
+        }
+        // the slot of last + 1 was cleared when the window was advanced to last, clear the skipped ones and now + 1
+        long from = Math.max(last + 2, now + 1 - windowSeconds);
+        for (long sec = from; sec <= now + 1; sec++) {
+            slots[slotIndex(sec)].reset();
+        }
+    }
+
+    /**
+     * Returns the sum of the increments in the last <code>windowSeconds</code> seconds, including the current one.
+     */
+    long sum() {
+        long now = getTimeSec();
+        long last = lastSec;
+        // slots after the last advanced second are either cleared or stale, so they are not read
+        long to = Math.min(now, last);
+        long from = Math.max(now, last) - windowSeconds + 1;
+        long ret = 0;
+        for (long sec = from; sec <= to; sec++) {
+            ret += slots[slotIndex(sec)].sum();
+        }
+        return ret;
+    }
+
+    void reset() {
+        for (LongAdder slot : slots) {
+            slot.reset();
+        }
+    }
+
+    private int slotIndex(long sec) {
+        return (int) (sec % slots.length);
+    }
+
+    static long getTimeSec() {
+        return System.currentTimeMillis() / 1000;
+    }
+
+    @Override
+    public String toString() {
+        return "SlidingWindowCounter [windowSeconds=" + windowSeconds + ", lastSec=" + lastSec + ", sum=" + sum() + "]";
+    }
+
+}
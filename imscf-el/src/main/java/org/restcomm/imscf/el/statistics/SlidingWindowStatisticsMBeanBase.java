@@ -39,12 +39,9 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Abstract class for statistics with sliding time window in EL MBeans.
- * All counters are stored in list of <code>AtomicLong</code>. Every list element is counter for a second of time.
- * The array has as many elements as the seconds required for the time window plus one.
- * At an increment the following happens:
- * <li>The current second's counter is incremented: inc(counterarray[&lt;time in seconds> mod &lt;seconds required>])</li>
- * <li>The next value is zeroed out: set_to_zero(counterarray[&lt;time in seconds + 1> mod &lt;seconds required>])</li>
- * <li>The slots for the previous counters in which no counter increment has been happened is zeroed out as well</li>
+ * Every counter is a {@link SlidingWindowCounter}, registered once in the constructor of the MBean. Subclasses keep
+ * the handle returned by {@link #addCounter(String)} and increment it directly, without any lookup, allocation or
+ * locking. The MBean attributes and the threshold notifications read a snapshot of the sums of the counters.
  * @author Miklos Pocsaji
  *
  */
@@ -80,8 +77,9 @@ public abstract class SlidingWindowStatisticsMBeanBase extends NotificationBroad
      * Adds a counter to the backend map.
      * Should only be called at initialization phase, because the backend map is not synchronized.
      * @param counterName The name of the new counter.
+     * @return The counter which should be incremented directly by the subclass.
      */
-    protected void addCounter(String counterName) {
+    protected SlidingWindowCounter addCounter(String counterName) {
         List<Notification> cNotifications = new ArrayList<Notification>();
         for (Notification n : allNotifications) {
             // LOG.trace("nofitication counter name: {}, counter name: {}", n.counterName, counterName);
@@ -92,40 +90,7 @@ public abstract class SlidingWindowStatisticsMBeanBase extends NotificationBroad
         Counter c = new Counter(windowSeconds, cNotifications);
         LOG.debug("Counter added with name '{}': {}", counterName, c);
         counters.put(counterName, c);
-    }
-
-    void incCounter(String counterName) {
-        LOG.trace("Incrementing counter '{}'", counterName);
-        Counter c = counters.get(counterName);
-        if (c == null) {
-            LOG.warn("No counter found with name '{}'.", counterName);
-            return;
-        }
-        List<AtomicLong> longList = c.values;
-
-        long time = getTimeSec();
-        int index = (int) (time % windowSeconds);
-        int nextIndex = (int) ((time + 1) % windowSeconds);
-
-        // Zero out the seconds where no increment has been happened
-
-        // ^^^ and the code below is unneeded since cleanupCounters is periodically called from StatisticsThread
-
-        // int emptySeconds = (int) (time - c.timestampSec.get());
-        c.timestampSec.set(time);
-        // LOG.trace("seconds where no increments have been made: {}", emptySeconds);
-        // if (emptySeconds >= windowSeconds) {
-        // resetAllCounters();
-        // } else {
-        // for (int i = 1; i < emptySeconds; i++) {
-        // int zeroIndex = (int) ((time - i) % windowSeconds);
-        // longList.get(zeroIndex).set(0);
-        // }
-        // }
-
-        longList.get(index).incrementAndGet();
-        longList.get(nextIndex).set(0);
-
+        return c.window;
     }
 
     private void checkAndFireNotifications(String counterName, List<Notification> notifications, long prevValue,
@@ -174,27 +139,12 @@ public abstract class SlidingWindowStatisticsMBeanBase extends NotificationBroad
         sendNotification(n);
     }
 
-    void cleanupCounters() {
-        long timeEnd = getTimeSec();
-        for (Map.Entry<String, Counter> e : counters.entrySet()) {
-            Counter c = e.getValue();
-            long zeroOutCount = timeEnd - c.timestampSec.get() - 1;
-            if (zeroOutCount > 0) {
-                // LOG.trace("Zeroing out last {} second(s) of counter {}", zeroOutCount, e.getKey());
-                for (long timeStart = c.timestampSec.get() + 1; timeStart < timeEnd; timeStart++) {
-                    c.values.get((int) (timeStart % windowSeconds)).set(0);
-                    c.timestampSec.set(timeEnd);
-                }
-            }
-        }
-    }
-
     void checkCountersAndSendNotifications() {
         // LOG.trace("checkCountersAndSendNotifications()");
         for (Map.Entry<String, Counter> e : counters.entrySet()) {
             Counter c = e.getValue();
             String counterName = e.getKey();
-            long newValue = getCounter(counterName);
+            long newValue = c.window.sum();
 
             if (c.previousValue >= 0) {
                 checkAndFireNotifications(counterName, c.notifications, c.previousValue, newValue);
@@ -209,45 +159,36 @@ public abstract class SlidingWindowStatisticsMBeanBase extends NotificationBroad
             LOG.warn("No counter found with name '{}'", counterName);
             return -1;
         }
-        List<AtomicLong> longList = c.values;
-        return longList.stream().mapToLong(al -> al.get()).sum();
+        return c.window.sum();
     }
 
     protected void resetAllCounters() {
-        counters.values().stream().flatMap(c -> c.values.stream()).forEach(al -> al.set(0));
-    }
-
-    private static long getTimeSec() {
-        return System.currentTimeMillis() / 1000;
+        counters.values().forEach(c -> c.window.reset());
     }
 
     protected abstract String resolveNotificationVariable(String variable);
 
     /**
      * Holds a counter. Members:
-     * <li>List of AtomicLongs, size of the required seconds + 1</li>
-     * <li>Timestamp when the
+     * <li>The sliding window counter itself</li>
+     * <li>The notifications configured for the counter</li>
+     * <li>The value of the counter at the last notification check</li>
      * @author Miklos Pocsaji
      *
      */
     private static final class Counter {
-        private volatile List<AtomicLong> values;
-        private volatile AtomicLong timestampSec;
-        private volatile List<Notification> notifications;
+        private final SlidingWindowCounter window;
+        private final List<Notification> notifications;
         private volatile long previousValue = -1;
 
         public Counter(int secs, List<Notification> notifications) {
             this.notifications = notifications;
-            values = new ArrayList<AtomicLong>(secs + 1);
-            timestampSec = new AtomicLong(getTimeSec());
-            for (int i = 0; i <= secs; i++) {
-                values.add(new AtomicLong());
-            }
+            this.window = new SlidingWindowCounter(secs);
         }
 
         @Override
         public String toString() {
-            return "Counter [timestampSec=" + timestampSec + ", notifications=" + notifications + ", previousValue="
+            return "Counter [window=" + window + ", notifications=" + notifications + ", previousValue="
                     + previousValue + "]";
         }
 
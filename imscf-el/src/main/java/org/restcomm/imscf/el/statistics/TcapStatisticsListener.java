@@ -20,13 +20,7 @@ package org.restcomm.imscf.el.statistics;
 
 import java.util.Optional;
 
-import org.restcomm.imscf.el.call.IMSCFCall;
-import org.restcomm.imscf.el.call.CallStore;
-import org.restcomm.imscf.el.cap.call.CAPCSCall;
-import org.restcomm.imscf.el.cap.call.CapSmsCall;
-import org.restcomm.imscf.el.map.call.MAPCall;
-import org.restcomm.imscf.el.map.call.MAPCall.MapMethod;
-import org.restcomm.imscf.el.stack.CallContext;
+import org.restcomm.imscf.el.cap.call.CapDialogCallData;
 
 import org.mobicents.protocols.ss7.cap.api.CAPOperationCode;
 import org.mobicents.protocols.ss7.map.api.MAPOperationCode;
@@ -45,6 +39,8 @@ import org.slf4j.LoggerFactory;
  * <li>outgoing CAP messages (invokes)</li>
  * <li>outgoing MAP messages (invokes)</li>
  * Incoming higher-level CAP and MAP messages are counted in CAPCSCallListener and MapModuleImpl.
+ * The counters to increment are taken from the {@link CapDialogCallData} of the dialog, so the callbacks neither look
+ * up nor lock the call. Dialogs without a resolved statistics target (e.g. SMS calls) are not counted.
  * @author Miklos Pocsaji
  */
 @SuppressWarnings("PMD.GodClass")
@@ -224,36 +220,26 @@ public class TcapStatisticsListener implements TCAPCounterEventsListener {
     }
 
     private void incInvokeStatistics(Dialog dialog, OperationCode operationCode) {
-        CallStore callStore = (CallStore) CallContext.get(CallContext.CALLSTORE);
-        try (IMSCFCall call = callStore.getCallByLocalTcapTrId(dialog.getLocalDialogId())) {
-            if (call instanceof CAPCSCall) {
-                incServiceKeyInvokeStatistics(call.getServiceIdentifier(), operationCode);
-            } else if (call instanceof CapSmsCall) {
-                // TODO increase SMS counters
-                LOG.warn("Increasing SMS counters is not yet implemented!");
-            } else if (call instanceof MAPCall) {
-                incMapInvokeStatistics((MAPCall) call, operationCode);
-            }
+        TcapStatisticsSetter setter = getTcapStatisticsSetter(dialog);
+        if (setter instanceof ServiceKeyStatisticsSetter) {
+            incServiceKeyInvokeStatistics((ServiceKeyStatisticsSetter) setter, operationCode);
+        } else if (setter instanceof MapStatisticsSetter) {
+            incMapInvokeStatistics((MapStatisticsSetter) setter, operationCode);
         }
     }
 
-    private void incMapInvokeStatistics(MAPCall call, OperationCode operationCode) {
-        String serviceIdentifier = call.getServiceIdentifier();
-        MapStatisticsSetter setter = ElStatistics.createOneShotMapStatisticsSetter(serviceIdentifier);
-        // do we need this check and the warn here?
-        if (call.getMapMethod() == MapMethod.AnyTimeInterrogation) {
-            if (operationCode.getLocalOperationCode() == MAPOperationCode.anyTimeInterrogation) {
-                setter.incAnyTimeInterrogationCount();
-            } else {
-                LOG.warn(
-                        "outgoing MAP invoke for MAP call type AnyTimeInterrogation, but operation code is {} instead of {}",
-                        operationCode.getLocalOperationCode(), MAPOperationCode.anyTimeInterrogation);
-            }
+    private void incMapInvokeStatistics(MapStatisticsSetter setter, OperationCode operationCode) {
+        // only AnyTimeInterrogation dialogs are created with MAP statistics
+        if (operationCode.getLocalOperationCode() == MAPOperationCode.anyTimeInterrogation) {
+            setter.incAnyTimeInterrogationCount();
+        } else {
+            LOG.warn(
+                    "outgoing MAP invoke for MAP call type AnyTimeInterrogation, but operation code is {} instead of {}",
+                    operationCode.getLocalOperationCode(), MAPOperationCode.anyTimeInterrogation);
         }
     }
 
-    private void incServiceKeyInvokeStatistics(String serviceIdentifier, OperationCode operationCode) {
-        ServiceKeyStatisticsSetter osskss = ElStatistics.createOneShotServiceKeyStatisticsSetter(serviceIdentifier);
+    private void incServiceKeyInvokeStatistics(ServiceKeyStatisticsSetter osskss, OperationCode operationCode) {
         switch (operationCode.getLocalOperationCode().intValue()) {
         case CAPOperationCode.activityTest:
             osskss.incActivityTestRequestCount();
@@ -319,18 +305,12 @@ public class TcapStatisticsListener implements TCAPCounterEventsListener {
     }
 
     private TcapStatisticsSetter getTcapStatisticsSetter(Dialog dialog) {
-        TcapStatisticsSetter ret = null;
-        CallStore callStore = (CallStore) CallContext.get(CallContext.CALLSTORE);
-        try (IMSCFCall call = callStore.getCallByLocalTcapTrId(dialog.getLocalDialogId())) {
-            if (call instanceof CAPCSCall) {
-                ret = ElStatistics.createOneShotServiceKeyStatisticsSetter(call.getServiceIdentifier());
-            } else if (call instanceof MAPCall) {
-                ret = ElStatistics.createOneShotMapStatisticsSetter(call.getServiceIdentifier());
-            } else {
-                LOG.debug("No statistics setter implemented for call {}", call);
-            }
+        Object userObject = dialog.getUserObject();
+        if (userObject instanceof CapDialogCallData) {
+            return ((CapDialogCallData) userObject).getStatisticsSetter();
         }
-        return ret;
+        LOG.trace("No statistics target for dialog {}", dialog);
+        return null;
     }
 
 }
@@ -53,13 +53,19 @@ public abstract class TcapStatisticsMBeanBase extends SlidingWindowStatisticsMBe
 
     }
 
+    private final SlidingWindowCounter[] tcapCounters = new SlidingWindowCounter[TcapCounter.values().length];
+
     protected TcapStatisticsMBeanBase(int windowSeconds, List<Notification> notifications) {
         super(windowSeconds, notifications);
         for (TcapCounter c : TcapCounter.values()) {
-            addCounter(c.toString());
+            tcapCounters[c.ordinal()] = addCounter(c.toString());
         }
     }
 
+    private void incCounter(TcapCounter counter) {
+        tcapCounters[counter.ordinal()].increment();
+    }
+
     @Override
     public long getTcapBeginReceivedCount() {
         return getCounter(TcapCounter.tcapBeginReceivedCount.name());
@@ -197,137 +203,137 @@ public abstract class TcapStatisticsMBeanBase extends SlidingWindowStatisticsMBe
 
     @Override
     public void incTcapBeginReceivedCount() {
-        incCounter(TcapCounter.tcapBeginReceivedCount.name());
+        incCounter(TcapCounter.tcapBeginReceivedCount);
     }
 
     @Override
     public void incTcapContinueReceivedCount() {
-        incCounter(TcapCounter.tcapContinueReceivedCount.name());
+        incCounter(TcapCounter.tcapContinueReceivedCount);
     }
 
     @Override
     public void incTcapEndReceivedCount() {
-        incCounter(TcapCounter.tcapEndReceivedCount.name());
+        incCounter(TcapCounter.tcapEndReceivedCount);
     }
 
     @Override
     public void incTcapPAbortUnrecognizedMessageTypeReceivedCount() {
-        incCounter(TcapCounter.tcapPAbortUnrecognizedMessageTypeReceivedCount.name());
+        incCounter(TcapCounter.tcapPAbortUnrecognizedMessageTypeReceivedCount);
     }
 
     @Override
     public void incTcapPAbortUnrecognizedTxIdReceivedCount() {
-        incCounter(TcapCounter.tcapPAbortUnrecognizedTxIdReceivedCount.name());
+        incCounter(TcapCounter.tcapPAbortUnrecognizedTxIdReceivedCount);
     }
 
     @Override
     public void incTcapPAbortBadlyFormattedTxPortionReceivedCount() {
-        incCounter(TcapCounter.tcapPAbortBadlyFormattedTxPortionReceivedCount.name());
+        incCounter(TcapCounter.tcapPAbortBadlyFormattedTxPortionReceivedCount);
     }
 
     @Override
     public void incTcapPAbortIncorrectTxPortionReceivedCount() {
-        incCounter(TcapCounter.tcapPAbortIncorrectTxPortionReceivedCount.name());
+        incCounter(TcapCounter.tcapPAbortIncorrectTxPortionReceivedCount);
     }
 
     @Override
     public void incTcapPAbortResourceLimitationReceivedCount() {
-        incCounter(TcapCounter.tcapPAbortResourceLimitationReceivedCount.name());
+        incCounter(TcapCounter.tcapPAbortResourceLimitationReceivedCount);
     }
 
     @Override
     public void incTcapPAbortAbnormalDialogueReceivedCount() {
-        incCounter(TcapCounter.tcapPAbortAbnormalDialogueReceivedCount.name());
+        incCounter(TcapCounter.tcapPAbortAbnormalDialogueReceivedCount);
     }
 
     @Override
     public void incTcapPAbortNoCommonDialoguePortionReceivedCount() {
-        incCounter(TcapCounter.tcapPAbortNoCommonDialoguePortionReceivedCount.name());
+        incCounter(TcapCounter.tcapPAbortNoCommonDialoguePortionReceivedCount);
     }
 
     @Override
     public void incTcapPAbortNoReasonGivenReceivedCount() {
-        incCounter(TcapCounter.tcapPAbortNoReasonGivenReceivedCount.name());
+        incCounter(TcapCounter.tcapPAbortNoReasonGivenReceivedCount);
     }
 
     @Override
     public void incTcapUAbortReceivedCount() {
-        incCounter(TcapCounter.tcapUAbortReceivedCount.name());
+        incCounter(TcapCounter.tcapUAbortReceivedCount);
     }
 
     @Override
     public void incTcapPAbortSentCount() {
-        incCounter(TcapCounter.tcapPAbortSentCount.name());
+        incCounter(TcapCounter.tcapPAbortSentCount);
     }
 
     @Override
     public void incTcapUAbortSentCount() {
-        incCounter(TcapCounter.tcapUAbortSentCount.name());
+        incCounter(TcapCounter.tcapUAbortSentCount);
     }
 
     @Override
     public void incTcapBeginSentCount() {
-        incCounter(TcapCounter.tcapBeginSentCount.name());
+        incCounter(TcapCounter.tcapBeginSentCount);
     }
 
     @Override
     public void incTcapContinueSentCount() {
-        incCounter(TcapCounter.tcapContinueSentCount.name());
+        incCounter(TcapCounter.tcapContinueSentCount);
     }
 
     @Override
     public void incTcapEndSentCount() {
-        incCounter(TcapCounter.tcapEndSentCount.name());
+        incCounter(TcapCounter.tcapEndSentCount);
     }
 
     @Override
     public void incTcapInvokeSentCount() {
-        incCounter(TcapCounter.tcapInvokeSentCount.name());
+        incCounter(TcapCounter.tcapInvokeSentCount);
     }
 
     @Override
     public void incTcapInvokeReceivedCount() {
-        incCounter(TcapCounter.tcapInvokeReceivedCount.name());
+        incCounter(TcapCounter.tcapInvokeReceivedCount);
     }
 
     @Override
     public void incTcapReturnResultSentCount() {
-        incCounter(TcapCounter.tcapReturnResultSentCount.name());
+        incCounter(TcapCounter.tcapReturnResultSentCount);
     }
 
     @Override
     public void incTcapReturnResultReceivedCount() {
-        incCounter(TcapCounter.tcapReturnResultReceivedCount.name());
+        incCounter(TcapCounter.tcapReturnResultReceivedCount);
     }
 
     @Override
     public void incTcapReturnResultLastSentCount() {
-        incCounter(TcapCounter.tcapReturnResultLastSentCount.name());
+        incCounter(TcapCounter.tcapReturnResultLastSentCount);
     }
 
     @Override
     public void incTcapReturnResultLastReceivedCount() {
-        incCounter(TcapCounter.tcapReturnResultLastReceivedCount.name());
+        incCounter(TcapCounter.tcapReturnResultLastReceivedCount);
     }
 
     @Override
     public void incTcapErrorSentCount() {
-        incCounter(TcapCounter.tcapErrorSentCount.name());
+        incCounter(TcapCounter.tcapErrorSentCount);
     }
 
     @Override
     public void incTcapErrorReceivedCount() {
-        incCounter(TcapCounter.tcapErrorReceivedCount.name());
+        incCounter(TcapCounter.tcapErrorReceivedCount);
     }
 
     @Override
     public void incTcapRejectSentCount() {
-        incCounter(TcapCounter.tcapRejectSentCount.name());
+        incCounter(TcapCounter.tcapRejectSentCount);
     }
 
     @Override
     public void incTcapRejectReceivedCount() {
-        incCounter(TcapCounter.tcapRejectReceivedCount.name());
+        incCounter(TcapCounter.tcapRejectReceivedCount);
     }
 
 }
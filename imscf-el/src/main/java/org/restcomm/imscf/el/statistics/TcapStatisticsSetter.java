@@ -19,7 +19,7 @@
 package org.restcomm.imscf.el.statistics;
 
 /**
- * One-shot setter interface for TCAP counters.
+ * Setter interface for TCAP counters.
  * @author Miklos Pocsaji
  *
  */
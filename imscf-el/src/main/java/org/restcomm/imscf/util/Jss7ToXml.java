@@ -21,7 +21,8 @@ package org.restcomm.imscf.util;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
-import java.io.UnsupportedEncodingException;
+import java.io.StringReader;
+import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 
@@ -42,12 +43,25 @@ import org.mobicents.protocols.ss7.cap.service.circuitSwitchedCall.ResetTimerReq
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-/** Utility class for CAP/MAP to XML serialization. */
+/**
+ * Utility class for CAP/MAP to XML serialization.
+ * <p>
+ * Every thread has its own reader, writer and output buffer which are reused for all the objects encoded or decoded
+ * on that thread, so only the result is allocated per call. Callers putting the XML into a SIP message should use
+ * {@link #encodeToBytes(Object, String)}, which avoids creating an intermediate String.
+ * </p>
+ */
 public final class Jss7ToXml {
     private static final Logger LOG = LoggerFactory.getLogger(Jss7ToXml.class);
 
     private static final XMLBinding IMSCF_XML_BINDING;
 
+    private static final int INITIAL_BUFFER_SIZE = 2500; // about enough for an IDP
+    /** Output buffers grown over this size are not kept for reuse. */
+    private static final int MAX_RETAINED_BUFFER_SIZE = 64 * 1024;
+
+    private static final ThreadLocal<Codec> CODECS = ThreadLocal.withInitial(Codec::new);
+
     static {
         IMSCF_XML_BINDING = new XMLBinding();
         IMSCF_XML_BINDING.setAlias(ApplyChargingRequestImpl.class, "applyCharging");
@@ -68,27 +82,33 @@ public final class Jss7ToXml {
         // no instances
     }
 
+    static XMLBinding getBinding() {
+        return IMSCF_XML_BINDING;
+    }
+
     public static String encode(Object jss7Object) {
         return encode(jss7Object, null);
     }
 
-    @SuppressWarnings("unchecked")
     public static <T> String encode(T jss7Object, String name) {
-        ByteArrayOutputStream baos = new ByteArrayOutputStream(2500); // about enough for an IDP
+        Codec codec = Codec.acquire();
+        try {
+            return codec.encode(jss7Object, name) ? codec.output.asString(StandardCharsets.UTF_8) : null;
+        } finally {
+            codec.release();
+        }
+    }
 
-        try (ImscfXMLObjectWriter writer = new ImscfXMLObjectWriter()) {
-            writer.setOutput(baos).setBinding(IMSCF_XML_BINDING).setIndentation(" ");
-            if (name != null) {
-                // we expect the runtime (implementation) class to be the one used for encoding
-                writer.write(jss7Object, name, (Class<T>) jss7Object.getClass());
-            } else {
-                writer.write(jss7Object);
-            }
-            writer.flush();
-            return baos.toString(StandardCharsets.UTF_8.name());
-        } catch (XMLStreamException | UnsupportedEncodingException e) {
-            LOG.warn("Error serializing JSS7 object {}: {}", jss7Object, e, e);
-            return null;
+    /**
+     * Encodes the object into UTF-8 XML bytes which can be set directly as SIP message content.
+     * @return the encoded bytes or null on serialization error.
+     */
+    public static <T> byte[] encodeToBytes(T jss7Object, String name) {
+        Codec codec = Codec.acquire();
+        try {
+            return codec.encode(jss7Object, name) ? codec.output.toByteArray() : null;
+        } finally {
+            codec.release();
         }
     }
 
@@ -120,21 +140,23 @@ public final class Jss7ToXml {
      * @throws XmlDecodeException if any other XML type is encountered or one of the allowed types fails to parse or the content cannot be read
      */
     public static Object decodeAnyOf(Object xml, Class<?>... cls) throws XmlDecodeException { // NOPMD reassign
-        // all accepted parameters finally become an inputstream: ((String ->) byte[] ->) InputStream
-        if (xml instanceof String) {
-            xml = ((String) xml).getBytes(StandardCharsets.UTF_8);
-        }
+        // byte[] is wrapped as an InputStream, a String is read as characters without encoding it first
         if (xml instanceof byte[]) {
             xml = new ByteArrayInputStream((byte[]) xml);
         }
-        if (!(xml instanceof InputStream)) {
+        if (!(xml instanceof InputStream) && !(xml instanceof String)) {
             // MultiPart or other types cannot directly contain an xml
             throw new XmlDecodeException("Cannot decode XML from " + (xml == null ? "null" : xml.getClass().getName()));
         }
-        InputStream input = (InputStream) xml;
 
-        try (ImscfXMLObjectReader reader = new ImscfXMLObjectReader()) {
-            reader.setInput(input);
+        Codec codec = Codec.acquire();
+        ImscfXMLObjectReader reader = codec.reader;
+        try {
+            if (xml instanceof String) {
+                reader.setInput(new StringReader((String) xml));
+            } else {
+                reader.setInput((InputStream) xml);
+            }
             reader.setBinding(IMSCF_XML_BINDING);
             if (reader.hasNext()) {
                 String name = reader.getStreamReader().getLocalName().toString();
@@ -155,6 +177,87 @@ public final class Jss7ToXml {
             }
         } catch (XMLStreamException e) {
             throw new XmlDecodeException("Error deserializing JSS7 object", e);
+        } finally {
+            try {
+                // closes the input as well and resets the reader for the next call
+                reader.close();
+            } catch (XMLStreamException e) {
+                LOG.debug("Error closing XML input", e);
+                reader.reset();
+            }
+            codec.release();
+        }
+    }
+
+    /**
+     * Output buffer which keeps its backing array between encodings.
+     */
+    private static final class ReusableOutputStream extends ByteArrayOutputStream {
+        ReusableOutputStream() {
+            super(INITIAL_BUFFER_SIZE);
+        }
+
+        String asString(Charset charset) {
+            return new String(buf, 0, count, charset);
+        }
+
+        void recycle() {
+            if (buf.length > MAX_RETAINED_BUFFER_SIZE) {
+                buf = new byte[INITIAL_BUFFER_SIZE];
+            }
+            reset();
+        }
+    }
+
+    /**
+     * The reader, writer and output buffer of a thread. A nested call on the same thread (e.g. from a toString()
+     * invoked during encoding) gets a temporary instance instead of the busy one.
+     */
+    private static final class Codec {
+        private final ImscfXMLObjectWriter writer = new ImscfXMLObjectWriter();
+        private final ImscfXMLObjectReader reader = new ImscfXMLObjectReader();
+        private final ReusableOutputStream output = new ReusableOutputStream();
+        private boolean busy;
+
+        static Codec acquire() {
+            Codec codec = CODECS.get();
+            if (codec.busy) {
+                return new Codec();
+            }
+            codec.busy = true;
+            return codec;
+        }
+
+        void release() {
+            output.recycle();
+            busy = false;
+        }
+
+        /** Encodes the object into {@link #output}. Returns false on error. */
+        @SuppressWarnings("unchecked")
+        <T> boolean encode(T jss7Object, String name) {
+            boolean closed = false;
+            try {
+                writer.setOutput(output).setBinding(IMSCF_XML_BINDING).setIndentation(" ");
+                if (name != null) {
+                    // we expect the runtime (implementation) class to be the one used for encoding
+                    writer.write(jss7Object, name, (Class<T>) jss7Object.getClass());
+                } else {
+                    writer.write(jss7Object);
+                }
+                // ends the document and resets the writer for the next call
+                writer.close();
+                closed = true;
+                return true;
+            } catch (XMLStreamException e) {
+                LOG.warn("Error serializing JSS7 object {}: {}", jss7Object, e, e);
+                return false;
+            } finally {
+                if (!closed) {
+                    // also on runtime exceptions, otherwise the next setOutput() on this thread would fail
+                    writer.reset();
+                }
+            }
         }
     }
 
@@ -0,0 +1,275 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ */
+package org.restcomm.imscf.el.call;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.restcomm.imscf.el.sip.SIPCall;
+import org.restcomm.imscf.el.tcap.call.TCAPCall;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+/**
+ * Tests of {@link StripedCallTable}.
+ */
+public class StripedCallTableTest {
+
+    @Test
+    public void testUpdateIndexesAllKeys() {
+        StripedCallTable table = new StripedCallTable(16);
+        List<TestCall> calls = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            TestCall c = new TestCall("call-" + i, "as-" + i, (long) i * 7);
+            table.update(c.proxy);
+            calls.add(c);
+        }
+        for (TestCall c : calls) {
+            assertFound(table, c);
+        }
+        assertSizes(table, 5000, 5000, 5000);
+        assertEquals(5000, table.countCalls(CallType.OTHER));
+    }
+
+    @Test
+    public void testSecondaryKeysAddedLater() {
+        StripedCallTable table = new StripedCallTable(16);
+        TestCall c = new TestCall("call", null, null);
+        table.update(c.proxy);
+        assertSame(c.proxy, table.getByImscfCallId("call"));
+        assertSizes(table, 1, 0, 0);
+
+        c.appSessionId = "as";
+        c.localTcapTrId = 42L;
+        table.update(c.proxy);
+        assertFound(table, c);
+        assertSizes(table, 1, 1, 1);
+        assertEquals(1, table.countCalls(CallType.OTHER));
+    }
+
+    @Test
+    public void testUpdateReplacesCallObject() {
+        StripedCallTable table = new StripedCallTable(16);
+        TestCall c = new TestCall("call", "as", 1L);
+        table.update(c.proxy);
+        TestCall copy = new TestCall("call", "as", 1L);
+        table.update(copy.proxy);
+        assertFound(table, copy);
+        assertSizes(table, 1, 1, 1);
+        assertEquals(1, table.countCalls(CallType.OTHER));
+    }
+
+    @Test
+    public void testRekey() {
+        StripedCallTable table = new StripedCallTable(16);
+        TestCall c = new TestCall("call", "as-old", 1L);
+        table.update(c.proxy);
+        c.appSessionId = "as-new";
+        c.localTcapTrId = 2L;
+        table.update(c.proxy);
+        assertNull(table.getByAppSessionId("as-old"));
+        assertNull(table.getByLocalTcapTrId(1L));
+        assertFound(table, c);
+        assertSizes(table, 1, 1, 1);
+
+        // the old keys can be taken by another call
+        TestCall other = new TestCall("other", "as-old", 1L);
+        table.update(other.proxy);
+        assertFound(table, c);
+        assertFound(table, other);
+        assertSizes(table, 2, 2, 2);
+    }
+
+    @Test
+    public void testRemove() {
+        StripedCallTable table = new StripedCallTable(16);
+        List<TestCall> calls = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            TestCall c = new TestCall("call-" + i, "as-" + i, (long) i);
+            table.update(c.proxy);
+            calls.add(c);
+        }
+        for (int i = 0; i < calls.size(); i += 2) {
+            table.remove(calls.get(i).proxy);
+        }
+        for (int i = 0; i < calls.size(); i++) {
+            TestCall c = calls.get(i);
+            if (i % 2 == 0) {
+                assertNotFound(table, c);
+            } else {
+                assertFound(table, c);
+            }
+        }
+        assertSizes(table, 2500, 2500, 2500);
+        assertEquals(2500, table.countCalls(CallType.OTHER));
+
+        // removing again or removing an unknown call changes nothing
+        table.remove(calls.get(0).proxy);
+        table.remove(new TestCall("unknown", "as-1", 1L).proxy);
+        assertFound(table, calls.get(1));
+        assertSizes(table, 2500, 2500, 2500);
+    }
+
+    @Test
+    public void testRemovedCallStoredAgain() {
+        StripedCallTable table = new StripedCallTable(16);
+        TestCall c = new TestCall("call", "as", 1L);
+        table.update(c.proxy);
+        table.remove(c.proxy);
+        assertNotFound(table, c);
+        assertSizes(table, 0, 0, 0);
+        table.update(c.proxy);
+        assertFound(table, c);
+        assertSizes(table, 1, 1, 1);
+    }
+
+    @Test
+    public void testCollidingIds() {
+        // every id has the same hash, so all of them but the first one go to the colliding maps
+        StripedCallTable table = new StripedCallTable(16, id -> 12345L);
+        List<TestCall> calls = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            TestCall c = new TestCall("call-" + i, "as-" + i, (long) i);
+            table.update(c.proxy);
+            calls.add(c);
+        }
+        for (TestCall c : calls) {
+            assertFound(table, c);
+        }
+        assertNull(table.getByImscfCallId("call-100"));
+        assertNull(table.getByAppSessionId("as-100"));
+        assertSizes(table, 100, 100, 100);
+
+        TestCall first = calls.get(0);
+        first.appSessionId = "as-first";
+        table.update(first.proxy);
+        assertNull(table.getByAppSessionId("as-0"));
+        assertFound(table, first);
+
+        // removing the call in the index must not affect the colliding ones
+        for (int i = 0; i < calls.size(); i += 3) {
+            table.remove(calls.get(i).proxy);
+        }
+        for (int i = 0; i < calls.size(); i++) {
+            if (i % 3 == 0) {
+                assertNotFound(table, calls.get(i));
+            } else {
+                assertFound(table, calls.get(i));
+            }
+        }
+        assertSizes(table, 66, 66, 66);
+
+        // a colliding call can be stored in the index cell freed above
+        TestCall again = new TestCall("call-again", "as-again", 1000L);
+        table.update(again.proxy);
+        assertFound(table, again);
+        assertSizes(table, 67, 67, 67);
+    }
+
+    @Test
+    public void testConcurrentUpdateAndRemove() throws Exception {
+        StripedCallTable table = new StripedCallTable(16);
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                final int thread = t;
+                futures.add(executor.submit((Callable<Void>) () -> {
+                    for (int i = 0; i < 20000; i++) {
+                        TestCall c = new TestCall("call-" + thread + "-" + i % 500, "as-" + thread + "-" + i,
+                                (long) thread * 1000000 + i);
+                        table.update(c.proxy);
+                        assertFound(table, c);
+                        table.remove(c.proxy);
+                        assertNotFound(table, c);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> f : futures) {
+                f.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertSizes(table, 0, 0, 0);
+        assertEquals(0, table.countCalls(CallType.OTHER));
+    }
+
+    private static void assertFound(StripedCallTable table, TestCall c) {
+        assertSame(c.proxy, table.getByImscfCallId(c.imscfCallId));
+        assertSame(c.proxy, table.getByAppSessionId(c.appSessionId));
+        assertSame(c.proxy, table.getByLocalTcapTrId(c.localTcapTrId));
+    }
+
+    private static void assertNotFound(StripedCallTable table, TestCall c) {
+        assertNull(table.getByImscfCallId(c.imscfCallId));
+        assertNull(table.getByAppSessionId(c.appSessionId));
+        assertNull(table.getByLocalTcapTrId(c.localTcapTrId));
+    }
+
+    private static void assertSizes(StripedCallTable table, int callIds, int appSessionIds, int localTcapTrIds) {
+        assertEquals(callIds, table.getImscfCallIdIndexSize());
+        assertEquals(appSessionIds, table.getAppSessionIdIndexSize());
+        assertEquals(localTcapTrIds, table.getLocalTcapTrIdIndexSize());
+    }
+
+    /** A SIP and TCAP call with changeable ids, only the id getters of the proxy are usable. */
+    private static final class TestCall {
+        private final String imscfCallId;
+        private volatile String appSessionId;
+        private volatile Long localTcapTrId;
+        private final IMSCFCall proxy;
+
+        private TestCall(String imscfCallId, String appSessionId, Long localTcapTrId) {
+            this.imscfCallId = imscfCallId;
+            this.appSessionId = appSessionId;
+            this.localTcapTrId = localTcapTrId;
+            this.proxy = (IMSCFCall) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {
+                    SIPCall.class, TCAPCall.class }, (p, method, args) -> {
+                switch (method.getName()) {
+                case "getImscfCallId":
+                    return this.imscfCallId;
+                case "getAppSessionId":
+                    return this.appSessionId;
+                case "getLocalTcapTrId":
+                    return this.localTcapTrId;
+                case "hashCode":
+                    return System.identityHashCode(p);
+                case "equals":
+                    return p == args[0];
+                case "toString":
+                    return "TestCall " + this.imscfCallId;
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+                }
+            });
+        }
+    }
+}
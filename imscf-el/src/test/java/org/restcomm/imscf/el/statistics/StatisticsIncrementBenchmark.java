@@ -0,0 +1,84 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ */
+package org.restcomm.imscf.el.statistics;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the increment throughput of the statistics counters: a number of threads increment TCAP and service key
+ * counters of the same service key, which is the worst case for contention.
+ * <p>
+ * Usage: <code>java StatisticsIncrementBenchmark [threads] [increments per thread]</code>
+ * </p>
+ */
+public final class StatisticsIncrementBenchmark {
+
+    private static final int ROUNDS = 5;
+    private static final int WINDOW_SECONDS = 60;
+
+    private StatisticsIncrementBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors();
+        int increments = args.length > 1 ? Integer.parseInt(args[1]) : 10000000;
+        ServiceKeyStatistics statistics = new ServiceKeyStatistics("benchmark", WINDOW_SECONDS,
+                Collections.emptyList());
+        for (int round = 0; round < ROUNDS; round++) {
+            // the first rounds are warmup, only the last one is printed
+            run(statistics, threads, increments, round == ROUNDS - 1);
+        }
+        System.out.println("counters in window: tcapBeginReceivedCount=" + statistics.getTcapBeginReceivedCount()
+                + ", initialDpCount=" + statistics.getInitialDpCount());
+    }
+
+    private static void run(ServiceKeyStatisticsSetter setter, int threads, int increments, boolean print)
+            throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int i = 0; i < increments; i++) {
+                    setter.incTcapBeginReceivedCount();
+                    setter.incInitialDpCount();
+                }
+                done.countDown();
+            }, "benchmark-" + t);
+            thread.start();
+        }
+        long then = System.nanoTime();
+        start.countDown();
+        done.await();
+        long elapsedNanos = System.nanoTime() - then;
+        if (print) {
+            long total = 2L * increments * threads;
+            long perSec = total * 1000000000L / elapsedNanos;
+            System.out.printf("threads: %d increments: %d time: %dms throughput: %d inc/s, %d inc/s per thread%n",
+                    threads, total, TimeUnit.NANOSECONDS.toMillis(elapsedNanos), perSec, perSec / threads);
+        }
+    }
+}
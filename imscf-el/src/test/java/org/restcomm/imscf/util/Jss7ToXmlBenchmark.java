@@ -0,0 +1,186 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ */
+package org.restcomm.imscf.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.mobicents.protocols.ss7.cap.service.circuitSwitchedCall.ApplyChargingReportRequestImpl;
+import org.mobicents.protocols.ss7.cap.service.circuitSwitchedCall.EventReportBCSMRequestImpl;
+
+/**
+ * Throughput comparison of the pooled {@link Jss7ToXml} codec and a reader/writer created for every call, as done
+ * before. The CAP operations are read from XML files, e.g. SIP message bodies captured from a test system. Elements
+ * with an alias in the IMSCF binding (initialDP, connect, requestReportBCSMEvent, playAnnouncement, ...) are measured
+ * for both encoding and decoding, eventReportBCSM and applyChargingReport only for encoding, as IMSCF never decodes
+ * them.
+ * <p>
+ * Usage: <code>java Jss7ToXmlBenchmark threads iterations file.xml...</code>
+ * </p>
+ */
+public final class Jss7ToXmlBenchmark {
+
+    private static final int ROUNDS = 5;
+    private static final Pattern ROOT_ELEMENT = Pattern.compile("<([A-Za-z][\\w]*)");
+    private static final Map<String, Class<?>> ENCODE_ONLY = new HashMap<>();
+
+    static {
+        ENCODE_ONLY.put("eventReportBCSM", EventReportBCSMRequestImpl.class);
+        ENCODE_ONLY.put("applyChargingReport", ApplyChargingReportRequestImpl.class);
+    }
+
+    private Jss7ToXmlBenchmark() {
+    }
+
+    /** A CAP operation and its XML. */
+    private static final class Sample {
+        private String name;
+        private Object object;
+        private byte[] xml;
+        private boolean decodable;
+    }
+
+    /** An operation measured by the benchmark. */
+    @FunctionalInterface
+    private interface Op {
+        void run(Sample sample) throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.out.println("Usage: java Jss7ToXmlBenchmark threads iterations file.xml...");
+            return;
+        }
+        int threads = Integer.parseInt(args[0]);
+        int iterations = Integer.parseInt(args[1]);
+        List<Sample> samples = new ArrayList<>();
+        for (int i = 2; i < args.length; i++) {
+            samples.add(load(args[i]));
+        }
+
+        for (Sample sample : samples) {
+            for (int round = 0; round < ROUNDS; round++) {
+                // the first rounds are warmup, only the last one is printed
+                boolean print = round == ROUNDS - 1;
+                run("encode per-call", sample, threads, iterations, Jss7ToXmlBenchmark::encodePerCall, print);
+                run("encode pooled", sample, threads, iterations,
+                        s -> Jss7ToXml.encodeToBytes(s.object, s.name), print);
+                if (sample.decodable) {
+                    run("decode per-call", sample, threads, iterations, Jss7ToXmlBenchmark::decodePerCall, print);
+                    run("decode pooled", sample, threads, iterations,
+                            s -> Jss7ToXml.decodeAnyOf(s.xml, Object.class), print);
+                }
+            }
+        }
+    }
+
+    private static Sample load(String file) throws Exception {
+        Sample ret = new Sample();
+        byte[] content = Files.readAllBytes(Paths.get(file));
+        Matcher m = ROOT_ELEMENT.matcher(new String(content, StandardCharsets.UTF_8));
+        if (!m.find()) {
+            throw new IllegalArgumentException("No XML element in " + file);
+        }
+        ret.name = m.group(1);
+        Class<?> encodeOnlyClass = ENCODE_ONLY.get(ret.name);
+        if (encodeOnlyClass != null) {
+            ret.object = readAs(content, ret.name, encodeOnlyClass);
+        } else {
+            ret.object = Jss7ToXml.decodeAnyOf(content, Object.class);
+            ret.decodable = true;
+        }
+        // measure with the XML as IMSCF produces it
+        ret.xml = Jss7ToXml.encodeToBytes(ret.object, ret.name);
+        System.out.println("Loaded " + ret.name + " from " + file + ", " + ret.xml.length + " bytes");
+        return ret;
+    }
+
+    private static <T> T readAs(byte[] content, String name, Class<T> cls) throws Exception {
+        try (ImscfXMLObjectReader reader = new ImscfXMLObjectReader()) {
+            reader.setInput(new ByteArrayInputStream(content)).setBinding(Jss7ToXml.getBinding());
+            return reader.read(name, cls);
+        }
+    }
+
+    /** The encoding as it was before the pooled codec: new writer and buffer, then a String and its bytes. */
+    @SuppressWarnings("unchecked")
+    private static <T> void encodePerCall(Sample sample) throws Exception {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(2500);
+        try (ImscfXMLObjectWriter writer = new ImscfXMLObjectWriter()) {
+            writer.setOutput(baos).setBinding(Jss7ToXml.getBinding()).setIndentation(" ");
+            writer.write((T) sample.object, sample.name, (Class<T>) sample.object.getClass());
+            writer.flush();
+            baos.toString(StandardCharsets.UTF_8.name()).getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    /** The decoding as it was before the pooled codec: new reader for every call. */
+    private static void decodePerCall(Sample sample) throws Exception {
+        try (ImscfXMLObjectReader reader = new ImscfXMLObjectReader()) {
+            reader.setInput(new ByteArrayInputStream(sample.xml)).setBinding(Jss7ToXml.getBinding());
+            reader.read();
+        }
+    }
+
+    private static void run(String opName, Sample sample, int threads, int iterations, Op op, boolean print)
+            throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        for (int t = 0; t < threads; t++) {
+            new Thread(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < iterations; i++) {
+                        op.run(sample);
+                    }
+                } catch (Exception e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    done.countDown();
+                }
+            }, "benchmark-" + t).start();
+        }
+        long then = System.nanoTime();
+        start.countDown();
+        done.await();
+        long elapsedNanos = System.nanoTime() - then;
+        if (failure.get() != null) {
+            throw new IllegalStateException(opName + " failed for " + sample.name, failure.get());
+        }
+        if (print) {
+            long total = (long) iterations * threads;
+            System.out.printf("%-28s %-16s threads: %d ops: %d time: %6dms throughput: %d ops/s%n", sample.name,
+                    opName, threads, total, TimeUnit.NANOSECONDS.toMillis(elapsedNanos), total * 1000000000L
+                            / elapsedNanos);
+        }
+    }
+}
@@ -19,6 +19,7 @@
 package org.restcomm.imscf.sl.history;
 
 import org.restcomm.imscf.common.util.TCAPMessageInfo;
+import org.restcomm.imscf.common.util.history.CallHistoryEvent;
 
 import java.util.Arrays;
 
@@ -30,7 +31,7 @@ import java.util.Arrays;
  * @author Miklos Pocsaji
  *
  */
-public enum Event {
+public enum Event implements CallHistoryEvent {
 
     TC_BEGIN_IN("->TC_BEGIN", ""), TC_CONT_IN("->TC_CONT", ""), TC_END_IN("->TC_END", ""), TC_ABRT_IN("->TC_ABORT", ""), TC_BEGIN_OUT(
             "<-TC_BEGIN", ""), TC_CONT_OUT("<-TC_CONT", ""), TC_END_OUT("<-TC_END", ""), TC_ABRT_OUT("<-TC_ABRT", ""), LWC_OUT_OK(
@@ -59,6 +60,16 @@ public enum Event {
         this.postfix = postfix;
     }
 
+    @Override
+    public String getPrefix() {
+        return prefix;
+    }
+
+    @Override
+    public String getPostfix() {
+        return postfix;
+    }
+
     @Override
     public String toString() {
         return toEventString();
@@ -41,12 +41,35 @@ public class SlCallHistoryStore {
         // Empty constructor
     }
 
-    public void registerEvent(ImscfCallId imscfCallId, Event event, String... parameters) {
+    /**
+     * Registers an event. The parameters are only rendered with toString() when the call history is logged, so they
+     * should be immutable. Does nothing if the audit log is disabled.
+     */
+    public void registerEvent(ImscfCallId imscfCallId, Event event, Object... parameters) {
+        if (!CallHistory.isEnabled()) {
+            return;
+        }
         CallHistory ch = callHistoryMap.computeIfAbsent(imscfCallId, cid -> new CallHistory(cid.toString()));
-        ch.addEvent(event.toEventString(parameters));
+        switch (parameters.length) {
+        case 0:
+            ch.addEvent(event);
+            break;
+        case 1:
+            ch.addEvent(event, parameters[0]);
+            break;
+        case 2:
+            ch.addEvent(event, parameters[0], parameters[1]);
+            break;
+        default:
+            ch.addEvent(event, parameters);
+            break;
+        }
     }
 
     public void logAndRemoveCallHistory(ImscfCallId imscfCallId) {
+        if (!CallHistory.isEnabled()) {
+            return;
+        }
         CallHistory ch = callHistoryMap.remove(imscfCallId);
         if (ch == null) {
             LOG.warn("No call history found for imscf call id {}", imscfCallId);
@@ -44,6 +44,7 @@ public class ELRouterBean extends SLELRouter<SlElMappingData> {
     ConfigBean configBean;
 
     private boolean initialized;
+    private volatile SlElMappingReplicator replicator;
 
     @PostConstruct
     private void init() {
@@ -85,9 +86,26 @@ public class ELRouterBean extends SLELRouter<SlElMappingData> {
 
     @Override
     public SlElMappingData setMappingData(SccpDialogId sdid, TcapDialogId tdid, SlElMappingData data) {
+        if (!initialized)
+            throw new IllegalStateException("ELRouterBean not initialized!");
+        SlElMappingData ret = super.setMappingData(sdid, tdid, data);
+        SlElMappingReplicator r = replicator;
+        if (r != null) {
+            r.mappingChanged(sdid, tdid, data);
+        }
+        return ret;
+    }
+
+    /** Stores a mapping received from the other SL, without replicating it back. */
+    public SlElMappingData setReplicatedMappingData(SccpDialogId sdid, TcapDialogId tdid, SlElMappingData data) {
         if (!initialized)
             throw new IllegalStateException("ELRouterBean not initialized!");
         return super.setMappingData(sdid, tdid, data);
     }
 
+    /** Sets the replicator notified of the local mapping changes, or null to stop replication. */
+    public void setReplicator(SlElMappingReplicator replicator) {
+        this.replicator = replicator;
+    }
+
 }
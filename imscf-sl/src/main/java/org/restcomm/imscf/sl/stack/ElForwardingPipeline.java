@@ -0,0 +1,280 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ */
+package org.restcomm.imscf.sl.stack;
+
+import org.restcomm.imscf.common.lwcomm.config.Node;
+import org.restcomm.imscf.common.lwcomm.config.Route;
+import org.restcomm.imscf.common.lwcomm.service.BinaryMessage;
+import org.restcomm.imscf.common.lwcomm.service.LwCommService;
+import org.restcomm.imscf.common.lwcomm.service.SendResult;
+import org.restcomm.imscf.common.lwcomm.service.SendResultFuture;
+import org.restcomm.imscf.common.lwcomm.service.TextMessage;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Non-blocking sender for SL to EL messages.
+ * <p>
+ * Messages are handed over to LwComm without waiting for the send result, the result is processed in a continuation
+ * running on the supplied executor. This way a slow or unreachable EL node does not hold up the SCCP thread and the
+ * traffic of the other EL nodes.
+ * </p>
+ * <p>
+ * Messages with the same group id (i.e. belonging to the same call) are pipelined one after the other: the next
+ * message of a group is only passed to LwComm after the continuation of the previous one has finished. This keeps
+ * the per-call message order and the order of the EL mapping updates done in the continuations.
+ * </p>
+ * <p>
+ * The number of accepted but unfinished messages is limited per EL node. A message on a route with a single
+ * destination counts towards the window of that node. A message on a load balanced route counts towards the window
+ * of the destination with the fewest messages in flight, as the actual destination is only chosen by LwComm. When
+ * the window is full (on a load balanced route: the windows of all destinations are full),
+ * {@link #send(String, TextMessage, Completion)} returns false and the caller has to handle the message otherwise.
+ * Messages queued behind a message of the same group are always accepted, even beyond the window, so that they are
+ * not reordered by the caller handling them in another way.
+ * </p>
+ */
+public class ElForwardingPipeline {
+
+    private static Logger logger = LoggerFactory.getLogger(ElForwardingPipeline.class);
+
+    private final LwCommService lwc;
+    private final int maxInFlightPerNode;
+    private final ExecutorService continuationExecutor;
+    /** In-flight windows by node name. */
+    private final ConcurrentHashMap<String, Window> windows = new ConcurrentHashMap<>();
+    /** The windows of the destinations, by route name. */
+    private final ConcurrentHashMap<String, Window[]> routeWindows = new ConcurrentHashMap<>();
+    /** Groups with a message in flight, mapped to the messages waiting behind it. */
+    private final ConcurrentHashMap<String, Queue<PendingSend>> busyGroups = new ConcurrentHashMap<>();
+
+    public ElForwardingPipeline(LwCommService lwc, int maxInFlightPerNode, ExecutorService continuationExecutor) {
+        if (maxInFlightPerNode <= 0) {
+            throw new IllegalArgumentException("maxInFlightPerNode must be positive: " + maxInFlightPerNode);
+        }
+        this.lwc = Objects.requireNonNull(lwc);
+        this.maxInFlightPerNode = maxInFlightPerNode;
+        this.continuationExecutor = Objects.requireNonNull(continuationExecutor);
+    }
+
+    /**
+     * Queues the message for sending on the given route.
+     * @param routeName the LwComm route to send on
+     * @param message the message to send, its group id determines the ordering
+     * @param completion called with the send result once the message is delivered or failed
+     * @return false if the message was not accepted because the destination has too many messages in flight
+     */
+    public boolean send(String routeName, TextMessage message, Completion completion) {
+        return send(new PendingSend(routeName, message.getGroupId(), message, null, completion));
+    }
+
+    /**
+     * Queues the binary message for sending on the given route, see {@link #send(String, TextMessage, Completion)}.
+     * The reference to the payload is only taken over if the message is accepted.
+     */
+    public boolean send(String routeName, BinaryMessage message, Completion completion) {
+        return send(new PendingSend(routeName, message.getGroupId(), null, message, completion));
+    }
+
+    private boolean send(PendingSend pending) {
+        Window[] destinations = routeWindows.computeIfAbsent(pending.routeName, this::createRouteWindows);
+        String groupId = pending.groupId;
+        if (groupId == null) {
+            pending.window = acquire(destinations, false);
+            if (pending.window == null) {
+                logger.debug("In-flight windows of {} messages are full on route {}", maxInFlightPerNode,
+                        pending.routeName);
+                return false;
+            }
+            start(pending);
+            return true;
+        }
+        boolean[] first = new boolean[1];
+        boolean[] accepted = new boolean[1];
+        busyGroups.compute(groupId, (k, waiting) -> {
+            if (waiting == null) {
+                pending.window = acquire(destinations, false);
+                if (pending.window == null) {
+                    return null;
+                }
+                first[0] = true;
+                accepted[0] = true;
+                return new ArrayDeque<>();
+            }
+            // the group keeps its order, the window is exceeded if necessary
+            pending.window = acquire(destinations, true);
+            waiting.add(pending);
+            accepted[0] = true;
+            return waiting;
+        });
+        if (!accepted[0]) {
+            logger.debug("In-flight windows of {} messages are full on route {}", maxInFlightPerNode,
+                    pending.routeName);
+            return false;
+        }
+        if (first[0]) {
+            start(pending);
+        } else {
+            logger.trace("Message of group {} queued behind the one in flight", groupId);
+        }
+        return true;
+    }
+
+    /** Returns the number of accepted but unfinished messages towards the given node. */
+    public int getInFlightCount(String nodeName) {
+        Window window = windows.get(nodeName);
+        return window == null ? 0 : window.inFlight.get();
+    }
+
+    public void shutdown() {
+        continuationExecutor.shutdown();
+    }
+
+    private Window[] createRouteWindows(String routeName) {
+        Route route = lwc.getConfiguration().getRouteByName(routeName);
+        if (route == null) {
+            // nothing is accepted, the caller reports the error of the route
+            logger.error("Unknown LwComm route: {}", routeName);
+            return new Window[0];
+        }
+        List<Node> destinations = route.getDestinations();
+        Window[] ret = new Window[destinations.size()];
+        for (int i = 0; i < ret.length; i++) {
+            ret[i] = windows.computeIfAbsent(destinations.get(i).getName(), n -> new Window());
+        }
+        return ret;
+    }
+
+    /**
+     * Takes a place in the window of the destination with the fewest messages in flight. Returns null if all of them
+     * are full, unless <code>beyondLimit</code> is set.
+     */
+    private Window acquire(Window[] destinations, boolean beyondLimit) {
+        while (true) {
+            Window best = null;
+            int bestCount = beyondLimit ? Integer.MAX_VALUE : maxInFlightPerNode;
+            for (Window w : destinations) {
+                int count = w.inFlight.get();
+                if (count < bestCount) {
+                    best = w;
+                    bestCount = count;
+                }
+            }
+            if (best == null) {
+                return null;
+            }
+            if (best.inFlight.compareAndSet(bestCount, bestCount + 1)) {
+                return best;
+            }
+        }
+    }
+
+    private void start(PendingSend pending) {
+        SendResultFuture<SendResult> future;
+        try {
+            future = pending.binaryMessage != null ? lwc.send(pending.routeName, pending.binaryMessage) : lwc.send(
+                    pending.routeName, pending.textMessage);
+            future.addListener(f -> finish(pending, future), continuationExecutor);
+        } catch (RuntimeException e) {
+            // the continuation is not going to run, complete the message here to free its window and group
+            logger.error("Error while passing message to LwComm on route {}", pending.routeName, e);
+            finish(pending, null);
+        }
+    }
+
+    /** Completes the message, the future is null if it could not be passed to LwComm. */
+    private void finish(PendingSend pending, SendResultFuture<SendResult> future) {
+        String messageId = future == null ? null : future.getMessageId();
+        try {
+            SendResult result = SendResult.FAILURE;
+            if (future != null) {
+                try {
+                    result = future.get();
+                } catch (CancellationException | ExecutionException | InterruptedException e) {
+                    logger.error("Exception while getting send result for message {}", messageId, e);
+                }
+            }
+            pending.completion.completed(future, result);
+        } catch (Exception e) {
+            logger.error("Error in send continuation for message {}", messageId, e);
+        } finally {
+            pending.window.inFlight.decrementAndGet();
+            startNextInGroup(pending.groupId);
+        }
+    }
+
+    private void startNextInGroup(String groupId) {
+        if (groupId == null) {
+            return;
+        }
+        PendingSend[] next = new PendingSend[1];
+        busyGroups.computeIfPresent(groupId, (k, waiting) -> {
+            next[0] = waiting.poll();
+            return next[0] == null ? null : waiting;
+        });
+        if (next[0] != null) {
+            start(next[0]);
+        }
+    }
+
+    /**
+     * Continuation called when the send result of a message is available. If the message could not be passed to
+     * LwComm, the continuation is called with a null future and a failure result, possibly on the sending thread.
+     */
+    @FunctionalInterface
+    public interface Completion {
+        void completed(SendResultFuture<SendResult> future, SendResult result);
+    }
+
+    /** The in-flight window of an EL node. */
+    private static class Window {
+        private final AtomicInteger inFlight = new AtomicInteger();
+    }
+
+    /** A message to send, either a text or a binary one. */
+    private static class PendingSend {
+        private final String routeName;
+        private final String groupId;
+        private final TextMessage textMessage;
+        private final BinaryMessage binaryMessage;
+        private final Completion completion;
+        /** The window the message is counted in, set when it is accepted. */
+        private Window window;
+
+        PendingSend(String routeName, String groupId, TextMessage textMessage, BinaryMessage binaryMessage,
+                Completion completion) {
+            this.routeName = routeName;
+            this.groupId = groupId;
+            this.textMessage = textMessage;
+            this.binaryMessage = binaryMessage;
+            this.completion = completion;
+        }
+    }
+}
@@ -32,7 +32,10 @@ import org.restcomm.imscf.common.messages.SccpManagementMessage;
 import org.restcomm.imscf.common.util.TCAPMessageInfo;
 import org.restcomm.imscf.common.util.TCAPMessageInfo.MessageType;
 import org.restcomm.imscf.common.util.ImscfCallId;
+import org.restcomm.imscf.common.util.history.CallHistory;
 import org.restcomm.imscf.common.util.overload.OverloadProtector;
+import org.restcomm.imscf.common.lwcomm.config.Node;
+import org.restcomm.imscf.common.lwcomm.service.IncomingBinaryMessage;
 import org.restcomm.imscf.common.lwcomm.service.IncomingTextMessage;
 import org.restcomm.imscf.common.lwcomm.service.LwCommService;
 import org.restcomm.imscf.common.lwcomm.service.MessageReceiver;
@@ -70,6 +73,7 @@ public class LwcommMessageReceiver implements MessageReceiver {
     private transient LwCommService lwc;
 
     private transient SLSccpListener slSccpListener;
+    private transient SlElMappingReplicator replicator;
 
     public LwcommMessageReceiver(SlCallHistoryStore callHistoryStore) {
         this.callHistoryStore = Objects.requireNonNull(callHistoryStore, "CallHistoryStore cannot be null");
@@ -84,11 +88,21 @@ public class LwcommMessageReceiver implements MessageReceiver {
         this.slSccpListener = Objects.requireNonNull(slSccpListener, "SLSccpListener cannot be null");
     }
 
-    private void handleSccpDataMessageContent(IncomingTextMessage msg, String sccpData) {
-        String elNodeName = msg.getFrom().getName();
+    /** Sets the replicator receiving the mappings of the other SL, null if replication is not used. */
+    public void setReplicator(SlElMappingReplicator replicator) {
+        this.replicator = replicator;
+    }
+
+    /**
+     * Handles an SCCP message to be sent to the network.
+     * @param from the EL node which sent the message
+     * @param groupId the LwComm group id, i.e. the ImscfCallId of the call
+     * @param messageId the LwComm message id
+     */
+    private void handleSccpDataMessage(Node from, String groupId, String messageId, SccpDataMessage sdm) {
+        String elNodeName = from.getName();
         try {
-            MDCParameters.toMDC(MDCParameters.Parameter.IMSCF_CALLID, msg.getGroupId());
-            SccpDataMessage sdm = SccpSerializer.deserialize(sccpData);
+            MDCParameters.toMDC(MDCParameters.Parameter.IMSCF_CALLID, groupId);
             logger.trace("SccpDataMessage got: {}", sdm);
             if (sdm.getCallingPartyAddress().getSignalingPointCode() == PC_FILLED_BY_SL) {
                 logger.debug("Calling party's point code is special: 0xC0000 -- this means that it should be replaced by the point code of this SL.");
@@ -110,12 +124,12 @@ public class LwcommMessageReceiver implements MessageReceiver {
             if (info.getMessageType() == MessageType.TC_BEGIN
                     && OverloadProtector.getInstance().getCurrentState().isCpuOrHeapOverloaded()) {
                 // System is overloaded. Do not handle incoming TCAP BEGIN messages, simply ignore them
-                logger.warn("System is overloaded, dropping TC_BEGIN from EL for call {}", msg.getGroupId());
+                logger.warn("System is overloaded, dropping TC_BEGIN from EL for call {}", groupId);
                 return;
             }
             SccpDialogId sdid = SccpDialogId.extractFromSccpMessage(sdm, false);
             TcapDialogId tdid = TcapDialogId.extractFromTCAPMessageInfo(info, false);
-            ImscfCallId imscfCallId = ImscfCallId.parse(msg.getGroupId());
+            ImscfCallId imscfCallId = ImscfCallId.parse(groupId);
             // TC_BEGIN: ICA, MAP, etc.; dialogue started on EL side
             // further TCAP messages in SL->EL direction with
             // this DTID should be sent to the same node
@@ -150,11 +164,11 @@ public class LwcommMessageReceiver implements MessageReceiver {
                 slElRouter.setMappingData(sdid, tdid, null);
             }
 
-            callHistoryStore.registerEvent(imscfCallId, Event.LWC_IN, info.getMessageType().toString(), msg.getId());
+            callHistoryStore.registerEvent(imscfCallId, Event.LWC_IN, info.getMessageType(), messageId);
             sccpProvider.send(sdm);
             if (info.getMessageType() == MessageType.TC_BEGIN) {
-                callHistoryStore.registerEvent(imscfCallId, Event.fromTcap(info, false), sdid.toString(), "OTID: 0x"
-                        + Long.toHexString(info.getOtid()));
+                callHistoryStore.registerEvent(imscfCallId, Event.fromTcap(info, false), sdid,
+                        CallHistory.hexArg("OTID", info.getOtid()));
             } else {
                 callHistoryStore.registerEvent(imscfCallId, Event.fromTcap(info, false));
             }
@@ -181,7 +195,7 @@ public class LwcommMessageReceiver implements MessageReceiver {
                 logger.warn(
                         "DeleteCall management message arrived for imscf call id {}, sccp dialog id {}, tcap dialog id {}",
                         imscfCallId, manMsg.getSccpDialogId(), manMsg.getTcapDialogId());
-                callHistoryStore.registerEvent(imscfCallId, Event.LWC_IN, manMsg.getType().toString(), msg.getId());
+                callHistoryStore.registerEvent(imscfCallId, Event.LWC_IN, manMsg.getType(), msg.getId());
                 slElRouter.setMappingData(manMsg.getSccpDialogId(), manMsg.getTcapDialogId(), null);
                 callHistoryStore.logAndRemoveCallHistory(imscfCallId);
                 break;
@@ -206,7 +220,7 @@ public class LwcommMessageReceiver implements MessageReceiver {
             SccpDialogId sdid = SccpDialogId.extractFromSccpMessage(sdm, true); // treat as incoming
             TCAPMessageInfo info = TCAPMessageInfo.parse(sdm.getData());
             callHistoryStore.registerEvent(queryIdParsed, Event.EL_ROUTER_QUERY_IN,
-                    "DTID: 0x" + Long.toHexString(info.getDtid()));
+                    CallHistory.hexArg("DTID", info.getDtid()));
             TcapDialogId tdid = TcapDialogId.extractFromTCAPMessageInfo(info, true);
             SlElMappingData data = slElRouter.getMappingData(sdid, tdid);
             if (data == null) {
@@ -226,8 +240,12 @@ public class LwcommMessageReceiver implements MessageReceiver {
                 ImscfCallId imscfCallIdParsed = ImscfCallId.parse(imscfCallId);
                 callHistoryStore.registerEvent(imscfCallIdParsed, Event.EL_ROUTER_QUERY_ANSWER_OUT, queryId);
                 callHistoryStore.logAndRemoveCallHistory(imscfCallIdParsed);
-                // delete mapping, as the other SL is taking over
-                slElRouter.setMappingData(sdid, tdid, null);
+                SlElMappingReplicator r = replicator;
+                if (r == null || !r.isReplicatingWith(queryClient)) {
+                    // delete mapping, as the other SL is taking over
+                    // (with active replication, both SLs keep the mapping until the dialog ends)
+                    slElRouter.setMappingData(sdid, tdid, null);
+                }
             }
 
             lwc.send(slElRouter.getDirectRouteNameTo(queryClient),
@@ -348,8 +366,9 @@ public class LwcommMessageReceiver implements MessageReceiver {
             switch (target) {
             case "SccpProvider":
                 switch (content) { // NOPMD for too few branches
-                case "SccpDataMessage":
-                    handleSccpDataMessageContent(msg, data);
+                case SccpSerializer.CONTENT_TYPE_JSON:
+                    handleSccpDataMessage(msg.getFrom(), msg.getGroupId(), msg.getId(),
+                            SccpSerializer.deserialize(data));
                     break;
                 case "SccpManagementMessage":
                     handleSccpManagementMessageContent(msg, data);
@@ -373,6 +392,18 @@ public class LwcommMessageReceiver implements MessageReceiver {
                     logger.error("Unknown content type {} received in EL router response", content);
                 }
                 break;
+            case "ELRouter/replication":
+                if (replicator == null) {
+                    logger.warn("EL mapping replication message received from {}, but replication is disabled",
+                            msg.getFrom());
+                } else if (extraHeaders == null) {
+                    logger.error("EL mapping replication message not understood. Missing Replication header.");
+                } else if (content == null || SlLwcommFormat.ELROUTER_REPLICATION_CONTENT.equals(content)) {
+                    replicator.handleReplicationMessage(extraHeaders.split("\r\n")[0], data);
+                } else {
+                    logger.error("Unknown content type {} received in EL mapping replication", content);
+                }
+                break;
             default:
                 logger.error("Unknown target: " + target);
                 break;
@@ -382,4 +413,28 @@ public class LwcommMessageReceiver implements MessageReceiver {
         }
 
     }
+
+    /**
+     * Binary messages from EL carry an SCCP message to be sent to the network, encoded by
+     * {@link SccpSerializer#serializeBinary(SccpDataMessage)}.
+     */
+    @Override
+    public void onMessage(IncomingBinaryMessage msg) {
+        logger.debug("Incoming binary LWCOMM message: {}", msg);
+        SccpDataMessage sdm;
+        try {
+            sdm = SccpSerializer.deserializeBinary(msg.getPayload());
+        } catch (IllegalArgumentException e) {
+            logger.error("Binary message from EL not understood: {}", e.getMessage());
+            return;
+        } finally {
+            msg.release();
+        }
+        handleSccpDataMessage(msg.getFrom(), msg.getGroupId(), msg.getId(), sdm);
+    }
+
+    @Override
+    public boolean acceptsBinaryMessages() {
+        return true;
+    }
 }
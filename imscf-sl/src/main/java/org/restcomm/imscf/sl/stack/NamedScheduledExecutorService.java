@@ -18,6 +18,8 @@
  */
 package org.restcomm.imscf.sl.stack;
 
+import org.restcomm.imscf.common.util.HashedWheelTimer;
+
 import java.util.Objects;
 import java.util.Optional;
 import java.util.concurrent.ConcurrentHashMap;
@@ -25,18 +27,35 @@ import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
-/** Provides a named scheduling interface. */
+/**
+ * Provides a named scheduling interface. The tasks are either scheduled directly on the executor, or kept in a
+ * {@link HashedWheelTimer} running on the executor, which scales better to a large number of timers.
+ */
 public class NamedScheduledExecutorService {
 
     private ScheduledExecutorService delegate;
     private ConcurrentHashMap<String, Ref<ScheduledFuture<?>>> futures = new ConcurrentHashMap<>();
+    private final HashedWheelTimer wheel;
 
     public NamedScheduledExecutorService(ScheduledExecutorService delegate) {
+        this(delegate, null);
+    }
+
+    /**
+     * Creates a service using the given timer wheel, which must run on the delegate executor.
+     * If wheel is null, the tasks are scheduled on the delegate executor directly.
+     */
+    public NamedScheduledExecutorService(ScheduledExecutorService delegate, HashedWheelTimer wheel) {
         this.delegate = delegate;
+        this.wheel = wheel;
     }
 
     /** Schedules a task with the specified unique name. */
     public void scheduleNamedTask(String name, Runnable command, long delay, TimeUnit unit) {
+        if (wheel != null) {
+            wheel.scheduleNamedTask(name, command, delay, unit);
+            return;
+        }
         Objects.requireNonNull(name, "Task name cannot be null");
         Ref<ScheduledFuture<?>> ref = new Ref<ScheduledFuture<?>>();
         Object prev = futures.putIfAbsent(name, ref);
@@ -59,10 +78,22 @@ public class NamedScheduledExecutorService {
 
     /** Cancels the task with the given name. */
     public boolean cancelNamedTask(String name) {
+        if (wheel != null) {
+            return wheel.cancelNamedTask(name);
+        }
         // simply return false if the task is already done
         return Optional.ofNullable(futures.remove(name)).map(Ref::get).map(f -> f.cancel(false)).orElse(false);
     }
 
+    /** Shuts down the underlying executor, pending tasks are not executed. */
+    public void shutdown() {
+        if (wheel != null) {
+            wheel.shutdown();
+        }
+        delegate.shutdownNow();
+        futures.clear();
+    }
+
     /** Indirect delayed-set reference to an object.*/
     private static class Ref<T> {
         private T ref;
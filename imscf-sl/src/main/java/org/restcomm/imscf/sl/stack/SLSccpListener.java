@@ -18,6 +18,7 @@
  */
 package org.restcomm.imscf.sl.stack;
 
+import org.restcomm.imscf.sl.config.ConfigBean;
 import org.restcomm.imscf.sl.history.Event;
 import org.restcomm.imscf.sl.history.SlCallHistoryStore;
 import org.restcomm.imscf.sl.log.MDCParameters;
@@ -31,8 +32,12 @@ import org.restcomm.imscf.common.SccpSerializer;
 import org.restcomm.imscf.common.TcapDialogId;
 import org.restcomm.imscf.common.util.TCAPMessageInfo;
 import org.restcomm.imscf.common.util.TCAPMessageInfo.MessageType;
+import org.restcomm.imscf.common.util.HashedWheelTimer;
 import org.restcomm.imscf.common.util.ImscfCallId;
+import org.restcomm.imscf.common.util.history.CallHistory;
 import org.restcomm.imscf.common.util.overload.OverloadProtector;
+import org.restcomm.imscf.common.lwcomm.config.Route;
+import org.restcomm.imscf.common.lwcomm.service.BinaryMessage;
 import org.restcomm.imscf.common.lwcomm.service.LwCommService;
 import org.restcomm.imscf.common.lwcomm.service.SendResult;
 import org.restcomm.imscf.common.lwcomm.service.SendResult.Type;
@@ -45,6 +50,7 @@ import java.util.Objects;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import org.mobicents.protocols.ss7.sccp.RemoteSccpStatus;
@@ -64,6 +70,14 @@ public class SLSccpListener implements SccpListener {
 
     private static final long serialVersionUID = 1L;
     private static Logger logger = LoggerFactory.getLogger(SLSccpListener.class);
+    /**
+     * Maximum number of unfinished messages per EL node for asynchronous forwarding. 0 (the default) means synchronous
+     * (blocking) sending.
+     */
+    private static final int MAX_IN_FLIGHT_PER_NODE = Integer.getInteger("imscf.sl.elForwarding.maxInFlightPerNode",
+            0);
+    private static final int FORWARDING_CONTINUATION_THREADS = Integer.getInteger(
+            "imscf.sl.elForwarding.continuationThreads", 2);
 
     private transient LwCommService lwc;
     private transient SLELRouter<SlElMappingData> elRouter;
@@ -72,6 +86,7 @@ public class SLSccpListener implements SccpListener {
     private final String otherSlNode;
     private final int queryTimeout;
     private final transient NamedScheduledExecutorService queryTimeoutService;
+    private final transient ElForwardingPipeline forwardingPipeline;
 
     public SLSccpListener(SLELRouter<SlElMappingData> elRouterBean, SlCallHistoryStore callHistoryStore,
             LwCommService lwc, String otherSlNode) {
@@ -85,15 +100,32 @@ public class SLSccpListener implements SccpListener {
             // we add the first retransmit delay to account for the remote side's processing time, gc pause, etc.
             List<Integer> pattern = lwc.getConfiguration().getAllRoutes().iterator().next().getRetransmitPattern();
             this.queryTimeout = pattern.get(Math.max(0, pattern.size() - 2)) * 2 + pattern.get(0);
-            // don't keep any threads if not in use
+            // without the timer wheel, don't keep any threads if not in use
             // TODO do we need a fixed number of threads? this is only for logging and cleaning call history for failed
             // queries
-            this.queryTimeoutService = new NamedScheduledExecutorService(Executors.newScheduledThreadPool(0,
-                    new NamingThreadFactory("ElRouteQueryService")));
+            ScheduledExecutorService queryTimeoutExecutor = Executors.newScheduledThreadPool(
+                    HashedWheelTimer.ENABLED ? 1 : 0, new NamingThreadFactory("ElRouteQueryService"));
+            HashedWheelTimer wheel = null;
+            if (HashedWheelTimer.ENABLED) {
+                wheel = new HashedWheelTimer("ElRouteQuery", queryTimeoutExecutor);
+                wheel.registerMBean(ConfigBean.SL_MBEAN_DOMAIN + ":type=TimerWheel,name=ElRouteQuery");
+            }
+            this.queryTimeoutService = new NamedScheduledExecutorService(queryTimeoutExecutor, wheel);
         } else {
             this.queryTimeout = -1;
             this.queryTimeoutService = null;
         }
+
+        if (MAX_IN_FLIGHT_PER_NODE > 0) {
+            logger.info("Asynchronous EL forwarding enabled, max {} messages in flight per EL node",
+                    MAX_IN_FLIGHT_PER_NODE);
+            this.forwardingPipeline = new ElForwardingPipeline(lwc, MAX_IN_FLIGHT_PER_NODE,
+                    Executors.newFixedThreadPool(FORWARDING_CONTINUATION_THREADS, new NamingThreadFactory(
+                            "ElForwardingContinuation")));
+        } else {
+            logger.info("Asynchronous EL forwarding disabled, waiting for each send result");
+            this.forwardingPipeline = null;
+        }
     }
 
     public NamedScheduledExecutorService getQueryTimeoutService() {
@@ -134,7 +166,7 @@ public class SLSccpListener implements SccpListener {
         switch (info.getMessageType()) {
         case TC_BEGIN:
             // If the system is overloaded, send back TCAP_ABORT immediately
-            if (OverloadProtector.getInstance().getCurrentState().isCpuOrHeapOverloaded()) {
+            if (!OverloadProtector.getInstance().getAdmissionController().tryAdmit("SSN " + sdid.getLocalSSN())) {
                 logger.debug("System is overloaded. Sending back TCAP ABORT.");
                 SlOverloadUtil.rejectBeginFromNetworkWithPAbort(msg, tdid.getRemoteTcapTID());
                 return;
@@ -178,8 +210,8 @@ public class SLSccpListener implements SccpListener {
         try {
             MDCParameters.toMDC(Parameter.IMSCF_CALLID, callid.toString());
             if (info.getMessageType() == MessageType.TC_BEGIN) {
-                callHistoryStore.registerEvent(callid, Event.fromTcap(info, true), sdid.toString(),
-                        "OTID: 0x" + Long.toHexString(info.getOtid()));
+                callHistoryStore.registerEvent(callid, Event.fromTcap(info, true), sdid,
+                        CallHistory.hexArg("OTID", info.getOtid()));
             } else {
                 callHistoryStore.registerEvent(callid, Event.fromTcap(info, true));
             }
@@ -191,8 +223,8 @@ public class SLSccpListener implements SccpListener {
 
     private void startELRouterQuery(SccpDialogId sdid, TCAPMessageInfo info, SccpDataMessage msg) {
         ImscfCallId queryId = ImscfCallId.generate();
-        callHistoryStore.registerEvent(queryId, Event.fromTcap(info, true), sdid.toString(),
-                "DTID: 0x" + Long.toHexString(info.getDtid()));
+        callHistoryStore.registerEvent(queryId, Event.fromTcap(info, true), sdid,
+                CallHistory.hexArg("DTID", info.getDtid()));
         callHistoryStore.registerEvent(queryId, Event.EL_ROUTER_QUERY_OUT);
         logger.debug("Sending EL router query with id {}", queryId.toString());
 
@@ -229,40 +261,82 @@ public class SLSccpListener implements SccpListener {
     public void sendSccpToElNode(String lwcommRouteName, ImscfCallId callid, TCAPMessageInfo info, SccpDialogId sdid,
             TcapDialogId tdid, SccpDataMessage msg) {
 
-        String sccpAsString = SccpSerializer.serialize(msg);
-
-        String lwcommPayload = "" + //
-                "Target: SUA\r\n" + //
-                "Content: SccpDataMessage\r\n" + //
-                "\r\n" + //
-                sccpAsString;
         String lwcTag = info.getMessageType() == MessageType.TC_BEGIN ? LwcTags.NEW_SESSION : LwcTags.IN_SESSION;
-        SendResultFuture<SendResult> sendresult = lwc.send(lwcommRouteName, TextMessage.builder(lwcommPayload)
-                .setGroupId(callid.toString()).setTag(lwcTag).create());
+        // binary if the EL nodes of the route accept it, otherwise JSON in a text message
+        BinaryMessage binaryMessage = SccpSerializer.toBinaryMessage(msg, lwc, lwcommRouteName, callid.toString(),
+                lwcTag);
+        TextMessage textMessage = binaryMessage != null ? null : TextMessage
+                .builder(SlLwcommFormat.formatSccpToEL(msg)).setGroupId(callid.toString()).setTag(lwcTag).create();
+
+        Route route = lwc.getConfiguration().getRouteByName(lwcommRouteName);
+        if (info.getMessageType() == MessageType.TC_CONTINUE && route != null && route.getDestinations().size() == 1) {
+            // a continuation is sent on the direct route of its EL node; the mapping is updated (e.g. with the remote
+            // TID of a dialog started by EL) before sending, so the next message of the dialog already finds it
+            SlElMappingData data = new SlElMappingData();
+            data.setNodeName(route.getDestinations().get(0).getName());
+            data.setImscfCallId(callid);
+            elRouter.setMappingData(sdid, tdid, data);
+        }
+
+        if (forwardingPipeline != null) {
+            ElForwardingPipeline.Completion completion = (future, sr) -> {
+                try {
+                    MDCParameters.toMDC(Parameter.IMSCF_CALLID, callid.toString());
+                    handleElSendResult(callid, info, sdid, tdid, msg, future == null ? null : future.getMessageId(),
+                            sr);
+                } finally {
+                    MDCParameters.clearMDC();
+                }
+            };
+            boolean accepted = binaryMessage != null ? forwardingPipeline.send(lwcommRouteName, binaryMessage,
+                    completion) : forwardingPipeline.send(lwcommRouteName, textMessage, completion);
+            if (accepted) {
+                return;
+            }
+            if (info.getMessageType() == MessageType.TC_BEGIN) {
+                logger.warn("Too many messages in flight on route {}, rejecting new dialog. {}", lwcommRouteName, msg);
+                if (binaryMessage != null) {
+                    binaryMessage.release();
+                }
+                SlOverloadUtil.rejectBeginFromNetworkWithPAbort(msg, tdid.getRemoteTcapTID());
+                handleElSendResult(callid, info, sdid, tdid, msg, null, SendResult.FAILURE);
+                return;
+            }
+            // messages of established dialogs are not dropped, they wait for the send result instead
+            logger.debug("Too many messages in flight on route {}, sending synchronously", lwcommRouteName);
+        }
+
+        SendResultFuture<SendResult> sendresult = binaryMessage != null ? lwc.send(lwcommRouteName, binaryMessage)
+                : lwc.send(lwcommRouteName, textMessage);
+        SendResult sr;
         try {
-            SendResult sr = sendresult.get();
-            logger.debug("result: {}", sr);
+            sr = sendresult.get();
+        } catch (InterruptedException | ExecutionException e) {
+            logger.error("Error sending message", e);
+            sr = null;
+        }
+        handleElSendResult(callid, info, sdid, tdid, msg, sendresult.getMessageId(), sr);
+    }
+
+    /**
+     * Updates the call history and the EL mapping according to the result of sending a message to EL.
+     * @param sr the send result or null if the result could not be determined
+     */
+    private void handleElSendResult(ImscfCallId callid, TCAPMessageInfo info, SccpDialogId sdid, TcapDialogId tdid,
+            SccpDataMessage msg, String messageId, SendResult sr) {
+        logger.debug("result: {}", sr);
+        if (sr != null) {
             if (sr.getType() == Type.SUCCESS) {
-                callHistoryStore.registerEvent(callid, Event.LWC_OUT_OK, info.getMessageType().toString(),
-                        sendresult.getMessageId());
+                callHistoryStore.registerEvent(callid, Event.LWC_OUT_OK, info.getMessageType(), messageId);
                 String name = sr.getActualDestination().getName();
                 logger.debug("Message sent to EL node {}", name);
-                SlElMappingData data = new SlElMappingData();
-                data.setNodeName(name);
-                data.setImscfCallId(callid);
-                if (info.getMessageType() == MessageType.TC_CONTINUE) {
-                    elRouter.setMappingData(sdid, tdid, data);
-                }
             } else {
-                callHistoryStore.registerEvent(callid, Event.LWC_OUT_ERR, info.getMessageType().toString(),
-                        sendresult.getMessageId());
+                callHistoryStore.registerEvent(callid, Event.LWC_OUT_ERR, info.getMessageType(), messageId);
                 if (info.getMessageType() == MessageType.TC_BEGIN || info.getMessageType() == MessageType.TC_CONTINUE) {
                     callHistoryStore.logAndRemoveCallHistory(callid);
                 }
                 logger.warn("Failed to send message to EL node. {}", msg);
             }
-        } catch (InterruptedException | ExecutionException e) {
-            logger.error("Error sending message", e);
         }
 
         switch (info.getMessageType()) {
@@ -277,6 +351,16 @@ public class SLSccpListener implements SccpListener {
         }
     }
 
+    /** Releases the resources used for asynchronous forwarding. */
+    public void shutdown() {
+        if (forwardingPipeline != null) {
+            forwardingPipeline.shutdown();
+        }
+        if (queryTimeoutService != null) {
+            queryTimeoutService.shutdown();
+        }
+    }
+
     @Override
     public void onNotice(SccpNoticeMessage arg0) {
         // TODO Auto-generated method stub
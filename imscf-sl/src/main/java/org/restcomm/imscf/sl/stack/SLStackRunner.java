@@ -34,6 +34,7 @@ import org.restcomm.imscf.sl.overload.SlOverloadUtil;
 import org.restcomm.imscf.sl.statistics.SlStatistics;
 import org.restcomm.imscf.common.LwcTags;
 import org.restcomm.imscf.common.LwcommConfigurator;
+import org.restcomm.imscf.common.SLELRouter;
 import org.restcomm.imscf.common.util.ThreadLocalCleaner;
 import org.restcomm.imscf.common.util.overload.OverloadProtector;
 import org.restcomm.imscf.common.util.overload.OverloadProtectorParameters;
@@ -77,6 +78,8 @@ public class SLStackRunner {
             + ":type=SctpLinkStatus";
 
     ImscfSigtranStack stack;
+    SLSccpListener sccpListener;
+    SlElMappingReplicator replicator;
 
     @EJB
     ConfigBean configBean;
@@ -137,12 +140,19 @@ public class SLStackRunner {
                         .map(SignalingLayerServerType::getName).orElse(null);
 
                 // handle incoming sccp -> lwcomm
-                SLSccpListener sccpListener = new SLSccpListener(elRouterBean, callHistoryStore, lwc, otherSlNode);
+                sccpListener = new SLSccpListener(elRouterBean, callHistoryStore, lwc, otherSlNode);
                 sccpProvider.registerSccpListener(146 /* CAP */, sccpListener);
 
                 // handle incoming lwcomm -> sccp
                 mr.setupForSigtran(sccpProvider, stack.getServer(), elRouterBean, lwc, sccpListener);
 
+                // replicate EL mappings to the other SL, the EL router query is used as a fallback
+                if (otherSlNode != null && SLELRouter.MAPPING_REPLICATION_ENABLED) {
+                    replicator = new SlElMappingReplicator(elRouterBean, lwc, otherSlNode);
+                    mr.setReplicator(replicator);
+                    replicator.start();
+                }
+
                 // Setup overload utility
                 SlOverloadUtil.configure(sccpProvider);
 
@@ -201,6 +211,7 @@ public class SLStackRunner {
         } else {
             logger.error("Neither nonHeapOverloadThresholdAmount nor nonHeapOverloadThresholdPercent is set in configuration!");
         }
+        p.setMBeanDomain(ConfigBean.SL_MBEAN_DOMAIN);
 
         OverloadProtector.init(p);
         OverloadProtector.getInstance().addListener((oldStatus, newStatus) -> {
@@ -230,6 +241,11 @@ public class SLStackRunner {
 
         OverloadProtector.shutdown();
 
+        if (replicator != null) {
+            replicator.shutdown();
+            replicator = null;
+        }
+
         logger.info("Stopping LWCOMM stack...");
         LwCommServiceProvider.getService().shutdown();
 
@@ -260,6 +276,11 @@ public class SLStackRunner {
             logger.info("SIGTRAN stack is down.");
         }
 
+        if (sccpListener != null) {
+            sccpListener.shutdown();
+            sccpListener = null;
+        }
+
         // Shut down overload utility
         SlOverloadUtil.destroy();
 
@@ -26,6 +26,8 @@ import org.restcomm.imscf.common.util.ImscfCallId;
 public class SlElMappingData {
     private String nodeName;
     private ImscfCallId imscfCallId;
+    /** Snapshot epoch of a mapping received from the other SL, 0 for mappings created on this node. */
+    private long replicationEpoch;
 
     public String getNodeName() {
         return nodeName;
@@ -43,6 +45,18 @@ public class SlElMappingData {
         this.imscfCallId = imscfCallId;
     }
 
+    public long getReplicationEpoch() {
+        return replicationEpoch;
+    }
+
+    public void setReplicationEpoch(long replicationEpoch) {
+        this.replicationEpoch = replicationEpoch;
+    }
+
+    public boolean isReplicated() {
+        return replicationEpoch > 0;
+    }
+
     @Override
     public String toString() {
         return "[" + nodeName + ", " + imscfCallId.toHumanReadableString() + "]";
@@ -0,0 +1,351 @@
+/*
+ * TeleStax, Open Source Cloud Communications
+ * Copyright 2011-2016, Telestax Inc and individual contributors
+ * by the @authors tag.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation; either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>
+ */
+package org.restcomm.imscf.sl.stack;
+
+import org.restcomm.imscf.common.SLELRouter;
+import org.restcomm.imscf.common.SccpDialogId;
+import org.restcomm.imscf.common.TcapDialogId;
+import org.restcomm.imscf.common.lwcomm.service.LwCommService;
+import org.restcomm.imscf.common.lwcomm.service.SendResult;
+import org.restcomm.imscf.common.lwcomm.service.TextMessage;
+import org.restcomm.imscf.common.lwcomm.service.impl.NamingThreadFactory;
+import org.restcomm.imscf.common.util.ImscfCallId;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Replicates the SL-EL dialog mappings to the other SL node, so that continuations arriving on either SL can be
+ * routed by a local lookup instead of an EL router query.
+ * <p>
+ * Local mapping changes are queued as deltas (set or clear) and sent to the other SL in batches, one batch in flight
+ * at a time, so they are applied in order. When the other SL becomes available (it starts advertising
+ * {@link SLELRouter#MAPPING_REPLICATION_CAPABILITY}), a batch could not be delivered or too many deltas are queued,
+ * the pending deltas are dropped and a snapshot of all mappings is sent instead. A snapshot is complete if the sender
+ * has already received a snapshot from the receiver, so it contains the mappings the receiver has replicated earlier.
+ * On receiving the last part of a complete snapshot, the replicated mappings not present in it are removed, as they
+ * were cleared on the other SL while it was not reachable. After a restart, the first snapshot is not complete, so the
+ * mappings replicated from the restarted node are kept.
+ * </p>
+ * <p>
+ * Replication is best effort: a missing mapping is still found by the EL router query. It is only used if the
+ * <code>imscf.sl.mappingReplication</code> system property is set to "enabled".
+ * </p>
+ */
+public class SlElMappingReplicator {
+    private static Logger logger = LoggerFactory.getLogger(SlElMappingReplicator.class);
+    private static final int FLUSH_INTERVAL_MS = Integer.getInteger("imscf.sl.mappingReplication.flushIntervalMs", 20);
+    /** Maximum number of deltas in a message, keeping the datagram well below the LwComm receive buffer size. */
+    private static final int MAX_BATCH_SIZE = Integer.getInteger("imscf.sl.mappingReplication.maxBatchSize", 64);
+    private static final int MAX_QUEUED_DELTAS = Integer.getInteger("imscf.sl.mappingReplication.maxQueuedDeltas",
+            100000);
+    private static final char DELTA_SEPARATOR = ';';
+    private static final char FIELD_SEPARATOR = ',';
+    private static final String NULL_FIELD = "-";
+
+    private final ELRouterBean elRouter;
+    private final LwCommService lwc;
+    private final String otherSlNode;
+    private final String routeName;
+    private final String groupId;
+    private final ScheduledExecutorService executor;
+
+    private final ConcurrentLinkedQueue<String> deltas = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queuedDeltaCount = new AtomicInteger();
+    /** Set while the other SL accepts deltas, the deltas are dropped otherwise. */
+    private volatile boolean peerSynchronized;
+
+    // accessed only on the executor thread
+    private final ArrayDeque<String> snapshotMessages = new ArrayDeque<>();
+    private boolean sending;
+
+    // receiving side, accessed in the order of the incoming messages of the other SL
+    private final AtomicLong receiveEpoch = new AtomicLong(1);
+
+    private final AtomicLong sentDeltaCount = new AtomicLong();
+    private final AtomicLong droppedDeltaCount = new AtomicLong();
+    private final AtomicLong sentSnapshotCount = new AtomicLong();
+    private final AtomicLong appliedDeltaCount = new AtomicLong();
+
+    public SlElMappingReplicator(ELRouterBean elRouter, LwCommService lwc, String otherSlNode) {
+        this.elRouter = Objects.requireNonNull(elRouter);
+        this.lwc = Objects.requireNonNull(lwc);
+        this.otherSlNode = Objects.requireNonNull(otherSlNode);
+        this.routeName = elRouter.getDirectRouteNameTo(otherSlNode);
+        this.groupId = "ELRouter/replication/" + lwc.getConfiguration().getLocalNodeName();
+        this.executor = Executors.newSingleThreadScheduledExecutor(new NamingThreadFactory("ElMappingReplicator"));
+    }
+
+    public void start() {
+        logger.info("Replicating EL mappings to {} in batches of max {} every {}ms", otherSlNode, MAX_BATCH_SIZE,
+                FLUSH_INTERVAL_MS);
+        elRouter.setReplicator(this);
+        executor.scheduleWithFixedDelay(this::tick, FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    public void shutdown() {
+        elRouter.setReplicator(null);
+        executor.shutdownNow();
+        logger.info("EL mapping replication stopped. {}", this);
+    }
+
+    /**
+     * Returns true if mappings are currently replicated with the given SL node. The other SL only advertises the
+     * replication capability if it replicates its own changes, including the removal of the mappings, back.
+     */
+    public boolean isReplicatingWith(String slNode) {
+        return peerSynchronized && otherSlNode.equals(slNode);
+    }
+
+    /** Called for every local mapping change. May be called concurrently. */
+    public void mappingChanged(SccpDialogId sdid, TcapDialogId tdid, SlElMappingData data) {
+        if (!peerSynchronized) {
+            // a snapshot will be sent when the other SL is available again
+            return;
+        }
+        if (queuedDeltaCount.incrementAndGet() > MAX_QUEUED_DELTAS) {
+            queuedDeltaCount.decrementAndGet();
+            droppedDeltaCount.incrementAndGet();
+            // deltas cannot be skipped, the next tick drops the queued ones and starts again with a snapshot
+            if (peerSynchronized) {
+                peerSynchronized = false;
+                logger.warn("Too many EL mapping changes queued for {}, resynchronizing", otherSlNode);
+            }
+            return;
+        }
+        deltas.add(encode(sdid, tdid, data));
+    }
+
+    private void tick() {
+        try {
+            boolean available = lwc.isCapabilitySupported(routeName, SLELRouter.MAPPING_REPLICATION_CAPABILITY);
+            if (available && !peerSynchronized && !sending) {
+                prepareSnapshot();
+            } else if (!available && peerSynchronized) {
+                logger.info("{} is not available, suspending EL mapping replication", otherSlNode);
+                desynchronize();
+            }
+            flush();
+        } catch (Exception e) {
+            logger.error("Error in EL mapping replication", e);
+        }
+    }
+
+    private void desynchronize() {
+        peerSynchronized = false;
+        snapshotMessages.clear();
+        int dropped = 0;
+        while (deltas.poll() != null) {
+            dropped++;
+        }
+        queuedDeltaCount.addAndGet(-dropped);
+        droppedDeltaCount.addAndGet(dropped);
+    }
+
+    private void prepareSnapshot() {
+        // changes made while the snapshot is collected are queued as deltas and sent after it
+        desynchronize();
+        peerSynchronized = true;
+        List<String> parts = new ArrayList<>();
+        StringBuilder sb = new StringBuilder();
+        int[] count = new int[2]; // in the current part, total
+        elRouter.forEachMapping((sdid, tdid, data) -> {
+            if (count[0] > 0) {
+                sb.append(DELTA_SEPARATOR);
+            }
+            sb.append(encode(sdid, tdid, data));
+            count[1]++;
+            if (++count[0] == MAX_BATCH_SIZE) {
+                parts.add(sb.toString());
+                sb.setLength(0);
+                count[0] = 0;
+            }
+        });
+        if (count[0] > 0 || parts.isEmpty()) {
+            parts.add(sb.toString());
+        }
+        boolean complete = receiveEpoch.get() > 1;
+        for (int i = 0; i < parts.size(); i++) {
+            snapshotMessages.add(SlLwcommFormat.formatELRouterSnapshot(i == 0, i == parts.size() - 1, complete,
+                    parts.get(i)));
+        }
+        sentSnapshotCount.incrementAndGet();
+        logger.info("Sending snapshot of {} EL mappings to {} in {} messages", count[1], otherSlNode, parts.size());
+    }
+
+    private void flush() {
+        if (sending || !peerSynchronized) {
+            return;
+        }
+        String payload = snapshotMessages.poll();
+        if (payload == null) {
+            StringBuilder sb = new StringBuilder();
+            int count = 0;
+            String delta;
+            while (count < MAX_BATCH_SIZE && (delta = deltas.poll()) != null) {
+                if (count > 0) {
+                    sb.append(DELTA_SEPARATOR);
+                }
+                sb.append(delta);
+                count++;
+            }
+            if (count == 0) {
+                return;
+            }
+            queuedDeltaCount.addAndGet(-count);
+            sentDeltaCount.addAndGet(count);
+            payload = SlLwcommFormat.formatELRouterDeltas(sb.toString());
+        }
+        sending = true;
+        lwc.send(routeName, TextMessage.builder(payload).setGroupId(groupId).create()).addListener((future) -> {
+            SendResult r;
+            try {
+                r = future.get();
+            } catch (InterruptedException | ExecutionException e) {
+                r = null;
+            }
+            boolean failed = r == null || r.getType() == SendResult.Type.FAILURE;
+            executor.execute(() -> {
+                sending = false;
+                if (failed) {
+                    // deltas cannot be skipped, start again with a snapshot
+                    logger.warn("Failed to deliver EL mappings to {}, resynchronizing", otherSlNode);
+                    desynchronize();
+                } else {
+                    flush();
+                }
+            });
+        }, null);
+    }
+
+    /**
+     * Applies a message received from the other SL.
+     * @param replicationHeader the Replication header line of the message
+     * @param data the deltas, may be null for an empty snapshot
+     */
+    public void handleReplicationMessage(String replicationHeader, String data) {
+        Matcher m = SlLwcommFormat.REPLICATION_LINE_PATTERN.matcher(replicationHeader);
+        if (!m.matches()) {
+            logger.error("EL mapping replication message not understood: {}", replicationHeader);
+            return;
+        }
+        boolean snapshot = "snapshot".equals(m.group("kind"));
+        if (snapshot && "true".equals(m.group("first"))) {
+            long epoch = receiveEpoch.incrementAndGet();
+            logger.info("Receiving snapshot of EL mappings from {}, epoch {}", otherSlNode, epoch);
+        }
+        long epoch = receiveEpoch.get();
+        if (data != null && !data.isEmpty()) {
+            for (String delta : data.split(String.valueOf(DELTA_SEPARATOR))) {
+                apply(delta, epoch);
+            }
+        }
+        if (snapshot && "true".equals(m.group("last")) && "true".equals(m.group("complete"))) {
+            // replicated mappings not refreshed by the snapshot were cleared on the other SL while not connected
+            int[] removed = new int[1];
+            elRouter.forEachMapping((sdid, tdid, mapping) -> {
+                if (mapping.isReplicated() && mapping.getReplicationEpoch() < epoch) {
+                    elRouter.setReplicatedMappingData(sdid, tdid, null);
+                    removed[0]++;
+                }
+            });
+            logger.info("Snapshot of EL mappings from {} received, removed {} stale mappings", otherSlNode,
+                    removed[0]);
+        }
+    }
+
+    private void apply(String delta, long epoch) {
+        String[] f = delta.split(String.valueOf(FIELD_SEPARATOR), -1);
+        try {
+            SccpDialogId sdid = new SccpDialogId(NULL_FIELD.equals(f[1]) ? null : f[1], Integer.parseInt(f[2]),
+                    Integer.parseInt(f[3]));
+            TcapDialogId tdid = new TcapDialogId(parseTid(f[4]), parseTid(f[5]));
+            if ("S".equals(f[0])) {
+                SlElMappingData data = new SlElMappingData();
+                data.setNodeName(f[6]);
+                data.setImscfCallId(ImscfCallId.parse(f[7]));
+                data.setReplicationEpoch(epoch);
+                elRouter.setReplicatedMappingData(sdid, tdid, data);
+            } else if (elRouter.getMappingData(sdid, tdid) != null) {
+                elRouter.setReplicatedMappingData(sdid, tdid, null);
+            }
+            appliedDeltaCount.incrementAndGet();
+        } catch (IllegalStateException | IllegalArgumentException e) {
+            // a conflicting local mapping, it will be corrected by the next update of the dialog
+            logger.debug("Cannot apply replicated EL mapping {}: {}", delta, e.getMessage());
+        } catch (IndexOutOfBoundsException e) {
+            logger.error("Invalid replicated EL mapping: {}", delta);
+        }
+    }
+
+    private static String encode(SccpDialogId sdid, TcapDialogId tdid, SlElMappingData data) {
+        StringBuilder sb = new StringBuilder(80);
+        sb.append(data == null ? 'C' : 'S').append(FIELD_SEPARATOR);
+        sb.append(sdid.isRemoteGtPresent() ? sdid.getRemoteGT() : NULL_FIELD).append(FIELD_SEPARATOR);
+        sb.append(sdid.getRemoteSSN()).append(FIELD_SEPARATOR).append(sdid.getLocalSSN()).append(FIELD_SEPARATOR);
+        sb.append(tdid.isRemoteTIDSet() ? Long.toHexString(tdid.getRemoteTcapTID()) : NULL_FIELD);
+        sb.append(FIELD_SEPARATOR);
+        sb.append(tdid.isLocalTIDSet() ? Long.toHexString(tdid.getLocalTcapTID()) : NULL_FIELD);
+        if (data != null) {
+            sb.append(FIELD_SEPARATOR).append(data.getNodeName()).append(FIELD_SEPARATOR)
+                    .append(data.getImscfCallId());
+        }
+        return sb.toString();
+    }
+
+    private static Long parseTid(String s) {
+        return NULL_FIELD.equals(s) ? null : Long.parseLong(s, 16);
+    }
+
+    public long getSentDeltaCount() {
+        return sentDeltaCount.get();
+    }
+
+    public long getDroppedDeltaCount() {
+        return droppedDeltaCount.get();
+    }
+
+    public long getSentSnapshotCount() {
+        return sentSnapshotCount.get();
+    }
+
+    public long getAppliedDeltaCount() {
+        return appliedDeltaCount.get();
+    }
+
+    @Override
+    public String toString() {
+        return "SlElMappingReplicator [otherSlNode=" + otherSlNode + ", sentDeltas=" + sentDeltaCount
+                + ", droppedDeltas=" + droppedDeltaCount + ", snapshots=" + sentSnapshotCount + ", appliedDeltas="
+                + appliedDeltaCount + "]";
+    }
+}
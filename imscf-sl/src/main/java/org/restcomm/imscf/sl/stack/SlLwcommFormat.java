@@ -57,6 +57,22 @@ public final class SlLwcommFormat {
             "\r\n" + //
             "{sccp}";
 
+    public static final String ELROUTER_REPLICATION_CONTENT = "SlElMappingDeltas";
+    public static final Pattern REPLICATION_LINE_PATTERN = Pattern
+            .compile("Replication: (?<kind>delta|snapshot)(?:,first=(?<first>true|false),last=(?<last>true|false),complete=(?<complete>true|false))?");
+    private static final String ELROUTER_REPLICATION = "" + //
+            // lwcomm group-id is fixed for the sending SL, so the batches are processed in order
+            "Target: ELRouter/replication\r\n" + //
+            "Replication: {kind}\r\n" + //
+            "Content: " + ELROUTER_REPLICATION_CONTENT + "\r\n" + //
+            "\r\n" + //
+            "{deltas}";
+
+    private static final String ELROUTER_REPLICATION_EMPTY = "" + //
+            // empty snapshot, the content would not match the message pattern
+            "Target: ELRouter/replication\r\n" + //
+            "Replication: {kind}\r\n";
+
     private SlLwcommFormat() {
     }
 
@@ -77,4 +93,14 @@ public final class SlLwcommFormat {
         return ELROUTER_NOTFOUND_RESPONSE.replace("{sccp}", sccpData);
     }
 
+    public static String formatELRouterDeltas(String deltas) {
+        return ELROUTER_REPLICATION.replace("{kind}", "delta").replace("{deltas}", deltas);
+    }
+
+    public static String formatELRouterSnapshot(boolean first, boolean last, boolean complete, String deltas) {
+        String kind = "snapshot,first=" + first + ",last=" + last + ",complete=" + complete;
+        return deltas.isEmpty() ? ELROUTER_REPLICATION_EMPTY.replace("{kind}", kind) : ELROUTER_REPLICATION
+                .replace("{kind}", kind).replace("{deltas}", deltas);
+    }
+
 }